@@ -0,0 +1,103 @@
+/*
+* @author  Oleg Varaksin (ovaraksin@googlemail.com)
+* $$Id: Fixtures.java 90 2011-09-27 15:24:29Z ovaraksin@gmail.com $$
+*/
+
+package com.googlecode.whiteboard.benchmark;
+
+import com.googlecode.whiteboard.model.Whiteboard;
+import com.googlecode.whiteboard.model.base.AbstractElement;
+import com.googlecode.whiteboard.model.element.Circle;
+import com.googlecode.whiteboard.model.element.FreeLine;
+import com.googlecode.whiteboard.model.element.Text;
+import com.googlecode.whiteboard.model.transfer.ClientAction;
+import com.googlecode.whiteboard.model.transfer.ClientChangedData;
+
+import java.util.UUID;
+
+/**
+ * Test data for benchmarks.
+ *
+ * @author ova / last modified by $Author: ovaraksin@gmail.com $
+ * @version $Revision: 90 $
+ */
+final class Fixtures
+{
+    private Fixtures() {
+    }
+
+    /**
+     * Creates a whiteboard element. Circles, texts and free lines alternate in order to have a realistic mix.
+     *
+     * @param index index of the element
+     * @return AbstractElement element with a random uuid
+     */
+    static AbstractElement newElement(int index) {
+        switch (index % 3) {
+            case 0:
+                Circle circle = new Circle();
+                circle.setUuid(UUID.randomUUID().toString());
+                circle.setX(index % 800);
+                circle.setY(index % 500);
+                circle.setRadius(25);
+                circle.setBackgroundColor("#FFFFFF");
+                circle.setBorderColor("#000000");
+                circle.setBorderWidth(1);
+                circle.setBorderStyle("No");
+                circle.setBackgroundOpacity(1.0);
+                circle.setBorderOpacity(1.0);
+                return circle;
+            case 1:
+                Text text = new Text();
+                text.setUuid(UUID.randomUUID().toString());
+                text.setX(index % 800);
+                text.setY(index % 500);
+                text.setText("Text " + index);
+                text.setFontFamily("Verdana");
+                text.setFontSize(12);
+                text.setFontWeight("normal");
+                text.setFontStyle("normal");
+                text.setColor("#000000");
+                return text;
+            default:
+                FreeLine line = new FreeLine();
+                line.setUuid(UUID.randomUUID().toString());
+                line.setPath("M" + (index % 800) + "," + (index % 500) + "L110,120L130,125L150,140L170,170L200,210");
+                line.setColor("#000000");
+                line.setLineWidth(2);
+                line.setLineStyle("No");
+                line.setOpacity(1.0);
+                return line;
+        }
+    }
+
+    static Whiteboard newWhiteboard(int elements) {
+        Whiteboard whiteboard = new Whiteboard();
+        whiteboard.setTitle("Benchmark");
+        whiteboard.setCreator("benchmark");
+        whiteboard.setPubSubTransport("long-polling");
+        for (int i = 0; i < elements; i++) {
+            whiteboard.addElement(newElement(i));
+        }
+
+        return whiteboard;
+    }
+
+    static ClientChangedData newClientChangedData(ClientAction action, Whiteboard whiteboard, AbstractElement element) {
+        ClientChangedData ccd = new ClientChangedData();
+        ccd.setAction(action);
+        ccd.setWhiteboardId(whiteboard.getUuid());
+        ccd.setElement(element);
+        ccd.setUser("benchmark");
+        ccd.setTimestamp(System.currentTimeMillis());
+
+        if (action == ClientAction.Resize) {
+            ccd.getParameters().put("width", "1024");
+            ccd.getParameters().put("height", "768");
+        } else if (action == ClientAction.Join) {
+            ccd.getParameters().put("usersCount", "2");
+        }
+
+        return ccd;
+    }
+}
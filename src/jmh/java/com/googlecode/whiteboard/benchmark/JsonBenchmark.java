@@ -0,0 +1,106 @@
+/*
+* @author  Oleg Varaksin (ovaraksin@googlemail.com)
+* $$Id: JsonBenchmark.java 90 2011-09-27 15:24:29Z ovaraksin@gmail.com $$
+*/
+
+package com.googlecode.whiteboard.benchmark;
+
+import com.google.gson.reflect.TypeToken;
+import com.googlecode.whiteboard.json.JsonConverter;
+import com.googlecode.whiteboard.model.Whiteboard;
+import com.googlecode.whiteboard.model.base.AbstractElement;
+import com.googlecode.whiteboard.model.transfer.*;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of JSON conversion by {@link JsonConverter}.
+ *
+ * @author ova / last modified by $Author: ovaraksin@gmail.com $
+ * @version $Revision: 90 $
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonBenchmark
+{
+    private static final Type BATCH_TYPE = new TypeToken<List<ServerChangedData>>()
+    {
+    }.getType();
+
+    @State(Scope.Benchmark)
+    public static class ClientMessage
+    {
+        @Param({"join", "create", "update", "remove", "clone", "move", "toFront", "toBack", "clear", "resize"})
+        public String action;
+
+        String json;
+
+        @Setup
+        public void setUp() {
+            ClientAction clientAction = ClientAction.getEnum(action);
+            Whiteboard whiteboard = Fixtures.newWhiteboard(0);
+            AbstractElement element = null;
+            if (clientAction != ClientAction.Join && clientAction != ClientAction.Clear && clientAction != ClientAction.Resize) {
+                element = Fixtures.newElement(0);
+            }
+
+            json = JsonConverter.getGson().toJson(Fixtures.newClientChangedData(clientAction, whiteboard, element));
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class ServerMessages
+    {
+        @Param({"10", "1000", "100000"})
+        public int elements;
+
+        List<ServerChangedData> changes;
+        RestoredWhiteboard restoredWhiteboard;
+
+        @Setup
+        public void setUp() {
+            Whiteboard whiteboard = Fixtures.newWhiteboard(elements);
+
+            changes = new ArrayList<ServerChangedData>(elements);
+            restoredWhiteboard = new RestoredWhiteboard();
+            long sequence = 0;
+            for (AbstractElement element : whiteboard.getElements()) {
+                ServerChangedData scd = new ServerChangedData();
+                scd.setAction(ClientAction.Create);
+                scd.setElement(element);
+                scd.setTimestamp(System.currentTimeMillis());
+                scd.setEvent(new ActivityEvent(ClientAction.Create, "Benchmark", scd.getTimestamp()));
+                scd.setSequence(++sequence);
+                changes.add(scd);
+
+                // elements are iterated in z-order, ascending numbers serve as z-keys
+                restoredWhiteboard.addElement(element, sequence);
+            }
+
+            restoredWhiteboard.setSequence(sequence);
+            restoredWhiteboard.setMessage(elements + " whiteboard elements have been restored");
+        }
+    }
+
+    @Benchmark
+    public ClientChangedData deserializeClientChangedData(ClientMessage message) {
+        return JsonConverter.getGson().fromJson(message.json, ClientChangedData.class);
+    }
+
+    @Benchmark
+    public String serializeServerChangedData(ServerMessages messages) {
+        return JsonConverter.getGson().toJson(messages.changes, BATCH_TYPE);
+    }
+
+    @Benchmark
+    public String serializeRestoredWhiteboard(ServerMessages messages) {
+        return JsonConverter.getGson().toJson(messages.restoredWhiteboard);
+    }
+}
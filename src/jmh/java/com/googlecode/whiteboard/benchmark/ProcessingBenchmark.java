@@ -0,0 +1,128 @@
+/*
+* @author  Oleg Varaksin (ovaraksin@googlemail.com)
+* $$Id: ProcessingBenchmark.java 90 2011-09-27 15:24:29Z ovaraksin@gmail.com $$
+*/
+
+package com.googlecode.whiteboard.benchmark;
+
+import com.google.gson.Gson;
+import com.googlecode.whiteboard.json.JsonConverter;
+import com.googlecode.whiteboard.model.Whiteboard;
+import com.googlecode.whiteboard.model.base.AbstractElement;
+import com.googlecode.whiteboard.model.base.Positionable;
+import com.googlecode.whiteboard.model.transfer.ClientAction;
+import com.googlecode.whiteboard.model.transfer.ClientChangedData;
+import com.googlecode.whiteboard.model.transfer.ServerChangedData;
+import com.googlecode.whiteboard.utils.WhiteboardUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end benchmarks of processing client messages against an in-memory whiteboard: JSON from the client is parsed,
+ * applied by {@link WhiteboardUtils#updateWhiteboard(Whiteboard, ClientChangedData)} and the result is converted to JSON
+ * for subscribers. The whiteboard keeps its size during measurement.
+ *
+ * @author ova / last modified by $Author: ovaraksin@gmail.com $
+ * @version $Revision: 90 $
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ProcessingBenchmark
+{
+    private static final int MESSAGES = 1024;
+
+    @Param({"10", "1000", "100000"})
+    public int elements;
+
+    private Gson gson;
+    private Whiteboard whiteboard;
+    private String[] createMessages;
+    private String[] updateMessages;
+    private String[] moveMessages;
+    private String[] removeMessages;
+    private List<AbstractElement> removedElements;
+    private int index;
+
+    @Setup
+    public void setUp() {
+        gson = JsonConverter.getGson();
+        whiteboard = Fixtures.newWhiteboard(elements);
+
+        List<AbstractElement> existing = new ArrayList<AbstractElement>(whiteboard.getElements());
+        createMessages = new String[MESSAGES];
+        updateMessages = new String[MESSAGES];
+        moveMessages = new String[MESSAGES];
+        removeMessages = new String[MESSAGES];
+        removedElements = new ArrayList<AbstractElement>(MESSAGES);
+
+        for (int i = 0; i < MESSAGES; i++) {
+            // elements to be created are not on the whiteboard yet, re-creating replaces them
+            createMessages[i] = toJson(ClientAction.Create, Fixtures.newElement(i));
+
+            int j = i % existing.size();
+            AbstractElement element = existing.get(j);
+
+            // changed copy of an existing element, the client sends the whole element for updates and moves
+            AbstractElement changed = Fixtures.newElement(j);
+            changed.setUuid(element.getUuid());
+            if (changed instanceof Positionable) {
+                ((Positionable) changed).setX((j + i) % 800);
+            }
+
+            updateMessages[i] = toJson(ClientAction.Update, changed);
+            moveMessages[i] = toJson(ClientAction.Move, changed);
+            removeMessages[i] = toJson(ClientAction.Remove, element);
+            removedElements.add(element);
+        }
+    }
+
+    @Benchmark
+    public String create() {
+        return process(createMessages[next()]);
+    }
+
+    @Benchmark
+    public String update() {
+        return process(updateMessages[next()]);
+    }
+
+    @Benchmark
+    public String move() {
+        return process(moveMessages[next()]);
+    }
+
+    /**
+     * Removes an element. The removed element is put back directly, so that the whiteboard doesn't become empty.
+     */
+    @Benchmark
+    public String remove() {
+        int i = next();
+        String json = process(removeMessages[i]);
+        whiteboard.addElement(removedElements.get(i));
+
+        return json;
+    }
+
+    private String process(String message) {
+        ClientChangedData ccd = gson.fromJson(message, ClientChangedData.class);
+        ServerChangedData scd = WhiteboardUtils.updateWhiteboard(whiteboard, ccd);
+
+        return gson.toJson(scd);
+    }
+
+    private int next() {
+        index = (index + 1) % MESSAGES;
+        return index;
+    }
+
+    private String toJson(ClientAction action, AbstractElement element) {
+        return gson.toJson(Fixtures.newClientChangedData(action, whiteboard, element));
+    }
+}
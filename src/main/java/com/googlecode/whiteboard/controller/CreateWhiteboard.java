@@ -46,6 +46,7 @@ public class CreateWhiteboard implements Serializable
     protected void initialize() {
         // create an empty whiteboard and uuid container of the current whiteboard
         whiteboard = new Whiteboard();
+        whiteboard.setSimplifyTolerance(whiteboardsManager.getSimplifyTolerance());
     }
 
     public String getTitle() {
@@ -80,6 +81,14 @@ public class CreateWhiteboard implements Serializable
         whiteboard.setHeight(height);
     }
 
+    public double getSimplifyTolerance() {
+        return whiteboard.getSimplifyTolerance();
+    }
+
+    public void setSimplifyTolerance(double simplifyTolerance) {
+        whiteboard.setSimplifyTolerance(simplifyTolerance);
+    }
+
     public void setWhiteboardsManager(WhiteboardsManager whiteboardsManager) {
         this.whiteboardsManager = whiteboardsManager;
     }
@@ -6,11 +6,8 @@
 package com.googlecode.whiteboard.controller;
 
 import com.googlecode.whiteboard.errorhandler.DefaultExceptionHandler;
-import com.googlecode.whiteboard.json.JsonConverter;
 import com.googlecode.whiteboard.model.Whiteboard;
 import com.googlecode.whiteboard.model.attribute.StrokeStyle;
-import com.googlecode.whiteboard.model.base.AbstractElement;
-import com.googlecode.whiteboard.model.transfer.RestoredWhiteboard;
 import com.googlecode.whiteboard.utils.FacesAccessor;
 import com.googlecode.whiteboard.utils.WhiteboardUtils;
 
@@ -189,28 +186,18 @@ public class DisplayWhiteboard implements Serializable
     }
 
     /**
-     * Gets all whiteboard elements in JSON format.
+     * Gets URL for progressive restore of whiteboard elements, see {@link WhiteboardRestoreServlet}.
      *
-     * @return String elements as JSON
+     * @return String URL for restore
      */
-    public String getElementsAsJson() {
-        if (whiteboard == null || whiteboard.getCount() < 1) {
-            // empty whiteboard
-            return "{}";
-        }
-
-        RestoredWhiteboard rw = new RestoredWhiteboard();
-        for (AbstractElement ae : whiteboard.getElements().values()) {
-            rw.addElement(ae);
+    public String getRestoreUrl() {
+        if (whiteboard == null) {
+            return "";
         }
 
-        if (whiteboard.getCount() == 1) {
-            rw.setMessage("1 whiteboard element has been restored");
-        } else {
-            rw.setMessage(whiteboard.getCount() + " whiteboard elements have been restored");
-        }
+        ExternalContext ec = FacesContext.getCurrentInstance().getExternalContext();
 
-        return JsonConverter.getGson().toJson(rw);
+        return ec.encodeResourceURL(ec.getRequestContextPath() + "/restore/" + whiteboard.getUuid());
     }
 
     /**
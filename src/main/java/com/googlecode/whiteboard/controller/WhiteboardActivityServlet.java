@@ -0,0 +1,66 @@
+/*
+* @author  Oleg Varaksin (ovaraksin@googlemail.com)
+* $$Id: WhiteboardActivityServlet.java 90 2011-09-27 15:24:29Z ovaraksin@gmail.com $$
+*/
+
+package com.googlecode.whiteboard.controller;
+
+import com.google.gson.reflect.TypeToken;
+import com.googlecode.whiteboard.json.JsonConverter;
+import com.googlecode.whiteboard.model.Whiteboard;
+import com.googlecode.whiteboard.model.transfer.ActivityEvent;
+import com.googlecode.whiteboard.utils.WhiteboardUtils;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+/**
+ * Servlet returning the latest activities in a whiteboard as JSON array.
+ * <pre>
+ * GET activity/{whiteboardId}?since=..&amp;user=..&amp;limit=..
+ * </pre>
+ * All parameters are optional: activities after the given timestamp, activities of the given user only,
+ * max. number of activities (default 50).
+ *
+ * @author ova / last modified by $Author: ovaraksin@gmail.com $
+ * @version $Revision: 90 $
+ */
+public class WhiteboardActivityServlet extends HttpServlet
+{
+    private static final long serialVersionUID = 20110927L;
+
+    private static final int DEFAULT_LIMIT = 50;
+
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        WhiteboardsManager manager = WhiteboardUtils.getWhiteboardsManager(request);
+        String whiteboardId = (request.getPathInfo() != null ? request.getPathInfo().substring(1) : null);
+        Whiteboard whiteboard = (manager != null && whiteboardId != null ? manager.getWhiteboard(whiteboardId) : null);
+        if (whiteboard == null || whiteboard.getActivityLog() == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        long since;
+        int limit;
+        try {
+            since = (request.getParameter("since") != null ? Long.parseLong(request.getParameter("since")) : 0);
+            limit = (request.getParameter("limit") != null ? Integer.parseInt(request.getParameter("limit")) : DEFAULT_LIMIT);
+        } catch (NumberFormatException e) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST);
+            return;
+        }
+
+        List<ActivityEvent> events = whiteboard.getActivityLog().getEvents(since, request.getParameter("user"), limit);
+
+        response.setContentType("application/json;charset=UTF-8");
+        response.setHeader("Cache-Control", "no-cache");
+        Writer writer = response.getWriter();
+        JsonConverter.getGson().toJson(events, new TypeToken<List<ActivityEvent>>() {}.getType(), writer);
+        writer.flush();
+    }
+}
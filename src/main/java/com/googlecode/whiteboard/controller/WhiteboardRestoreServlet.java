@@ -0,0 +1,236 @@
+/*
+* @author  Oleg Varaksin (ovaraksin@googlemail.com)
+* $$Id: WhiteboardRestoreServlet.java 90 2011-09-27 15:24:29Z ovaraksin@gmail.com $$
+*/
+
+package com.googlecode.whiteboard.controller;
+
+import com.googlecode.whiteboard.json.JsonConverter;
+import com.googlecode.whiteboard.model.BoundingBox;
+import com.googlecode.whiteboard.model.ElementsSnapshot;
+import com.googlecode.whiteboard.model.Whiteboard;
+import com.googlecode.whiteboard.model.base.AbstractElement;
+import com.googlecode.whiteboard.model.transfer.RestoredWhiteboard;
+import com.googlecode.whiteboard.utils.WhiteboardUtils;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Servlet restoring whiteboard elements for joining users progressively. The first request
+ * <pre>
+ * GET restore/{whiteboardId}?x=..&amp;y=..&amp;width=..&amp;height=..
+ * </pre>
+ * returns elements in the given viewport in z-order together with the sequence number of the last change and a cursor.
+ * All other elements are returned chunk by chunk by requests with the cursor of the previous response
+ * <pre>
+ * GET restore/{whiteboardId}?cursor=..
+ * </pre>
+ * until the returned cursor is null. All chunks are taken from one immutable snapshot of elements, which is kept
+ * in the HTTP session until the last chunk has been requested. A session keeps one cursor per whiteboard, a new restore
+ * replaces the previous one. Cursors which have not been used for the configured time are dropped
+ * (see {@link WhiteboardsManager#getRestoreCursorTimeout()}).
+ *
+ * @author ova / last modified by $Author: ovaraksin@gmail.com $
+ * @version $Revision: 90 $
+ */
+public class WhiteboardRestoreServlet extends HttpServlet
+{
+    private static final long serialVersionUID = 20110927L;
+
+    private static final Logger LOG = Logger.getLogger(WhiteboardRestoreServlet.class.getName());
+
+    private static final String CURSORS_ATTRIBUTE = "whiteboard.restoreCursors";
+
+    protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+        WhiteboardsManager manager = WhiteboardUtils.getWhiteboardsManager(request);
+        String whiteboardId = (request.getPathInfo() != null ? request.getPathInfo().substring(1) : null);
+        Whiteboard whiteboard = (manager != null && whiteboardId != null ? manager.getWhiteboard(whiteboardId) : null);
+        if (whiteboard == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        Map<String, RestoreCursor> cursors = getCursors(request.getSession());
+        expireCursors(cursors, manager.getRestoreCursorTimeout());
+        RestoredWhiteboard rw;
+
+        String cursorId = request.getParameter("cursor");
+        if (cursorId == null) {
+            // a user restores a whiteboard again after a reload, the previous restore is abandoned
+            removeCursors(cursors, whiteboardId);
+
+            BoundingBox viewport = new BoundingBox(getParameter(request, "x"), getParameter(request, "y"),
+                    getParameter(request, "x") + getParameter(request, "width"),
+                    getParameter(request, "y") + getParameter(request, "height"));
+
+            RestoreCursor cursor;
+            try {
+                cursor = startRestore(whiteboardId, whiteboard, viewport);
+            } catch (Exception e) {
+                LOG.log(Level.SEVERE, "Whiteboard " + whiteboardId + " can not be restored", e);
+                response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                return;
+            }
+
+            rw = new RestoredWhiteboard();
+            rw.setSequence(cursor.sequence);
+            for (Map.Entry<Double, AbstractElement> entry : cursor.visible.entrySet()) {
+                rw.addElement(entry.getValue(), entry.getKey());
+            }
+
+            if (cursor.visible.size() < cursor.snapshot.getCount()) {
+                cursorId = UUID.randomUUID().toString();
+                cursors.put(cursorId, cursor);
+                rw.setCursor(cursorId);
+            } else if (cursor.snapshot.getCount() > 0) {
+                rw.setMessage(getMessage(cursor.snapshot.getCount()));
+            }
+        } else {
+            RestoreCursor cursor = cursors.get(cursorId);
+            if (cursor == null || !cursor.whiteboardId.equals(whiteboardId)) {
+                // session or cursor has been expired, cursor has been replaced or already finished
+                response.sendError(HttpServletResponse.SC_GONE);
+                return;
+            }
+
+            cursor.lastAccess = System.currentTimeMillis();
+
+            rw = new RestoredWhiteboard();
+            rw.setSequence(cursor.sequence);
+            int chunkSize = manager.getRestoreChunkSize();
+            synchronized (cursor) {
+                while (rw.getElements().size() < chunkSize && cursor.iterator.hasNext()) {
+                    Map.Entry<Double, AbstractElement> entry = cursor.iterator.next();
+                    if (!cursor.visible.containsKey(entry.getKey())) {
+                        // visible elements have been already sent
+                        rw.addElement(entry.getValue(), entry.getKey());
+                    }
+                }
+
+                if (cursor.iterator.hasNext()) {
+                    rw.setCursor(cursorId);
+                } else {
+                    cursors.remove(cursorId);
+                    rw.setMessage(getMessage(cursor.snapshot.getCount()));
+                }
+            }
+        }
+
+        response.setContentType("application/json;charset=UTF-8");
+        response.setHeader("Cache-Control", "no-cache");
+        Writer writer = response.getWriter();
+        JsonConverter.getGson().toJson(rw, writer);
+        writer.flush();
+    }
+
+    /**
+     * Takes the snapshot, the visible elements and the sequence number in the whiteboard mailbox, so that they are
+     * consistent with each other.
+     */
+    private RestoreCursor startRestore(final String whiteboardId, final Whiteboard whiteboard, final BoundingBox viewport)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        FutureTask<RestoreCursor> task = new FutureTask<RestoreCursor>(new Callable<RestoreCursor>()
+        {
+            public RestoreCursor call() {
+                ElementsSnapshot snapshot = whiteboard.getElementsSnapshot();
+                return new RestoreCursor(whiteboardId, snapshot, whiteboard.findElements(viewport),
+                        whiteboard.getSequence());
+            }
+        });
+
+        whiteboard.getMailbox().execute(task);
+
+        return task.get(10, TimeUnit.SECONDS);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, RestoreCursor> getCursors(HttpSession session) {
+        synchronized (session) {
+            Map<String, RestoreCursor> cursors = (Map<String, RestoreCursor>) session.getAttribute(CURSORS_ATTRIBUTE);
+            if (cursors == null) {
+                cursors = new ConcurrentHashMap<String, RestoreCursor>();
+                session.setAttribute(CURSORS_ATTRIBUTE, cursors);
+            }
+
+            return cursors;
+        }
+    }
+
+    /**
+     * Drops cursors which have not been used for a while, e.g. because the user has left during the restore.
+     */
+    private void expireCursors(Map<String, RestoreCursor> cursors, long timeout) {
+        long expired = System.currentTimeMillis() - timeout;
+        Iterator<RestoreCursor> iter = cursors.values().iterator();
+        while (iter.hasNext()) {
+            if (iter.next().lastAccess < expired) {
+                iter.remove();
+            }
+        }
+    }
+
+    private void removeCursors(Map<String, RestoreCursor> cursors, String whiteboardId) {
+        Iterator<RestoreCursor> iter = cursors.values().iterator();
+        while (iter.hasNext()) {
+            if (iter.next().whiteboardId.equals(whiteboardId)) {
+                iter.remove();
+            }
+        }
+    }
+
+    private double getParameter(HttpServletRequest request, String name) {
+        String value = request.getParameter(name);
+        if (value == null) {
+            return 0;
+        }
+
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private String getMessage(int count) {
+        if (count == 1) {
+            return "1 whiteboard element has been restored";
+        }
+
+        return count + " whiteboard elements have been restored";
+    }
+
+    /**
+     * Restore state of one joining user.
+     */
+    private static class RestoreCursor
+    {
+        private final String whiteboardId;
+        private final ElementsSnapshot snapshot;
+        private final SortedMap<Double, AbstractElement> visible;
+        private final long sequence;
+        private final Iterator<Map.Entry<Double, AbstractElement>> iterator;
+        private volatile long lastAccess = System.currentTimeMillis();
+
+        RestoreCursor(String whiteboardId, ElementsSnapshot snapshot, SortedMap<Double, AbstractElement> visible,
+                      long sequence) {
+            this.whiteboardId = whiteboardId;
+            this.snapshot = snapshot;
+            this.visible = visible;
+            this.sequence = sequence;
+            this.iterator = snapshot.zOrderIterator();
+        }
+    }
+}
@@ -5,42 +5,587 @@
 
 package com.googlecode.whiteboard.controller;
 
+import com.googlecode.whiteboard.model.ActivityLog;
+import com.googlecode.whiteboard.model.OperationWindow;
+import com.googlecode.whiteboard.model.UserData;
 import com.googlecode.whiteboard.model.Whiteboard;
+import com.googlecode.whiteboard.model.transfer.ClientChangedData;
+import com.googlecode.whiteboard.pubsub.WhiteboardChannel;
+import com.googlecode.whiteboard.store.FileWhiteboardStore;
+import com.googlecode.whiteboard.store.JdbcWhiteboardStore;
+import com.googlecode.whiteboard.store.MemoryWhiteboardStore;
+import com.googlecode.whiteboard.store.WhiteboardStore;
+import com.googlecode.whiteboard.utils.PathSimplifier;
+import com.googlecode.whiteboard.utils.SerialExecutor;
+import com.googlecode.whiteboard.utils.TimerWheel;
+import org.apache.commons.configuration.Configuration;
 import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.PropertiesConfiguration;
 
-import java.util.HashMap;
-import java.util.Map;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Managed bean for whiteboard management.
  * This bean is application scoped because whiteboards are session wide.
+ * <p/>
+ * Whiteboards are kept in a concurrent map, so that lookups on the publish path don't take any lock. Every lookup marks
+ * the whiteboard as active. Whiteboards without subscribers being idle longer than the configured expired time
+ * are evicted by means of a {@link TimerWheel}.
+ * <p/>
+ * New whiteboards and all applied changes are passed to the configured {@link WhiteboardStore}. Whiteboards changed
+ * since they were saved last are saved periodically. Stored whiteboards are loaded in parallel on startup and evicted
+ * whiteboards are loaded again on the next lookup.
  *
  * @author ova / last modified by $Author: ovaraksin@gmail.com $
  * @version $Revision: 90 $
  */
 public class WhiteboardsManager
 {
-    private Map<String, Whiteboard> whiteboards = new HashMap<String, Whiteboard>();
-    //private int expiredTime;
+    private static final Logger LOG = Logger.getLogger(WhiteboardsManager.class.getName());
+
+    private ConcurrentMap<String, Whiteboard> whiteboards = new ConcurrentHashMap<String, Whiteboard>();
+    private ExecutorService executor;
+    private ScheduledExecutorService scheduler;
+    private long expiredTime;
+    private TimerWheel<String> expiryWheel;
+    private WhiteboardStore store;
+    private long snapshotInterval;
+    private final Set<String> dirtyWhiteboards = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final ConcurrentMap<String, Object> restoreLocks = new ConcurrentHashMap<String, Object>();
+    private long moveCoalescingTick;
+    private int replayBufferSize;
+    private int lagThreshold;
+    private int dropThreshold;
+    private int restoreChunkSize;
+    private long restoreCursorTimeout;
+    private double simplifyTolerance;
+    private int activityLogSize;
+    private int operationWindowSize;
 
     public WhiteboardsManager() throws ConfigurationException {
-        //Configuration config = new PropertiesConfiguration("wb-configuration.properties");
-        //expiredTime = config.getInt("whiteboard.expiredTime", 30);
+        Configuration config = new PropertiesConfiguration("wb-configuration.properties");
+        expiredTime = TimeUnit.MINUTES.toMillis(config.getLong("whiteboard.expiredTime", 30));
+        moveCoalescingTick = config.getLong("whiteboard.moveCoalescingTick", 25);
+        replayBufferSize = config.getInt("whiteboard.replayBufferSize", 256);
+        lagThreshold = config.getInt("whiteboard.subscriber.lagThreshold", 32);
+        dropThreshold = config.getInt("whiteboard.subscriber.dropThreshold", 512);
+        restoreChunkSize = config.getInt("whiteboard.restore.chunkSize", 500);
+        restoreCursorTimeout = TimeUnit.SECONDS.toMillis(config.getLong("whiteboard.restore.cursorTimeout", 300));
+        simplifyTolerance = config.getDouble("whiteboard.simplify.tolerance", 1.0);
+        activityLogSize = config.getInt("whiteboard.activityLog.size", 200);
+        operationWindowSize = config.getInt("whiteboard.operationWindow.size", OperationWindow.DEFAULT_CAPACITY);
+        snapshotInterval = TimeUnit.SECONDS.toMillis(config.getLong("whiteboard.store.snapshotInterval", 60));
+        store = createStore(config);
+
+        // shared threads for mailboxes of all whiteboards
+        executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new DaemonThreadFactory("whiteboard-mailbox-"));
+        // shared thread for delayed tasks like broadcast ticks
+        scheduler = Executors.newSingleThreadScheduledExecutor(new DaemonThreadFactory("whiteboard-scheduler-"));
+
+        if (expiredTime > 0) {
+            // expired time spans at most two rotations of the wheel
+            long tick = Math.max(expiredTime / 32, 1000);
+            expiryWheel = new TimerWheel<String>(64, tick, System.currentTimeMillis());
+            scheduler.scheduleWithFixedDelay(new Runnable()
+            {
+                public void run() {
+                    expire(expiryWheel.advance(System.currentTimeMillis()));
+                }
+            }, tick, tick, TimeUnit.MILLISECONDS);
+        }
+
+        loadWhiteboards();
+
+        if (snapshotInterval > 0) {
+            scheduler.scheduleWithFixedDelay(new Runnable()
+            {
+                public void run() {
+                    snapshotDirtyWhiteboards();
+                }
+            }, snapshotInterval, snapshotInterval, TimeUnit.MILLISECONDS);
+        }
     }
 
-    public synchronized void addWhiteboard(Whiteboard whiteboard) {
-        whiteboards.put(whiteboard.getUuid(), whiteboard);
+    private static WhiteboardStore createStore(Configuration config) {
+        String type = config.getString("whiteboard.store", "memory");
+        try {
+            if ("memory".equals(type)) {
+                return new MemoryWhiteboardStore(config);
+            } else if ("file".equals(type)) {
+                return new FileWhiteboardStore(config);
+            } else if ("jdbc".equals(type)) {
+                return new JdbcWhiteboardStore(config);
+            }
+
+            Class<? extends WhiteboardStore> clazz = Class.forName(type).asSubclass(WhiteboardStore.class);
+            return clazz.getConstructor(Configuration.class).newInstance(config);
+        } catch (Exception e) {
+            LOG.log(Level.SEVERE, "Whiteboard store '" + type + "' can not be created, whiteboards are kept in memory only", e);
+            return new MemoryWhiteboardStore(config);
+        }
+    }
+
+    /**
+     * Loads all stored whiteboards in parallel.
+     */
+    private void loadWhiteboards() {
+        long start = System.currentTimeMillis();
+        List<String> uuids;
+        try {
+            uuids = store.list();
+        } catch (IOException e) {
+            LOG.log(Level.SEVERE, "Stored whiteboards can not be listed", e);
+            return;
+        }
+
+        if (uuids.isEmpty()) {
+            return;
+        }
+
+        List<Callable<Whiteboard>> tasks = new ArrayList<Callable<Whiteboard>>(uuids.size());
+        for (final String uuid : uuids) {
+            tasks.add(new Callable<Whiteboard>()
+            {
+                public Whiteboard call() throws IOException {
+                    return store.load(uuid);
+                }
+            });
+        }
+
+        int count = 0;
+        try {
+            List<Future<Whiteboard>> results = executor.invokeAll(tasks);
+            for (int i = 0; i < results.size(); i++) {
+                try {
+                    Whiteboard whiteboard = results.get(i).get();
+                    if (whiteboard != null) {
+                        register(whiteboard);
+                        count++;
+                    }
+                } catch (ExecutionException e) {
+                    LOG.log(Level.SEVERE, "Whiteboard " + uuids.get(i) + " can not be loaded", e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        LOG.info(count + " whiteboard(s) loaded in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    /**
+     * Stops threads processing whiteboard changes. This method is called automatically by JSF facility.
+     */
+    @PreDestroy
+    public void destroy() {
+        scheduler.shutdown();
+        try {
+            // changed whiteboards are saved in their mailboxes after pending changes, before the store is closed
+            if (!snapshotDirtyWhiteboards().await(5, TimeUnit.SECONDS)) {
+                LOG.warning("Not all changed whiteboards have been saved before shutdown");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        executor.shutdown();
+        try {
+            // let mailboxes store pending changes
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        store.close();
+
+        if (PathSimplifier.getReceivedPoints() > 0) {
+            LOG.info("Free lines have been simplified from " + PathSimplifier.getReceivedPoints() + " to "
+                     + PathSimplifier.getStoredPoints() + " points");
+        }
+    }
+
+    /**
+     * Gets the time after which idle whiteboards without subscribers are evicted.
+     *
+     * @return long expired time in milliseconds, 0 if whiteboards never expire
+     */
+    public long getExpiredTime() {
+        return expiredTime;
+    }
+
+    public ScheduledExecutorService getScheduler() {
+        return scheduler;
     }
 
-    public synchronized Whiteboard updateWhiteboard(Whiteboard whiteboard) {
-        return whiteboards.put(whiteboard.getUuid(), whiteboard);
+    /**
+     * Gets the time in milliseconds within which moves of the same element are coalesced before broadcasting.
+     *
+     * @return long tick in milliseconds, 0 if coalescing is disabled
+     */
+    public long getMoveCoalescingTick() {
+        return moveCoalescingTick;
     }
 
-    public synchronized void removeWhiteboard(Whiteboard whiteboard) {
+    /**
+     * Gets the number of recent broadcasts per whiteboard which can be replayed to reconnecting subscribers.
+     *
+     * @return int size of the replay buffer
+     */
+    public int getReplayBufferSize() {
+        return replayBufferSize;
+    }
+
+    /**
+     * Gets the max. number of messages queued but not written yet for one subscriber. A subscriber exceeding
+     * this number is lagging and gets collapsed changes as one batch when it has caught up.
+     *
+     * @return int threshold for lagging subscribers
+     */
+    public int getLagThreshold() {
+        return lagThreshold;
+    }
+
+    /**
+     * Gets the max. number of changes kept for a lagging subscriber. A subscriber exceeding this number is dropped
+     * and has to resync the whiteboard.
+     *
+     * @return int threshold for dropping lagging subscribers
+     */
+    public int getDropThreshold() {
+        return dropThreshold;
+    }
+
+    /**
+     * Gets the max. number of elements outside of the viewport which are sent to a joining user in one chunk.
+     *
+     * @return int chunk size
+     */
+    public int getRestoreChunkSize() {
+        return restoreChunkSize;
+    }
+
+    /**
+     * Gets the time after which a cursor of a progressive restore is dropped if no further chunk has been requested.
+     *
+     * @return long timeout in ms
+     */
+    public long getRestoreCursorTimeout() {
+        return restoreCursorTimeout;
+    }
+
+    /**
+     * Gets the tolerance for simplifying free lines which is proposed for new whiteboards.
+     *
+     * @return double tolerance in pixels, 0 if free lines are not simplified
+     */
+    public double getSimplifyTolerance() {
+        return simplifyTolerance;
+    }
+
+    public void addWhiteboard(Whiteboard whiteboard) {
+        // before the whiteboard is accessible, so that no change is stored before
+        store.save(whiteboard);
+        register(whiteboard);
+    }
+
+    public Whiteboard updateWhiteboard(Whiteboard joined) {
+        final Whiteboard whiteboard = getCurrentWhiteboard(joined);
+        if (whiteboard == null) {
+            // has been removed in the meantime
+            return null;
+        }
+
+        if (whiteboard.getMailbox() == null) {
+            whiteboard.setMailbox(new SerialExecutor(executor));
+        }
+
+        if (whiteboard.getActivityLog() == null) {
+            whiteboard.setActivityLog(new ActivityLog(activityLogSize));
+        }
+
+        if (whiteboard.getOperationWindow() == null) {
+            whiteboard.setOperationWindow(new OperationWindow(operationWindowSize));
+        }
+
+        whiteboard.touch();
+        Whiteboard previous = whiteboards.put(whiteboard.getUuid(), whiteboard);
+        if (previous == null) {
+            // has been evicted in the meantime
+            scheduleExpiry(whiteboard.getUuid(), whiteboard.getLastActivity() + expiredTime);
+        }
+
+        // only users are saved, changed elements are saved with the next snapshot or on eviction
+        whiteboard.getMailbox().execute(new Runnable()
+        {
+            public void run() {
+                store.saveUsers(whiteboard);
+            }
+        });
+
+        return previous;
+    }
+
+    /**
+     * Gets the instance of the given whiteboard which is currently in use. An evicted instance must not be registered
+     * again, its users are transferred to the instance restored from the store.
+     *
+     * @param whiteboard whiteboard which may have been evicted
+     * @return Whiteboard current whiteboard or null if the whiteboard has been removed
+     */
+    private Whiteboard getCurrentWhiteboard(Whiteboard whiteboard) {
+        if (!whiteboard.isEvicted()) {
+            return whiteboard;
+        }
+
+        Whiteboard current = getWhiteboard(whiteboard.getUuid());
+        if (current != null) {
+            for (UserData ud : whiteboard.getUserData()) {
+                if (current.getUserData(ud.getSenderId()) == null) {
+                    current.addUserData(ud);
+                }
+            }
+        }
+
+        return current;
+    }
+
+    public void removeWhiteboard(Whiteboard whiteboard) {
         whiteboards.remove(whiteboard.getUuid());
+        dirtyWhiteboards.remove(whiteboard.getUuid());
+        store.delete(whiteboard.getUuid());
     }
 
+    /**
+     * Passes a change applied to the given whiteboard to the store. This method has to be called from the whiteboard
+     * mailbox after the change has been applied.
+     *
+     * @param whiteboard whiteboard
+     * @param ccd        applied change
+     */
+    public void storeChange(Whiteboard whiteboard, ClientChangedData ccd) {
+        store.apply(whiteboard, ccd);
+        dirtyWhiteboards.add(whiteboard.getUuid());
+    }
+
+    /**
+     * Saves whiteboards changed since they were saved last. Whiteboards are saved in their mailboxes, so that they
+     * are consistent with stored changes.
+     *
+     * @return CountDownLatch latch which is counted down as soon as a whiteboard has been saved
+     */
+    private CountDownLatch snapshotDirtyWhiteboards() {
+        List<Whiteboard> dirty = new ArrayList<Whiteboard>();
+        Iterator<String> iter = dirtyWhiteboards.iterator();
+        while (iter.hasNext()) {
+            String uuid = iter.next();
+            iter.remove();
+
+            Whiteboard whiteboard = whiteboards.get(uuid);
+            if (whiteboard != null) {
+                dirty.add(whiteboard);
+            }
+        }
+
+        final CountDownLatch saved = new CountDownLatch(dirty.size());
+        for (final Whiteboard whiteboard : dirty) {
+            whiteboard.getMailbox().execute(new Runnable()
+            {
+                public void run() {
+                    try {
+                        // an evicted whiteboard has been saved on eviction and may have been restored in the meantime
+                        if (!whiteboard.isEvicted()) {
+                            saveWhiteboard(whiteboard);
+                        }
+                    } finally {
+                        saved.countDown();
+                    }
+                }
+            });
+        }
+
+        return saved;
+    }
+
+    /**
+     * Saves the complete state of the given whiteboard. Pending moves are broadcasted before, so that the saved sequence
+     * number is not behind the sequence numbers subscribers have seen. This method has to be called from the whiteboard
+     * mailbox.
+     *
+     * @param whiteboard whiteboard
+     */
+    private void saveWhiteboard(Whiteboard whiteboard) {
+        WhiteboardChannel.flush(whiteboard);
+        store.save(whiteboard);
+    }
+
+    /**
+     * Gets the whiteboard with the given id and marks it as active. An evicted whiteboard is loaded from the store.
+     *
+     * @param uuid whiteboard id
+     * @return Whiteboard whiteboard or null if not found
+     */
     public Whiteboard getWhiteboard(String uuid) {
-        return whiteboards.get(uuid);
+        Whiteboard whiteboard = whiteboards.get(uuid);
+        if (whiteboard == null) {
+            whiteboard = restoreWhiteboard(uuid);
+            if (whiteboard == null) {
+                return null;
+            }
+        }
+
+        whiteboard.touch();
+
+        return whiteboard;
+    }
+
+    private Whiteboard restoreWhiteboard(String uuid) {
+        if (uuid == null) {
+            return null;
+        }
+
+        // restore every whiteboard only once, different whiteboards are restored in parallel
+        while (true) {
+            Object lock = new Object();
+            Object existing = restoreLocks.putIfAbsent(uuid, lock);
+            if (existing != null) {
+                lock = existing;
+            }
+
+            synchronized (lock) {
+                if (restoreLocks.get(uuid) != lock) {
+                    // restore has been finished while waiting, the whiteboard is checked again under the current lock
+                    continue;
+                }
+
+                try {
+                    Whiteboard whiteboard = whiteboards.get(uuid);
+                    if (whiteboard != null) {
+                        return whiteboard;
+                    }
+
+                    try {
+                        whiteboard = store.load(uuid);
+                    } catch (IOException e) {
+                        LOG.log(Level.SEVERE, "Whiteboard " + uuid + " can not be loaded", e);
+                    }
+
+                    if (whiteboard != null) {
+                        register(whiteboard);
+                    }
+
+                    return whiteboard;
+                } finally {
+                    restoreLocks.remove(uuid, lock);
+                }
+            }
+        }
+    }
+
+    private void register(Whiteboard whiteboard) {
+        whiteboard.setMailbox(new SerialExecutor(executor));
+        whiteboard.setActivityLog(new ActivityLog(activityLogSize));
+        OperationWindow operationWindow = new OperationWindow(operationWindowSize);
+        if (whiteboard.getOperationWindow() != null) {
+            // ids of operations replayed or restored by the store
+            operationWindow.addAll(whiteboard.getOperationWindow());
+        }
+
+        whiteboard.setOperationWindow(operationWindow);
+        whiteboard.touch();
+        whiteboards.put(whiteboard.getUuid(), whiteboard);
+        scheduleExpiry(whiteboard.getUuid(), whiteboard.getLastActivity() + expiredTime);
+    }
+
+    private void scheduleExpiry(String uuid, long deadline) {
+        if (expiryWheel != null) {
+            expiryWheel.schedule(uuid, deadline);
+        }
+    }
+
+    /**
+     * Checks whiteboards whose expiry deadlines have passed. Whiteboards being still active are rescheduled,
+     * others are evicted in their mailboxes, so that no change being processed is lost.
+     *
+     * @param uuids ids of whiteboards to be checked
+     */
+    private void expire(List<String> uuids) {
+        long now = System.currentTimeMillis();
+        for (String uuid : uuids) {
+            final Whiteboard whiteboard = whiteboards.get(uuid);
+            if (whiteboard == null) {
+                continue;
+            }
+
+            if (WhiteboardChannel.hasSubscribers(uuid)) {
+                scheduleExpiry(uuid, now + expiredTime);
+            } else if (whiteboard.getLastActivity() + expiredTime > now) {
+                scheduleExpiry(uuid, whiteboard.getLastActivity() + expiredTime);
+            } else {
+                whiteboard.getMailbox().execute(new Runnable()
+                {
+                    public void run() {
+                        evictWhiteboard(whiteboard);
+                    }
+                });
+            }
+        }
+    }
+
+    private void evictWhiteboard(Whiteboard whiteboard) {
+        String uuid = whiteboard.getUuid();
+        long deadline = whiteboard.getLastActivity() + expiredTime;
+        if (deadline > System.currentTimeMillis() || WhiteboardChannel.hasSubscribers(uuid)) {
+            // accessed while waiting in the mailbox
+            scheduleExpiry(uuid, Math.max(deadline, System.currentTimeMillis() + expiryWheel.getTickDuration()));
+            return;
+        }
+
+        if (dirtyWhiteboards.remove(uuid)) {
+            // evicted whiteboards are loaded quickly from a saved state
+            saveWhiteboard(whiteboard);
+        }
+
+        try {
+            store.evict(whiteboard);
+        } catch (IOException e) {
+            // keep the whiteboard rather than losing it
+            LOG.log(Level.SEVERE, "Whiteboard " + uuid + " can not be evicted and is kept in memory", e);
+            scheduleExpiry(uuid, System.currentTimeMillis() + expiredTime);
+            return;
+        }
+
+        // publishers which still hold this instance get the restored whiteboard instead
+        whiteboard.markEvicted();
+        if (whiteboards.remove(uuid, whiteboard)) {
+            WhiteboardChannel.remove(uuid);
+            LOG.info("Whiteboard " + uuid + " has been idle for more than " + TimeUnit.MILLISECONDS.toMinutes(expiredTime)
+                     + " minutes and is evicted");
+        }
+    }
+
+    private static class DaemonThreadFactory implements ThreadFactory
+    {
+        private final AtomicInteger counter = new AtomicInteger();
+        private final String prefix;
+
+        DaemonThreadFactory(String prefix) {
+            this.prefix = prefix;
+        }
+
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
     }
 }
@@ -5,47 +5,193 @@
 
 package com.googlecode.whiteboard.json;
 
-import com.google.gson.*;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 import com.googlecode.whiteboard.model.base.AbstractElement;
-import com.googlecode.whiteboard.model.transfer.TruncatedElement;
+import com.googlecode.whiteboard.model.property.*;
 
-import java.lang.reflect.Type;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
 
 /**
- * Adapter class to convert any whiteboard elements to JSON and back to Java model.
+ * Adapter class to convert any whiteboard elements to JSON and back to Java model. Elements are read and written
+ * as stream of tokens by means of {@link ElementTypes}. JSON looks like
+ * <pre>
+ * {"type":"Circle","properties":{"radius":25, ... ,"uuid":"..."}}
+ * </pre>
  *
  * @author ova / last modified by $Author: ovaraksin@gmail.com $
  * @version $Revision: 90 $
  */
-public class AbstractElementAdapter implements JsonSerializer<AbstractElement>, JsonDeserializer<AbstractElement>
+public class AbstractElementAdapter extends TypeAdapter<AbstractElement>
 {
     @Override
-    public JsonElement serialize(AbstractElement src, Type typeOfSrc, JsonSerializationContext context) {
-        JsonObject result = new JsonObject();
-        JsonObject properties = context.serialize(src, src.getClass()).getAsJsonObject();
-
-        if (src instanceof TruncatedElement) {
-            result.add("type", new JsonPrimitive(((TruncatedElement) src).getClassName()));
-            properties.remove("className");
-        } else {
-            result.add("type", new JsonPrimitive(src.getClass().getSimpleName()));
+    public void write(JsonWriter out, AbstractElement element) throws IOException {
+        if (element == null) {
+            out.nullValue();
+            return;
         }
 
-        result.add("properties", properties);
+        ElementType<AbstractElement> type = ElementTypes.getType(element);
+        if (type == null) {
+            throw new JsonParseException("Unknown element class: " + element.getClass().getName());
+        }
 
-        return result;
+        out.beginObject();
+        out.name("type").value(type.getTypeName(element));
+        out.name("properties");
+        writeProperties(out, type, element, type.getProperties());
+        out.endObject();
     }
 
     @Override
-    public AbstractElement deserialize(JsonElement json, Type typeOfT, JsonDeserializationContext context) throws JsonParseException {
-        JsonObject jsonObject = json.getAsJsonObject();
-        String type = jsonObject.get("type").getAsString();
-        JsonElement element = jsonObject.get("properties");
+    public AbstractElement read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+
+        return readElement(in, null);
+    }
+
+    /**
+     * Reads an element.
+     *
+     * @param in      JSON reader positioned at the begin of the element object
+     * @param present list to collect properties found in JSON or null
+     * @return AbstractElement element, properties not found in JSON have default values
+     * @throws IOException if JSON can not be read
+     */
+    static AbstractElement readElement(JsonReader in, List<ElementProperty<?>> present) throws IOException {
+        ElementType<?> type = null;
+        AbstractElement element = null;
+        JsonElement properties = null;
+
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if ("type".equals(name)) {
+                type = getType(in.nextString());
+            } else if ("properties".equals(name) && in.peek() == JsonToken.NULL) {
+                in.nextNull();
+            } else if ("properties".equals(name) && type != null) {
+                element = readProperties(in, type, present);
+            } else if ("properties".equals(name)) {
+                // type is not known yet, keep properties until the end of object
+                properties = new JsonParser().parse(in);
+            } else {
+                in.skipValue();
+            }
+        }
+
+        in.endObject();
+
+        if (properties != null) {
+            if (type == null) {
+                throw new JsonParseException("Element type is missing");
+            }
+
+            element = readProperties(new JsonReader(new StringReader(properties.toString())), type, present);
+        }
+
+        return element;
+    }
 
-        try {
-            return context.deserialize(element, Class.forName("com.googlecode.whiteboard.model.element." + type));
-        } catch (ClassNotFoundException cnfe) {
-            throw new JsonParseException("Unknown element type: " + type, cnfe);
+    static ElementType<?> getType(String name) {
+        ElementType<?> type = ElementTypes.getType(name);
+        if (type == null) {
+            throw new JsonParseException("Unknown element type: " + name);
         }
+
+        return type;
+    }
+
+    /**
+     * Writes the given properties of an element as JSON object.
+     *
+     * @param out        JSON writer
+     * @param type       type of the element
+     * @param element    element
+     * @param properties properties to be written
+     * @throws IOException if JSON can not be written
+     */
+    @SuppressWarnings("unchecked")
+    static <E extends AbstractElement> void writeProperties(JsonWriter out, ElementType<E> type, E element,
+                                                            List<? extends ElementProperty<?>> properties) throws IOException {
+        out.beginObject();
+        for (ElementProperty<?> anyProperty : properties) {
+            ElementProperty<? super E> property = (ElementProperty<? super E>) anyProperty;
+            out.name(property.getName());
+            switch (property.getKind()) {
+                case INT:
+                    out.value(((IntProperty<? super E>) property).get(element));
+                    break;
+                case DOUBLE:
+                    out.value(((DoubleProperty<? super E>) property).get(element));
+                    break;
+                default:
+                    String value = ((StringProperty<? super E>) property).get(element);
+                    if (value == null) {
+                        out.nullValue();
+                    } else {
+                        out.value(value);
+                    }
+            }
+        }
+
+        out.endObject();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E extends AbstractElement> E readProperties(JsonReader in, ElementType<E> type, List<ElementProperty<?>> present)
+            throws IOException {
+        E element = type.newInstance();
+
+        in.beginObject();
+        while (in.hasNext()) {
+            ElementProperty<? super E> property = type.getProperty(in.nextName());
+            JsonToken token = in.peek();
+            if (property == null || (token == JsonToken.NULL && property.getKind() != ElementProperty.Kind.STRING)) {
+                // unknown properties and nulls for primitives are ignored
+                in.skipValue();
+                continue;
+            }
+
+            switch (property.getKind()) {
+                case INT:
+                    // fractional numbers are truncated like Gson 1.x did
+                    ((IntProperty<? super E>) property).set(element, (int) in.nextDouble());
+                    break;
+                case DOUBLE:
+                    ((DoubleProperty<? super E>) property).set(element, in.nextDouble());
+                    break;
+                default:
+                    String value;
+                    if (token == JsonToken.NULL) {
+                        in.nextNull();
+                        value = null;
+                    } else if (token == JsonToken.BOOLEAN) {
+                        value = Boolean.toString(in.nextBoolean());
+                    } else {
+                        value = in.nextString();
+                    }
+
+                    ((StringProperty<? super E>) property).set(element, value);
+            }
+
+            if (present != null) {
+                present.add(property);
+            }
+        }
+
+        in.endObject();
+
+        return element;
     }
 }
@@ -0,0 +1,66 @@
+/*
+* @author  Oleg Varaksin (ovaraksin@googlemail.com)
+* $$Id: ActivityEventAdapter.java 90 2011-09-27 15:24:29Z ovaraksin@gmail.com $$
+*/
+
+package com.googlecode.whiteboard.json;
+
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.googlecode.whiteboard.model.transfer.ActivityEvent;
+
+import java.io.IOException;
+
+/**
+ * Adapter class to convert {@link ActivityEvent} to JSON. Properties which don't apply to the action (null values)
+ * are not written, so that events sent with every change stay small. JSON looks like
+ * <pre>
+ * {"action":"move","user":"...","timestamp":1317137064000,"elementType":"Circle","elementId":"...","x":10,"y":20}
+ * </pre>
+ * Events are never sent by clients and can't be read.
+ *
+ * @author ova / last modified by $Author: ovaraksin@gmail.com $
+ * @version $Revision: 90 $
+ */
+public class ActivityEventAdapter extends TypeAdapter<ActivityEvent>
+{
+    @Override
+    public void write(JsonWriter out, ActivityEvent event) throws IOException {
+        if (event == null) {
+            out.nullValue();
+            return;
+        }
+
+        out.beginObject();
+        out.name("action").value(event.getAction().getAction());
+        writeString(out, "user", event.getUser());
+        out.name("timestamp").value(event.getTimestamp());
+        writeString(out, "elementType", event.getElementType());
+        writeString(out, "elementId", event.getElementId());
+        writeString(out, "text", event.getText());
+        writeInteger(out, "x", event.getX());
+        writeInteger(out, "y", event.getY());
+        writeInteger(out, "width", event.getWidth());
+        writeInteger(out, "height", event.getHeight());
+        writeInteger(out, "count", event.getCount());
+        out.endObject();
+    }
+
+    @Override
+    public ActivityEvent read(JsonReader in) throws IOException {
+        throw new UnsupportedOperationException("Activity events can't be created from JSON");
+    }
+
+    private void writeString(JsonWriter out, String name, String value) throws IOException {
+        if (value != null) {
+            out.name(name).value(value);
+        }
+    }
+
+    private void writeInteger(JsonWriter out, String name, Integer value) throws IOException {
+        if (value != null) {
+            out.name(name).value(value);
+        }
+    }
+}
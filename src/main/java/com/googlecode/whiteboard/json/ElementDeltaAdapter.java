@@ -0,0 +1,71 @@
+/*
+* @author  Oleg Varaksin (ovaraksin@googlemail.com)
+* $$Id: ElementDeltaAdapter.java 90 2011-09-27 15:24:29Z ovaraksin@gmail.com $$
+*/
+
+package com.googlecode.whiteboard.json;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.googlecode.whiteboard.model.base.AbstractElement;
+import com.googlecode.whiteboard.model.property.ElementProperty;
+import com.googlecode.whiteboard.model.property.ElementType;
+import com.googlecode.whiteboard.model.property.ElementTypes;
+import com.googlecode.whiteboard.model.transfer.ElementDelta;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Adapter class to convert {@link ElementDelta} to JSON and back. Only changed properties and uuid are written.
+ *
+ * @author ova / last modified by $Author: ovaraksin@gmail.com $
+ * @version $Revision: 90 $
+ */
+public class ElementDeltaAdapter extends TypeAdapter<ElementDelta>
+{
+    @Override
+    public void write(JsonWriter out, ElementDelta delta) throws IOException {
+        if (delta == null) {
+            out.nullValue();
+            return;
+        }
+
+        AbstractElement element = delta.getElement();
+        ElementType<AbstractElement> type = ElementTypes.getType(element);
+        if (type == null) {
+            throw new JsonParseException("Unknown element class: " + element.getClass().getName());
+        }
+
+        List<ElementProperty<?>> properties = new ArrayList<ElementProperty<?>>(delta.getProperties());
+        properties.add(ElementTypes.UUID);
+
+        out.beginObject();
+        out.name("type").value(type.getTypeName(element));
+        out.name("properties");
+        AbstractElementAdapter.writeProperties(out, type, element, properties);
+        out.endObject();
+    }
+
+    @Override
+    public ElementDelta read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+
+        List<ElementProperty<?>> properties = new ArrayList<ElementProperty<?>>();
+        AbstractElement element = AbstractElementAdapter.readElement(in, properties);
+        if (element == null || element.getUuid() == null) {
+            throw new JsonParseException("Changed element is not identified by uuid");
+        }
+
+        properties.remove(ElementTypes.UUID);
+
+        return new ElementDelta(element, properties);
+    }
+}
@@ -8,7 +8,9 @@ package com.googlecode.whiteboard.json;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.googlecode.whiteboard.model.base.AbstractElement;
+import com.googlecode.whiteboard.model.transfer.ActivityEvent;
 import com.googlecode.whiteboard.model.transfer.ClientAction;
+import com.googlecode.whiteboard.model.transfer.ElementDelta;
 
 /*
 * Singleton instance of Gson {@link http://google-gson.googlecode.com/svn/trunk/gson/docs/javadocs/com/google/gson/Gson.html}.
@@ -24,6 +26,8 @@ public class JsonConverter
     private JsonConverter() {
         GsonBuilder gsonBilder = new GsonBuilder();
         gsonBilder.registerTypeAdapter(AbstractElement.class, new AbstractElementAdapter());
+        gsonBilder.registerTypeAdapter(ElementDelta.class, new ElementDeltaAdapter());
+        gsonBilder.registerTypeAdapter(ActivityEvent.class, new ActivityEventAdapter());
         gsonBilder.registerTypeAdapter(ClientAction.class, new ClientActionEnumAdapter());
         gsonBilder.serializeNulls();
         gson = gsonBilder.create();
@@ -0,0 +1,75 @@
+/*
+* @author  Oleg Varaksin (ovaraksin@googlemail.com)
+* $$Id: ActivityLog.java 90 2011-09-27 15:24:29Z ovaraksin@gmail.com $$
+*/
+
+package com.googlecode.whiteboard.model;
+
+import com.googlecode.whiteboard.model.transfer.ActivityEvent;
+import com.googlecode.whiteboard.model.transfer.ClientAction;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Bounded log of the latest activities in a whiteboard. The oldest event gets lost if the log is full. Consecutive
+ * moves of the same element by the same user are kept as one event (the last position), so that dragging doesn't
+ * push other activities out of the log.
+ *
+ * @author ova / last modified by $Author: ovaraksin@gmail.com $
+ * @version $Revision: 90 $
+ */
+public class ActivityLog
+{
+    private final ActivityEvent[] events;
+    private int next;
+    private int size;
+
+    public ActivityLog(int capacity) {
+        events = new ActivityEvent[Math.max(capacity, 1)];
+    }
+
+    public synchronized void add(ActivityEvent event) {
+        if (size > 0 && isSameMove(events[(next + events.length - 1) % events.length], event)) {
+            events[(next + events.length - 1) % events.length] = event;
+            return;
+        }
+
+        events[next] = event;
+        next = (next + 1) % events.length;
+        size = Math.min(size + 1, events.length);
+    }
+
+    /**
+     * Gets the latest events.
+     *
+     * @param since only events after this timestamp are returned
+     * @param user  only events of this user are returned, null for events of all users
+     * @param limit max. number of returned events
+     * @return List events ordered from the oldest to the latest one
+     */
+    public synchronized List<ActivityEvent> getEvents(long since, String user, int limit) {
+        List<ActivityEvent> found = new ArrayList<ActivityEvent>();
+        for (int i = 1; i <= size && found.size() < limit; i++) {
+            ActivityEvent event = events[(next + events.length - i) % events.length];
+            if (event.getTimestamp() > since && (user == null || user.equals(event.getUser()))) {
+                found.add(event);
+            }
+        }
+
+        Collections.reverse(found);
+
+        return found;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    private boolean isSameMove(ActivityEvent last, ActivityEvent event) {
+        return last.getAction() == ClientAction.Move && event.getAction() == ClientAction.Move
+               && last.getElementId() != null && last.getElementId().equals(event.getElementId())
+               && last.getUser() != null && last.getUser().equals(event.getUser());
+    }
+}
@@ -0,0 +1,234 @@
+/*
+* @author  Oleg Varaksin (ovaraksin@googlemail.com)
+* $$Id: BoundingBox.java 90 2011-09-27 15:24:29Z ovaraksin@gmail.com $$
+*/
+
+package com.googlecode.whiteboard.model;
+
+import com.googlecode.whiteboard.model.base.AbstractElement;
+import com.googlecode.whiteboard.model.base.Line;
+import com.googlecode.whiteboard.model.base.LinePath;
+import com.googlecode.whiteboard.model.base.Rotatable;
+import com.googlecode.whiteboard.model.element.*;
+
+import java.io.Serializable;
+
+/**
+ * Axis-aligned rectangle in whiteboard coordinates. Bounding boxes of elements are computed like they are drawn
+ * on the client: circles and ellipses around their centers, texts centered at their positions, other positionable
+ * elements from their top left corners and lines from all points of their paths. Rotated elements get the box
+ * around the rotated box. Boxes of texts and icons are estimated because their sizes depend on the browser.
+ *
+ * @author ova / last modified by $Author: ovaraksin@gmail.com $
+ * @version $Revision: 90 $
+ */
+public final class BoundingBox implements Serializable
+{
+    private static final long serialVersionUID = 20110927L;
+
+    /**
+     * Size of icons in the SVG icon set before scaling.
+     */
+    private static final double ICON_SIZE = 32;
+
+    /**
+     * Average width of a character relative to the font size.
+     */
+    private static final double CHAR_WIDTH = 0.6;
+
+    private final double minX;
+    private final double minY;
+    private final double maxX;
+    private final double maxY;
+
+    public BoundingBox(double minX, double minY, double maxX, double maxY) {
+        this.minX = Math.min(minX, maxX);
+        this.minY = Math.min(minY, maxY);
+        this.maxX = Math.max(minX, maxX);
+        this.maxY = Math.max(minY, maxY);
+    }
+
+    public double getMinX() {
+        return minX;
+    }
+
+    public double getMinY() {
+        return minY;
+    }
+
+    public double getMaxX() {
+        return maxX;
+    }
+
+    public double getMaxY() {
+        return maxY;
+    }
+
+    public boolean intersects(BoundingBox other) {
+        return minX <= other.maxX && other.minX <= maxX && minY <= other.maxY && other.minY <= maxY;
+    }
+
+    public boolean contains(BoundingBox other) {
+        return minX <= other.minX && other.maxX <= maxX && minY <= other.minY && other.maxY <= maxY;
+    }
+
+    public boolean contains(double x, double y) {
+        return minX <= x && x <= maxX && minY <= y && y <= maxY;
+    }
+
+    /**
+     * Computes the bounding box of the given element.
+     *
+     * @param element element
+     * @return BoundingBox box or null if the element has no geometry, e.g. a line without path
+     */
+    public static BoundingBox of(AbstractElement element) {
+        BoundingBox box;
+        if (element instanceof Circle) {
+            Circle circle = (Circle) element;
+            int r = circle.getRadius() + circle.getBorderWidth();
+            box = new BoundingBox(circle.getX() - r, circle.getY() - r, circle.getX() + r, circle.getY() + r);
+        } else if (element instanceof Ellipse) {
+            Ellipse ellipse = (Ellipse) element;
+            int rx = ellipse.getHRadius() + ellipse.getBorderWidth();
+            int ry = ellipse.getVRadius() + ellipse.getBorderWidth();
+            box = new BoundingBox(ellipse.getX() - rx, ellipse.getY() - ry, ellipse.getX() + rx, ellipse.getY() + ry);
+        } else if (element instanceof Rectangle) {
+            Rectangle rect = (Rectangle) element;
+            int border = rect.getBorderWidth();
+            box = new BoundingBox(rect.getX() - border, rect.getY() - border,
+                    rect.getX() + rect.getWidth() + border, rect.getY() + rect.getHeight() + border);
+        } else if (element instanceof Image) {
+            Image image = (Image) element;
+            box = new BoundingBox(image.getX(), image.getY(), image.getX() + image.getWidth(), image.getY() + image.getHeight());
+        } else if (element instanceof Icon) {
+            Icon icon = (Icon) element;
+            double size = ICON_SIZE * (icon.getScaleFactor() > 0 ? icon.getScaleFactor() : 1);
+            box = new BoundingBox(icon.getX(), icon.getY(), icon.getX() + size, icon.getY() + size);
+        } else if (element instanceof Text) {
+            Text text = (Text) element;
+            double halfWidth = (text.getText() != null ? text.getText().length() : 0) * text.getFontSize() * CHAR_WIDTH / 2;
+            double halfHeight = text.getFontSize() / 2.0;
+            box = new BoundingBox(text.getX() - halfWidth, text.getY() - halfHeight, text.getX() + halfWidth, text.getY() + halfHeight);
+        } else if (element instanceof Line) {
+            Line line = (Line) element;
+            box = ofPath(line.getLinePath());
+            if (box != null && line.getLineWidth() > 0) {
+                double half = line.getLineWidth() / 2.0;
+                box = new BoundingBox(box.minX - half, box.minY - half, box.maxX + half, box.maxY + half);
+            }
+        } else {
+            return null;
+        }
+
+        if (box != null && element instanceof Rotatable && ((Rotatable) element).getRotationDegree() % 360 != 0) {
+            // elements are rotated around the centers of their boxes
+            box = box.rotate(((Rotatable) element).getRotationDegree());
+        }
+
+        return box;
+    }
+
+    private static BoundingBox ofPath(LinePath path) {
+        if (path == null) {
+            return null;
+        }
+
+        double[] points = path.getPoints();
+        if (points == null) {
+            return ofPath(path.toString());
+        }
+
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < points.length; i += 2) {
+            minX = Math.min(minX, points[i]);
+            maxX = Math.max(maxX, points[i]);
+            minY = Math.min(minY, points[i + 1]);
+            maxY = Math.max(maxY, points[i + 1]);
+        }
+
+        return new BoundingBox(minX, minY, maxX, maxY);
+    }
+
+    /**
+     * Computes the bounding box of all points in a SVG path consisting of moveto and lineto commands,
+     * e.g. "M10,20L30,40L35,42".
+     *
+     * @param path SVG path
+     * @return BoundingBox box or null if the path doesn't contain any point
+     */
+    static BoundingBox ofPath(String path) {
+        if (path == null) {
+            return null;
+        }
+
+        double minX = Double.POSITIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        double x = 0;
+        boolean odd = false;
+
+        int length = path.length();
+        int i = 0;
+        while (i < length) {
+            char c = path.charAt(i);
+            if (c != '-' && c != '.' && (c < '0' || c > '9')) {
+                i++;
+                continue;
+            }
+
+            int start = i++;
+            while (i < length && ((path.charAt(i) >= '0' && path.charAt(i) <= '9') || path.charAt(i) == '.'
+                                  || path.charAt(i) == 'e' || path.charAt(i) == 'E')) {
+                i++;
+            }
+
+            double value;
+            try {
+                value = Double.parseDouble(path.substring(start, i));
+            } catch (NumberFormatException e) {
+                continue;
+            }
+
+            if (odd) {
+                minX = Math.min(minX, x);
+                maxX = Math.max(maxX, x);
+                minY = Math.min(minY, value);
+                maxY = Math.max(maxY, value);
+            } else {
+                x = value;
+            }
+
+            odd = !odd;
+        }
+
+        if (minX > maxX) {
+            return null;
+        }
+
+        return new BoundingBox(minX, minY, maxX, maxY);
+    }
+
+    private BoundingBox rotate(int degree) {
+        double rad = Math.toRadians(degree);
+        double cos = Math.abs(Math.cos(rad));
+        double sin = Math.abs(Math.sin(rad));
+        double cx = (minX + maxX) / 2;
+        double cy = (minY + maxY) / 2;
+        double halfWidth = (maxX - minX) / 2;
+        double halfHeight = (maxY - minY) / 2;
+        double rx = halfWidth * cos + halfHeight * sin;
+        double ry = halfWidth * sin + halfHeight * cos;
+
+        return new BoundingBox(cx - rx, cy - ry, cx + rx, cy + ry);
+    }
+
+    @Override
+    public String toString() {
+        return "[" + minX + "," + minY + " - " + maxX + "," + maxY + "]";
+    }
+}
@@ -0,0 +1,69 @@
+/*
+* @author  Oleg Varaksin (ovaraksin@googlemail.com)
+* $$Id: ElementsSnapshot.java 90 2011-09-27 15:24:29Z ovaraksin@gmail.com $$
+*/
+
+package com.googlecode.whiteboard.model;
+
+import com.googlecode.whiteboard.model.base.AbstractElement;
+import com.googlecode.whiteboard.utils.PersistentSortedMap;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Immutable view of all elements of a whiteboard at one point in time. Snapshots are taken without locking and
+ * are not affected by later changes, so that joiners and exporters can iterate them while elements are changed.
+ *
+ * @author ova / last modified by $Author: ovaraksin@gmail.com $
+ * @version $Revision: 90 $
+ */
+public final class ElementsSnapshot implements Serializable
+{
+    private static final long serialVersionUID = 20110927L;
+
+    private final long version;
+    private final PersistentSortedMap<Double, AbstractElement> zOrder;
+
+    ElementsSnapshot(long version, PersistentSortedMap<Double, AbstractElement> zOrder) {
+        this.version = version;
+        this.zOrder = zOrder;
+    }
+
+    /**
+     * Gets the version of elements. The version is incremented by every change of elements.
+     *
+     * @return long version
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Gets elements in z-order (the first one is at the back).
+     *
+     * @return Collection read-only elements
+     */
+    public Collection<AbstractElement> getElements() {
+        return zOrder.values();
+    }
+
+    /**
+     * Gets elements in z-order together with their z-keys. Z-keys are unique and increase from the back to the front.
+     *
+     * @return Iterator read-only entries with z-keys as keys
+     */
+    public Iterator<Map.Entry<Double, AbstractElement>> zOrderIterator() {
+        return zOrder.entries();
+    }
+
+    public int getCount() {
+        return zOrder.size();
+    }
+
+    PersistentSortedMap<Double, AbstractElement> getZOrder() {
+        return zOrder;
+    }
+}
@@ -0,0 +1,87 @@
+/*
+* @author  Oleg Varaksin (ovaraksin@googlemail.com)
+* $$Id: OperationWindow.java 90 2011-09-27 15:24:29Z ovaraksin@gmail.com $$
+*/
+
+package com.googlecode.whiteboard.model;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded window of the latest operation ids applied to a whiteboard. Clients send every change with an own operation
+ * id and resend it unchanged if a publish request is retried (e.g. on reconnect of long-polling), so that a change
+ * which is already in the window can be skipped. Ids are added after their changes have been applied and they are
+ * restored from replayed journal records, so that a change retried after a restart is not applied twice. The least
+ * recently seen id gets lost if the window is full.
+ *
+ * @author ova / last modified by $Author: ovaraksin@gmail.com $
+ * @version $Revision: 90 $
+ */
+public class OperationWindow
+{
+    /**
+     * Capacity of windows which are restored without configuration.
+     */
+    public static final int DEFAULT_CAPACITY = 1000;
+
+    private final Map<String, Boolean> operationIds;
+
+    public OperationWindow(final int capacity) {
+        operationIds = new LinkedHashMap<String, Boolean>(16, 0.75f, true)
+        {
+            private static final long serialVersionUID = 20110927L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > Math.max(capacity, 1);
+            }
+        };
+    }
+
+    /**
+     * Adds the given operation id to the window.
+     *
+     * @param operationId operation id
+     * @return boolean true - operation is new, false - operation has been already seen (duplicate)
+     */
+    public synchronized boolean add(String operationId) {
+        return operationIds.put(operationId, Boolean.TRUE) == null;
+    }
+
+    /**
+     * Checks whether the given operation id is in the window.
+     *
+     * @param operationId operation id
+     * @return boolean true - operation has been already applied, false - otherwise
+     */
+    public synchronized boolean contains(String operationId) {
+        return operationIds.containsKey(operationId);
+    }
+
+    /**
+     * Adds all operation ids of another window, the least recently seen ones first.
+     *
+     * @param window window to take the operation ids from
+     */
+    public void addAll(OperationWindow window) {
+        for (String operationId : window.getOperationIds()) {
+            add(operationId);
+        }
+    }
+
+    /**
+     * Gets operation ids, the least recently seen ones first.
+     *
+     * @return List copy of operation ids
+     */
+    public synchronized List<String> getOperationIds() {
+        return new ArrayList<String>(operationIds.keySet());
+    }
+
+    public synchronized int size() {
+        return operationIds.size();
+    }
+}
@@ -6,9 +6,14 @@
 package com.googlecode.whiteboard.model;
 
 import com.googlecode.whiteboard.model.base.AbstractElement;
+import com.googlecode.whiteboard.utils.PersistentSortedMap;
+import com.googlecode.whiteboard.utils.QuadTree;
 
 import java.io.Serializable;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Whiteboard model.
@@ -26,9 +31,23 @@ public class Whiteboard implements Serializable
     private String pubSubTransport;  // websocket, streaming, long-polling
     private int width = 800;
     private int height = 500;
+    private double simplifyTolerance;
     private Date creationDate = new Date();
     private Map<String, UserData> userData = new HashMap<String, UserData>();
-    private Map<String, AbstractElement> elements = new LinkedHashMap<String, AbstractElement>();
+    // elements are changed under the lock of this whiteboard and read without locking
+    private Map<String, AbstractElement> elements = new ConcurrentHashMap<String, AbstractElement>();
+    // fractional z-keys, elements are put between others without moving them
+    private Map<String, Double> zKeys = new ConcurrentHashMap<String, Double>();
+    private volatile ElementsSnapshot elementsSnapshot =
+            new ElementsSnapshot(0, PersistentSortedMap.<Double, AbstractElement>empty());
+    // element ids by bounding boxes
+    private QuadTree<String> spatialIndex = new QuadTree<String>(1024, 1024);
+    private AtomicLong sequence = new AtomicLong();
+    private transient Executor mailbox;
+    private transient ActivityLog activityLog;
+    private transient OperationWindow operationWindow;
+    private transient volatile long lastActivity = System.currentTimeMillis();
+    private transient volatile boolean evicted;
 
     public Whiteboard() {
         uuid = UUID.randomUUID().toString();
@@ -82,6 +101,20 @@ public class Whiteboard implements Serializable
         this.height = height;
     }
 
+    /**
+     * Gets the tolerance for simplifying paths of free lines. Points nearer than the tolerance to the simplified
+     * path are dropped before free lines are stored and broadcasted.
+     *
+     * @return double tolerance in pixels, 0 if paths are not simplified
+     */
+    public double getSimplifyTolerance() {
+        return simplifyTolerance;
+    }
+
+    public void setSimplifyTolerance(double simplifyTolerance) {
+        this.simplifyTolerance = simplifyTolerance;
+    }
+
     public Date getCreationDate() {
         return creationDate;
     }
@@ -90,6 +123,106 @@ public class Whiteboard implements Serializable
         this.creationDate = creationDate;
     }
 
+    /**
+     * Gets the mailbox of this whiteboard. All changes coming from subscribers are applied in this mailbox one after another.
+     *
+     * @return Executor single-writer executor
+     */
+    public Executor getMailbox() {
+        return mailbox;
+    }
+
+    public void setMailbox(Executor mailbox) {
+        this.mailbox = mailbox;
+    }
+
+    /**
+     * Gets the latest activities of users in this whiteboard. The log is not stored with the whiteboard.
+     *
+     * @return ActivityLog activity log or null if the whiteboard is not managed
+     */
+    public ActivityLog getActivityLog() {
+        return activityLog;
+    }
+
+    public void setActivityLog(ActivityLog activityLog) {
+        this.activityLog = activityLog;
+    }
+
+    /**
+     * Gets ids of the latest applied operations to skip retried changes. The window is not stored with the whiteboard.
+     *
+     * @return OperationWindow operation window or null if the whiteboard is not managed
+     */
+    public OperationWindow getOperationWindow() {
+        return operationWindow;
+    }
+
+    public void setOperationWindow(OperationWindow operationWindow) {
+        this.operationWindow = operationWindow;
+    }
+
+    /**
+     * Gets the time of the last access to this whiteboard. Whiteboards being idle too long are evicted
+     * (see {@link com.googlecode.whiteboard.controller.WhiteboardsManager}).
+     *
+     * @return long time in milliseconds
+     */
+    public long getLastActivity() {
+        return lastActivity;
+    }
+
+    /**
+     * Marks this whiteboard as active now.
+     */
+    public void touch() {
+        lastActivity = System.currentTimeMillis();
+    }
+
+    /**
+     * Checks whether this whiteboard has been evicted. Tasks which were queued into the mailbox of an evicted
+     * whiteboard have to get the whiteboard again (see {@link com.googlecode.whiteboard.controller.WhiteboardsManager}).
+     *
+     * @return boolean true - evicted, false - managed
+     */
+    public boolean isEvicted() {
+        return evicted;
+    }
+
+    /**
+     * Marks this whiteboard as evicted. This method has to be called from the whiteboard mailbox.
+     */
+    public void markEvicted() {
+        evicted = true;
+    }
+
+    /**
+     * Gets the sequence number of the last change broadcasted to subscribers.
+     *
+     * @return long last sequence number
+     */
+    public long getSequence() {
+        return sequence.get();
+    }
+
+    /**
+     * Assigns the next sequence number to a change being broadcasted. Sequence numbers increase monotonically per whiteboard.
+     *
+     * @return long next sequence number
+     */
+    public long nextSequence() {
+        return sequence.incrementAndGet();
+    }
+
+    /**
+     * Sets the sequence number of the last change. This method is used when a stored whiteboard is restored.
+     *
+     * @param sequence last sequence number
+     */
+    public void setSequence(long sequence) {
+        this.sequence.set(sequence);
+    }
+
     public void addUserData(UserData userData) {
         this.userData.put(userData.getSenderId(), userData);
     }
@@ -102,35 +235,259 @@ public class Whiteboard implements Serializable
         return userData.get(senderId);
     }
 
-    public Map<String, AbstractElement> getElements() {
-        return elements;
+    /**
+     * Gets elements of this whiteboard in z-order (the first one is at the back). Elements can be only changed
+     * by methods of this class.
+     *
+     * @return Collection read-only view of elements, which is not affected by later changes
+     */
+    public Collection<AbstractElement> getElements() {
+        return elementsSnapshot.getElements();
     }
 
-    public void setElements(Map<String, AbstractElement> elements) {
-        this.elements = elements;
+    /**
+     * Gets an immutable snapshot of all elements. Taking a snapshot doesn't block or copy anything. Elements in a
+     * snapshot must not be changed, changed elements are replaced by copies.
+     *
+     * @return ElementsSnapshot current snapshot
+     */
+    public ElementsSnapshot getElementsSnapshot() {
+        return elementsSnapshot;
     }
 
+    /**
+     * Adds an element in front of all other elements. An existing element with the same id is replaced and keeps
+     * its z-order.
+     *
+     * @param element element
+     */
     public synchronized void addElement(AbstractElement element) {
-        elements.put(element.getUuid(), element);
+        updateElement(element);
     }
 
     public synchronized AbstractElement updateElement(AbstractElement element) {
+        PersistentSortedMap<Double, AbstractElement> zOrder = elementsSnapshot.getZOrder();
+        Double zKey = zKeys.get(element.getUuid());
+        if (zKey == null) {
+            putElement(zOrder, element, zOrder.isEmpty() ? 0 : zOrder.lastKey() + 1);
+            return null;
+        }
+
+        publish(zOrder.put(zKey, element));
+        spatialIndex.put(element.getUuid(), BoundingBox.of(element));
         return elements.put(element.getUuid(), element);
     }
 
     public synchronized AbstractElement removeElement(AbstractElement element) {
-        return elements.remove(element.getUuid());
+        AbstractElement ae = elements.remove(element.getUuid());
+        if (ae != null) {
+            publish(elementsSnapshot.getZOrder().remove(zKeys.remove(element.getUuid())));
+            spatialIndex.remove(element.getUuid());
+        }
+
+        return ae;
+    }
+
+    /**
+     * Replaces the given elements at once, so that snapshots contain either all or none of the changes.
+     * Elements which are not contained in this whiteboard are ignored.
+     *
+     * @param changed changed elements
+     * @return List replaced elements in the given order
+     */
+    public synchronized List<AbstractElement> updateElements(Collection<AbstractElement> changed) {
+        PersistentSortedMap<Double, AbstractElement> zOrder = elementsSnapshot.getZOrder();
+        List<AbstractElement> replaced = new ArrayList<AbstractElement>(changed.size());
+        for (AbstractElement element : changed) {
+            Double zKey = zKeys.get(element.getUuid());
+            if (zKey == null) {
+                continue;
+            }
+
+            zOrder = zOrder.put(zKey, element);
+            spatialIndex.put(element.getUuid(), BoundingBox.of(element));
+            replaced.add(elements.put(element.getUuid(), element));
+        }
+
+        publish(zOrder);
+        return replaced;
+    }
+
+    /**
+     * Removes the given elements at once, so that snapshots contain either all or none of them.
+     *
+     * @param uuids ids of elements to be removed
+     * @return List removed elements, elements which are not contained in this whiteboard are skipped
+     */
+    public synchronized List<AbstractElement> removeElements(Collection<String> uuids) {
+        PersistentSortedMap<Double, AbstractElement> zOrder = elementsSnapshot.getZOrder();
+        List<AbstractElement> removed = new ArrayList<AbstractElement>(uuids.size());
+        for (String uuid : uuids) {
+            AbstractElement ae = elements.remove(uuid);
+            if (ae != null) {
+                zOrder = zOrder.remove(zKeys.remove(uuid));
+                spatialIndex.remove(uuid);
+                removed.add(ae);
+            }
+        }
+
+        publish(zOrder);
+        return removed;
+    }
+
+    /**
+     * Moves the given element in front of all other elements.
+     *
+     * @param element element to be moved
+     * @return AbstractElement moved element or null if this whiteboard doesn't contain the element
+     */
+    public synchronized AbstractElement bringToFront(AbstractElement element) {
+        AbstractElement ae = elements.get(element.getUuid());
+        if (ae != null) {
+            PersistentSortedMap<Double, AbstractElement> zOrder = elementsSnapshot.getZOrder().remove(zKeys.get(ae.getUuid()));
+            putElement(zOrder, ae, zOrder.isEmpty() ? 0 : zOrder.lastKey() + 1);
+        }
+
+        return ae;
+    }
+
+    /**
+     * Moves the given element to the back (behind all other elements).
+     *
+     * @param element element to be moved
+     * @return AbstractElement moved element or null if this whiteboard doesn't contain the element
+     */
+    public synchronized AbstractElement bringToBack(AbstractElement element) {
+        AbstractElement ae = elements.get(element.getUuid());
+        if (ae != null) {
+            PersistentSortedMap<Double, AbstractElement> zOrder = elementsSnapshot.getZOrder().remove(zKeys.get(ae.getUuid()));
+            putElement(zOrder, ae, zOrder.isEmpty() ? 0 : zOrder.firstKey() - 1);
+        }
+
+        return ae;
+    }
+
+    /**
+     * Moves the given element by the given number of layers. The element is put between the elements it passes
+     * last and next, so that no other element has to be moved.
+     *
+     * @param element element to be moved
+     * @param layers  number of layers, positive towards the front, negative towards the back
+     * @return AbstractElement moved element or null if this whiteboard doesn't contain the element
+     */
+    public synchronized AbstractElement shiftElement(AbstractElement element, int layers) {
+        Double zKey = zKeys.get(element.getUuid());
+        if (zKey == null || layers == 0) {
+            return elements.get(element.getUuid());
+        }
+
+        PersistentSortedMap<Double, AbstractElement> zOrder = elementsSnapshot.getZOrder();
+        Iterator<Double> iter = zOrder.keysFrom(zKey, layers > 0);
+        Double last = null;
+        for (int i = Math.abs(layers); i > 0 && iter.hasNext(); i--) {
+            last = iter.next();
+        }
+
+        if (last == null) {
+            // already in front or at the back
+            return elements.get(element.getUuid());
+        }
+
+        if (!iter.hasNext()) {
+            return layers > 0 ? bringToFront(element) : bringToBack(element);
+        }
+
+        double next = iter.next();
+        double newKey = (last + next) / 2;
+        if (newKey == last || newKey == next) {
+            // precision of fractional keys is exhausted between these elements
+            renumberElements();
+            return shiftElement(element, layers);
+        }
+
+        AbstractElement ae = elements.get(element.getUuid());
+        putElement(zOrder.remove(zKey), ae, newKey);
+
+        return ae;
     }
 
     public synchronized void clearElements() {
         elements.clear();
+        zKeys.clear();
+        spatialIndex.clear();
+        publish(PersistentSortedMap.<Double, AbstractElement>empty());
     }
 
     public AbstractElement getElement(String uuid) {
         return elements.get(uuid);
     }
 
+    /**
+     * Finds elements whose bounding boxes intersect the given area, e.g. the viewport of a client.
+     *
+     * @param area area in whiteboard coordinates
+     * @return SortedMap found elements by their z-keys, i.e. in z-order (the first one is at the back)
+     */
+    public SortedMap<Double, AbstractElement> findElements(BoundingBox area) {
+        // z-keys are unique
+        SortedMap<Double, AbstractElement> found = new TreeMap<Double, AbstractElement>();
+        for (String uuid : spatialIndex.find(area)) {
+            AbstractElement ae = elements.get(uuid);
+            Double zKey = zKeys.get(uuid);
+            if (ae != null && zKey != null) {
+                found.put(zKey, ae);
+            }
+        }
+
+        return found;
+    }
+
+    /**
+     * Finds the top element whose bounding box contains the given point.
+     *
+     * @param x x-coordinate
+     * @param y y-coordinate
+     * @return AbstractElement element or null if there is no element at this point
+     */
+    public AbstractElement findElementAt(double x, double y) {
+        AbstractElement top = null;
+        double topKey = Double.NEGATIVE_INFINITY;
+        for (String uuid : spatialIndex.find(new BoundingBox(x, y, x, y))) {
+            AbstractElement ae = elements.get(uuid);
+            Double zKey = zKeys.get(uuid);
+            if (ae != null && zKey != null && zKey > topKey) {
+                top = ae;
+                topKey = zKey;
+            }
+        }
+
+        return top;
+    }
+
     public int getCount() {
-        return elements.size();
+        return elementsSnapshot.getCount();
+    }
+
+    private void putElement(PersistentSortedMap<Double, AbstractElement> zOrder, AbstractElement element, double zKey) {
+        elements.put(element.getUuid(), element);
+        zKeys.put(element.getUuid(), zKey);
+        spatialIndex.put(element.getUuid(), BoundingBox.of(element));
+        publish(zOrder.put(zKey, element));
+    }
+
+    private void publish(PersistentSortedMap<Double, AbstractElement> zOrder) {
+        elementsSnapshot = new ElementsSnapshot(elementsSnapshot.getVersion() + 1, zOrder);
+    }
+
+    private void renumberElements() {
+        PersistentSortedMap<Double, AbstractElement> zOrder = PersistentSortedMap.empty();
+        double zKey = 0;
+        for (AbstractElement ae : elementsSnapshot.getElements()) {
+            zKeys.put(ae.getUuid(), zKey);
+            zOrder = zOrder.put(zKey, ae);
+            zKey++;
+        }
+
+        publish(zOrder);
     }
 }
@@ -17,6 +17,7 @@ import org.apache.commons.lang.builder.ToStringBuilder;
 public abstract class AbstractElement
 {
     private String uuid;
+    private transient FieldVersions fieldVersions = FieldVersions.EMPTY;
 
     public AbstractElement() {
     }
@@ -33,6 +34,20 @@ public abstract class AbstractElement
         return uuid;
     }
 
+    /**
+     * Gets Lamport versions of the properties which decide about concurrent changes (see {@link FieldVersions}).
+     * Versions are not sent to clients.
+     *
+     * @return FieldVersions versions, never null
+     */
+    public FieldVersions getFieldVersions() {
+        return fieldVersions;
+    }
+
+    public void setFieldVersions(FieldVersions fieldVersions) {
+        this.fieldVersions = (fieldVersions != null ? fieldVersions : FieldVersions.EMPTY);
+    }
+
     public boolean equals(Object obj) {
         //return EqualsBuilder.reflectionEquals(this, obj);
 
@@ -0,0 +1,138 @@
+/*
+* @author  Oleg Varaksin (ovaraksin@googlemail.com)
+* $$Id: FieldVersions.java 90 2011-09-27 15:24:29Z ovaraksin@gmail.com $$
+*/
+
+package com.googlecode.whiteboard.model.base;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable Lamport versions of element properties. Every write of a property is stamped with the Lamport clock
+ * of the change and the writer (sender id of the subscriber). A write wins over the current value if its version is
+ * greater, writes with equal versions are ordered by writers (last writer wins per property). Concurrent changes of different
+ * properties of the same element are therefore all kept and concurrent changes of the same property result in the
+ * same value regardless of the order they are applied in. Properties which have never been written have version 0.
+ *
+ * @author ova / last modified by $Author: ovaraksin@gmail.com $
+ * @version $Revision: 90 $
+ */
+public final class FieldVersions
+{
+    public static final FieldVersions EMPTY = new FieldVersions(Collections.<String, Version>emptyMap());
+
+    private final Map<String, Version> versions;
+
+    private FieldVersions(Map<String, Version> versions) {
+        this.versions = versions;
+    }
+
+    /**
+     * Checks whether a write of the given property would win over the current value.
+     *
+     * @param property property name
+     * @param version  Lamport clock of the write
+     * @param writer   sender id of the writer
+     * @return boolean true - write wins, false - current value is newer
+     */
+    public boolean isOverwrittenBy(String property, long version, String writer) {
+        Version current = versions.get(property);
+        if (current == null || version > current.version) {
+            return true;
+        }
+
+        if (version < current.version) {
+            return false;
+        }
+
+        String name = (writer != null ? writer : "");
+        String currentName = (current.writer != null ? current.writer : "");
+
+        return name.compareTo(currentName) >= 0;
+    }
+
+    /**
+     * Merges a write of the given property. The version is only changed if the write wins.
+     *
+     * @param property property name
+     * @param version  Lamport clock of the write
+     * @param writer   sender id of the writer
+     * @return FieldVersions new versions or this instance if the current version is newer
+     */
+    public FieldVersions merge(String property, long version, String writer) {
+        if (!isOverwrittenBy(property, version, writer)) {
+            return this;
+        }
+
+        Map<String, Version> merged = new HashMap<String, Version>(versions);
+        merged.put(property, new Version(version, writer));
+
+        return new FieldVersions(merged);
+    }
+
+    /**
+     * Merges writes of the given properties with the same version.
+     *
+     * @param properties property names
+     * @param version    Lamport clock of the writes
+     * @param writer     sender id of the writer
+     * @return FieldVersions new versions or this instance if no write wins
+     */
+    public FieldVersions merge(Iterable<String> properties, long version, String writer) {
+        FieldVersions merged = this;
+        for (String property : properties) {
+            merged = merged.merge(property, version, writer);
+        }
+
+        return merged;
+    }
+
+    /**
+     * Gets names of all properties which have been written.
+     *
+     * @return Set property names
+     */
+    public Set<String> getProperties() {
+        return Collections.unmodifiableSet(versions.keySet());
+    }
+
+    public long getVersion(String property) {
+        Version current = versions.get(property);
+
+        return (current != null ? current.version : 0);
+    }
+
+    public String getWriter(String property) {
+        Version current = versions.get(property);
+
+        return (current != null ? current.writer : null);
+    }
+
+    public boolean isEmpty() {
+        return versions.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return versions.toString();
+    }
+
+    private static class Version
+    {
+        private final long version;
+        private final String writer;
+
+        Version(long version, String writer) {
+            this.version = version;
+            this.writer = writer;
+        }
+
+        @Override
+        public String toString() {
+            return version + "/" + writer;
+        }
+    }
+}
@@ -13,17 +13,30 @@ package com.googlecode.whiteboard.model.base;
  */
 public abstract class Line extends Rotatable
 {
-    private String path;
+    private LinePath path;
     private String color;
     private int lineWidth;
     private String lineStyle;
     private double opacity;
 
+    /**
+     * Gets the SVG path. The path is built from the encoded geometry on every call.
+     *
+     * @return String SVG path or null
+     */
     public String getPath() {
-        return path;
+        return path != null ? path.toString() : null;
     }
 
     public void setPath(String path) {
+        this.path = LinePath.valueOf(path);
+    }
+
+    public LinePath getLinePath() {
+        return path;
+    }
+
+    public void setLinePath(LinePath path) {
         this.path = path;
     }
 
@@ -0,0 +1,498 @@
+/*
+* @author  Oleg Varaksin (ovaraksin@googlemail.com)
+* $$Id: LinePath.java 90 2011-09-27 15:24:29Z ovaraksin@gmail.com $$
+*/
+
+package com.googlecode.whiteboard.model.base;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Immutable geometry of a line. SVG paths consisting of absolute moveto and lineto commands, e.g. "M10,20L30,40L35,42",
+ * are kept as coordinates with a fixed number of decimal places. Every point is stored as difference to the previous
+ * point in variable-length bytes, so that a typical point of a free line takes two or three bytes instead of about
+ * sixteen bytes as part of a string. The SVG path is built from the coordinates when it is requested.
+ * <p/>
+ * Other paths (relative or curve commands, exponents, too many decimal places) are kept as they are.
+ *
+ * @author ova / last modified by $Author: ovaraksin@gmail.com $
+ * @version $Revision: 90 $
+ */
+public final class LinePath implements Serializable
+{
+    private static final long serialVersionUID = 20110927L;
+
+    /**
+     * Max. number of decimal places of encoded coordinates.
+     */
+    private static final int MAX_DECIMALS = 3;
+
+    /**
+     * Max. number of digits of encoded coordinates, so that differences can't overflow.
+     */
+    private static final int MAX_DIGITS = 15;
+
+    private static final long[] POWERS = {1L, 10L, 100L, 1000L};
+
+    // first byte is the number of decimal places, followed by points (flags and x differences, y differences)
+    private final byte[] data;
+    // path which could not be encoded
+    private final String raw;
+
+    private LinePath(byte[] data, String raw) {
+        this.data = data;
+        this.raw = raw;
+    }
+
+    /**
+     * Creates a line path from the given SVG path.
+     *
+     * @param path SVG path
+     * @return LinePath line path or null if the SVG path is null
+     */
+    public static LinePath valueOf(String path) {
+        if (path == null) {
+            return null;
+        }
+
+        byte[] data = encode(path);
+
+        return data != null ? new LinePath(data, null) : new LinePath(null, path);
+    }
+
+    /**
+     * Gets coordinates of all points.
+     *
+     * @return double[] x and y coordinates one after another or null if the path is kept as string
+     */
+    public double[] getPoints() {
+        if (data == null) {
+            return null;
+        }
+
+        double divisor = POWERS[data[0]];
+        double[] points = new double[count(data) * 2];
+        Decoder decoder = new Decoder(data);
+        for (int i = 0; decoder.next(); i += 2) {
+            points[i] = decoder.x / divisor;
+            points[i + 1] = decoder.y / divisor;
+        }
+
+        return points;
+    }
+
+    /**
+     * Simplifies this path by the Ramer-Douglas-Peucker algorithm. Points which are nearer to the line between
+     * their kept neighbours than the tolerance are dropped. First and last points of every subpath are kept.
+     *
+     * @param tolerance max. distance of dropped points
+     * @return LinePath simplified path or this path if no point has been dropped or the path is kept as string
+     */
+    public LinePath simplify(double tolerance) {
+        if (data == null || tolerance <= 0) {
+            return this;
+        }
+
+        int count = count(data);
+        long[] xs = new long[count];
+        long[] ys = new long[count];
+        boolean[] moves = new boolean[count];
+        Decoder decoder = new Decoder(data);
+        for (int i = 0; decoder.next(); i++) {
+            xs[i] = decoder.x;
+            ys[i] = decoder.y;
+            moves[i] = decoder.move;
+        }
+
+        double scaledTolerance = tolerance * POWERS[data[0]];
+        boolean[] keep = new boolean[count];
+        int first = 0;
+        for (int i = 1; i <= count; i++) {
+            if (i == count || moves[i]) {
+                simplify(xs, ys, first, i - 1, scaledTolerance * scaledTolerance, keep);
+                first = i;
+            }
+        }
+
+        Encoder encoder = new Encoder(data[0], data.length);
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            if (keep[i]) {
+                encoder.writePoint(xs[i], ys[i], moves[i]);
+                kept++;
+            }
+        }
+
+        return kept < count ? new LinePath(encoder.toByteArray(), null) : this;
+    }
+
+    /**
+     * Translates this path. Only the first point has to be changed because all other points are stored relatively.
+     *
+     * @param dx translation in x-direction
+     * @param dy translation in y-direction
+     * @return LinePath translated path or this path if it is kept as string (can't be translated)
+     */
+    public LinePath translate(int dx, int dy) {
+        if (data == null || (dx == 0 && dy == 0)) {
+            return this;
+        }
+
+        Decoder decoder = new Decoder(data);
+        decoder.next();
+
+        long scale = POWERS[data[0]];
+        Encoder encoder = new Encoder(data[0], data.length + 4);
+        encoder.writePoint(decoder.x + dx * scale, decoder.y + dy * scale, decoder.move);
+        encoder.writeBytes(data, decoder.pos, data.length - decoder.pos);
+
+        return new LinePath(encoder.toByteArray(), null);
+    }
+
+    /**
+     * Gets the number of points.
+     *
+     * @return int number of points or -1 if the path is kept as string
+     */
+    public int getPointCount() {
+        return data != null ? count(data) : -1;
+    }
+
+    /**
+     * Gets the SVG path.
+     *
+     * @return String path with explicit commands for all points, e.g. "M10,20L30,40L35,42"
+     */
+    @Override
+    public String toString() {
+        if (data == null) {
+            return raw;
+        }
+
+        int decimals = data[0];
+        StringBuilder sb = new StringBuilder(data.length * 4);
+        Decoder decoder = new Decoder(data);
+        while (decoder.next()) {
+            sb.append(decoder.move ? 'M' : 'L');
+            appendNumber(sb, decoder.x, decimals);
+            sb.append(',');
+            appendNumber(sb, decoder.y, decimals);
+        }
+
+        return sb.toString();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+
+        if (!(o instanceof LinePath)) {
+            return false;
+        }
+
+        LinePath other = (LinePath) o;
+
+        return data != null ? Arrays.equals(data, other.data) : raw.equals(other.raw);
+    }
+
+    @Override
+    public int hashCode() {
+        return data != null ? Arrays.hashCode(data) : raw.hashCode();
+    }
+
+    /**
+     * Encodes a SVG path.
+     *
+     * @return byte[] encoded path or null if the path can not be encoded
+     */
+    private static byte[] encode(String path) {
+        int length = path.length();
+        // mantissas of all numbers and their decimal places, max. one number per two chars
+        long[] mantissas = new long[length / 2 + 1];
+        byte[] decimals = new byte[mantissas.length];
+        // points starting a new subpath
+        boolean[] moves = new boolean[mantissas.length / 2 + 1];
+        int count = 0;
+        int maxDecimals = 0;
+        char command = 0;
+
+        int i = 0;
+        while (i < length) {
+            char c = path.charAt(i);
+            if (c == ',' || Character.isWhitespace(c)) {
+                i++;
+                continue;
+            }
+
+            if (c == 'M' || c == 'L') {
+                if (count % 2 != 0) {
+                    return null;
+                }
+
+                command = c;
+                i++;
+                continue;
+            }
+
+            if (c != '-' && c != '+' && c != '.' && (c < '0' || c > '9')) {
+                // relative or curve commands, exponents
+                return null;
+            }
+
+            if (command == 0) {
+                // path must begin with moveto
+                return null;
+            }
+
+            boolean negative = (c == '-');
+            if (c == '-' || c == '+') {
+                i++;
+            }
+
+            long mantissa = 0;
+            int digits = 0;
+            int places = -1;
+            while (i < length) {
+                c = path.charAt(i);
+                if (c >= '0' && c <= '9') {
+                    mantissa = mantissa * 10 + (c - '0');
+                    digits++;
+                    if (places >= 0) {
+                        places++;
+                    }
+                } else if (c == '.' && places < 0) {
+                    places = 0;
+                } else {
+                    break;
+                }
+
+                i++;
+            }
+
+            if (digits == 0 || digits > MAX_DIGITS) {
+                return null;
+            }
+
+            places = Math.max(places, 0);
+            // trailing zeros don't count, e.g. "10.50"
+            while (places > 0 && mantissa % 10 == 0) {
+                mantissa /= 10;
+                places--;
+            }
+
+            if (places > MAX_DECIMALS) {
+                return null;
+            }
+
+            if (count % 2 == 0) {
+                moves[count / 2] = (command == 'M');
+                // further points after moveto are implicit linetos
+                command = 'L';
+            }
+
+            mantissas[count] = (negative ? -mantissa : mantissa);
+            decimals[count] = (byte) places;
+            maxDecimals = Math.max(maxDecimals, places);
+            count++;
+        }
+
+        if (count == 0 || count % 2 != 0) {
+            return null;
+        }
+
+        Encoder encoder = new Encoder(maxDecimals, count + 1);
+        for (int n = 0; n < count; n += 2) {
+            encoder.writePoint(mantissas[n] * POWERS[maxDecimals - decimals[n]],
+                    mantissas[n + 1] * POWERS[maxDecimals - decimals[n + 1]], moves[n / 2]);
+        }
+
+        return encoder.toByteArray();
+    }
+
+    /**
+     * Marks points of one subpath kept by the Ramer-Douglas-Peucker algorithm.
+     */
+    private static void simplify(long[] xs, long[] ys, int first, int last, double sqTolerance, boolean[] keep) {
+        keep[first] = true;
+        keep[last] = true;
+
+        // ranges between kept points which still have to be checked
+        int[] stack = new int[(last - first + 1) * 2];
+        int top = 0;
+        stack[top++] = first;
+        stack[top++] = last;
+        while (top > 0) {
+            int b = stack[--top];
+            int a = stack[--top];
+
+            int farthest = -1;
+            double maxDistance = sqTolerance;
+            for (int i = a + 1; i < b; i++) {
+                double distance = sqSegmentDistance(xs[i], ys[i], xs[a], ys[a], xs[b], ys[b]);
+                if (distance > maxDistance) {
+                    farthest = i;
+                    maxDistance = distance;
+                }
+            }
+
+            if (farthest >= 0) {
+                keep[farthest] = true;
+                stack[top++] = a;
+                stack[top++] = farthest;
+                stack[top++] = farthest;
+                stack[top++] = b;
+            }
+        }
+    }
+
+    /**
+     * Squared distance of a point to the segment between two other points.
+     */
+    private static double sqSegmentDistance(double x, double y, double x1, double y1, double x2, double y2) {
+        double dx = x2 - x1;
+        double dy = y2 - y1;
+        if (dx != 0 || dy != 0) {
+            double t = ((x - x1) * dx + (y - y1) * dy) / (dx * dx + dy * dy);
+            if (t > 1) {
+                x1 = x2;
+                y1 = y2;
+            } else if (t > 0) {
+                x1 += dx * t;
+                y1 += dy * t;
+            }
+        }
+
+        dx = x - x1;
+        dy = y - y1;
+
+        return dx * dx + dy * dy;
+    }
+
+    private static int count(byte[] data) {
+        int count = 0;
+        Decoder decoder = new Decoder(data);
+        while (decoder.next()) {
+            count++;
+        }
+
+        return count;
+    }
+
+    private static void appendNumber(StringBuilder sb, long value, int decimals) {
+        if (value < 0) {
+            sb.append('-');
+            value = -value;
+        }
+
+        long divisor = POWERS[decimals];
+        sb.append(value / divisor);
+
+        long fraction = value % divisor;
+        if (fraction != 0) {
+            sb.append('.');
+            for (long d = divisor / 10; d > 0 && fraction != 0; d /= 10) {
+                sb.append((char) ('0' + fraction / d));
+                fraction %= d;
+            }
+        }
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static class Encoder
+    {
+        private byte[] data;
+        private int size;
+        private long lastX;
+        private long lastY;
+
+        Encoder(int decimals, int capacity) {
+            data = new byte[Math.max(capacity, 1)];
+            data[size++] = (byte) decimals;
+        }
+
+        void writePoint(long x, long y, boolean move) {
+            writeVarLong((zigZag(x - lastX) << 1) | (move ? 1 : 0));
+            writeVarLong(zigZag(y - lastY));
+            lastX = x;
+            lastY = y;
+        }
+
+        void writeBytes(byte[] bytes, int offset, int length) {
+            if (size + length > data.length) {
+                data = Arrays.copyOf(data, size + length);
+            }
+
+            System.arraycopy(bytes, offset, data, size, length);
+            size += length;
+        }
+
+        private void writeVarLong(long value) {
+            if (size + 10 > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, size + 10));
+            }
+
+            while ((value & ~0x7FL) != 0) {
+                data[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+
+            data[size++] = (byte) value;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(data, size);
+        }
+    }
+
+    /**
+     * Iterates over absolute points of an encoded path.
+     */
+    private static class Decoder
+    {
+        private final byte[] data;
+        private int pos = 1;
+        private long x;
+        private long y;
+        private boolean move;
+
+        Decoder(byte[] data) {
+            this.data = data;
+        }
+
+        boolean next() {
+            if (pos >= data.length) {
+                return false;
+            }
+
+            long flaggedX = readVarLong();
+            move = (flaggedX & 1) != 0;
+            x += unZigZag(flaggedX >>> 1);
+            y += unZigZag(readVarLong());
+
+            return true;
+        }
+
+        private long readVarLong() {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = data[pos++];
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+
+            return value;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+/*
+* @author  Oleg Varaksin (ovaraksin@googlemail.com)
+* $$Id: DoubleProperty.java 90 2011-09-27 15:24:29Z ovaraksin@gmail.com $$
+*/
+
+package com.googlecode.whiteboard.model.property;
+
+import com.googlecode.whiteboard.model.base.AbstractElement;
+
+/**
+ * Property of type <code>double</code>.
+ *
+ * @param <E> element type declaring the property
+ * @author ova / last modified by $Author: ovaraksin@gmail.com $
+ * @version $Revision: 90 $
+ */
+public abstract class DoubleProperty<E extends AbstractElement> extends ElementProperty<E>
+{
+    public DoubleProperty(String name) {
+        super(name, Kind.DOUBLE);
+    }
+
+    public abstract double get(E element);
+
+    public abstract void set(E element, double value);
+
+    @Override
+    public boolean copy(E source, E target) {
+        double value = get(source);
+        if (Double.compare(get(target), value) == 0) {
+            return false;
+        }
+
+        set(target, value);
+        return true;
+    }
+}
@@ -0,0 +1,58 @@
+/*
+* @author  Oleg Varaksin (ovaraksin@googlemail.com)
+* $$Id: ElementProperty.java 90 2011-09-27 15:24:29Z ovaraksin@gmail.com $$
+*/
+
+package com.googlecode.whiteboard.model.property;
+
+import com.googlecode.whiteboard.model.base.AbstractElement;
+
+/**
+ * Typed accessor for one property of a whiteboard element. Properties are accessed without reflection.
+ *
+ * @param <E> element type declaring the property
+ * @author ova / last modified by $Author: ovaraksin@gmail.com $
+ * @version $Revision: 90 $
+ */
+public abstract class ElementProperty<E extends AbstractElement>
+{
+    public enum Kind
+    {
+        INT, DOUBLE, STRING
+    }
+
+    private final String name;
+    private final Kind kind;
+
+    protected ElementProperty(String name, Kind kind) {
+        this.name = name;
+        this.kind = kind;
+    }
+
+    /**
+     * Gets the property name which is used in JSON.
+     *
+     * @return String name
+     */
+    public String getName() {
+        return name;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * Copies the property value from source to target element.
+     *
+     * @param source element to copy from
+     * @param target element to copy to
+     * @return boolean true - value of the target element has been changed, false - values were equal
+     */
+    public abstract boolean copy(E source, E target);
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,129 @@
+/*
+* @author  Oleg Varaksin (ovaraksin@googlemail.com)
+* $$Id: ElementType.java 90 2011-09-27 15:24:29Z ovaraksin@gmail.com $$
+*/
+
+package com.googlecode.whiteboard.model.property;
+
+import com.googlecode.whiteboard.model.base.AbstractElement;
+
+import java.util.*;
+
+/**
+ * Description of one element class: type name used in JSON, factory and all properties in JSON order.
+ *
+ * @param <E> element type
+ * @author ova / last modified by $Author: ovaraksin@gmail.com $
+ * @version $Revision: 90 $
+ */
+public abstract class ElementType<E extends AbstractElement>
+{
+    private final String name;
+    private final Class<E> elementClass;
+    private final List<ElementProperty<? super E>> properties;
+    private final Map<String, ElementProperty<? super E>> propertiesByName;
+
+    @SuppressWarnings("unchecked")
+    protected ElementType(String name, Class<E> elementClass, ElementProperty<?>... properties) {
+        this.name = name;
+        this.elementClass = elementClass;
+
+        List<ElementProperty<? super E>> list = new ArrayList<ElementProperty<? super E>>(properties.length);
+        Map<String, ElementProperty<? super E>> map = new HashMap<String, ElementProperty<? super E>>(properties.length * 2);
+        for (ElementProperty<?> property : properties) {
+            list.add((ElementProperty<? super E>) property);
+            map.put(property.getName(), (ElementProperty<? super E>) property);
+        }
+
+        this.properties = Collections.unmodifiableList(list);
+        this.propertiesByName = map;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the type name written to JSON for the given element.
+     *
+     * @param element element of this type
+     * @return String type name
+     */
+    public String getTypeName(E element) {
+        return name;
+    }
+
+    public Class<E> getElementClass() {
+        return elementClass;
+    }
+
+    /**
+     * Gets all properties in the order they are written to JSON.
+     *
+     * @return List properties
+     */
+    public List<ElementProperty<? super E>> getProperties() {
+        return properties;
+    }
+
+    /**
+     * Gets the property with the given name.
+     *
+     * @param name property name
+     * @return ElementProperty property or null if this type doesn't have such property
+     */
+    public ElementProperty<? super E> getProperty(String name) {
+        return propertiesByName.get(name);
+    }
+
+    public E cast(AbstractElement element) {
+        return elementClass.cast(element);
+    }
+
+    /**
+     * Copies all properties from source to target element.
+     *
+     * @param source element to copy from
+     * @param target element to copy to
+     * @return List properties which have been changed in the target element (empty list if nothing was changed)
+     */
+    public List<ElementProperty<? super E>> copyProperties(E source, E target) {
+        return copyProperties(source, target, properties);
+    }
+
+    /**
+     * Copies the given properties from source to target element.
+     *
+     * @param source     element to copy from
+     * @param target     element to copy to
+     * @param properties properties of this type to be copied
+     * @return List properties which have been changed in the target element (empty list if nothing was changed)
+     */
+    @SuppressWarnings("unchecked")
+    public List<ElementProperty<? super E>> copyProperties(E source, E target, List<? extends ElementProperty<?>> properties) {
+        List<ElementProperty<? super E>> changed = null;
+        for (ElementProperty<?> anyProperty : properties) {
+            ElementProperty<? super E> property = (ElementProperty<? super E>) anyProperty;
+            if (property.copy(source, target)) {
+                if (changed == null) {
+                    changed = new ArrayList<ElementProperty<? super E>>();
+                }
+
+                changed.add(property);
+            }
+        }
+
+        if (changed == null) {
+            return Collections.emptyList();
+        }
+
+        return changed;
+    }
+
+    /**
+     * Creates a new empty element of this type.
+     *
+     * @return E element
+     */
+    public abstract E newInstance();
+}
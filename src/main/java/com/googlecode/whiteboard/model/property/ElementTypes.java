@@ -0,0 +1,911 @@
+/*
+* @author  Oleg Varaksin (ovaraksin@googlemail.com)
+* $$Id: ElementTypes.java 90 2011-09-27 15:24:29Z ovaraksin@gmail.com $$
+*/
+
+package com.googlecode.whiteboard.model.property;
+
+import com.googlecode.whiteboard.model.base.AbstractElement;
+import com.googlecode.whiteboard.model.base.Line;
+import com.googlecode.whiteboard.model.base.LinePath;
+import com.googlecode.whiteboard.model.base.Positionable;
+import com.googlecode.whiteboard.model.base.Rotatable;
+import com.googlecode.whiteboard.model.element.*;
+import com.googlecode.whiteboard.model.transfer.TruncatedElement;
+import com.googlecode.whiteboard.model.transfer.TruncatedLine;
+import com.googlecode.whiteboard.model.transfer.TruncatedPositionable;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Precomputed registry of all element types. Properties of every type are listed in the same order as Gson writes
+ * fields reflectively (fields of the class first, then fields of super classes), so that JSON stays unchanged.
+ * Truncated types are written with the type name of the element they belong to and can't be created from JSON.
+ * Properties are also copied by this registry when an element gets updated.
+ *
+ * @author ova / last modified by $Author: ovaraksin@gmail.com $
+ * @version $Revision: 90 $
+ */
+public final class ElementTypes
+{
+    // common properties
+
+    public static final StringProperty<AbstractElement> UUID = new StringProperty<AbstractElement>("uuid")
+    {
+        @Override
+        public String get(AbstractElement element) {
+            return element.getUuid();
+        }
+
+        @Override
+        public void set(AbstractElement element, String value) {
+            element.setUuid(value);
+        }
+    };
+
+    public static final IntProperty<Rotatable> ROTATION_DEGREE = new IntProperty<Rotatable>("rotationDegree")
+    {
+        @Override
+        public int get(Rotatable element) {
+            return element.getRotationDegree();
+        }
+
+        @Override
+        public void set(Rotatable element, int value) {
+            element.setRotationDegree(value);
+        }
+    };
+
+    public static final IntProperty<Positionable> X = new IntProperty<Positionable>("x")
+    {
+        @Override
+        public int get(Positionable element) {
+            return element.getX();
+        }
+
+        @Override
+        public void set(Positionable element, int value) {
+            element.setX(value);
+        }
+    };
+
+    public static final IntProperty<Positionable> Y = new IntProperty<Positionable>("y")
+    {
+        @Override
+        public int get(Positionable element) {
+            return element.getY();
+        }
+
+        @Override
+        public void set(Positionable element, int value) {
+            element.setY(value);
+        }
+    };
+
+    public static final StringProperty<Line> LINE_PATH = new StringProperty<Line>("path")
+    {
+        @Override
+        public String get(Line element) {
+            return element.getPath();
+        }
+
+        @Override
+        public void set(Line element, String value) {
+            element.setPath(value);
+        }
+
+        @Override
+        public boolean copy(Line source, Line target) {
+            // encoded paths are immutable and can be shared without building SVG strings
+            LinePath value = source.getLinePath();
+            LinePath oldValue = target.getLinePath();
+            if (value == null ? oldValue == null : value.equals(oldValue)) {
+                return false;
+            }
+
+            target.setLinePath(value);
+            return true;
+        }
+    };
+
+    public static final StringProperty<Line> LINE_COLOR = new StringProperty<Line>("color")
+    {
+        @Override
+        public String get(Line element) {
+            return element.getColor();
+        }
+
+        @Override
+        public void set(Line element, String value) {
+            element.setColor(value);
+        }
+    };
+
+    public static final IntProperty<Line> LINE_WIDTH = new IntProperty<Line>("lineWidth")
+    {
+        @Override
+        public int get(Line element) {
+            return element.getLineWidth();
+        }
+
+        @Override
+        public void set(Line element, int value) {
+            element.setLineWidth(value);
+        }
+    };
+
+    public static final StringProperty<Line> LINE_STYLE = new StringProperty<Line>("lineStyle")
+    {
+        @Override
+        public String get(Line element) {
+            return element.getLineStyle();
+        }
+
+        @Override
+        public void set(Line element, String value) {
+            element.setLineStyle(value);
+        }
+    };
+
+    public static final DoubleProperty<Line> LINE_OPACITY = new DoubleProperty<Line>("opacity")
+    {
+        @Override
+        public double get(Line element) {
+            return element.getOpacity();
+        }
+
+        @Override
+        public void set(Line element, double value) {
+            element.setOpacity(value);
+        }
+    };
+
+    // circle properties
+
+    public static final IntProperty<Circle> CIRCLE_RADIUS = new IntProperty<Circle>("radius")
+    {
+        @Override
+        public int get(Circle element) {
+            return element.getRadius();
+        }
+
+        @Override
+        public void set(Circle element, int value) {
+            element.setRadius(value);
+        }
+    };
+
+    public static final StringProperty<Circle> CIRCLE_BACKGROUND_COLOR = new StringProperty<Circle>("backgroundColor")
+    {
+        @Override
+        public String get(Circle element) {
+            return element.getBackgroundColor();
+        }
+
+        @Override
+        public void set(Circle element, String value) {
+            element.setBackgroundColor(value);
+        }
+    };
+
+    public static final StringProperty<Circle> CIRCLE_BORDER_COLOR = new StringProperty<Circle>("borderColor")
+    {
+        @Override
+        public String get(Circle element) {
+            return element.getBorderColor();
+        }
+
+        @Override
+        public void set(Circle element, String value) {
+            element.setBorderColor(value);
+        }
+    };
+
+    public static final IntProperty<Circle> CIRCLE_BORDER_WIDTH = new IntProperty<Circle>("borderWidth")
+    {
+        @Override
+        public int get(Circle element) {
+            return element.getBorderWidth();
+        }
+
+        @Override
+        public void set(Circle element, int value) {
+            element.setBorderWidth(value);
+        }
+    };
+
+    public static final StringProperty<Circle> CIRCLE_BORDER_STYLE = new StringProperty<Circle>("borderStyle")
+    {
+        @Override
+        public String get(Circle element) {
+            return element.getBorderStyle();
+        }
+
+        @Override
+        public void set(Circle element, String value) {
+            element.setBorderStyle(value);
+        }
+    };
+
+    public static final DoubleProperty<Circle> CIRCLE_BACKGROUND_OPACITY = new DoubleProperty<Circle>("backgroundOpacity")
+    {
+        @Override
+        public double get(Circle element) {
+            return element.getBackgroundOpacity();
+        }
+
+        @Override
+        public void set(Circle element, double value) {
+            element.setBackgroundOpacity(value);
+        }
+    };
+
+    public static final DoubleProperty<Circle> CIRCLE_BORDER_OPACITY = new DoubleProperty<Circle>("borderOpacity")
+    {
+        @Override
+        public double get(Circle element) {
+            return element.getBorderOpacity();
+        }
+
+        @Override
+        public void set(Circle element, double value) {
+            element.setBorderOpacity(value);
+        }
+    };
+
+    // ellipse properties
+
+    public static final IntProperty<Ellipse> ELLIPSE_H_RADIUS = new IntProperty<Ellipse>("hRadius")
+    {
+        @Override
+        public int get(Ellipse element) {
+            return element.getHRadius();
+        }
+
+        @Override
+        public void set(Ellipse element, int value) {
+            element.setHRadius(value);
+        }
+    };
+
+    public static final IntProperty<Ellipse> ELLIPSE_V_RADIUS = new IntProperty<Ellipse>("vRadius")
+    {
+        @Override
+        public int get(Ellipse element) {
+            return element.getVRadius();
+        }
+
+        @Override
+        public void set(Ellipse element, int value) {
+            element.setVRadius(value);
+        }
+    };
+
+    public static final StringProperty<Ellipse> ELLIPSE_BACKGROUND_COLOR = new StringProperty<Ellipse>("backgroundColor")
+    {
+        @Override
+        public String get(Ellipse element) {
+            return element.getBackgroundColor();
+        }
+
+        @Override
+        public void set(Ellipse element, String value) {
+            element.setBackgroundColor(value);
+        }
+    };
+
+    public static final StringProperty<Ellipse> ELLIPSE_BORDER_COLOR = new StringProperty<Ellipse>("borderColor")
+    {
+        @Override
+        public String get(Ellipse element) {
+            return element.getBorderColor();
+        }
+
+        @Override
+        public void set(Ellipse element, String value) {
+            element.setBorderColor(value);
+        }
+    };
+
+    public static final IntProperty<Ellipse> ELLIPSE_BORDER_WIDTH = new IntProperty<Ellipse>("borderWidth")
+    {
+        @Override
+        public int get(Ellipse element) {
+            return element.getBorderWidth();
+        }
+
+        @Override
+        public void set(Ellipse element, int value) {
+            element.setBorderWidth(value);
+        }
+    };
+
+    public static final StringProperty<Ellipse> ELLIPSE_BORDER_STYLE = new StringProperty<Ellipse>("borderStyle")
+    {
+        @Override
+        public String get(Ellipse element) {
+            return element.getBorderStyle();
+        }
+
+        @Override
+        public void set(Ellipse element, String value) {
+            element.setBorderStyle(value);
+        }
+    };
+
+    public static final DoubleProperty<Ellipse> ELLIPSE_BACKGROUND_OPACITY = new DoubleProperty<Ellipse>("backgroundOpacity")
+    {
+        @Override
+        public double get(Ellipse element) {
+            return element.getBackgroundOpacity();
+        }
+
+        @Override
+        public void set(Ellipse element, double value) {
+            element.setBackgroundOpacity(value);
+        }
+    };
+
+    public static final DoubleProperty<Ellipse> ELLIPSE_BORDER_OPACITY = new DoubleProperty<Ellipse>("borderOpacity")
+    {
+        @Override
+        public double get(Ellipse element) {
+            return element.getBorderOpacity();
+        }
+
+        @Override
+        public void set(Ellipse element, double value) {
+            element.setBorderOpacity(value);
+        }
+    };
+
+    // rectangle properties
+
+    public static final IntProperty<Rectangle> RECTANGLE_WIDTH = new IntProperty<Rectangle>("width")
+    {
+        @Override
+        public int get(Rectangle element) {
+            return element.getWidth();
+        }
+
+        @Override
+        public void set(Rectangle element, int value) {
+            element.setWidth(value);
+        }
+    };
+
+    public static final IntProperty<Rectangle> RECTANGLE_HEIGHT = new IntProperty<Rectangle>("height")
+    {
+        @Override
+        public int get(Rectangle element) {
+            return element.getHeight();
+        }
+
+        @Override
+        public void set(Rectangle element, int value) {
+            element.setHeight(value);
+        }
+    };
+
+    public static final IntProperty<Rectangle> RECTANGLE_CORNER_RADIUS = new IntProperty<Rectangle>("cornerRadius")
+    {
+        @Override
+        public int get(Rectangle element) {
+            return element.getCornerRadius();
+        }
+
+        @Override
+        public void set(Rectangle element, int value) {
+            element.setCornerRadius(value);
+        }
+    };
+
+    public static final StringProperty<Rectangle> RECTANGLE_BACKGROUND_COLOR = new StringProperty<Rectangle>("backgroundColor")
+    {
+        @Override
+        public String get(Rectangle element) {
+            return element.getBackgroundColor();
+        }
+
+        @Override
+        public void set(Rectangle element, String value) {
+            element.setBackgroundColor(value);
+        }
+    };
+
+    public static final StringProperty<Rectangle> RECTANGLE_BORDER_COLOR = new StringProperty<Rectangle>("borderColor")
+    {
+        @Override
+        public String get(Rectangle element) {
+            return element.getBorderColor();
+        }
+
+        @Override
+        public void set(Rectangle element, String value) {
+            element.setBorderColor(value);
+        }
+    };
+
+    public static final IntProperty<Rectangle> RECTANGLE_BORDER_WIDTH = new IntProperty<Rectangle>("borderWidth")
+    {
+        @Override
+        public int get(Rectangle element) {
+            return element.getBorderWidth();
+        }
+
+        @Override
+        public void set(Rectangle element, int value) {
+            element.setBorderWidth(value);
+        }
+    };
+
+    public static final StringProperty<Rectangle> RECTANGLE_BORDER_STYLE = new StringProperty<Rectangle>("borderStyle")
+    {
+        @Override
+        public String get(Rectangle element) {
+            return element.getBorderStyle();
+        }
+
+        @Override
+        public void set(Rectangle element, String value) {
+            element.setBorderStyle(value);
+        }
+    };
+
+    public static final DoubleProperty<Rectangle> RECTANGLE_BACKGROUND_OPACITY = new DoubleProperty<Rectangle>("backgroundOpacity")
+    {
+        @Override
+        public double get(Rectangle element) {
+            return element.getBackgroundOpacity();
+        }
+
+        @Override
+        public void set(Rectangle element, double value) {
+            element.setBackgroundOpacity(value);
+        }
+    };
+
+    public static final DoubleProperty<Rectangle> RECTANGLE_BORDER_OPACITY = new DoubleProperty<Rectangle>("borderOpacity")
+    {
+        @Override
+        public double get(Rectangle element) {
+            return element.getBorderOpacity();
+        }
+
+        @Override
+        public void set(Rectangle element, double value) {
+            element.setBorderOpacity(value);
+        }
+    };
+
+    // text properties
+
+    public static final StringProperty<Text> TEXT_TEXT = new StringProperty<Text>("text")
+    {
+        @Override
+        public String get(Text element) {
+            return element.getText();
+        }
+
+        @Override
+        public void set(Text element, String value) {
+            element.setText(value);
+        }
+    };
+
+    public static final StringProperty<Text> TEXT_FONT_FAMILY = new StringProperty<Text>("fontFamily")
+    {
+        @Override
+        public String get(Text element) {
+            return element.getFontFamily();
+        }
+
+        @Override
+        public void set(Text element, String value) {
+            element.setFontFamily(value);
+        }
+    };
+
+    public static final IntProperty<Text> TEXT_FONT_SIZE = new IntProperty<Text>("fontSize")
+    {
+        @Override
+        public int get(Text element) {
+            return element.getFontSize();
+        }
+
+        @Override
+        public void set(Text element, int value) {
+            element.setFontSize(value);
+        }
+    };
+
+    public static final StringProperty<Text> TEXT_FONT_WEIGHT = new StringProperty<Text>("fontWeight")
+    {
+        @Override
+        public String get(Text element) {
+            return element.getFontWeight();
+        }
+
+        @Override
+        public void set(Text element, String value) {
+            element.setFontWeight(value);
+        }
+    };
+
+    public static final StringProperty<Text> TEXT_FONT_STYLE = new StringProperty<Text>("fontStyle")
+    {
+        @Override
+        public String get(Text element) {
+            return element.getFontStyle();
+        }
+
+        @Override
+        public void set(Text element, String value) {
+            element.setFontStyle(value);
+        }
+    };
+
+    public static final StringProperty<Text> TEXT_COLOR = new StringProperty<Text>("color")
+    {
+        @Override
+        public String get(Text element) {
+            return element.getColor();
+        }
+
+        @Override
+        public void set(Text element, String value) {
+            element.setColor(value);
+        }
+    };
+
+    // image properties
+
+    public static final StringProperty<Image> IMAGE_URL = new StringProperty<Image>("url")
+    {
+        @Override
+        public String get(Image element) {
+            return element.getUrl();
+        }
+
+        @Override
+        public void set(Image element, String value) {
+            element.setUrl(value);
+        }
+    };
+
+    public static final IntProperty<Image> IMAGE_WIDTH = new IntProperty<Image>("width")
+    {
+        @Override
+        public int get(Image element) {
+            return element.getWidth();
+        }
+
+        @Override
+        public void set(Image element, int value) {
+            element.setWidth(value);
+        }
+    };
+
+    public static final IntProperty<Image> IMAGE_HEIGHT = new IntProperty<Image>("height")
+    {
+        @Override
+        public int get(Image element) {
+            return element.getHeight();
+        }
+
+        @Override
+        public void set(Image element, int value) {
+            element.setHeight(value);
+        }
+    };
+
+    // icon properties
+
+    public static final StringProperty<Icon> ICON_NAME = new StringProperty<Icon>("name")
+    {
+        @Override
+        public String get(Icon element) {
+            return element.getName();
+        }
+
+        @Override
+        public void set(Icon element, String value) {
+            element.setName(value);
+        }
+    };
+
+    public static final DoubleProperty<Icon> ICON_SCALE_FACTOR = new DoubleProperty<Icon>("scaleFactor")
+    {
+        @Override
+        public double get(Icon element) {
+            return element.getScaleFactor();
+        }
+
+        @Override
+        public void set(Icon element, double value) {
+            element.setScaleFactor(value);
+        }
+    };
+
+    // truncated properties
+
+    public static final IntProperty<TruncatedPositionable> TRUNCATED_X = new IntProperty<TruncatedPositionable>("x")
+    {
+        @Override
+        public int get(TruncatedPositionable element) {
+            return element.getX();
+        }
+
+        @Override
+        public void set(TruncatedPositionable element, int value) {
+            element.setX(value);
+        }
+    };
+
+    public static final IntProperty<TruncatedPositionable> TRUNCATED_Y = new IntProperty<TruncatedPositionable>("y")
+    {
+        @Override
+        public int get(TruncatedPositionable element) {
+            return element.getY();
+        }
+
+        @Override
+        public void set(TruncatedPositionable element, int value) {
+            element.setY(value);
+        }
+    };
+
+    public static final StringProperty<TruncatedLine> TRUNCATED_PATH = new StringProperty<TruncatedLine>("path")
+    {
+        @Override
+        public String get(TruncatedLine element) {
+            return element.getPath();
+        }
+
+        @Override
+        public void set(TruncatedLine element, String value) {
+            element.setPath(value);
+        }
+    };
+
+    public static final ElementType<Circle> CIRCLE = new ElementType<Circle>("Circle", Circle.class,
+            CIRCLE_RADIUS, CIRCLE_BACKGROUND_COLOR, CIRCLE_BORDER_COLOR, CIRCLE_BORDER_WIDTH, CIRCLE_BORDER_STYLE, CIRCLE_BACKGROUND_OPACITY, CIRCLE_BORDER_OPACITY,
+            X, Y, ROTATION_DEGREE, UUID)
+    {
+        @Override
+        public Circle newInstance() {
+            return new Circle();
+        }
+    };
+
+    public static final ElementType<Ellipse> ELLIPSE = new ElementType<Ellipse>("Ellipse", Ellipse.class,
+            ELLIPSE_H_RADIUS, ELLIPSE_V_RADIUS, ELLIPSE_BACKGROUND_COLOR, ELLIPSE_BORDER_COLOR, ELLIPSE_BORDER_WIDTH, ELLIPSE_BORDER_STYLE, ELLIPSE_BACKGROUND_OPACITY, ELLIPSE_BORDER_OPACITY,
+            X, Y, ROTATION_DEGREE, UUID)
+    {
+        @Override
+        public Ellipse newInstance() {
+            return new Ellipse();
+        }
+    };
+
+    public static final ElementType<Rectangle> RECTANGLE = new ElementType<Rectangle>("Rectangle", Rectangle.class,
+            RECTANGLE_WIDTH, RECTANGLE_HEIGHT, RECTANGLE_CORNER_RADIUS, RECTANGLE_BACKGROUND_COLOR, RECTANGLE_BORDER_COLOR, RECTANGLE_BORDER_WIDTH, RECTANGLE_BORDER_STYLE, RECTANGLE_BACKGROUND_OPACITY, RECTANGLE_BORDER_OPACITY,
+            X, Y, ROTATION_DEGREE, UUID)
+    {
+        @Override
+        public Rectangle newInstance() {
+            return new Rectangle();
+        }
+    };
+
+    public static final ElementType<Text> TEXT = new ElementType<Text>("Text", Text.class,
+            TEXT_TEXT, TEXT_FONT_FAMILY, TEXT_FONT_SIZE, TEXT_FONT_WEIGHT, TEXT_FONT_STYLE, TEXT_COLOR,
+            X, Y, ROTATION_DEGREE, UUID)
+    {
+        @Override
+        public Text newInstance() {
+            return new Text();
+        }
+    };
+
+    public static final ElementType<Image> IMAGE = new ElementType<Image>("Image", Image.class,
+            IMAGE_URL, IMAGE_WIDTH, IMAGE_HEIGHT,
+            X, Y, ROTATION_DEGREE, UUID)
+    {
+        @Override
+        public Image newInstance() {
+            return new Image();
+        }
+    };
+
+    public static final ElementType<Icon> ICON = new ElementType<Icon>("Icon", Icon.class,
+            ICON_NAME, ICON_SCALE_FACTOR,
+            X, Y, ROTATION_DEGREE, UUID)
+    {
+        @Override
+        public Icon newInstance() {
+            return new Icon();
+        }
+    };
+
+    public static final ElementType<FreeLine> FREE_LINE = new ElementType<FreeLine>("FreeLine", FreeLine.class,
+            LINE_PATH, LINE_COLOR, LINE_WIDTH, LINE_STYLE, LINE_OPACITY, ROTATION_DEGREE, UUID)
+    {
+        @Override
+        public FreeLine newInstance() {
+            return new FreeLine();
+        }
+    };
+
+    public static final ElementType<StraightLine> STRAIGHT_LINE = new ElementType<StraightLine>("StraightLine", StraightLine.class,
+            LINE_PATH, LINE_COLOR, LINE_WIDTH, LINE_STYLE, LINE_OPACITY, ROTATION_DEGREE, UUID)
+    {
+        @Override
+        public StraightLine newInstance() {
+            return new StraightLine();
+        }
+    };
+
+    public static final ElementType<TruncatedPositionable> TRUNCATED_POSITIONABLE = new ElementType<TruncatedPositionable>("TruncatedPositionable", TruncatedPositionable.class, TRUNCATED_X, TRUNCATED_Y, UUID)
+    {
+        @Override
+        public String getTypeName(TruncatedPositionable element) {
+            return element.getClassName();
+        }
+
+        @Override
+        public TruncatedPositionable newInstance() {
+            throw new UnsupportedOperationException("Truncated element can't be created from JSON");
+        }
+    };
+
+    public static final ElementType<TruncatedLine> TRUNCATED_LINE = new ElementType<TruncatedLine>("TruncatedLine", TruncatedLine.class, TRUNCATED_PATH, UUID)
+    {
+        @Override
+        public String getTypeName(TruncatedLine element) {
+            return element.getClassName();
+        }
+
+        @Override
+        public TruncatedLine newInstance() {
+            throw new UnsupportedOperationException("Truncated element can't be created from JSON");
+        }
+    };
+
+    public static final ElementType<TruncatedElement> TRUNCATED_ELEMENT = new ElementType<TruncatedElement>("TruncatedElement", TruncatedElement.class, UUID)
+    {
+        @Override
+        public String getTypeName(TruncatedElement element) {
+            return element.getClassName();
+        }
+
+        @Override
+        public TruncatedElement newInstance() {
+            throw new UnsupportedOperationException("Truncated element can't be created from JSON");
+        }
+    };
+
+    private static final Map<String, ElementType<?>> TYPES_BY_NAME = new HashMap<String, ElementType<?>>();
+    private static final Map<Class<?>, ElementType<?>> TYPES_BY_CLASS = new HashMap<Class<?>, ElementType<?>>();
+
+    static {
+        register(CIRCLE);
+        register(ELLIPSE);
+        register(RECTANGLE);
+        register(TEXT);
+        register(IMAGE);
+        register(ICON);
+        register(FREE_LINE);
+        register(STRAIGHT_LINE);
+
+        // truncated types are only written
+        TYPES_BY_CLASS.put(TruncatedPositionable.class, TRUNCATED_POSITIONABLE);
+        TYPES_BY_CLASS.put(TruncatedLine.class, TRUNCATED_LINE);
+        TYPES_BY_CLASS.put(TruncatedElement.class, TRUNCATED_ELEMENT);
+    }
+
+    private ElementTypes() {
+    }
+
+    private static void register(ElementType<?> type) {
+        TYPES_BY_NAME.put(type.getName(), type);
+        TYPES_BY_CLASS.put(type.getElementClass(), type);
+    }
+
+    /**
+     * Gets the type which can be created from JSON by the given type name.
+     *
+     * @param name type name, e.g. "Circle"
+     * @return ElementType type or null if the name is unknown
+     */
+    public static ElementType<?> getType(String name) {
+        return TYPES_BY_NAME.get(name);
+    }
+
+    /**
+     * Gets the type of the given element class.
+     *
+     * @param elementClass class of an element
+     * @return ElementType type or null if the class is unknown
+     */
+    public static ElementType<?> getType(Class<?> elementClass) {
+        return TYPES_BY_CLASS.get(elementClass);
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <E extends AbstractElement> ElementType<E> getType(E element) {
+        return (ElementType<E>) TYPES_BY_CLASS.get(element.getClass());
+    }
+
+    /**
+     * Creates a copy of the given element with all properties and their versions.
+     *
+     * @param element element to be copied
+     * @return E new element
+     * @throws IllegalArgumentException if the element has an unknown type
+     */
+    public static <E extends AbstractElement> E copy(E element) {
+        ElementType<E> type = getType(element);
+        if (type == null) {
+            throw new IllegalArgumentException("Unknown element class: " + element.getClass().getName());
+        }
+
+        E copy = type.newInstance();
+        type.copyProperties(element, copy);
+        // versions are immutable and can be shared
+        copy.setFieldVersions(element.getFieldVersions());
+
+        return copy;
+    }
+
+    /**
+     * Copies all properties from source to target element. Both elements must be of the same type.
+     *
+     * @param source element to copy from
+     * @param target element to copy to
+     * @return List properties which have been changed in the target element (empty list if nothing was changed)
+     * @throws IllegalArgumentException if the elements have different or unknown types
+     */
+    public static <E extends AbstractElement> List<ElementProperty<? super E>> copyProperties(AbstractElement source, E target) {
+        ElementType<E> type = getCopyType(source, target);
+
+        return type.copyProperties(type.cast(source), target);
+    }
+
+    /**
+     * Copies the given properties from source to target element. Both elements must be of the same type.
+     *
+     * @param source     element to copy from
+     * @param target     element to copy to
+     * @param properties properties to be copied
+     * @return List properties which have been changed in the target element (empty list if nothing was changed)
+     * @throws IllegalArgumentException if the elements have different or unknown types or a property doesn't belong to the type
+     */
+    public static <E extends AbstractElement> List<ElementProperty<? super E>> copyProperties(AbstractElement source, E target,
+                                                                                            List<? extends ElementProperty<?>> properties) {
+        ElementType<E> type = getCopyType(source, target);
+        for (ElementProperty<?> property : properties) {
+            if (type.getProperty(property.getName()) != property) {
+                throw new IllegalArgumentException("Property " + property.getName() + " doesn't belong to type " + type.getName());
+            }
+        }
+
+        return type.copyProperties(type.cast(source), target, properties);
+    }
+
+    private static <E extends AbstractElement> ElementType<E> getCopyType(AbstractElement source, E target) {
+        ElementType<E> type = getType(target);
+        if (type == null) {
+            throw new IllegalArgumentException("Unknown element class: " + target.getClass().getName());
+        }
+
+        if (source.getClass() != target.getClass()) {
+            throw new IllegalArgumentException("Element " + target.getUuid() + " of type " + type.getName()
+                                               + " can't be updated from type " + source.getClass().getSimpleName());
+        }
+
+        return type;
+    }
+}
@@ -0,0 +1,37 @@
+/*
+* @author  Oleg Varaksin (ovaraksin@googlemail.com)
+* $$Id: IntProperty.java 90 2011-09-27 15:24:29Z ovaraksin@gmail.com $$
+*/
+
+package com.googlecode.whiteboard.model.property;
+
+import com.googlecode.whiteboard.model.base.AbstractElement;
+
+/**
+ * Property of type <code>int</code>.
+ *
+ * @param <E> element type declaring the property
+ * @author ova / last modified by $Author: ovaraksin@gmail.com $
+ * @version $Revision: 90 $
+ */
+public abstract class IntProperty<E extends AbstractElement> extends ElementProperty<E>
+{
+    public IntProperty(String name) {
+        super(name, Kind.INT);
+    }
+
+    public abstract int get(E element);
+
+    public abstract void set(E element, int value);
+
+    @Override
+    public boolean copy(E source, E target) {
+        int value = get(source);
+        if (get(target) == value) {
+            return false;
+        }
+
+        set(target, value);
+        return true;
+    }
+}
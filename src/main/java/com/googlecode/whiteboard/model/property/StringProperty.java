@@ -0,0 +1,38 @@
+/*
+* @author  Oleg Varaksin (ovaraksin@googlemail.com)
+* $$Id: StringProperty.java 90 2011-09-27 15:24:29Z ovaraksin@gmail.com $$
+*/
+
+package com.googlecode.whiteboard.model.property;
+
+import com.googlecode.whiteboard.model.base.AbstractElement;
+
+/**
+ * Property of type <code>String</code>.
+ *
+ * @param <E> element type declaring the property
+ * @author ova / last modified by $Author: ovaraksin@gmail.com $
+ * @version $Revision: 90 $
+ */
+public abstract class StringProperty<E extends AbstractElement> extends ElementProperty<E>
+{
+    public StringProperty(String name) {
+        super(name, Kind.STRING);
+    }
+
+    public abstract String get(E element);
+
+    public abstract void set(E element, String value);
+
+    @Override
+    public boolean copy(E source, E target) {
+        String value = get(source);
+        String oldValue = get(target);
+        if (value == null ? oldValue == null : value.equals(oldValue)) {
+            return false;
+        }
+
+        set(target, value);
+        return true;
+    }
+}
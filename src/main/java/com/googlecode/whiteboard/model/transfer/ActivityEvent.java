@@ -0,0 +1,142 @@
+/*
+* @author  Oleg Varaksin (ovaraksin@googlemail.com)
+* $$Id: ActivityEvent.java 90 2011-09-27 15:24:29Z ovaraksin@gmail.com $$
+*/
+
+package com.googlecode.whiteboard.model.transfer;
+
+/**
+ * Activity of a user in a whiteboard, e.g. "User X has moved Circle to position (10,20)". Events are broadcasted
+ * with changes and kept in the activity log of the whiteboard. Clients format them for the event monitoring pane.
+ * Properties which don't apply to an action are null.
+ *
+ * @author ova / last modified by $Author: ovaraksin@gmail.com $
+ * @version $Revision: 90 $
+ */
+public class ActivityEvent
+{
+    private ClientAction action;
+    private String user;
+    private long timestamp;
+    private String elementType;
+    private String elementId;
+    private String text;
+    private Integer x;
+    private Integer y;
+    private Integer width;
+    private Integer height;
+    private Integer count;
+
+    public ActivityEvent(ClientAction action, String user, long timestamp) {
+        this.action = action;
+        this.user = user;
+        this.timestamp = timestamp;
+    }
+
+    public ClientAction getAction() {
+        return action;
+    }
+
+    public String getUser() {
+        return user;
+    }
+
+    /**
+     * Gets the time of the activity as sent by the client (GMT).
+     *
+     * @return long timestamp in milliseconds
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Gets the class name of the element, e.g. "Circle" or "FreeLine".
+     *
+     * @return String element type or null if the activity concerns the whole whiteboard
+     */
+    public String getElementType() {
+        return elementType;
+    }
+
+    public void setElementType(String elementType) {
+        this.elementType = elementType;
+    }
+
+    public String getElementId() {
+        return elementId;
+    }
+
+    public void setElementId(String elementId) {
+        this.elementId = elementId;
+    }
+
+    /**
+     * Gets the content of a text element.
+     *
+     * @return String text or null for other elements
+     */
+    public String getText() {
+        return text;
+    }
+
+    public void setText(String text) {
+        this.text = text;
+    }
+
+    /**
+     * Gets the x-coordinate of a positionable element.
+     *
+     * @return Integer x-coordinate or null for lines and activities without element
+     */
+    public Integer getX() {
+        return x;
+    }
+
+    public void setX(Integer x) {
+        this.x = x;
+    }
+
+    public Integer getY() {
+        return y;
+    }
+
+    public void setY(Integer y) {
+        this.y = y;
+    }
+
+    /**
+     * Gets the new width of a resized whiteboard.
+     *
+     * @return Integer width or null for other activities
+     */
+    public Integer getWidth() {
+        return width;
+    }
+
+    public void setWidth(Integer width) {
+        this.width = width;
+    }
+
+    public Integer getHeight() {
+        return height;
+    }
+
+    public void setHeight(Integer height) {
+        this.height = height;
+    }
+
+    /**
+     * Gets the number of elements affected by a group operation. The x- and y-coordinates of a group move
+     * are the offsets of the move.
+     *
+     * @return Integer number of elements or null for activities on single elements
+     */
+    public Integer getCount() {
+        return count;
+    }
+
+    public void setCount(Integer count) {
+        this.count = count;
+    }
+}
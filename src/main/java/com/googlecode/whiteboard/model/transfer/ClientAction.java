@@ -6,14 +6,16 @@
 package com.googlecode.whiteboard.model.transfer;
 
 /**
- * Enum for client actions.
+ * Enum for client actions. Group actions apply to all elements whose uuids are passed comma separated in the parameter
+ * "uuids". New actions have to be appended because stored changes refer to actions by their ordinals.
  *
  * @author ova / last modified by $Author: ovaraksin@gmail.com $
  * @version $Revision: 90 $
  */
 public enum ClientAction
 {
-    Join("join"), Create("create"), Update("update"), Remove("remove"), Clone("clone"), Move("move"), BringToFront("toFront"), BringToBack("toBack"), Clear("clear"), Resize("resize");
+    Join("join"), Create("create"), Update("update"), Remove("remove"), Clone("clone"), Move("move"), BringToFront("toFront"), BringToBack("toBack"), Clear("clear"), Resize("resize"), Resync("resync"),
+    GroupMove("groupMove"), GroupRemove("groupRemove"), GroupUpdate("groupUpdate");
 
     private String action;
 
@@ -21,8 +21,13 @@ public class ClientChangedData
     private ClientAction action;
     private String whiteboardId;
     private AbstractElement element;
+    private ElementDelta delta;
     private String user;
     private long timestamp;
+    private String operationId;
+    private long clock;
+    // set by the server, not sent by clients
+    private transient String senderId;
     private Map<String, String> parameters = new HashMap<String, String>();
 
     public ClientAction getAction() {
@@ -49,6 +54,19 @@ public class ClientChangedData
         this.element = element;
     }
 
+    /**
+     * Gets changed properties of an element. Only used for updates instead of the whole element.
+     *
+     * @return ElementDelta changed properties or null
+     */
+    public ElementDelta getDelta() {
+        return delta;
+    }
+
+    public void setDelta(ElementDelta delta) {
+        this.delta = delta;
+    }
+
     public String getUser() {
         return user;
     }
@@ -65,6 +83,47 @@ public class ClientChangedData
         this.timestamp = timestamp;
     }
 
+    /**
+     * Gets the id of this change generated by the client. A retried change is sent with the same id.
+     *
+     * @return String operation id or null if the client doesn't send ids
+     */
+    public String getOperationId() {
+        return operationId;
+    }
+
+    public void setOperationId(String operationId) {
+        this.operationId = operationId;
+    }
+
+    /**
+     * Gets the Lamport clock of this change. Clients send the last sequence number they have seen plus one, so that
+     * changes made without knowledge of each other have equal clocks. Changed properties get this clock as version.
+     *
+     * @return long clock or 0 if the client doesn't send clocks
+     */
+    public long getClock() {
+        return clock;
+    }
+
+    public void setClock(long clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Gets the id of the subscriber which has sent this change. It's taken from the publish request, so that a client
+     * can't write in the name of another one. Concurrent changes with equal clocks are ordered by sender ids.
+     *
+     * @return String sender id or null if the change has been recorded without sender
+     */
+    public String getSenderId() {
+        return senderId;
+    }
+
+    public void setSenderId(String senderId) {
+        this.senderId = senderId;
+    }
+
     public Map<String, String> getParameters() {
         return parameters;
     }
@@ -0,0 +1,70 @@
+/*
+* @author  Oleg Varaksin (ovaraksin@googlemail.com)
+* $$Id: ElementDelta.java 90 2011-09-27 15:24:29Z ovaraksin@gmail.com $$
+*/
+
+package com.googlecode.whiteboard.model.transfer;
+
+import com.googlecode.whiteboard.model.base.AbstractElement;
+import com.googlecode.whiteboard.model.property.ElementProperty;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Changed properties of one element. Values are taken from the given element, only listed properties are transfered.
+ * JSON has the same structure as for a whole element, but contains only changed properties and uuid, e.g.
+ * <pre>
+ * {"type":"FreeLine","properties":{"color":"#FF0000","uuid":"..."}}
+ * </pre>
+ *
+ * @author ova / last modified by $Author: ovaraksin@gmail.com $
+ * @version $Revision: 90 $
+ */
+public class ElementDelta
+{
+    private AbstractElement element;
+    private List<ElementProperty<?>> properties;
+
+    public ElementDelta(AbstractElement element, List<? extends ElementProperty<?>> properties) {
+        this.element = element;
+        this.properties = Collections.unmodifiableList(new ArrayList<ElementProperty<?>>(properties));
+    }
+
+    /**
+     * Gets element holding values of changed properties.
+     *
+     * @return AbstractElement element
+     */
+    public AbstractElement getElement() {
+        return element;
+    }
+
+    /**
+     * Gets changed properties (without uuid).
+     *
+     * @return List properties
+     */
+    public List<ElementProperty<?>> getProperties() {
+        return properties;
+    }
+
+    /**
+     * Merges this delta with a later delta of the same element. Both deltas should hold values in the same element
+     * instance (e.g. the stored element of a whiteboard).
+     *
+     * @param later later delta
+     * @return ElementDelta delta with changed properties of both deltas and values of the later one
+     */
+    public ElementDelta merge(ElementDelta later) {
+        List<ElementProperty<?>> merged = new ArrayList<ElementProperty<?>>(properties);
+        for (ElementProperty<?> property : later.getProperties()) {
+            if (!merged.contains(property)) {
+                merged.add(property);
+            }
+        }
+
+        return new ElementDelta(later.getElement(), merged);
+    }
+}
@@ -11,7 +11,9 @@ import java.util.ArrayList;
 import java.util.List;
 
 /**
- * Container for current whiteboard elements passing to new joint user.
+ * Container for current whiteboard elements passing to new joint user. Elements are passed in chunks, the first one
+ * contains elements in the viewport of the user, further chunks are requested with the cursor of the previous chunk.
+ * Z-keys tell where elements of further chunks have to be inserted between elements already drawn.
  *
  * @author ova / last modified by $Author: ovaraksin@gmail.com $
  * @version $Revision: 90 $
@@ -19,7 +21,10 @@ import java.util.List;
 public class RestoredWhiteboard
 {
     private List<AbstractElement> elements = new ArrayList<AbstractElement>();
+    private List<Double> zKeys = new ArrayList<Double>();
     private String message;
+    private long sequence;
+    private String cursor;
 
     public List<AbstractElement> getElements() {
         return elements;
@@ -29,8 +34,19 @@ public class RestoredWhiteboard
         this.elements = elements;
     }
 
-    public void addElement(AbstractElement element) {
+    /**
+     * Adds an element with its z-key.
+     *
+     * @param element element
+     * @param zKey    z-key of the element
+     */
+    public void addElement(AbstractElement element, double zKey) {
         this.elements.add(element);
+        this.zKeys.add(zKey);
+    }
+
+    public List<Double> getZKeys() {
+        return zKeys;
     }
 
     public String getMessage() {
@@ -40,4 +56,25 @@ public class RestoredWhiteboard
     public void setMessage(String message) {
         this.message = message;
     }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    /**
+     * Gets the cursor for the next chunk.
+     *
+     * @return String cursor or null if this is the last chunk
+     */
+    public String getCursor() {
+        return cursor;
+    }
+
+    public void setCursor(String cursor) {
+        this.cursor = cursor;
+    }
 }
@@ -20,8 +20,10 @@ public class ServerChangedData
 {
     private ClientAction action;
     private AbstractElement element;
-    private String message;
+    private ElementDelta delta;
+    private ActivityEvent event;
     private long timestamp;
+    private long sequence;
     private Map<String, String> parameters;
 
     public ClientAction getAction() {
@@ -40,12 +42,30 @@ public class ServerChangedData
         this.element = element;
     }
 
-    public String getMessage() {
-        return message;
+    /**
+     * Gets changed properties of an element. Only used for updates instead of the whole element.
+     *
+     * @return ElementDelta changed properties or null
+     */
+    public ElementDelta getDelta() {
+        return delta;
     }
 
-    public void setMessage(String message) {
-        this.message = message;
+    public void setDelta(ElementDelta delta) {
+        this.delta = delta;
+    }
+
+    /**
+     * Gets the activity which caused this change. Clients show it in the event monitoring pane.
+     *
+     * @return ActivityEvent event or null
+     */
+    public ActivityEvent getEvent() {
+        return event;
+    }
+
+    public void setEvent(ActivityEvent event) {
+        this.event = event;
     }
 
     public long getTimestamp() {
@@ -71,4 +91,12 @@ public class ServerChangedData
 
         this.parameters.put(key, value);
     }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
 }
@@ -5,6 +5,8 @@
 
 package com.googlecode.whiteboard.model.transfer;
 
+import com.googlecode.whiteboard.model.base.LinePath;
+
 /**
  * Container keeping only line path.
  *
@@ -13,18 +15,18 @@ package com.googlecode.whiteboard.model.transfer;
  */
 public class TruncatedLine extends TruncatedElement
 {
-    private String path;
+    private LinePath path;
 
-    public TruncatedLine(String uuid, String className, String path) {
+    public TruncatedLine(String uuid, String className, LinePath path) {
         super(uuid, className);
         this.path = path;
     }
 
     public String getPath() {
-        return path;
+        return path != null ? path.toString() : null;
     }
 
     public void setPath(String path) {
-        this.path = path;
+        this.path = LinePath.valueOf(path);
     }
 }
@@ -0,0 +1,68 @@
+/*
+* @author  Oleg Varaksin (ovaraksin@googlemail.com)
+* $$Id: EncodedFrame.java 90 2011-09-27 15:24:29Z ovaraksin@gmail.com $$
+*/
+
+package com.googlecode.whiteboard.pubsub;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Immutable broadcast message which is encoded once and shared by all subscribers. The JSON message is wrapped into
+ * the same <code>parent.callback('...')</code> frame as JavascriptClientFilter does and kept as UTF-8 bytes, so that
+ * writing it to a suspended resource (see {@link EncodedFrameWriter}) doesn't need any string copy or re-encoding.
+ * JSON produced by Gson escapes apostrophes, hence the message can be framed without further escaping.
+ *
+ * @author ova / last modified by $Author: ovaraksin@gmail.com $
+ * @version $Revision: 90 $
+ */
+public final class EncodedFrame
+{
+    public static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final AtomicLong SCRIPT_TOKEN = new AtomicLong();
+
+    private final String json;
+    private final byte[] bytes;
+
+    public EncodedFrame(String json) {
+        this.json = json;
+
+        StringBuilder sb = new StringBuilder(json.length() + 64);
+        sb.append("<script id='atmosphere_").append(SCRIPT_TOKEN.getAndIncrement()).append("'>\n");
+        sb.append("parent.callback('").append(json).append("');\n");
+        sb.append("</script>\n");
+        this.bytes = sb.toString().getBytes(UTF8);
+    }
+
+    /**
+     * Gets the unframed JSON message.
+     *
+     * @return String JSON
+     */
+    public String getJson() {
+        return json;
+    }
+
+    public int getLength() {
+        return bytes.length;
+    }
+
+    /**
+     * Writes the framed message to the given stream.
+     *
+     * @param out output stream of a suspended resource
+     * @throws IOException if the message could not be written
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(bytes);
+    }
+
+    @Override
+    public String toString() {
+        return json;
+    }
+}
@@ -0,0 +1,39 @@
+/*
+* @author  Oleg Varaksin (ovaraksin@googlemail.com)
+* $$Id: EncodedFrameWriter.java 90 2011-09-27 15:24:29Z ovaraksin@gmail.com $$
+*/
+
+package com.googlecode.whiteboard.pubsub;
+
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.MultivaluedMap;
+import javax.ws.rs.ext.MessageBodyWriter;
+import javax.ws.rs.ext.Provider;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+
+/**
+ * Jersey provider writing shared bytes of {@link EncodedFrame} to suspended resources as they are.
+ *
+ * @author ova / last modified by $Author: ovaraksin@gmail.com $
+ * @version $Revision: 90 $
+ */
+@Provider
+public class EncodedFrameWriter implements MessageBodyWriter<EncodedFrame>
+{
+    public boolean isWriteable(Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return EncodedFrame.class.isAssignableFrom(type);
+    }
+
+    public long getSize(EncodedFrame frame, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType) {
+        return frame.getLength();
+    }
+
+    public void writeTo(EncodedFrame frame, Class<?> type, Type genericType, Annotation[] annotations, MediaType mediaType,
+                        MultivaluedMap<String, Object> httpHeaders, OutputStream entityStream) throws IOException, WebApplicationException {
+        frame.writeTo(entityStream);
+    }
+}
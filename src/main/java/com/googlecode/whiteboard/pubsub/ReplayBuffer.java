@@ -0,0 +1,101 @@
+/*
+* @author  Oleg Varaksin (ovaraksin@googlemail.com)
+* $$Id: ReplayBuffer.java 90 2011-09-27 15:24:29Z ovaraksin@gmail.com $$
+*/
+
+package com.googlecode.whiteboard.pubsub;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bounded ring buffer of recent broadcasts of one whiteboard. Reconnecting subscribers get missed broadcasts
+ * replayed from this buffer. The buffer is not thread-safe and has to be accessed from the whiteboard mailbox.
+ *
+ * @author ova / last modified by $Author: ovaraksin@gmail.com $
+ * @version $Revision: 90 $
+ */
+public class ReplayBuffer
+{
+    private final Frame[] frames;
+    private int next;
+    private int count;
+
+    public ReplayBuffer(int capacity) {
+        frames = new Frame[Math.max(capacity, 1)];
+    }
+
+    /**
+     * Adds a broadcasted message. The oldest message gets lost if the buffer is full.
+     *
+     * @param firstSequence sequence number of the first change in the message
+     * @param lastSequence  sequence number of the last change in the message
+     * @param senderId      id of the sender the message was not sent to or null if it was sent to all subscribers
+     * @param message       broadcasted message
+     */
+    public void add(long firstSequence, long lastSequence, String senderId, EncodedFrame message) {
+        frames[next] = new Frame(firstSequence, lastSequence, senderId, message);
+        next = (next + 1) % frames.length;
+        if (count < frames.length) {
+            count++;
+        }
+    }
+
+    /**
+     * Checks whether all messages after the given sequence number can be replayed.
+     *
+     * @param sequence        last sequence number the subscriber has seen
+     * @param currentSequence last sequence number assigned by the whiteboard
+     * @return boolean true - no message after the given sequence number is lost, false - otherwise
+     */
+    public boolean canReplay(long sequence, long currentSequence) {
+        if (sequence >= currentSequence) {
+            return true;
+        }
+
+        if (count == 0) {
+            return false;
+        }
+
+        return oldest().firstSequence <= sequence + 1;
+    }
+
+    /**
+     * Gets all messages after the given sequence number which were not sent by the given sender.
+     *
+     * @param sequence last sequence number the subscriber has seen
+     * @param senderId id of the subscriber
+     * @return List messages ordered by sequence numbers
+     */
+    public List<EncodedFrame> getMessagesAfter(long sequence, String senderId) {
+        List<EncodedFrame> messages = new ArrayList<EncodedFrame>();
+        int start = (next - count + frames.length) % frames.length;
+        for (int i = 0; i < count; i++) {
+            Frame frame = frames[(start + i) % frames.length];
+            if (frame.lastSequence > sequence && (frame.senderId == null || !frame.senderId.equals(senderId))) {
+                messages.add(frame.message);
+            }
+        }
+
+        return messages;
+    }
+
+    private Frame oldest() {
+        return frames[(next - count + frames.length) % frames.length];
+    }
+
+    private static class Frame
+    {
+        private final long firstSequence;
+        private final long lastSequence;
+        private final String senderId;
+        private final EncodedFrame message;
+
+        Frame(long firstSequence, long lastSequence, String senderId, EncodedFrame message) {
+            this.firstSequence = firstSequence;
+            this.lastSequence = lastSequence;
+            this.senderId = senderId;
+            this.message = message;
+        }
+    }
+}
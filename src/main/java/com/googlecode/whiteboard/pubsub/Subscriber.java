@@ -0,0 +1,182 @@
+/*
+* @author  Oleg Varaksin (ovaraksin@googlemail.com)
+* $$Id: Subscriber.java 90 2011-09-27 15:24:29Z ovaraksin@gmail.com $$
+*/
+
+package com.googlecode.whiteboard.pubsub;
+
+import com.googlecode.whiteboard.model.transfer.ClientAction;
+import com.googlecode.whiteboard.model.transfer.ServerChangedData;
+import org.atmosphere.cpr.AtmosphereResource;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Suspended resource of one subscriber with accounting of outbound messages. Messages handed over to the broadcaster
+ * but not written yet are counted as outstanding. A subscriber having too many outstanding messages is lagging:
+ * it doesn't get shared broadcasts anymore, changes for it are kept in a backlog where moves and updates of the same
+ * element are collapsed (changed properties of updates are merged). The backlog is sent as one batch when the subscriber
+ * has caught up.
+ *
+ * @author ova / last modified by $Author: ovaraksin@gmail.com $
+ * @version $Revision: 90 $
+ */
+public class Subscriber
+{
+    private final String senderId;
+    private final AtmosphereResource<?, ?> resource;
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final Map<String, ServerChangedData> backlog = new LinkedHashMap<String, ServerChangedData>();
+    private volatile boolean lagging;
+
+    public Subscriber(String senderId, AtmosphereResource<?, ?> resource) {
+        this.senderId = senderId;
+        this.resource = resource;
+    }
+
+    public String getSenderId() {
+        return senderId;
+    }
+
+    public AtmosphereResource<?, ?> getResource() {
+        return resource;
+    }
+
+    public boolean isLagging() {
+        return lagging;
+    }
+
+    public int getOutstanding() {
+        return outstanding.get();
+    }
+
+    /**
+     * Counts a message handed over to the broadcaster for this subscriber.
+     *
+     * @param lagThreshold max. number of outstanding messages before the subscriber is considered as lagging
+     * @return boolean true - subscriber has started to lag, false - otherwise
+     */
+    boolean queued(int lagThreshold) {
+        if (outstanding.incrementAndGet() > lagThreshold && !lagging) {
+            synchronized (this) {
+                if (!lagging) {
+                    lagging = true;
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Counts a message written to this subscriber.
+     *
+     * @return boolean true - subscriber has caught up and its backlog should be sent, false - otherwise
+     */
+    boolean written() {
+        int count = outstanding.decrementAndGet();
+        if (count < 0) {
+            // writes which were not counted (e.g. comments or replays)
+            outstanding.compareAndSet(count, 0);
+            count = 0;
+        }
+
+        return count == 0 && lagging;
+    }
+
+    /**
+     * Adds changes to the backlog of the lagging subscriber. Moves and updates of the same element are collapsed.
+     *
+     * @param changes changes to be added
+     * @return int current size of the backlog or -1 if the subscriber is not lagging anymore
+     */
+    synchronized int addToBacklog(List<ServerChangedData> changes) {
+        if (!lagging) {
+            return -1;
+        }
+
+        for (ServerChangedData scd : changes) {
+            String key;
+            if (scd.getAction() == ClientAction.Move && scd.getElement() != null) {
+                key = scd.getAction().getAction() + ":" + scd.getElement().getUuid();
+            } else if (scd.getAction() == ClientAction.Update && scd.getDelta() != null) {
+                key = scd.getAction().getAction() + ":" + scd.getDelta().getElement().getUuid();
+            } else {
+                key = String.valueOf(scd.getSequence());
+                if (scd.getParameters() != null && scd.getParameters().get("uuids") != null) {
+                    // later changes of elements in a group operation must not be collapsed with earlier ones
+                    detachFromBacklog(scd.getParameters().get("uuids").split(","));
+                }
+            }
+
+            // the last change of the same element wins and is moved to the end, changed properties are merged
+            ServerChangedData previous = backlog.remove(key);
+            if (previous != null && previous.getDelta() != null && scd.getDelta() != null) {
+                scd = mergeUpdates(previous, scd);
+            }
+
+            backlog.put(key, scd);
+        }
+
+        return backlog.size();
+    }
+
+    private void detachFromBacklog(String[] uuids) {
+        Set<String> keys = new HashSet<String>();
+        for (String uuid : uuids) {
+            keys.add(ClientAction.Move.getAction() + ":" + uuid);
+            keys.add(ClientAction.Update.getAction() + ":" + uuid);
+        }
+
+        // changes are re-keyed by their sequence numbers in place, the order of sequence numbers must be kept
+        Map<String, ServerChangedData> detached = new LinkedHashMap<String, ServerChangedData>();
+        for (Map.Entry<String, ServerChangedData> entry : backlog.entrySet()) {
+            String key = (keys.contains(entry.getKey()) ? String.valueOf(entry.getValue().getSequence()) : entry.getKey());
+            detached.put(key, entry.getValue());
+        }
+
+        backlog.clear();
+        backlog.putAll(detached);
+    }
+
+    private ServerChangedData mergeUpdates(ServerChangedData previous, ServerChangedData later) {
+        // changes are shared with other subscribers and can't be modified
+        ServerChangedData merged = new ServerChangedData();
+        merged.setAction(later.getAction());
+        merged.setDelta(previous.getDelta().merge(later.getDelta()));
+        merged.setEvent(later.getEvent());
+        merged.setTimestamp(later.getTimestamp());
+        merged.setSequence(later.getSequence());
+        merged.setParameters(later.getParameters());
+
+        return merged;
+    }
+
+    /**
+     * Takes all changes from the backlog. The subscriber keeps lagging, changes broadcasted afterwards still go
+     * to the backlog until {@link #stopLagging()} is called.
+     *
+     * @return List changes in the backlog (can be empty)
+     */
+    synchronized List<ServerChangedData> takeBacklog() {
+        List<ServerChangedData> changes = new ArrayList<ServerChangedData>(backlog.values());
+        backlog.clear();
+
+        return changes;
+    }
+
+    /**
+     * Switches back to shared broadcasts. The backlog has to be taken and sent before while holding the lock
+     * of this subscriber, so that no shared broadcast overtakes it.
+     */
+    synchronized void stopLagging() {
+        lagging = false;
+    }
+}
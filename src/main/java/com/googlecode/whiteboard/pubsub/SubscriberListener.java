@@ -0,0 +1,77 @@
+/*
+* @author  Oleg Varaksin (ovaraksin@googlemail.com)
+* $$Id: SubscriberListener.java 90 2011-09-27 15:24:29Z ovaraksin@gmail.com $$
+*/
+
+package com.googlecode.whiteboard.pubsub;
+
+import com.googlecode.whiteboard.model.Whiteboard;
+import org.atmosphere.cpr.AtmosphereResource;
+import org.atmosphere.cpr.AtmosphereResourceEvent;
+import org.atmosphere.cpr.AtmosphereResourceEventListener;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Listener keeping the subscribers registry of {@link WhiteboardChannel} up to date. A subscriber reconnecting with
+ * the last seen sequence number gets missed changes replayed. Written messages are reported to the channel in order to
+ * detect lagging subscribers.
+ *
+ * @author ova / last modified by $Author: ovaraksin@gmail.com $
+ * @version $Revision: 90 $
+ */
+public class SubscriberListener implements AtmosphereResourceEventListener
+{
+    private final WhiteboardChannel channel;
+    private final String senderId;
+    private final Whiteboard whiteboard;
+    private final long sequence;
+
+    /**
+     * Creates a new listener.
+     *
+     * @param channel    channel of the whiteboard
+     * @param senderId   id of the subscriber
+     * @param whiteboard subscribed whiteboard
+     * @param sequence   last sequence number the subscriber has seen or -1 if nothing should be replayed
+     */
+    public SubscriberListener(WhiteboardChannel channel, String senderId, Whiteboard whiteboard, long sequence) {
+        this.channel = channel;
+        this.senderId = senderId;
+        this.whiteboard = whiteboard;
+        this.sequence = sequence;
+    }
+
+    public void onSuspend(AtmosphereResourceEvent<HttpServletRequest, HttpServletResponse> event) {
+        final AtmosphereResource<?, ?> resource = event.getResource();
+        if (whiteboard == null || sequence < 0) {
+            channel.register(senderId, resource);
+            return;
+        }
+
+        // replay in the mailbox, so that no change gets lost or doubled between replay and registration
+        whiteboard.getMailbox().execute(new Runnable()
+        {
+            public void run() {
+                channel.resume(whiteboard, senderId, resource, sequence);
+            }
+        });
+    }
+
+    public void onResume(AtmosphereResourceEvent<HttpServletRequest, HttpServletResponse> event) {
+        channel.unregister(senderId, event.getResource());
+    }
+
+    public void onDisconnect(AtmosphereResourceEvent<HttpServletRequest, HttpServletResponse> event) {
+        channel.unregister(senderId, event.getResource());
+    }
+
+    public void onBroadcast(AtmosphereResourceEvent<HttpServletRequest, HttpServletResponse> event) {
+        channel.written(senderId, event.getResource());
+    }
+
+    public void onThrowable(AtmosphereResourceEvent<HttpServletRequest, HttpServletResponse> event) {
+        channel.unregister(senderId, event.getResource());
+    }
+}
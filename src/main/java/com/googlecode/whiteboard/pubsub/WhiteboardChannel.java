@@ -0,0 +1,493 @@
+/*
+* @author  Oleg Varaksin (ovaraksin@googlemail.com)
+* $$Id: WhiteboardChannel.java 90 2011-09-27 15:24:29Z ovaraksin@gmail.com $$
+*/
+
+package com.googlecode.whiteboard.pubsub;
+
+import com.google.gson.reflect.TypeToken;
+import com.googlecode.whiteboard.controller.WhiteboardsManager;
+import com.googlecode.whiteboard.json.JsonConverter;
+import com.googlecode.whiteboard.model.Whiteboard;
+import com.googlecode.whiteboard.model.transfer.ClientAction;
+import com.googlecode.whiteboard.model.transfer.ServerChangedData;
+import org.atmosphere.cpr.AtmosphereResource;
+import org.atmosphere.cpr.Broadcaster;
+
+import java.lang.reflect.Type;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Channel of one whiteboard (topic). The channel keeps a registry of suspended resources by sender id which is
+ * maintained by {@link SubscriberListener} on suspend, resume and disconnect. Registered subscribers are additionally
+ * kept in an immutable array which is replaced on every register and unregister (copy-on-write). A broadcast hands
+ * the array it has seen over to the broadcaster as a read-only view without the sender, so that resources aren't copied
+ * per message and subscribers which come or go afterwards don't change recipients of messages already broadcasted.
+ * <p/>
+ * Moves are coalesced within a configurable tick (see {@link WhiteboardsManager#getMoveCoalescingTick()}): only the last
+ * move per element is kept and all kept moves are broadcasted as one batch (JSON array). Methods publishing changes
+ * have to be called from the mailbox of the whiteboard.
+ * <p/>
+ * Every broadcasted change gets a sequence number of the whiteboard. Recent broadcasts are kept in a {@link ReplayBuffer},
+ * so that a reconnecting subscriber can resume from the last sequence number it has seen.
+ * <p/>
+ * Every message is serialized and encoded once into an {@link EncodedFrame} which is shared by all subscribers.
+ * <p/>
+ * Messages queued for every subscriber are counted (see {@link Subscriber}). A subscriber falling behind
+ * {@link WhiteboardsManager#getLagThreshold()} is excluded from shared broadcasts and gets collapsed changes as one batch
+ * when it has caught up, so that healthy subscribers don't wait for it. A subscriber collecting more changes than
+ * {@link WhiteboardsManager#getDropThreshold()} is dropped and has to resync the whiteboard.
+ *
+ * @author ova / last modified by $Author: ovaraksin@gmail.com $
+ * @version $Revision: 90 $
+ */
+public class WhiteboardChannel
+{
+    private static final Logger LOG = Logger.getLogger(WhiteboardChannel.class.getName());
+    private static final ConcurrentMap<String, WhiteboardChannel> CHANNELS = new ConcurrentHashMap<String, WhiteboardChannel>();
+    private static final Type BATCH_TYPE = new TypeToken<List<ServerChangedData>>()
+    {
+    }.getType();
+
+    private final Broadcaster topic;
+    private final WhiteboardsManager manager;
+    private final ConcurrentMap<String, Subscriber> subscribers = new ConcurrentHashMap<String, Subscriber>();
+    private final Set<Subscriber> laggingSubscribers = Collections.newSetFromMap(new ConcurrentHashMap<Subscriber, Boolean>());
+    // snapshot of registered subscribers, replaced under the lock on register and unregister
+    private volatile Subscriber[] recipients = new Subscriber[0];
+    private final Object registryLock = new Object();
+
+    // pending moves: sender id -> (element uuid -> last move), accessed only from the mailbox
+    private final Map<String, Map<String, ServerChangedData>> pendingMoves = new LinkedHashMap<String, Map<String, ServerChangedData>>();
+    private boolean flushScheduled;
+    // recent broadcasts, accessed only from the mailbox
+    private final ReplayBuffer replayBuffer;
+
+    private WhiteboardChannel(Broadcaster topic, WhiteboardsManager manager) {
+        this.topic = topic;
+        this.manager = manager;
+        this.replayBuffer = new ReplayBuffer(manager.getReplayBufferSize());
+    }
+
+    /**
+     * Gets the channel for the given topic. The channel is created if it doesn't exist yet.
+     *
+     * @param topic   Atmosphere's broadcaster
+     * @param manager whiteboards manager
+     * @return WhiteboardChannel channel
+     */
+    public static WhiteboardChannel get(Broadcaster topic, WhiteboardsManager manager) {
+        WhiteboardChannel channel = CHANNELS.get(topic.getID());
+        if (channel == null) {
+            WhiteboardChannel newChannel = new WhiteboardChannel(topic, manager);
+            channel = CHANNELS.putIfAbsent(topic.getID(), newChannel);
+            if (channel == null) {
+                channel = newChannel;
+            }
+        }
+
+        return channel;
+    }
+
+    /**
+     * Checks whether the whiteboard with the given id has connected subscribers.
+     *
+     * @param whiteboardId whiteboard id (topic)
+     * @return boolean true if there are subscribers, false otherwise
+     */
+    public static boolean hasSubscribers(String whiteboardId) {
+        WhiteboardChannel channel = CHANNELS.get(whiteboardId);
+        return channel != null && !channel.subscribers.isEmpty();
+    }
+
+    /**
+     * Broadcasts pending moves of the given whiteboard, e.g. before the whiteboard is saved with its current sequence
+     * number. This method has to be called from the whiteboard mailbox.
+     *
+     * @param whiteboard whiteboard
+     */
+    public static void flush(Whiteboard whiteboard) {
+        WhiteboardChannel channel = CHANNELS.get(whiteboard.getUuid());
+        if (channel != null) {
+            channel.flushMoves(whiteboard);
+        }
+    }
+
+    /**
+     * Removes the channel of an evicted whiteboard. This method has to be called from the whiteboard mailbox.
+     *
+     * @param whiteboardId whiteboard id (topic)
+     */
+    public static void remove(String whiteboardId) {
+        CHANNELS.remove(whiteboardId);
+    }
+
+    public Broadcaster getTopic() {
+        return topic;
+    }
+
+    public Subscriber register(String senderId, AtmosphereResource<?, ?> resource) {
+        Subscriber subscriber = new Subscriber(senderId, resource);
+        synchronized (registryLock) {
+            Subscriber previous = subscribers.put(senderId, subscriber);
+            if (previous != null) {
+                laggingSubscribers.remove(previous);
+            }
+
+            updateRecipients();
+        }
+
+        return subscriber;
+    }
+
+    public void unregister(String senderId, AtmosphereResource<?, ?> resource) {
+        // remove only if the sender has not been suspended again in the meantime (long-polling)
+        Subscriber subscriber = subscribers.get(senderId);
+        if (subscriber != null && subscriber.getResource() == resource) {
+            remove(subscriber);
+        }
+    }
+
+    private void remove(Subscriber subscriber) {
+        synchronized (registryLock) {
+            if (subscribers.remove(subscriber.getSenderId(), subscriber)) {
+                updateRecipients();
+            }
+
+            laggingSubscribers.remove(subscriber);
+        }
+    }
+
+    /**
+     * Replaces the snapshot of registered subscribers. This method has to be called under the registry lock.
+     */
+    private void updateRecipients() {
+        recipients = subscribers.values().toArray(new Subscriber[subscribers.size()]);
+    }
+
+    /**
+     * Counts a message written to the given subscriber. A lagging subscriber which has caught up gets its backlog.
+     *
+     * @param senderId id of the subscriber
+     * @param resource suspended resource of the subscriber
+     */
+    public void written(String senderId, AtmosphereResource<?, ?> resource) {
+        Subscriber subscriber = subscribers.get(senderId);
+        if (subscriber != null && subscriber.getResource() == resource && subscriber.written()) {
+            catchUp(subscriber);
+        }
+    }
+
+    /**
+     * Registers a (re)connected subscriber and sends all changes it has missed since the given sequence number as one batch.
+     * If missed changes are not available anymore, the subscriber gets a "resync" message in order to reload the whiteboard.
+     * This method has to be called from the whiteboard mailbox.
+     *
+     * @param whiteboard whiteboard of this channel
+     * @param senderId   id of the subscriber
+     * @param resource   suspended resource of the subscriber
+     * @param sequence   last sequence number the subscriber has seen
+     */
+    public void resume(Whiteboard whiteboard, String senderId, AtmosphereResource<?, ?> resource, long sequence) {
+        Subscriber subscriber = register(senderId, resource);
+
+        // a subscriber being ahead of the whiteboard has seen changes of a whiteboard before recovery
+        if (sequence > whiteboard.getSequence() || !replayBuffer.canReplay(sequence, whiteboard.getSequence())) {
+            resync(subscriber, whiteboard.getSequence());
+
+            return;
+        }
+
+        List<EncodedFrame> messages = replayBuffer.getMessagesAfter(sequence, senderId);
+        if (messages.isEmpty()) {
+            return;
+        }
+
+        // one message for all missed changes (long-polling resumes after the first message)
+        StringBuilder batch = new StringBuilder("[");
+        for (EncodedFrame message : messages) {
+            String json = message.getJson();
+            if (batch.length() > 1) {
+                batch.append(',');
+            }
+
+            if (json.startsWith("[")) {
+                batch.append(json, 1, json.length() - 1);
+            } else {
+                batch.append(json);
+            }
+        }
+
+        batch.append(']');
+        send(subscriber, new EncodedFrame(batch.toString()));
+    }
+
+    public AtmosphereResource<?, ?> getSubscriber(String senderId) {
+        Subscriber subscriber = subscribers.get(senderId);
+        return subscriber != null ? subscriber.getResource() : null;
+    }
+
+    public int getSubscribersCount() {
+        return subscribers.size();
+    }
+
+    /**
+     * Publishes changes of the given whiteboard to all subscribers except sender. Moves are coalesced, all other
+     * changes are broadcasted immediately after pending moves. This method has to be called from the whiteboard mailbox.
+     *
+     * @param whiteboard whiteboard the changes belong to
+     * @param scd        changes to be published
+     * @param senderId   id of the sender
+     */
+    public void publish(final Whiteboard whiteboard, ServerChangedData scd, String senderId) {
+        long tick = manager.getMoveCoalescingTick();
+        if (scd.getAction() != ClientAction.Move || tick <= 0) {
+            // keep the order: moves received before have to be broadcasted first
+            flushMoves(whiteboard);
+
+            long sequence = whiteboard.nextSequence();
+            scd.setSequence(sequence);
+            EncodedFrame message = new EncodedFrame(JsonConverter.getGson().toJson(scd));
+            broadcast(whiteboard, Collections.singletonList(scd), message, senderId);
+            replayBuffer.add(sequence, sequence, senderId, message);
+
+            return;
+        }
+
+        Map<String, ServerChangedData> moves = pendingMoves.get(senderId);
+        if (moves == null) {
+            moves = new LinkedHashMap<String, ServerChangedData>();
+            pendingMoves.put(senderId, moves);
+        }
+
+        // last move of the same element wins
+        moves.remove(scd.getElement().getUuid());
+        moves.put(scd.getElement().getUuid(), scd);
+
+        if (!flushScheduled) {
+            flushScheduled = true;
+            manager.getScheduler().schedule(new Runnable()
+            {
+                public void run() {
+                    whiteboard.getMailbox().execute(new Runnable()
+                    {
+                        public void run() {
+                            flushMoves(whiteboard);
+                        }
+                    });
+                }
+            }, tick, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Publishes a batch of changes of the given whiteboard to all subscribers except sender as one message. Pending
+     * moves are broadcasted before. This method has to be called from the whiteboard mailbox.
+     *
+     * @param whiteboard whiteboard the changes belong to
+     * @param batch      changes to be published in their order
+     * @param senderId   id of the sender or null if the changes should be published to all subscribers
+     */
+    public void publishBatch(Whiteboard whiteboard, List<ServerChangedData> batch, String senderId) {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        flushMoves(whiteboard);
+        broadcastBatch(whiteboard, batch, senderId);
+    }
+
+    /**
+     * Broadcasts all pending moves as one batch per sender. This method has to be called from the whiteboard mailbox.
+     *
+     * @param whiteboard whiteboard the moves belong to
+     */
+    public void flushMoves(Whiteboard whiteboard) {
+        flushScheduled = false;
+        if (pendingMoves.isEmpty()) {
+            return;
+        }
+
+        for (Map.Entry<String, Map<String, ServerChangedData>> entry : pendingMoves.entrySet()) {
+            broadcastBatch(whiteboard, new ArrayList<ServerChangedData>(entry.getValue().values()), entry.getKey());
+        }
+
+        pendingMoves.clear();
+    }
+
+    /**
+     * Numbers the given changes and broadcasts them as one message (JSON array).
+     */
+    private void broadcastBatch(Whiteboard whiteboard, List<ServerChangedData> batch, String senderId) {
+        long firstSequence = whiteboard.getSequence() + 1;
+        for (ServerChangedData scd : batch) {
+            scd.setSequence(whiteboard.nextSequence());
+        }
+
+        EncodedFrame message = new EncodedFrame(JsonConverter.getGson().toJson(batch, BATCH_TYPE));
+        broadcast(whiteboard, batch, message, senderId);
+        replayBuffer.add(firstSequence, whiteboard.getSequence(), senderId, message);
+    }
+
+    /**
+     * Broadcasts the given message to all subscribers except sender. Lagging subscribers get the changes
+     * in their backlogs instead. This method has to be called from the whiteboard mailbox.
+     *
+     * @param whiteboard whiteboard the changes belong to
+     * @param changes    changes in the message
+     * @param message    message to be broadcasted
+     * @param senderId   id of the sender or null if message should be sent to all subscribers
+     */
+    private void broadcast(Whiteboard whiteboard, List<ServerChangedData> changes, EncodedFrame message, String senderId) {
+        Set<Subscriber> excluded = Collections.emptySet();
+        if (!laggingSubscribers.isEmpty()) {
+            excluded = new HashSet<Subscriber>();
+            for (Subscriber subscriber : laggingSubscribers) {
+                if (subscriber.getSenderId().equals(senderId)) {
+                    continue;
+                }
+
+                int size = subscriber.addToBacklog(changes);
+                if (size < 0) {
+                    // has caught up in the meantime
+                    continue;
+                }
+
+                excluded.add(subscriber);
+                if (size > manager.getDropThreshold()) {
+                    drop(subscriber, whiteboard.getSequence());
+                }
+            }
+        }
+
+        // the same snapshot is counted and broadcasted to
+        Subscriber[] snapshot = recipients;
+        int lagThreshold = manager.getLagThreshold();
+        for (Subscriber subscriber : snapshot) {
+            if (!subscriber.getSenderId().equals(senderId) && !excluded.contains(subscriber)
+                && subscriber.queued(lagThreshold)) {
+                // this message is still broadcasted, next changes go to the backlog
+                laggingSubscribers.add(subscriber);
+            }
+        }
+
+        topic.broadcast(message, new Recipients(snapshot, senderId, excluded));
+    }
+
+    /**
+     * Sends the backlog of a lagging subscriber which has caught up as one batch and switches back to shared broadcasts.
+     *
+     * @param subscriber subscriber
+     */
+    private void catchUp(Subscriber subscriber) {
+        // lock the subscriber, so that the batch is queued before any shared broadcast to it: a concurrent broadcast
+        // waits in addToBacklog and sees the subscriber lagging until the batch is sent
+        synchronized (subscriber) {
+            List<ServerChangedData> changes = subscriber.takeBacklog();
+            if (!changes.isEmpty()) {
+                send(subscriber, new EncodedFrame(JsonConverter.getGson().toJson(changes, BATCH_TYPE)));
+            }
+
+            subscriber.stopLagging();
+            laggingSubscribers.remove(subscriber);
+        }
+    }
+
+    /**
+     * Drops a subscriber which keeps lagging. The subscriber is told to reload the whiteboard.
+     *
+     * @param subscriber subscriber
+     * @param sequence   current sequence number of the whiteboard
+     */
+    private void drop(Subscriber subscriber, long sequence) {
+        LOG.warning("Subscriber " + subscriber.getSenderId() + " of the whiteboard " + topic.getID()
+                    + " keeps lagging and is dropped");
+
+        subscriber.takeBacklog();
+        remove(subscriber);
+        resync(subscriber, sequence);
+    }
+
+    private void resync(Subscriber subscriber, long sequence) {
+        ServerChangedData scd = new ServerChangedData();
+        scd.setAction(ClientAction.Resync);
+        scd.setSequence(sequence);
+        send(subscriber, new EncodedFrame(JsonConverter.getGson().toJson(scd)));
+    }
+
+    private void send(Subscriber subscriber, EncodedFrame message) {
+        subscriber.queued(Integer.MAX_VALUE);
+        topic.broadcast(message, subscriber.getResource());
+    }
+
+    /**
+     * Read-only view of the resources in a snapshot of registered subscribers except the resource of the sender
+     * and excluded subscribers. Broadcasts are delivered asynchronously, the snapshot is never modified, so that
+     * subscribers which come or go afterwards don't change recipients of the broadcast.
+     */
+    private static class Recipients extends AbstractSet<AtmosphereResource<?, ?>>
+    {
+        private final Subscriber[] snapshot;
+        private final String senderId;
+        private final Set<Subscriber> excluded;
+
+        Recipients(Subscriber[] snapshot, String senderId, Set<Subscriber> excluded) {
+            this.snapshot = snapshot;
+            this.senderId = senderId;
+            this.excluded = excluded;
+        }
+
+        @Override
+        public Iterator<AtmosphereResource<?, ?>> iterator() {
+            return new Iterator<AtmosphereResource<?, ?>>()
+            {
+                private int next = skip(0);
+
+                public boolean hasNext() {
+                    return next < snapshot.length;
+                }
+
+                public AtmosphereResource<?, ?> next() {
+                    if (next >= snapshot.length) {
+                        throw new NoSuchElementException();
+                    }
+
+                    AtmosphereResource<?, ?> resource = snapshot[next].getResource();
+                    next = skip(next + 1);
+
+                    return resource;
+                }
+
+                public void remove() {
+                    throw new UnsupportedOperationException("Recipients can not be modified");
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            int size = 0;
+            for (int i = skip(0); i < snapshot.length; i = skip(i + 1)) {
+                size++;
+            }
+
+            return size;
+        }
+
+        /**
+         * Gets the index of the first recipient starting at the given index.
+         */
+        private int skip(int index) {
+            while (index < snapshot.length && (snapshot[index].getSenderId().equals(senderId)
+                                               || excluded.contains(snapshot[index]))) {
+                index++;
+            }
+
+            return index;
+        }
+    }
+}
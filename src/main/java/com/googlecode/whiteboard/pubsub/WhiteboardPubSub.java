@@ -5,6 +5,12 @@
 
 package com.googlecode.whiteboard.pubsub;
 
+import com.google.gson.reflect.TypeToken;
+import com.googlecode.whiteboard.controller.WhiteboardsManager;
+import com.googlecode.whiteboard.json.JsonConverter;
+import com.googlecode.whiteboard.model.Whiteboard;
+import com.googlecode.whiteboard.model.transfer.ClientChangedData;
+import com.googlecode.whiteboard.model.transfer.ServerChangedData;
 import com.googlecode.whiteboard.utils.WhiteboardUtils;
 import org.atmosphere.annotation.Broadcast;
 import org.atmosphere.cpr.AtmosphereResource;
@@ -14,9 +20,12 @@ import org.atmosphere.jersey.SuspendResponse;
 import javax.servlet.http.HttpServletRequest;
 import javax.ws.rs.*;
 import javax.ws.rs.core.Context;
-import java.util.Collection;
-import java.util.HashSet;
-import java.util.Set;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * Class to handle subscribe() and publish() requests from clients. It uses Jersey annotations.
@@ -25,57 +34,151 @@ import java.util.Set;
  * @version $Revision: 90 $
  */
 @Path("/pubsub/{topic}/{sender}")
-@Produces("text/html;charset=ISO-8859-1")
+@Produces("text/html;charset=UTF-8")
 public class WhiteboardPubSub
 {
+    private static final Logger LOG = Logger.getLogger(WhiteboardPubSub.class.getName());
+
+    /**
+     * Request header with the last sequence number a (re)connecting subscriber has seen.
+     */
+    public static final String SEQUENCE_HEADER = "X-Whiteboard-Sequence";
+
+    private static final Type CHANGES_TYPE = new TypeToken<List<ClientChangedData>>()
+    {
+    }.getType();
+
     private
     @PathParam("topic")
     Broadcaster topic;
 
     @GET
-    public SuspendResponse<String> subscribe() {
-        return new SuspendResponse.SuspendResponseBuilder<String>().broadcaster(topic).outputComments(true).build();
+    public SuspendResponse<String> subscribe(@PathParam("sender") String sender, @HeaderParam(SEQUENCE_HEADER) @DefaultValue("-1") long sequence,
+                                             @Context AtmosphereResource resource) {
+        WhiteboardsManager manager = WhiteboardUtils.getWhiteboardsManager((HttpServletRequest) resource.getRequest());
+        WhiteboardChannel channel = WhiteboardChannel.get(topic, manager);
+        Whiteboard whiteboard = (manager != null ? manager.getWhiteboard(topic.getID()) : null);
+
+        return new SuspendResponse.SuspendResponseBuilder<String>().broadcaster(topic).outputComments(true).addListener(new SubscriberListener(channel, sender, whiteboard, sequence)).build();
     }
 
+    /**
+     * Publishes changes of a client. Either one change is sent in the form parameter "message" or an ordered batch
+     * of changes as JSON array in the form parameter "messages". A batch is applied in one task of the whiteboard
+     * mailbox, so that no other change comes in between, and broadcasted as one message. Changes which have lost
+     * against concurrent changes with greater clocks are corrected afterwards for all subscribers including sender.
+     */
     @POST
     @Broadcast
-    public String publish(@FormParam("message") String message, @PathParam("sender") String sender, @Context AtmosphereResource resource) {
-        // find current sender in all suspended resources and remove it from the notification
-        Collection<AtmosphereResource<?, ?>> ars = topic.getAtmosphereResources();
-        if (ars == null) {
+    public String publish(@FormParam("message") String message, @FormParam("messages") String messages,
+                          @PathParam("sender") final String sender, @Context AtmosphereResource resource) {
+        final WhiteboardsManager manager = WhiteboardUtils.getWhiteboardsManager((HttpServletRequest) resource.getRequest());
+        if (manager == null) {
             return "";
         }
 
-        Set<AtmosphereResource<?, ?>> arsSubset = new HashSet<AtmosphereResource<?, ?>>();
-        HttpServletRequest curReq = null;
-        for (AtmosphereResource ar : ars) {
-            Object req = ar.getRequest();
-            if (req instanceof HttpServletRequest) {
-                String pathInfo = ((HttpServletRequest) req).getPathInfo();
-                if (pathInfo == null) {
-                    arsSubset.add(ar);
-                    continue;
-                }
+        // create Java objects from JSON
+        final List<ClientChangedData> changes;
+        if (messages != null) {
+            changes = JsonConverter.getGson().fromJson(messages, CHANGES_TYPE);
+        } else {
+            changes = Collections.singletonList(JsonConverter.getGson().fromJson(message, ClientChangedData.class));
+        }
 
-                String resSender = pathInfo.substring(pathInfo.lastIndexOf('/') + 1);
-                if (!sender.equals(resSender)) {
-                    arsSubset.add(ar);
-                } else {
-                    curReq = (HttpServletRequest) req;
-                }
-            }
+        if (changes == null || changes.isEmpty()) {
+            return "";
         }
 
-        if (curReq == null) {
-            curReq = (HttpServletRequest) resource.getRequest();
+        for (ClientChangedData ccd : changes) {
+            ccd.setSenderId(sender);
         }
 
-        // process current message (JSON) and create a new one (JSON) for subscribed client
-        String newMessage = WhiteboardUtils.updateWhiteboardFromJson(curReq, message);
+        Whiteboard whiteboard = manager.getWhiteboard(changes.get(0).getWhiteboardId());
+        if (whiteboard == null) {
+            LOG.severe("Whiteboard object not found (null) ==> no whiteboard update!");
+            return "";
+        }
 
-        // broadcast subscribed clients except sender
-        topic.broadcast(newMessage, arsSubset);
+        publish(manager, whiteboard, changes, sender);
 
         return "";
     }
+
+    private void publish(final WhiteboardsManager manager, final Whiteboard whiteboard,
+                         final List<ClientChangedData> changes, final String sender) {
+        final WhiteboardChannel channel = WhiteboardChannel.get(topic, manager);
+
+        // process current messages in the mailbox of the whiteboard and broadcast new ones (JSON) to subscribed clients
+        // except sender; the mailbox keeps the order of changes without blocking publishers of other whiteboards
+        whiteboard.getMailbox().execute(new Runnable()
+        {
+            public void run() {
+                if (whiteboard.isEvicted()) {
+                    // evicted while this task was waiting, changes go to the restored whiteboard
+                    Whiteboard restored = manager.getWhiteboard(whiteboard.getUuid());
+                    if (restored != null) {
+                        publish(manager, restored, changes, sender);
+                    } else {
+                        LOG.severe("Evicted whiteboard " + whiteboard.getUuid() + " can not be restored ==> no whiteboard update!");
+                    }
+
+                    return;
+                }
+
+                // current values of properties which the sender has changed concurrently with a lower clock
+                List<ServerChangedData> corrections = new ArrayList<ServerChangedData>();
+
+                if (changes.size() == 1) {
+                    ServerChangedData scd = WhiteboardUtils.updateWhiteboard(whiteboard, changes.get(0), corrections);
+                    if (scd != null || !corrections.isEmpty()) {
+                        // losing changes may have changed other properties
+                        manager.storeChange(whiteboard, changes.get(0));
+                    }
+
+                    if (scd != null) {
+                        channel.publish(whiteboard, scd, sender);
+                    }
+
+                    channel.publishBatch(whiteboard, corrections, null);
+
+                    return;
+                }
+
+                List<ServerChangedData> batch = new ArrayList<ServerChangedData>(changes.size());
+                for (ClientChangedData ccd : changes) {
+                    if (!whiteboard.getUuid().equals(ccd.getWhiteboardId())) {
+                        LOG.warning("Change of another whiteboard " + ccd.getWhiteboardId() + " in a batch is ignored");
+                        continue;
+                    }
+
+                    if (ccd.getAction() == null) {
+                        LOG.warning("Change without a known action in a batch is ignored");
+                        continue;
+                    }
+
+                    int correctionsCount = corrections.size();
+                    ServerChangedData scd;
+                    try {
+                        scd = WhiteboardUtils.updateWhiteboard(whiteboard, ccd, corrections);
+                    } catch (RuntimeException e) {
+                        // changes applied before still have to be stored and broadcasted
+                        LOG.log(Level.SEVERE, "Malformed change " + ccd.getAction() + " in a batch is ignored", e);
+                        corrections.subList(correctionsCount, corrections.size()).clear();
+                        continue;
+                    }
+
+                    if (scd != null || corrections.size() > correctionsCount) {
+                        manager.storeChange(whiteboard, ccd);
+                    }
+
+                    if (scd != null) {
+                        batch.add(scd);
+                    }
+                }
+
+                channel.publishBatch(whiteboard, batch, sender);
+                channel.publishBatch(whiteboard, corrections, null);
+            }
+        });
+    }
 }
@@ -0,0 +1,68 @@
+/*
+* @author  Oleg Varaksin (ovaraksin@googlemail.com)
+* $$Id: FileWhiteboardStore.java 90 2011-09-27 15:24:29Z ovaraksin@gmail.com $$
+*/
+
+package com.googlecode.whiteboard.store;
+
+import com.googlecode.whiteboard.model.Whiteboard;
+import com.googlecode.whiteboard.model.transfer.ClientChangedData;
+import org.apache.commons.configuration.Configuration;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Store keeping whiteboards in local files: a memory-mapped {@link Snapshot} and an append-only {@link Journal}
+ * of operations after the snapshot per whiteboard. The directory is configured by <code>whiteboard.journal.directory</code>,
+ * <code>whiteboard.journal.sync</code> controls whether records are forced to disk.
+ *
+ * @author ova / last modified by $Author: ovaraksin@gmail.com $
+ * @version $Revision: 90 $
+ */
+public class FileWhiteboardStore implements WhiteboardStore
+{
+    private final Journal journal;
+
+    public FileWhiteboardStore(Configuration config) throws IOException {
+        String directory = config.getString("whiteboard.journal.directory", "");
+        if (directory.length() == 0) {
+            throw new IOException("Property whiteboard.journal.directory is not set");
+        }
+
+        journal = new Journal(new File(directory), config.getBoolean("whiteboard.journal.sync", true));
+    }
+
+    public Whiteboard load(String uuid) {
+        return journal.recover(uuid);
+    }
+
+    public void save(Whiteboard whiteboard) {
+        journal.snapshot(whiteboard);
+    }
+
+    public void saveUsers(Whiteboard whiteboard) {
+        journal.appendUsers(whiteboard);
+    }
+
+    public void apply(Whiteboard whiteboard, ClientChangedData ccd) {
+        journal.appendChange(whiteboard, ccd);
+    }
+
+    public List<String> list() {
+        return journal.list();
+    }
+
+    public void evict(Whiteboard whiteboard) {
+        // snapshot and journal are kept
+    }
+
+    public void delete(String uuid) {
+        journal.delete(uuid);
+    }
+
+    public void close() {
+        journal.close();
+    }
+}
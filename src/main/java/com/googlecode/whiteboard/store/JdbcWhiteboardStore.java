@@ -0,0 +1,451 @@
+/*
+* @author  Oleg Varaksin (ovaraksin@googlemail.com)
+* $$Id: JdbcWhiteboardStore.java 90 2011-09-27 15:24:29Z ovaraksin@gmail.com $$
+*/
+
+package com.googlecode.whiteboard.store;
+
+import com.googlecode.whiteboard.model.Whiteboard;
+import com.googlecode.whiteboard.model.transfer.ClientChangedData;
+import org.apache.commons.configuration.Configuration;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Store keeping whiteboards in a database, by default an embedded H2 database in file mode. Every whiteboard has one
+ * row with its last {@link Snapshot}, rows with operations applied after it and a row with users who joined after it
+ * (same binary encoding as in the {@link Journal}). Rows are written by one background thread, all operations queued while the previous batch was
+ * written are written in one transaction. A batch whose transaction fails is kept and written again after a delay
+ * together with everything queued in the meantime.
+ * <p/>
+ * Configuration properties: <code>whiteboard.jdbc.driver</code>, <code>whiteboard.jdbc.url</code>,
+ * <code>whiteboard.jdbc.user</code>, <code>whiteboard.jdbc.password</code> and
+ * <code>whiteboard.jdbc.retryDelay</code> (milliseconds before a failed batch is written again). The schema is created on startup
+ * if it doesn't exist (DDL is written for H2).
+ *
+ * @author ova / last modified by $Author: ovaraksin@gmail.com $
+ * @version $Revision: 90 $
+ */
+public class JdbcWhiteboardStore implements WhiteboardStore
+{
+    private static final Logger LOG = Logger.getLogger(JdbcWhiteboardStore.class.getName());
+
+    private static final String[] SCHEMA = {
+            "CREATE TABLE IF NOT EXISTS WB_SNAPSHOT (UUID VARCHAR(64) NOT NULL PRIMARY KEY, DATA BLOB NOT NULL)",
+            "CREATE TABLE IF NOT EXISTS WB_OPERATION (ID BIGINT AUTO_INCREMENT NOT NULL PRIMARY KEY, "
+            + "UUID VARCHAR(64) NOT NULL, DATA BLOB NOT NULL)",
+            "CREATE INDEX IF NOT EXISTS WB_OPERATION_UUID ON WB_OPERATION (UUID, ID)",
+            "CREATE TABLE IF NOT EXISTS WB_USERS (UUID VARCHAR(64) NOT NULL PRIMARY KEY, DATA BLOB NOT NULL)"};
+
+    private static final String SELECT_SNAPSHOT = "SELECT DATA FROM WB_SNAPSHOT WHERE UUID = ?";
+    private static final String SELECT_OPERATIONS = "SELECT DATA FROM WB_OPERATION WHERE UUID = ? ORDER BY ID";
+    private static final String SELECT_UUIDS = "SELECT UUID FROM WB_SNAPSHOT";
+    private static final String UPDATE_SNAPSHOT = "UPDATE WB_SNAPSHOT SET DATA = ? WHERE UUID = ?";
+    private static final String INSERT_SNAPSHOT = "INSERT INTO WB_SNAPSHOT (DATA, UUID) VALUES (?, ?)";
+    private static final String DELETE_SNAPSHOT = "DELETE FROM WB_SNAPSHOT WHERE UUID = ?";
+    private static final String INSERT_OPERATION = "INSERT INTO WB_OPERATION (UUID, DATA) VALUES (?, ?)";
+    private static final String DELETE_OPERATIONS = "DELETE FROM WB_OPERATION WHERE UUID = ?";
+    private static final String SELECT_USERS = "SELECT DATA FROM WB_USERS WHERE UUID = ?";
+    private static final String UPDATE_USERS = "UPDATE WB_USERS SET DATA = ? WHERE UUID = ?";
+    private static final String INSERT_USERS = "INSERT INTO WB_USERS (DATA, UUID) VALUES (?, ?)";
+    private static final String DELETE_USERS = "DELETE FROM WB_USERS WHERE UUID = ?";
+
+    private static final int OPERATION = 0;
+    private static final int SNAPSHOT = 1;
+    private static final int DELETE = 2;
+    private static final int STOP = 3;
+    private static final int USERS = 4;
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final long retryDelay;
+    private final BlockingQueue<Entry> queue = new LinkedBlockingQueue<Entry>();
+    private final Thread writer;
+    private volatile boolean closed;
+
+    public JdbcWhiteboardStore(Configuration config) throws IOException {
+        url = config.getString("whiteboard.jdbc.url", "jdbc:h2:~/whiteboards");
+        user = config.getString("whiteboard.jdbc.user", "sa");
+        password = config.getString("whiteboard.jdbc.password", "");
+        retryDelay = config.getLong("whiteboard.jdbc.retryDelay", 1000L);
+
+        String driver = config.getString("whiteboard.jdbc.driver", "org.h2.Driver");
+        try {
+            // drivers in web applications are not always registered automatically
+            Class.forName(driver);
+        } catch (ClassNotFoundException e) {
+            throw new IOException("JDBC driver " + driver + " not found");
+        }
+
+        Connection connection = null;
+        try {
+            connection = getConnection();
+            Statement statement = connection.createStatement();
+            for (String ddl : SCHEMA) {
+                statement.execute(ddl);
+            }
+
+            statement.close();
+        } catch (SQLException e) {
+            throw new IOException("Schema for whiteboards can not be created in " + url + ": " + e.getMessage());
+        } finally {
+            closeQuietly(connection);
+        }
+
+        writer = new Thread(new Writer(), "whiteboard-jdbc");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    public Whiteboard load(String uuid) throws IOException {
+        Connection connection = null;
+        try {
+            connection = getConnection();
+
+            PreparedStatement select = connection.prepareStatement(SELECT_SNAPSHOT);
+            select.setString(1, uuid);
+            ResultSet rs = select.executeQuery();
+            byte[] data = (rs.next() ? rs.getBytes(1) : null);
+            select.close();
+            if (data == null) {
+                return null;
+            }
+
+            Whiteboard whiteboard = Snapshot.read(ByteBuffer.wrap(data), "of the whiteboard " + uuid).getWhiteboard();
+
+            Journal.OperationReplay operations = new Journal.OperationReplay(whiteboard);
+            select = connection.prepareStatement(SELECT_OPERATIONS);
+            select.setString(1, uuid);
+            rs = select.executeQuery();
+            while (rs.next()) {
+                try {
+                    operations.replay(new RecordInput(ByteBuffer.wrap(rs.getBytes(1))));
+                } catch (RuntimeException e) {
+                    LOG.log(Level.SEVERE, "Operation of the whiteboard " + uuid + " can not be replayed", e);
+                }
+            }
+
+            select.close();
+            operations.finish();
+
+            select = connection.prepareStatement(SELECT_USERS);
+            select.setString(1, uuid);
+            rs = select.executeQuery();
+            if (rs.next()) {
+                Journal.replayUsers(new RecordInput(ByteBuffer.wrap(rs.getBytes(1))), whiteboard);
+            }
+
+            select.close();
+
+            return whiteboard;
+        } catch (SQLException e) {
+            throw new IOException("Whiteboard " + uuid + " can not be loaded: " + e.getMessage());
+        } finally {
+            closeQuietly(connection);
+        }
+    }
+
+    public void save(Whiteboard whiteboard) {
+        offer(new Entry(SNAPSHOT, whiteboard.getUuid(), Snapshot.encode(whiteboard)));
+    }
+
+    public void saveUsers(Whiteboard whiteboard) {
+        RecordOutput out = new RecordOutput();
+        Journal.writeUsers(out, whiteboard);
+        offer(new Entry(USERS, whiteboard.getUuid(), out.toByteArray()));
+    }
+
+    public void apply(Whiteboard whiteboard, ClientChangedData ccd) {
+        RecordOutput out = new RecordOutput();
+        Journal.writeOperation(out, whiteboard, ccd);
+        offer(new Entry(OPERATION, whiteboard.getUuid(), out.toByteArray()));
+    }
+
+    public List<String> list() throws IOException {
+        Connection connection = null;
+        try {
+            connection = getConnection();
+            Statement statement = connection.createStatement();
+            ResultSet rs = statement.executeQuery(SELECT_UUIDS);
+            List<String> uuids = new ArrayList<String>();
+            while (rs.next()) {
+                uuids.add(rs.getString(1));
+            }
+
+            statement.close();
+
+            return uuids;
+        } catch (SQLException e) {
+            throw new IOException("Whiteboards can not be listed: " + e.getMessage());
+        } finally {
+            closeQuietly(connection);
+        }
+    }
+
+    public void evict(Whiteboard whiteboard) {
+        // rows are kept
+    }
+
+    public void delete(String uuid) {
+        offer(new Entry(DELETE, uuid, null));
+    }
+
+    public void close() {
+        closed = true;
+        queue.offer(new Entry(STOP, null, null));
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void offer(Entry entry) {
+        if (closed) {
+            LOG.warning("Store is closed, data of the whiteboard " + entry.uuid + " is not written");
+            return;
+        }
+
+        queue.offer(entry);
+    }
+
+    private Connection getConnection() throws SQLException {
+        return DriverManager.getConnection(url, user, password);
+    }
+
+    private static void closeQuietly(Connection connection) {
+        if (connection == null) {
+            return;
+        }
+
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            LOG.log(Level.WARNING, "Connection can not be closed", e);
+        }
+    }
+
+    /**
+     * Queued work of the writer thread.
+     */
+    private static class Entry
+    {
+        private final int kind;
+        private final String uuid;
+        private final byte[] data;
+
+        Entry(int kind, String uuid, byte[] data) {
+            this.kind = kind;
+            this.uuid = uuid;
+            this.data = data;
+        }
+    }
+
+    /**
+     * Background writer with its own connection.
+     */
+    private class Writer implements Runnable
+    {
+        private Connection connection;
+
+        public void run() {
+            List<Entry> batch = new ArrayList<Entry>();
+            boolean stopped = false;
+
+            while (!stopped) {
+                try {
+                    if (batch.isEmpty()) {
+                        batch.add(queue.take());
+                    } else {
+                        // previous batch failed, give the database some time before it's written again
+                        Thread.sleep(retryDelay);
+                    }
+                } catch (InterruptedException e) {
+                    stopped = true;
+                }
+
+                // group commit: everything queued in the meantime goes into this transaction
+                queue.drainTo(batch);
+
+                List<Entry> operations = new ArrayList<Entry>();
+                Map<String, byte[]> snapshots = new LinkedHashMap<String, byte[]>();
+                Map<String, byte[]> users = new LinkedHashMap<String, byte[]>();
+                Set<String> truncated = new LinkedHashSet<String>();
+                Set<String> deleted = new LinkedHashSet<String>();
+
+                for (Entry entry : batch) {
+                    switch (entry.kind) {
+                        case OPERATION:
+                            operations.add(entry);
+                            break;
+                        case USERS:
+                            // last users win, users are never removed
+                            users.put(entry.uuid, entry.data);
+                            break;
+                        case SNAPSHOT:
+                            // operations and users queued before are in the snapshot
+                            removeOperations(operations, entry.uuid);
+                            users.remove(entry.uuid);
+                            snapshots.put(entry.uuid, entry.data);
+                            truncated.add(entry.uuid);
+                            deleted.remove(entry.uuid);
+                            break;
+                        case DELETE:
+                            removeOperations(operations, entry.uuid);
+                            users.remove(entry.uuid);
+                            snapshots.remove(entry.uuid);
+                            truncated.remove(entry.uuid);
+                            deleted.add(entry.uuid);
+                            break;
+                        default:
+                            stopped = true;
+                    }
+                }
+
+                if (write(operations, snapshots, users, truncated, deleted)) {
+                    batch.clear();
+                } else if (stopped) {
+                    LOG.severe("Store is closed, " + batch.size() + " queued entries are not written");
+                }
+            }
+
+            closeQuietly(connection);
+        }
+
+        private void removeOperations(List<Entry> operations, String uuid) {
+            Iterator<Entry> iter = operations.iterator();
+            while (iter.hasNext()) {
+                if (iter.next().uuid.equals(uuid)) {
+                    iter.remove();
+                }
+            }
+        }
+
+        /**
+         * Writes a batch in one transaction.
+         *
+         * @return false if the transaction failed and was rolled back, the batch should be written again
+         */
+        private boolean write(List<Entry> operations, Map<String, byte[]> snapshots, Map<String, byte[]> users,
+                              Set<String> truncated, Set<String> deleted) {
+            if (operations.isEmpty() && snapshots.isEmpty() && users.isEmpty() && deleted.isEmpty()) {
+                return true;
+            }
+
+            try {
+                if (connection == null) {
+                    connection = getConnection();
+                    connection.setAutoCommit(false);
+                }
+
+                if (!truncated.isEmpty() || !deleted.isEmpty()) {
+                    PreparedStatement delete = connection.prepareStatement(DELETE_OPERATIONS);
+                    for (String uuid : truncated) {
+                        delete.setString(1, uuid);
+                        delete.addBatch();
+                    }
+
+                    for (String uuid : deleted) {
+                        delete.setString(1, uuid);
+                        delete.addBatch();
+                    }
+
+                    delete.executeBatch();
+                    delete.close();
+
+                    delete = connection.prepareStatement(DELETE_USERS);
+                    for (String uuid : truncated) {
+                        delete.setString(1, uuid);
+                        delete.addBatch();
+                    }
+
+                    for (String uuid : deleted) {
+                        delete.setString(1, uuid);
+                        delete.addBatch();
+                    }
+
+                    delete.executeBatch();
+                    delete.close();
+                }
+
+                if (!deleted.isEmpty()) {
+                    PreparedStatement delete = connection.prepareStatement(DELETE_SNAPSHOT);
+                    for (String uuid : deleted) {
+                        delete.setString(1, uuid);
+                        delete.addBatch();
+                    }
+
+                    delete.executeBatch();
+                    delete.close();
+                }
+
+                for (Map.Entry<String, byte[]> snapshot : snapshots.entrySet()) {
+                    upsert(UPDATE_SNAPSHOT, INSERT_SNAPSHOT, snapshot.getKey(), snapshot.getValue());
+                }
+
+                for (Map.Entry<String, byte[]> entry : users.entrySet()) {
+                    upsert(UPDATE_USERS, INSERT_USERS, entry.getKey(), entry.getValue());
+                }
+
+                if (!operations.isEmpty()) {
+                    PreparedStatement insert = connection.prepareStatement(INSERT_OPERATION);
+                    for (Entry entry : operations) {
+                        insert.setString(1, entry.uuid);
+                        insert.setBytes(2, entry.data);
+                        insert.addBatch();
+                    }
+
+                    insert.executeBatch();
+                    insert.close();
+                }
+
+                connection.commit();
+
+                return true;
+            } catch (SQLException e) {
+                LOG.log(Level.SEVERE, operations.size() + " operation(s), " + snapshots.size() + " snapshot(s) and "
+                                      + users.size() + " user list(s) can not be written", e);
+                // reconnect for the next attempt
+                try {
+                    if (connection != null) {
+                        connection.rollback();
+                    }
+                } catch (SQLException ex) {
+                    LOG.log(Level.WARNING, "Transaction can not be rolled back", ex);
+                }
+
+                closeQuietly(connection);
+                connection = null;
+
+                return false;
+            }
+        }
+
+        /**
+         * Updates the row of the given whiteboard or inserts it if it doesn't exist yet.
+         */
+        private void upsert(String updateSql, String insertSql, String uuid, byte[] data) throws SQLException {
+            PreparedStatement update = connection.prepareStatement(updateSql);
+            update.setBytes(1, data);
+            update.setString(2, uuid);
+            int count = update.executeUpdate();
+            update.close();
+
+            if (count == 0) {
+                PreparedStatement insert = connection.prepareStatement(insertSql);
+                insert.setBytes(1, data);
+                insert.setString(2, uuid);
+                insert.executeUpdate();
+                insert.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,784 @@
+/*
+* @author  Oleg Varaksin (ovaraksin@googlemail.com)
+* $$Id: Journal.java 90 2011-09-27 15:24:29Z ovaraksin@gmail.com $$
+*/
+
+package com.googlecode.whiteboard.store;
+
+import com.googlecode.whiteboard.model.OperationWindow;
+import com.googlecode.whiteboard.model.UserData;
+import com.googlecode.whiteboard.model.Whiteboard;
+import com.googlecode.whiteboard.model.transfer.ClientChangedData;
+import com.googlecode.whiteboard.model.transfer.ServerChangedData;
+import com.googlecode.whiteboard.utils.WhiteboardUtils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only operation journal. Every whiteboard has its own journal file in the journal directory which contains
+ * binary records:
+ * <pre>
+ * journal := magic (int) generation (long) record*
+ * record  := length (int) crc32 (int) type (byte) payload
+ * OP      := sequence ClientChangedData clock operationId senderId
+ * USERS   := count UserData*
+ * </pre>
+ * Numbers in the payload are variable-length encoded, see {@link RecordOutput}. Records are encoded by the calling
+ * thread and written by one background thread with group commit: all records queued while the previous batch was
+ * written are written with one gathering write per file followed by one sync per file. Appending costs therefore
+ * encoding plus a queue offer only. Records of a whiteboard have to be appended from its mailbox, so that their order
+ * matches the order of changes.
+ * <p/>
+ * A {@link Snapshot} of a whiteboard replaces all records appended before it, a new whiteboard starts with a snapshot
+ * as well. The writer thread writes the snapshot into a temporary image, renames it over the previous snapshot
+ * and truncates the journal afterwards, increasing its generation. Snapshots know the generation of the journal
+ * continuing them, so that a journal which was not truncated because of a crash is recognized and skipped on recovery.
+ * File systems which can't rename over an existing file need the previous snapshot deleted first; if the process
+ * crashes in between, the temporary image is recovered instead.
+ * <p/>
+ * On recovery whiteboards are rebuilt by loading their snapshots and replaying their journals. A torn record at the end
+ * of a journal (crash while writing) is detected by its length or checksum and cut off.
+ *
+ * @author ova / last modified by $Author: ovaraksin@gmail.com $
+ * @version $Revision: 90 $
+ */
+public class Journal
+{
+    private static final Logger LOG = Logger.getLogger(Journal.class.getName());
+
+    public static final byte OP = 3;
+    public static final byte USERS = 4;
+
+    /**
+     * "WBJ" and format version 2.
+     */
+    private static final int MAGIC = 0x57424A02;
+    private static final int HEADER_SIZE = 12;
+    private static final int RECORD_HEADER_SIZE = 9;
+    private static final String SUFFIX = ".journal";
+    private static final String SNAPSHOT_SUFFIX = ".snapshot";
+    private static final String TMP_SUFFIX = ".tmp";
+    private static final Pattern UUID_PATTERN = Pattern.compile("[\\w-]+");
+    private static final int MAX_OPEN_FILES = 256;
+
+    private static final ThreadLocal<RecordOutput> OUTPUT = new ThreadLocal<RecordOutput>()
+    {
+        @Override
+        protected RecordOutput initialValue() {
+            return new RecordOutput(1024);
+        }
+    };
+
+    private final File directory;
+    private final boolean sync;
+    private final BlockingQueue<Entry> queue = new LinkedBlockingQueue<Entry>();
+    private final Thread writer;
+    private volatile boolean closed;
+
+    /**
+     * Creates a new journal and starts its writer thread.
+     *
+     * @param directory journal directory
+     * @param sync      true - records are forced to disk after every batch, false - records are left to the OS
+     * @throws IOException if the directory can not be created
+     */
+    public Journal(File directory, boolean sync) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Journal directory " + directory + " can not be created");
+        }
+
+        this.directory = directory;
+        this.sync = sync;
+        this.writer = new Thread(new Writer(), "whiteboard-journal");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Appends a change applied to the given whiteboard. This method has to be called from the whiteboard mailbox.
+     *
+     * @param whiteboard whiteboard
+     * @param ccd        applied change
+     */
+    public void appendChange(Whiteboard whiteboard, ClientChangedData ccd) {
+        RecordOutput out = begin(OP);
+        writeOperation(out, whiteboard, ccd);
+        end(whiteboard.getUuid(), out);
+    }
+
+    /**
+     * Appends users of the given whiteboard. This method has to be called from the whiteboard mailbox.
+     *
+     * @param whiteboard whiteboard
+     */
+    public void appendUsers(Whiteboard whiteboard) {
+        RecordOutput out = begin(USERS);
+        writeUsers(out, whiteboard);
+        end(whiteboard.getUuid(), out);
+    }
+
+    /**
+     * Writes the payload of a users record.
+     *
+     * @param out        record output
+     * @param whiteboard whiteboard
+     */
+    static void writeUsers(RecordOutput out, Whiteboard whiteboard) {
+        Collection<UserData> users = whiteboard.getUserData();
+        out.writeVarInt(users.size());
+        for (UserData userData : users) {
+            out.writeUserData(userData);
+        }
+    }
+
+    /**
+     * Reads the payload of a users record and adds the users to the given whiteboard.
+     *
+     * @param in         record input
+     * @param whiteboard whiteboard
+     */
+    static void replayUsers(RecordInput in, Whiteboard whiteboard) {
+        int count = in.readVarInt();
+        for (int i = 0; i < count; i++) {
+            whiteboard.addUserData(in.readUserData());
+        }
+    }
+
+    /**
+     * Writes the payload of an operation record.
+     *
+     * @param out        record output
+     * @param whiteboard whiteboard
+     * @param ccd        applied change
+     */
+    static void writeOperation(RecordOutput out, Whiteboard whiteboard, ClientChangedData ccd) {
+        // sequence number before the change is broadcasted, it's restored on replay
+        out.writeVarLong(whiteboard.getSequence());
+        out.writeClientChangedData(ccd);
+        // fields added later are appended, so that older records can be read
+        out.writeVarLong(ccd.getClock());
+        out.writeString(ccd.getOperationId());
+        out.writeString(ccd.getSenderId());
+    }
+
+    /**
+     * Replays operation records of one whiteboard in their order. Before an operation is applied, the whiteboard gets
+     * the sequence number stored with the record plus sequence numbers taken by broadcasts (changes and corrections)
+     * of preceding operations stored with the same number. Stored clocks are therefore decided as before and older
+     * records without clocks get increasing clocks in the order of the journal. At the end the whiteboard gets the
+     * sequence number of its last broadcasted change. Coalesced moves are counted as if each of them had been
+     * broadcasted, subscribers having seen less are resynchronized.
+     */
+    static class OperationReplay
+    {
+        private final Whiteboard whiteboard;
+        private final List<ServerChangedData> corrections = new ArrayList<ServerChangedData>();
+        // sequence number stored with the last operation
+        private long sequence = -1;
+        // sequence numbers taken by operations since the stored sequence number
+        private long taken;
+
+        OperationReplay(Whiteboard whiteboard) {
+            this.whiteboard = whiteboard;
+            if (whiteboard.getOperationWindow() == null) {
+                // ids of replayed operations are transferred to the window of the managed whiteboard
+                whiteboard.setOperationWindow(new OperationWindow(OperationWindow.DEFAULT_CAPACITY));
+            }
+        }
+
+        /**
+         * Reads the payload of an operation record and applies the operation.
+         *
+         * @param in record input
+         */
+        void replay(RecordInput in) {
+            long recordSequence = in.readVarLong();
+            ClientChangedData ccd = in.readClientChangedData();
+            ccd.setWhiteboardId(whiteboard.getUuid());
+            if (in.hasRemaining()) {
+                // concurrent changes are decided as before
+                ccd.setClock(in.readVarLong());
+            }
+
+            if (in.hasRemaining()) {
+                // operation id is added to the operation window, so that the change is not applied again if it's retried
+                ccd.setOperationId(in.readString());
+            }
+
+            if (in.hasRemaining()) {
+                // equal clocks are decided by sender ids as before
+                ccd.setSenderId(in.readString());
+            }
+
+            if (recordSequence != sequence) {
+                // sequence numbers taken by previous operations are contained in the stored one
+                sequence = recordSequence;
+                taken = 0;
+            }
+
+            whiteboard.setSequence(sequence + taken);
+            corrections.clear();
+            ServerChangedData scd = WhiteboardUtils.updateWhiteboard(whiteboard, ccd, corrections);
+            taken += (scd != null ? 1 : 0) + corrections.size();
+        }
+
+        /**
+         * Sets the sequence number of the last broadcasted change after all records have been replayed.
+         */
+        void finish() {
+            if (sequence >= 0) {
+                whiteboard.setSequence(sequence + taken);
+            }
+        }
+    }
+
+    /**
+     * Takes a snapshot of the given whiteboard. The snapshot replaces all records appended before, the journal is truncated
+     * as soon as the snapshot has been written. This method has to be called from the whiteboard mailbox.
+     *
+     * @param whiteboard whiteboard
+     */
+    public void snapshot(Whiteboard whiteboard) {
+        if (!isValid(whiteboard.getUuid())) {
+            throw new IllegalArgumentException("Invalid whiteboard id: " + whiteboard.getUuid());
+        }
+
+        // the generation is not known yet, it's set by the writer thread
+        offer(new Entry(Entry.SNAPSHOT, whiteboard.getUuid(), Snapshot.encode(whiteboard)));
+    }
+
+    /**
+     * Deletes the journal and snapshot of a removed whiteboard. Records queued before are dropped.
+     *
+     * @param uuid whiteboard id
+     */
+    public void delete(String uuid) {
+        if (isValid(uuid)) {
+            offer(new Entry(Entry.DELETE, uuid, null));
+        }
+    }
+
+    /**
+     * Stops the writer thread after all queued records have been written.
+     */
+    public void close() {
+        closed = true;
+        queue.offer(new Entry(Entry.STOP, null, null));
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Lists all whiteboards having a snapshot.
+     *
+     * @return List whiteboard ids
+     */
+    public List<String> list() {
+        List<String> uuids = new ArrayList<String>();
+        String[] names = directory.list();
+        if (names != null) {
+            for (String name : names) {
+                if (name.endsWith(SNAPSHOT_SUFFIX)) {
+                    uuids.add(name.substring(0, name.length() - SNAPSHOT_SUFFIX.length()));
+                } else if (name.endsWith(SNAPSHOT_SUFFIX + TMP_SUFFIX)) {
+                    // snapshot has been replaced by the temporary image only
+                    String uuid = name.substring(0, name.length() - SNAPSHOT_SUFFIX.length() - TMP_SUFFIX.length());
+                    if (!getSnapshotFile(uuid).exists()) {
+                        uuids.add(uuid);
+                    }
+                }
+            }
+        }
+
+        return uuids;
+    }
+
+    /**
+     * Rebuilds a whiteboard from its snapshot and journal. Records queued but not written yet are not considered.
+     *
+     * @param uuid whiteboard id
+     * @return Whiteboard recovered whiteboard without mailbox or null if there is no valid data for this id
+     */
+    public Whiteboard recover(String uuid) {
+        if (!isValid(uuid)) {
+            return null;
+        }
+
+        Snapshot snapshot = readSnapshot(uuid);
+        if (snapshot == null) {
+            return null;
+        }
+
+        File file = getFile(uuid);
+        if (!file.isFile()) {
+            return snapshot.getWhiteboard();
+        }
+
+        try {
+            return replay(file, snapshot);
+        } catch (IOException e) {
+            LOG.log(Level.SEVERE, "Journal " + file + " can not be read", e);
+            return snapshot.getWhiteboard();
+        }
+    }
+
+    /**
+     * Reads the snapshot of a whiteboard. The temporary image is read if the snapshot is missing or broken, it's the
+     * current snapshot if the previous one has been deleted but the image has not been renamed yet.
+     */
+    private Snapshot readSnapshot(String uuid) {
+        File[] images = {getSnapshotFile(uuid), getTmpSnapshotFile(uuid)};
+        for (File image : images) {
+            if (!image.isFile()) {
+                continue;
+            }
+
+            try {
+                return Snapshot.read(image);
+            } catch (IOException e) {
+                LOG.log(Level.SEVERE, "Snapshot " + image + " can not be read", e);
+            }
+        }
+
+        return null;
+    }
+
+    private Whiteboard replay(File file, Snapshot snapshot) throws IOException {
+        ByteBuffer buffer;
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // read the whole file
+            }
+
+            buffer.flip();
+        } finally {
+            raf.close();
+        }
+
+        Whiteboard whiteboard = snapshot.getWhiteboard();
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+            LOG.warning("Journal " + file + " has an unknown format and is ignored");
+            return whiteboard;
+        }
+
+        long generation = buffer.getLong();
+        if (generation < snapshot.getGeneration()) {
+            // not truncated after the last snapshot, all records are in the snapshot
+            return whiteboard;
+        }
+
+        OperationReplay operations = new OperationReplay(whiteboard);
+        int valid = buffer.position();
+        CRC32 crc = new CRC32();
+
+        while (buffer.remaining() >= RECORD_HEADER_SIZE) {
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (length < 1 || length > buffer.remaining()) {
+                break;
+            }
+
+            crc.reset();
+            crc.update(buffer.array(), buffer.arrayOffset() + buffer.position(), length);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+
+            ByteBuffer record = buffer.slice();
+            record.limit(length);
+            buffer.position(buffer.position() + length);
+
+            RecordInput in = new RecordInput(record);
+            try {
+                int type = in.readByte();
+                if (type == OP) {
+                    operations.replay(in);
+                } else if (type == USERS) {
+                    replayUsers(in, whiteboard);
+                }
+            } catch (RuntimeException e) {
+                LOG.log(Level.SEVERE, "Record in the journal " + file + " can not be replayed", e);
+            }
+
+            valid = buffer.position();
+        }
+
+        if (valid < buffer.limit()) {
+            LOG.warning("Journal " + file + " has a torn record at the end which is cut off");
+            truncate(file, valid);
+        }
+
+        operations.finish();
+
+        return whiteboard;
+    }
+
+    private void truncate(File file, long size) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(size);
+        } finally {
+            raf.close();
+        }
+    }
+
+    private RecordOutput begin(byte type) {
+        RecordOutput out = OUTPUT.get();
+        out.reset();
+        // length and checksum are set in end()
+        out.writeInt(0);
+        out.writeInt(0);
+        out.writeByte(type);
+
+        return out;
+    }
+
+    private void end(String uuid, RecordOutput out) {
+        if (!isValid(uuid)) {
+            throw new IllegalArgumentException("Invalid whiteboard id: " + uuid);
+        }
+
+        int length = out.size() - 8;
+        CRC32 crc = new CRC32();
+        crc.update(out.getBuffer(), 8, length);
+        out.setInt(0, length);
+        out.setInt(4, (int) crc.getValue());
+
+        offer(new Entry(Entry.RECORD, uuid, out.toByteArray()));
+    }
+
+    private void offer(Entry entry) {
+        if (closed) {
+            LOG.warning("Journal is closed, data of the whiteboard " + entry.uuid + " is not written");
+            return;
+        }
+
+        queue.offer(entry);
+    }
+
+    private boolean isValid(String uuid) {
+        // whiteboard ids come from requests, never allow paths
+        return uuid != null && UUID_PATTERN.matcher(uuid).matches();
+    }
+
+    private File getFile(String uuid) {
+        return new File(directory, uuid + SUFFIX);
+    }
+
+    private File getSnapshotFile(String uuid) {
+        return new File(directory, uuid + SNAPSHOT_SUFFIX);
+    }
+
+    private File getTmpSnapshotFile(String uuid) {
+        return new File(directory, uuid + SNAPSHOT_SUFFIX + TMP_SUFFIX);
+    }
+
+    /**
+     * Queued work of the writer thread.
+     */
+    private static class Entry
+    {
+        static final int RECORD = 0;
+        static final int SNAPSHOT = 1;
+        static final int DELETE = 2;
+        static final int STOP = 3;
+
+        private final int kind;
+        private final String uuid;
+        private final byte[] data;
+
+        Entry(int kind, String uuid, byte[] data) {
+            this.kind = kind;
+            this.uuid = uuid;
+            this.data = data;
+        }
+    }
+
+    /**
+     * Open journal file.
+     */
+    private static class JournalFile
+    {
+        private final FileChannel channel;
+        private long generation;
+
+        JournalFile(FileChannel channel, long generation) {
+            this.channel = channel;
+            this.generation = generation;
+        }
+    }
+
+    /**
+     * Background writer. Keeps a limited number of journal files open (least recently used files are closed).
+     */
+    private class Writer implements Runnable
+    {
+        private final Map<String, JournalFile> files = new LinkedHashMap<String, JournalFile>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, JournalFile> eldest) {
+                if (size() > MAX_OPEN_FILES) {
+                    closeQuietly(eldest.getKey(), eldest.getValue());
+                    return true;
+                }
+
+                return false;
+            }
+        };
+
+        public void run() {
+            List<Entry> batch = new ArrayList<Entry>();
+            Map<String, List<ByteBuffer>> records = new LinkedHashMap<String, List<ByteBuffer>>();
+            boolean stopped = false;
+
+            while (!stopped) {
+                try {
+                    batch.add(queue.take());
+                } catch (InterruptedException e) {
+                    stopped = true;
+                }
+
+                // group commit: everything queued in the meantime goes into this batch
+                queue.drainTo(batch);
+
+                for (Entry entry : batch) {
+                    switch (entry.kind) {
+                        case Entry.RECORD:
+                            List<ByteBuffer> list = records.get(entry.uuid);
+                            if (list == null) {
+                                list = new ArrayList<ByteBuffer>();
+                                records.put(entry.uuid, list);
+                            }
+
+                            list.add(ByteBuffer.wrap(entry.data));
+                            break;
+                        case Entry.SNAPSHOT:
+                            if (writeSnapshot(entry.uuid, entry.data)) {
+                                // records queued before are in the snapshot
+                                records.remove(entry.uuid);
+                            }
+
+                            break;
+                        case Entry.DELETE:
+                            records.remove(entry.uuid);
+                            deleteFiles(entry.uuid);
+                            break;
+                        default:
+                            stopped = true;
+                    }
+                }
+
+                for (Map.Entry<String, List<ByteBuffer>> entry : records.entrySet()) {
+                    write(entry.getKey(), entry.getValue());
+                }
+
+                batch.clear();
+                records.clear();
+            }
+
+            for (Map.Entry<String, JournalFile> entry : files.entrySet()) {
+                closeQuietly(entry.getKey(), entry.getValue());
+            }
+
+            files.clear();
+        }
+
+        private void write(String uuid, List<ByteBuffer> buffers) {
+            try {
+                FileChannel channel = getFile(uuid).channel;
+                ByteBuffer[] array = buffers.toArray(new ByteBuffer[buffers.size()]);
+                long remaining = 0;
+                for (ByteBuffer buffer : array) {
+                    remaining += buffer.remaining();
+                }
+
+                while (remaining > 0) {
+                    remaining -= channel.write(array);
+                }
+
+                if (sync) {
+                    channel.force(false);
+                }
+            } catch (IOException e) {
+                LOG.log(Level.SEVERE, buffers.size() + " record(s) of the whiteboard " + uuid + " can not be written", e);
+                // reopen the file for the next records
+                JournalFile file = files.remove(uuid);
+                if (file != null) {
+                    closeQuietly(uuid, file);
+                }
+            }
+        }
+
+        /**
+         * Writes the snapshot and truncates the journal afterwards. A crash in between leaves a journal with an older
+         * generation which is skipped on recovery. The previous snapshot is kept until the new one is in place.
+         *
+         * @param uuid     whiteboard id
+         * @param snapshot encoded snapshot
+         * @return boolean true - snapshot has been written, false - snapshot failed and the journal is still valid
+         */
+        private boolean writeSnapshot(String uuid, byte[] snapshot) {
+            JournalFile file;
+            long generation;
+            try {
+                file = getFile(uuid);
+                generation = file.generation + 1;
+                Snapshot.setGeneration(snapshot, generation);
+
+                File snapshotFile = getSnapshotFile(uuid);
+                File tmpFile = getTmpSnapshotFile(uuid);
+                if (!snapshotFile.exists() && tmpFile.exists() && !tmpFile.renameTo(snapshotFile)) {
+                    // the image is the current snapshot, it must not be overwritten
+                    throw new IOException("File " + tmpFile + " can not be renamed to " + snapshotFile);
+                }
+
+                FileOutputStream out = new FileOutputStream(tmpFile);
+                try {
+                    out.write(snapshot);
+                    out.getChannel().force(false);
+                } finally {
+                    out.close();
+                }
+
+                // replaces the previous snapshot atomically on POSIX file systems
+                if (!tmpFile.renameTo(snapshotFile)) {
+                    if (snapshotFile.exists() && !snapshotFile.delete()) {
+                        throw new IOException("Snapshot " + snapshotFile + " can not be replaced");
+                    }
+
+                    if (!tmpFile.renameTo(snapshotFile)) {
+                        // the image is recovered instead of the deleted snapshot, the journal can be truncated
+                        LOG.warning("File " + tmpFile + " can not be renamed to " + snapshotFile + ", it's kept as snapshot");
+                    }
+                }
+            } catch (IOException e) {
+                LOG.log(Level.SEVERE, "Snapshot of the whiteboard " + uuid + " can not be written", e);
+                return false;
+            }
+
+            try {
+                file.channel.truncate(HEADER_SIZE);
+                writeHeader(file.channel, generation);
+                file.channel.force(false);
+                file.generation = generation;
+            } catch (IOException e) {
+                LOG.log(Level.SEVERE, "Journal of the whiteboard " + uuid + " can not be truncated", e);
+                // the journal is older than the snapshot now, it's truncated when it's opened again
+                files.remove(uuid);
+                closeQuietly(uuid, file);
+            }
+
+            return true;
+        }
+
+        private JournalFile getFile(String uuid) throws IOException {
+            JournalFile file = files.get(uuid);
+            if (file != null) {
+                return file;
+            }
+
+            FileChannel channel = new RandomAccessFile(Journal.this.getFile(uuid), "rw").getChannel();
+            long snapshotGeneration = readSnapshotGeneration(uuid);
+            long generation = -1;
+            if (channel.size() >= HEADER_SIZE) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                while (header.hasRemaining() && channel.read(header, header.position()) >= 0) {
+                    // read the header
+                }
+
+                header.flip();
+                if (header.getInt() == MAGIC) {
+                    generation = header.getLong();
+                }
+            }
+
+            if (generation < snapshotGeneration) {
+                // new journal or not truncated after the last snapshot (crash), records are in the snapshot
+                generation = snapshotGeneration;
+                channel.truncate(0);
+                writeHeader(channel, generation);
+            } else {
+                channel.position(channel.size());
+            }
+
+            file = new JournalFile(channel, generation);
+            files.put(uuid, file);
+
+            return file;
+        }
+
+        private long readSnapshotGeneration(String uuid) {
+            File snapshotFile = getSnapshotFile(uuid);
+            if (!snapshotFile.isFile()) {
+                // a temporary image without snapshot is the current snapshot
+                snapshotFile = getTmpSnapshotFile(uuid);
+                if (!snapshotFile.isFile()) {
+                    return 0;
+                }
+            }
+
+            try {
+                return Snapshot.readGeneration(snapshotFile);
+            } catch (IOException e) {
+                LOG.log(Level.WARNING, "Snapshot of the whiteboard " + uuid + " can not be read", e);
+                return 0;
+            }
+        }
+
+        private void writeHeader(FileChannel channel, long generation) throws IOException {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC);
+            header.putLong(generation);
+            header.flip();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+
+            channel.position(HEADER_SIZE);
+        }
+
+        private void deleteFiles(String uuid) {
+            JournalFile file = files.remove(uuid);
+            if (file != null) {
+                closeQuietly(uuid, file);
+            }
+
+            File[] toDelete = {Journal.this.getFile(uuid), getSnapshotFile(uuid), getTmpSnapshotFile(uuid)};
+            for (File f : toDelete) {
+                if (f.exists() && !f.delete()) {
+                    LOG.warning("File " + f + " can not be deleted");
+                }
+            }
+        }
+
+        private void closeQuietly(String uuid, JournalFile file) {
+            try {
+                file.channel.close();
+            } catch (IOException e) {
+                LOG.log(Level.WARNING, "Journal of the whiteboard " + uuid + " can not be closed", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+* @author  Oleg Varaksin (ovaraksin@googlemail.com)
+* $$Id: MemoryWhiteboardStore.java 90 2011-09-27 15:24:29Z ovaraksin@gmail.com $$
+*/
+
+package com.googlecode.whiteboard.store;
+
+import com.googlecode.whiteboard.model.Whiteboard;
+import com.googlecode.whiteboard.model.transfer.ClientChangedData;
+import org.apache.commons.configuration.Configuration;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Store keeping whiteboards in memory only. Nothing survives a restart. Evicted whiteboards are lost unless a spill
+ * directory is configured (<code>whiteboard.spillDirectory</code>), then they are spilled as JSON files
+ * (see {@link WhiteboardSpill}) and loaded again on the next access.
+ *
+ * @author ova / last modified by $Author: ovaraksin@gmail.com $
+ * @version $Revision: 90 $
+ */
+public class MemoryWhiteboardStore implements WhiteboardStore
+{
+    private WhiteboardSpill spill;
+
+    public MemoryWhiteboardStore(Configuration config) {
+        String spillDirectory = config.getString("whiteboard.spillDirectory", "");
+        if (spillDirectory.length() > 0) {
+            spill = new WhiteboardSpill(new File(spillDirectory));
+        }
+    }
+
+    public Whiteboard load(String uuid) throws IOException {
+        return spill != null ? spill.restore(uuid) : null;
+    }
+
+    public void save(Whiteboard whiteboard) {
+        // whiteboard is in memory
+    }
+
+    public void saveUsers(Whiteboard whiteboard) {
+        // whiteboard is in memory
+    }
+
+    public void apply(Whiteboard whiteboard, ClientChangedData ccd) {
+        // whiteboard is in memory
+    }
+
+    public List<String> list() {
+        // spilled whiteboards are loaded on demand
+        return Collections.emptyList();
+    }
+
+    public void evict(Whiteboard whiteboard) throws IOException {
+        if (spill != null) {
+            spill.spill(whiteboard);
+        }
+    }
+
+    public void delete(String uuid) {
+        // nothing stored
+    }
+
+    public void close() {
+    }
+}
@@ -0,0 +1,191 @@
+/*
+* @author  Oleg Varaksin (ovaraksin@googlemail.com)
+* $$Id: RecordInput.java 90 2011-09-27 15:24:29Z ovaraksin@gmail.com $$
+*/
+
+package com.googlecode.whiteboard.store;
+
+import com.googlecode.whiteboard.model.UserData;
+import com.googlecode.whiteboard.model.base.AbstractElement;
+import com.googlecode.whiteboard.model.property.*;
+import com.googlecode.whiteboard.model.transfer.ClientAction;
+import com.googlecode.whiteboard.model.transfer.ClientChangedData;
+import com.googlecode.whiteboard.model.transfer.ElementDelta;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decoder for records written by {@link RecordOutput}. The input is a byte buffer, so that records can be read
+ * from heap arrays and memory-mapped files alike. Malformed input causes an {@link IllegalStateException}.
+ *
+ * @author ova / last modified by $Author: ovaraksin@gmail.com $
+ * @version $Revision: 90 $
+ */
+public class RecordInput
+{
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final ByteBuffer buffer;
+
+    public RecordInput(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    public boolean hasRemaining() {
+        return buffer.hasRemaining();
+    }
+
+    public int readByte() {
+        return buffer.get() & 0xFF;
+    }
+
+    public int readInt() {
+        return buffer.getInt();
+    }
+
+    public int readVarInt() {
+        return (int) readVarLong();
+    }
+
+    public long readVarLong() {
+        long zigzag = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            zigzag |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return (zigzag >>> 1) ^ -(zigzag & 1);
+            }
+        }
+
+        throw new IllegalStateException("Malformed variable-length number");
+    }
+
+    public double readDouble() {
+        return buffer.getDouble();
+    }
+
+    public String readString() {
+        int length = readVarInt();
+        if (length < 0) {
+            return null;
+        }
+
+        if (length > buffer.remaining()) {
+            throw new IllegalStateException("String length " + length + " exceeds the record");
+        }
+
+        if (buffer.hasArray()) {
+            String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, UTF8);
+            buffer.position(buffer.position() + length);
+            return value;
+        }
+
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    public AbstractElement readElement() {
+        String typeName = readString();
+        if (typeName == null) {
+            return null;
+        }
+
+        ElementType<?> type = getType(typeName);
+        return readProperties(type, type.newInstance(), type.getProperties());
+    }
+
+    public ElementDelta readDelta() {
+        String typeName = readString();
+        if (typeName == null) {
+            return null;
+        }
+
+        ElementType<?> type = getType(typeName);
+        AbstractElement element = type.newInstance();
+        element.setUuid(readString());
+
+        int count = readVarInt();
+        List<ElementProperty<?>> properties = new ArrayList<ElementProperty<?>>(count);
+        for (int i = 0; i < count; i++) {
+            int index = readVarInt();
+            if (index < 0 || index >= type.getProperties().size()) {
+                throw new IllegalStateException("Unknown property " + index + " of the type " + typeName);
+            }
+
+            properties.add(type.getProperties().get(index));
+        }
+
+        readProperties(type, type.cast(element), properties);
+
+        return new ElementDelta(element, properties);
+    }
+
+    public UserData readUserData() {
+        UserData userData = new UserData(readString(), "");
+        // user name has been escaped already
+        userData.setUserName(readString());
+
+        return userData;
+    }
+
+    public ClientChangedData readClientChangedData() {
+        ClientChangedData ccd = new ClientChangedData();
+
+        int action = readVarInt();
+        if (action < 0 || action >= ClientAction.values().length) {
+            throw new IllegalStateException("Unknown client action " + action);
+        }
+
+        ccd.setAction(ClientAction.values()[action]);
+        ccd.setUser(readString());
+        ccd.setTimestamp(readVarLong());
+        ccd.setElement(readElement());
+        ccd.setDelta(readDelta());
+
+        int count = readVarInt();
+        for (int i = 0; i < count; i++) {
+            String name = readString();
+            ccd.getParameters().put(name, readString());
+        }
+
+        return ccd;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <E extends AbstractElement> E readProperties(ElementType<E> type, AbstractElement element,
+                                                         List<? extends ElementProperty<?>> properties) {
+        E typed = type.cast(element);
+        for (ElementProperty<?> anyProperty : properties) {
+            ElementProperty<? super E> property = (ElementProperty<? super E>) anyProperty;
+            switch (property.getKind()) {
+                case INT:
+                    ((IntProperty<? super E>) property).set(typed, readVarInt());
+                    break;
+                case DOUBLE:
+                    ((DoubleProperty<? super E>) property).set(typed, readDouble());
+                    break;
+                default:
+                    ((StringProperty<? super E>) property).set(typed, readString());
+            }
+        }
+
+        return typed;
+    }
+
+    private ElementType<?> getType(String name) {
+        ElementType<?> type = ElementTypes.getType(name);
+        if (type == null) {
+            throw new IllegalStateException("Unknown element type " + name);
+        }
+
+        return type;
+    }
+}
@@ -0,0 +1,268 @@
+/*
+* @author  Oleg Varaksin (ovaraksin@googlemail.com)
+* $$Id: RecordOutput.java 90 2011-09-27 15:24:29Z ovaraksin@gmail.com $$
+*/
+
+package com.googlecode.whiteboard.store;
+
+import com.googlecode.whiteboard.model.UserData;
+import com.googlecode.whiteboard.model.base.AbstractElement;
+import com.googlecode.whiteboard.model.property.*;
+import com.googlecode.whiteboard.model.transfer.ClientChangedData;
+import com.googlecode.whiteboard.model.transfer.ElementDelta;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary encoder for stored records. Integers are written as variable-length (zig-zag) numbers, strings
+ * as length prefixed UTF-8 and elements as type name followed by property values in the order of {@link ElementType}.
+ * Records are read by {@link RecordInput}.
+ *
+ * @author ova / last modified by $Author: ovaraksin@gmail.com $
+ * @version $Revision: 90 $
+ */
+public class RecordOutput
+{
+    private byte[] buffer;
+    private int size;
+
+    public RecordOutput() {
+        this(256);
+    }
+
+    public RecordOutput(int capacity) {
+        buffer = new byte[capacity];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void reset() {
+        size = 0;
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, size);
+    }
+
+    /**
+     * Gets the internal buffer. Only the first {@link #size()} bytes are valid.
+     *
+     * @return byte[] buffer
+     */
+    public byte[] getBuffer() {
+        return buffer;
+    }
+
+    public void writeByte(int value) {
+        ensureCapacity(1);
+        buffer[size++] = (byte) value;
+    }
+
+    public void writeInt(int value) {
+        ensureCapacity(4);
+        buffer[size++] = (byte) (value >>> 24);
+        buffer[size++] = (byte) (value >>> 16);
+        buffer[size++] = (byte) (value >>> 8);
+        buffer[size++] = (byte) value;
+    }
+
+    /**
+     * Overwrites four bytes at the given position, e.g. a length written before the content was known.
+     *
+     * @param position position in the buffer
+     * @param value    value
+     */
+    public void setInt(int position, int value) {
+        buffer[position] = (byte) (value >>> 24);
+        buffer[position + 1] = (byte) (value >>> 16);
+        buffer[position + 2] = (byte) (value >>> 8);
+        buffer[position + 3] = (byte) value;
+    }
+
+    public void writeVarInt(int value) {
+        writeVarLong(value);
+    }
+
+    public void writeVarLong(long value) {
+        // zig-zag, so that small negative numbers are short as well
+        long zigzag = (value << 1) ^ (value >> 63);
+        ensureCapacity(10);
+        while ((zigzag & ~0x7FL) != 0) {
+            buffer[size++] = (byte) ((zigzag & 0x7F) | 0x80);
+            zigzag >>>= 7;
+        }
+
+        buffer[size++] = (byte) zigzag;
+    }
+
+    public void writeDouble(double value) {
+        long bits = Double.doubleToLongBits(value);
+        writeInt((int) (bits >>> 32));
+        writeInt((int) bits);
+    }
+
+    public void writeBytes(byte[] bytes, int offset, int length) {
+        ensureCapacity(length);
+        System.arraycopy(bytes, offset, buffer, size, length);
+        size += length;
+    }
+
+    /**
+     * Writes a string which can be null.
+     *
+     * @param value string or null
+     */
+    public void writeString(String value) {
+        if (value == null) {
+            writeVarInt(-1);
+            return;
+        }
+
+        // UTF-8 by hand, String#getBytes would allocate twice
+        int length = value.length();
+        int utfLength = 0;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                utfLength++;
+            } else if (c < 0x800) {
+                utfLength += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                utfLength += 4;
+                i++;
+            } else {
+                utfLength += 3;
+            }
+        }
+
+        writeVarInt(utfLength);
+        ensureCapacity(utfLength);
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                buffer[size++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[size++] = (byte) (0xC0 | (c >> 6));
+                buffer[size++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer[size++] = (byte) (0xF0 | (codePoint >> 18));
+                buffer[size++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buffer[size++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buffer[size++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else {
+                // lone surrogates are written as is (like Java's modified UTF-8)
+                buffer[size++] = (byte) (0xE0 | (c >> 12));
+                buffer[size++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[size++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    /**
+     * Writes an element with all properties. The element must not be a truncated one.
+     *
+     * @param element element or null
+     */
+    public void writeElement(AbstractElement element) {
+        if (element == null) {
+            writeString(null);
+            return;
+        }
+
+        ElementType<AbstractElement> type = getType(element);
+        writeString(type.getName());
+        writeProperties(type, element, type.getProperties());
+    }
+
+    /**
+     * Writes changed properties of an element.
+     *
+     * @param delta delta or null
+     */
+    public void writeDelta(ElementDelta delta) {
+        if (delta == null) {
+            writeString(null);
+            return;
+        }
+
+        ElementType<AbstractElement> type = getType(delta.getElement());
+        writeString(type.getName());
+        writeString(delta.getElement().getUuid());
+
+        List<ElementProperty<?>> properties = delta.getProperties();
+        writeVarInt(properties.size());
+        for (ElementProperty<?> property : properties) {
+            writeVarInt(type.getProperties().indexOf(property));
+        }
+
+        writeProperties(type, delta.getElement(), properties);
+    }
+
+    public void writeUserData(UserData userData) {
+        writeString(userData.getSenderId());
+        writeString(userData.getUserName());
+    }
+
+    /**
+     * Writes changes from a subscriber. The whiteboard id is not written, it's given by the record's file.
+     *
+     * @param ccd changes from subscriber
+     */
+    public void writeClientChangedData(ClientChangedData ccd) {
+        writeVarInt(ccd.getAction().ordinal());
+        writeString(ccd.getUser());
+        writeVarLong(ccd.getTimestamp());
+        writeElement(ccd.getElement());
+        writeDelta(ccd.getDelta());
+
+        Map<String, String> parameters = ccd.getParameters();
+        if (parameters == null) {
+            writeVarInt(0);
+        } else {
+            writeVarInt(parameters.size());
+            for (Map.Entry<String, String> entry : parameters.entrySet()) {
+                writeString(entry.getKey());
+                writeString(entry.getValue());
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <E extends AbstractElement> void writeProperties(ElementType<E> type, AbstractElement element,
+                                                             List<? extends ElementProperty<?>> properties) {
+        E typed = type.cast(element);
+        for (ElementProperty<?> anyProperty : properties) {
+            ElementProperty<? super E> property = (ElementProperty<? super E>) anyProperty;
+            switch (property.getKind()) {
+                case INT:
+                    writeVarInt(((IntProperty<? super E>) property).get(typed));
+                    break;
+                case DOUBLE:
+                    writeDouble(((DoubleProperty<? super E>) property).get(typed));
+                    break;
+                default:
+                    writeString(((StringProperty<? super E>) property).get(typed));
+            }
+        }
+    }
+
+    private ElementType<AbstractElement> getType(AbstractElement element) {
+        ElementType<AbstractElement> type = ElementTypes.getType(element);
+        if (type == null) {
+            throw new IllegalArgumentException("Unknown element class: " + element.getClass().getName());
+        }
+
+        return type;
+    }
+
+    private void ensureCapacity(int length) {
+        if (size + length > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + length));
+        }
+    }
+}
@@ -0,0 +1,271 @@
+/*
+* @author  Oleg Varaksin (ovaraksin@googlemail.com)
+* $$Id: Snapshot.java 90 2011-09-27 15:24:29Z ovaraksin@gmail.com $$
+*/
+
+package com.googlecode.whiteboard.store;
+
+import com.googlecode.whiteboard.model.UserData;
+import com.googlecode.whiteboard.model.Whiteboard;
+import com.googlecode.whiteboard.model.base.AbstractElement;
+import com.googlecode.whiteboard.model.base.FieldVersions;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Compact binary image of a whiteboard. A snapshot file contains
+ * <pre>
+ * snapshot := magic (int) generation (long) length (int) crc32 (int) payload
+ * payload  := uuid title creator pubSubTransport width height creationDate sequence
+ *             userCount UserData* elementCount element*
+ * </pre>
+ * Elements are written in z-order (the first one is at the back). The generation is the generation of the journal
+ * holding changes after this snapshot, see {@link Journal}. Snapshots are read by memory-mapping the file.
+ *
+ * @author ova / last modified by $Author: ovaraksin@gmail.com $
+ * @version $Revision: 90 $
+ */
+public class Snapshot
+{
+    /**
+     * "WBS" and format version 1.
+     */
+    private static final int MAGIC = 0x57425301;
+    private static final int HEADER_SIZE = 20;
+
+    private final Whiteboard whiteboard;
+    private final long generation;
+
+    private Snapshot(Whiteboard whiteboard, long generation) {
+        this.whiteboard = whiteboard;
+        this.generation = generation;
+    }
+
+    /**
+     * Gets the whiteboard restored from this snapshot.
+     *
+     * @return Whiteboard whiteboard without mailbox
+     */
+    public Whiteboard getWhiteboard() {
+        return whiteboard;
+    }
+
+    /**
+     * Gets the generation of the journal which continues this snapshot.
+     *
+     * @return long generation
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Encodes the given whiteboard. This method has to be called from the whiteboard mailbox, so that the image
+     * is consistent.
+     *
+     * @param whiteboard whiteboard
+     * @return byte[] content of the snapshot file with generation 0
+     */
+    public static byte[] encode(Whiteboard whiteboard) {
+        Collection<AbstractElement> elements = whiteboard.getElements();
+        RecordOutput out = new RecordOutput(HEADER_SIZE + 64 + elements.size() * 96);
+        out.writeInt(MAGIC);
+        // generation, length and checksum are set later
+        out.writeInt(0);
+        out.writeInt(0);
+        out.writeInt(0);
+        out.writeInt(0);
+
+        out.writeString(whiteboard.getUuid());
+        out.writeString(whiteboard.getTitle());
+        out.writeString(whiteboard.getCreator());
+        out.writeString(whiteboard.getPubSubTransport());
+        out.writeVarInt(whiteboard.getWidth());
+        out.writeVarInt(whiteboard.getHeight());
+        out.writeVarLong(whiteboard.getCreationDate().getTime());
+        out.writeVarLong(whiteboard.getSequence());
+
+        Collection<UserData> users = whiteboard.getUserData();
+        out.writeVarInt(users.size());
+        for (UserData userData : users) {
+            out.writeUserData(userData);
+        }
+
+        out.writeVarInt(elements.size());
+        for (AbstractElement element : elements) {
+            out.writeElement(element);
+        }
+
+        // settings added later are appended, so that older snapshots can be read
+        out.writeDouble(whiteboard.getSimplifyTolerance());
+
+        // versions of properties, so that replayed changes are decided as before
+        List<AbstractElement> versioned = new ArrayList<AbstractElement>();
+        for (AbstractElement element : elements) {
+            if (!element.getFieldVersions().isEmpty()) {
+                versioned.add(element);
+            }
+        }
+
+        out.writeVarInt(versioned.size());
+        for (AbstractElement element : versioned) {
+            FieldVersions versions = element.getFieldVersions();
+            out.writeString(element.getUuid());
+            out.writeVarInt(versions.getProperties().size());
+            for (String property : versions.getProperties()) {
+                out.writeString(property);
+                out.writeVarLong(versions.getVersion(property));
+                out.writeString(versions.getWriter(property));
+            }
+        }
+
+        int length = out.size() - HEADER_SIZE;
+        CRC32 crc = new CRC32();
+        crc.update(out.getBuffer(), HEADER_SIZE, length);
+        out.setInt(12, length);
+        out.setInt(16, (int) crc.getValue());
+
+        return out.toByteArray();
+    }
+
+    /**
+     * Sets the generation of an encoded snapshot. The generation is not covered by the checksum.
+     *
+     * @param snapshot   encoded snapshot
+     * @param generation generation of the journal continuing this snapshot
+     */
+    public static void setGeneration(byte[] snapshot, long generation) {
+        ByteBuffer.wrap(snapshot, 4, 8).putLong(generation);
+    }
+
+    /**
+     * Reads a snapshot file.
+     *
+     * @param file snapshot file
+     * @return Snapshot snapshot
+     * @throws IOException if the file can not be read or is corrupt
+     */
+    public static Snapshot read(File file) throws IOException {
+        MappedByteBuffer buffer;
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        } finally {
+            // the mapping stays valid after closing
+            raf.close();
+        }
+
+        return read(buffer, file.toString());
+    }
+
+    /**
+     * Reads a snapshot from the given buffer.
+     *
+     * @param buffer buffer containing the encoded snapshot
+     * @param source source of the snapshot for error messages
+     * @return Snapshot snapshot
+     * @throws IOException if the snapshot is corrupt
+     */
+    public static Snapshot read(ByteBuffer buffer, String source) throws IOException {
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+            throw new IOException("Snapshot " + source + " has an unknown format");
+        }
+
+        long generation = buffer.getLong();
+        int length = buffer.getInt();
+        int checksum = buffer.getInt();
+        if (length != buffer.remaining() || checksum != checksum(buffer.duplicate())) {
+            throw new IOException("Snapshot " + source + " is corrupt");
+        }
+
+        try {
+            RecordInput in = new RecordInput(buffer);
+
+            Whiteboard whiteboard = new Whiteboard();
+            whiteboard.setUuid(in.readString());
+            whiteboard.setTitle(in.readString());
+            whiteboard.setCreator(in.readString());
+            whiteboard.setPubSubTransport(in.readString());
+            whiteboard.setWidth(in.readVarInt());
+            whiteboard.setHeight(in.readVarInt());
+            whiteboard.setCreationDate(new Date(in.readVarLong()));
+            whiteboard.setSequence(in.readVarLong());
+
+            int users = in.readVarInt();
+            for (int i = 0; i < users; i++) {
+                whiteboard.addUserData(in.readUserData());
+            }
+
+            int elements = in.readVarInt();
+            for (int i = 0; i < elements; i++) {
+                whiteboard.addElement(in.readElement());
+            }
+
+            if (in.hasRemaining()) {
+                whiteboard.setSimplifyTolerance(in.readDouble());
+            }
+
+            if (in.hasRemaining()) {
+                int versioned = in.readVarInt();
+                for (int i = 0; i < versioned; i++) {
+                    AbstractElement element = whiteboard.getElement(in.readString());
+                    FieldVersions versions = FieldVersions.EMPTY;
+                    int properties = in.readVarInt();
+                    for (int j = 0; j < properties; j++) {
+                        versions = versions.merge(in.readString(), in.readVarLong(), in.readString());
+                    }
+
+                    if (element != null) {
+                        element.setFieldVersions(versions);
+                    }
+                }
+            }
+
+            return new Snapshot(whiteboard, generation);
+        } catch (RuntimeException e) {
+            throw new IOException("Snapshot " + source + " can not be decoded: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reads the generation of a snapshot file without reading the whole snapshot.
+     *
+     * @param file snapshot file
+     * @return long generation
+     * @throws IOException if the file can not be read or has an unknown format
+     */
+    public static long readGeneration(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            if (raf.length() < HEADER_SIZE || raf.readInt() != MAGIC) {
+                throw new IOException("Snapshot " + file + " has an unknown format");
+            }
+
+            return raf.readLong();
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static int checksum(ByteBuffer buffer) {
+        CRC32 crc = new CRC32();
+        byte[] chunk = new byte[8192];
+        while (buffer.hasRemaining()) {
+            int length = Math.min(chunk.length, buffer.remaining());
+            buffer.get(chunk, 0, length);
+            crc.update(chunk, 0, length);
+        }
+
+        return (int) crc.getValue();
+    }
+}
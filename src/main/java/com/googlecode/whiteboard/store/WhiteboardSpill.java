@@ -0,0 +1,226 @@
+/*
+* @author  Oleg Varaksin (ovaraksin@googlemail.com)
+* $$Id: WhiteboardSpill.java 90 2011-09-27 15:24:29Z ovaraksin@gmail.com $$
+*/
+
+package com.googlecode.whiteboard.store;
+
+import com.googlecode.whiteboard.json.JsonConverter;
+import com.googlecode.whiteboard.model.OperationWindow;
+import com.googlecode.whiteboard.model.UserData;
+import com.googlecode.whiteboard.model.Whiteboard;
+import com.googlecode.whiteboard.model.base.AbstractElement;
+import com.googlecode.whiteboard.model.base.FieldVersions;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+/**
+ * Directory keeping evicted whiteboards as JSON files (one file per whiteboard). An evicted whiteboard is spilled
+ * into this directory and restored when it is accessed again.
+ *
+ * @author ova / last modified by $Author: ovaraksin@gmail.com $
+ * @version $Revision: 90 $
+ */
+public class WhiteboardSpill
+{
+    private static final Logger LOG = Logger.getLogger(WhiteboardSpill.class.getName());
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final Pattern UUID_PATTERN = Pattern.compile("[\\w-]+");
+
+    private final File directory;
+
+    public WhiteboardSpill(File directory) {
+        this.directory = directory;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Writes the given whiteboard into the spill directory. An existing file of the same whiteboard is replaced.
+     *
+     * @param whiteboard whiteboard
+     * @throws IOException if the whiteboard can not be written
+     */
+    public void spill(Whiteboard whiteboard) throws IOException {
+        File file = getFile(whiteboard.getUuid());
+        if (file == null) {
+            throw new IOException("Invalid whiteboard id: " + whiteboard.getUuid());
+        }
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Spill directory " + directory + " can not be created");
+        }
+
+        // write into a temporary file first, so that a failed spill never destroys a previous one
+        File tmpFile = getTmpFile(file);
+        Writer writer = new OutputStreamWriter(new FileOutputStream(tmpFile), UTF8);
+        try {
+            JsonConverter.getGson().toJson(new SpilledWhiteboard(whiteboard), writer);
+        } finally {
+            writer.close();
+        }
+
+        // replaces the previous spill atomically on POSIX file systems
+        if (!tmpFile.renameTo(file)) {
+            if (file.exists() && !file.delete()) {
+                throw new IOException("File " + file + " can not be replaced");
+            }
+
+            if (!tmpFile.renameTo(file)) {
+                // the temporary file is restored instead of the deleted one
+                LOG.warning("File " + tmpFile + " can not be renamed to " + file + ", it's kept as spill");
+            }
+        }
+    }
+
+    /**
+     * Restores a spilled whiteboard. The file of the whiteboard is deleted afterwards.
+     *
+     * @param uuid whiteboard id
+     * @return Whiteboard restored whiteboard without mailbox or null if the whiteboard was not spilled
+     * @throws IOException if the whiteboard can not be read
+     */
+    public Whiteboard restore(String uuid) throws IOException {
+        File file = getFile(uuid);
+        if (file == null) {
+            return null;
+        }
+
+        File tmpFile = getTmpFile(file);
+        if (!file.isFile()) {
+            // previous spill has been deleted, but the new one has not been renamed (crash or failed rename)
+            if (!tmpFile.isFile()) {
+                return null;
+            }
+
+            file = tmpFile;
+        }
+
+        SpilledWhiteboard spilled;
+        Reader reader = new InputStreamReader(new FileInputStream(file), UTF8);
+        try {
+            spilled = JsonConverter.getGson().fromJson(reader, SpilledWhiteboard.class);
+        } finally {
+            reader.close();
+        }
+
+        if (!file.delete()) {
+            // a stale file is replaced by the next spill
+            file.deleteOnExit();
+        }
+
+        if (tmpFile.exists() && !tmpFile.delete()) {
+            // image of a failed spill must not be restored later
+            tmpFile.deleteOnExit();
+        }
+
+        return (spilled != null ? spilled.toWhiteboard() : null);
+    }
+
+    private File getFile(String uuid) {
+        if (uuid == null || !UUID_PATTERN.matcher(uuid).matches()) {
+            // whiteboard ids come from requests, never allow paths
+            return null;
+        }
+
+        return new File(directory, uuid + ".json");
+    }
+
+    private File getTmpFile(File file) {
+        return new File(directory, file.getName() + ".tmp");
+    }
+
+    /**
+     * Serializable state of a whiteboard.
+     */
+    private static class SpilledWhiteboard
+    {
+        private String uuid;
+        private String title;
+        private String creator;
+        private String pubSubTransport;
+        private int width;
+        private int height;
+        private double simplifyTolerance;
+        private long creationDate;
+        private long sequence;
+        private List<UserData> userData;
+        private List<AbstractElement> elements;
+        // versions of element properties (not part of the element JSON), key is the element id
+        private Map<String, FieldVersions> fieldVersions;
+        // ids of recently applied operations, so that retried changes are not applied again after a restore
+        private List<String> operationIds;
+
+        SpilledWhiteboard(Whiteboard whiteboard) {
+            uuid = whiteboard.getUuid();
+            title = whiteboard.getTitle();
+            creator = whiteboard.getCreator();
+            pubSubTransport = whiteboard.getPubSubTransport();
+            width = whiteboard.getWidth();
+            height = whiteboard.getHeight();
+            simplifyTolerance = whiteboard.getSimplifyTolerance();
+            creationDate = whiteboard.getCreationDate().getTime();
+            sequence = whiteboard.getSequence();
+            userData = new ArrayList<UserData>(whiteboard.getUserData());
+            elements = new ArrayList<AbstractElement>(whiteboard.getElements());
+            fieldVersions = new HashMap<String, FieldVersions>();
+            for (AbstractElement element : elements) {
+                if (!element.getFieldVersions().isEmpty()) {
+                    fieldVersions.put(element.getUuid(), element.getFieldVersions());
+                }
+            }
+
+            if (whiteboard.getOperationWindow() != null) {
+                operationIds = whiteboard.getOperationWindow().getOperationIds();
+            }
+        }
+
+        Whiteboard toWhiteboard() {
+            Whiteboard whiteboard = new Whiteboard();
+            whiteboard.setUuid(uuid);
+            whiteboard.setTitle(title);
+            whiteboard.setCreator(creator);
+            whiteboard.setPubSubTransport(pubSubTransport);
+            whiteboard.setWidth(width);
+            whiteboard.setHeight(height);
+            whiteboard.setSimplifyTolerance(simplifyTolerance);
+            whiteboard.setCreationDate(new Date(creationDate));
+            whiteboard.setSequence(sequence);
+            if (userData != null) {
+                for (UserData ud : userData) {
+                    whiteboard.addUserData(ud);
+                }
+            }
+
+            if (elements != null) {
+                for (AbstractElement element : elements) {
+                    if (fieldVersions != null) {
+                        element.setFieldVersions(fieldVersions.get(element.getUuid()));
+                    }
+
+                    whiteboard.addElement(element);
+                }
+            }
+
+            if (operationIds != null) {
+                // transferred to the window of the managed whiteboard
+                OperationWindow operationWindow =
+                        new OperationWindow(Math.max(operationIds.size(), OperationWindow.DEFAULT_CAPACITY));
+                for (String operationId : operationIds) {
+                    operationWindow.add(operationId);
+                }
+
+                whiteboard.setOperationWindow(operationWindow);
+            }
+
+            return whiteboard;
+        }
+    }
+}
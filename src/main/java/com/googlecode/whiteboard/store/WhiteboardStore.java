@@ -0,0 +1,94 @@
+/*
+* @author  Oleg Varaksin (ovaraksin@googlemail.com)
+* $$Id: WhiteboardStore.java 90 2011-09-27 15:24:29Z ovaraksin@gmail.com $$
+*/
+
+package com.googlecode.whiteboard.store;
+
+import com.googlecode.whiteboard.model.Whiteboard;
+import com.googlecode.whiteboard.model.transfer.ClientChangedData;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * SPI for storage of whiteboards. Active whiteboards live in memory (see
+ * {@link com.googlecode.whiteboard.controller.WhiteboardsManager}), a store keeps them beyond eviction and restart.
+ * Implementations are configured by the property <code>whiteboard.store</code> in <code>wb-configuration.properties</code>:
+ * <ul>
+ * <li><code>memory</code> - {@link MemoryWhiteboardStore}, nothing survives a restart (default)</li>
+ * <li><code>file</code> - {@link FileWhiteboardStore}, local journal and snapshot files</li>
+ * <li><code>jdbc</code> - {@link JdbcWhiteboardStore}, embedded database like H2</li>
+ * <li>name of any other class implementing this interface with a public constructor taking
+ * {@link org.apache.commons.configuration.Configuration}</li>
+ * </ul>
+ * Methods getting a whiteboard instance are called from the mailbox of this whiteboard, so that they see a consistent
+ * state. They should not block, durable writes are expected to be done asynchronously.
+ *
+ * @author ova / last modified by $Author: ovaraksin@gmail.com $
+ * @version $Revision: 90 $
+ */
+public interface WhiteboardStore
+{
+    /**
+     * Loads a stored whiteboard.
+     *
+     * @param uuid whiteboard id
+     * @return Whiteboard whiteboard without mailbox or null if this store doesn't have such whiteboard
+     * @throws IOException if the whiteboard can not be loaded
+     */
+    Whiteboard load(String uuid) throws IOException;
+
+    /**
+     * Saves the complete state of a whiteboard, e.g. after creation or as periodic snapshot. The saved state
+     * replaces all operations applied before.
+     *
+     * @param whiteboard whiteboard
+     */
+    void save(Whiteboard whiteboard);
+
+    /**
+     * Saves the users of a whiteboard, e.g. after a user has joined. Only users are written, they replace the users
+     * of the last saved state.
+     *
+     * @param whiteboard whiteboard
+     */
+    void saveUsers(Whiteboard whiteboard);
+
+    /**
+     * Stores an operation which has been applied to the given whiteboard.
+     *
+     * @param whiteboard whiteboard
+     * @param ccd        applied operation
+     */
+    void apply(Whiteboard whiteboard, ClientChangedData ccd);
+
+    /**
+     * Lists all stored whiteboards, e.g. to recover them on startup.
+     *
+     * @return List ids of stored whiteboards
+     * @throws IOException if whiteboards can not be listed
+     */
+    List<String> list() throws IOException;
+
+    /**
+     * Notifies this store that the given whiteboard is evicted from memory. Changes since the last save have been
+     * saved before. The whiteboard is kept in memory if this method fails.
+     *
+     * @param whiteboard whiteboard
+     * @throws IOException if the whiteboard can not be kept by this store
+     */
+    void evict(Whiteboard whiteboard) throws IOException;
+
+    /**
+     * Deletes a whiteboard from this store.
+     *
+     * @param uuid whiteboard id
+     */
+    void delete(String uuid);
+
+    /**
+     * Closes this store after pending writes are done.
+     */
+    void close();
+}
@@ -0,0 +1,93 @@
+/*
+* @author  Oleg Varaksin (ovaraksin@googlemail.com)
+* $$Id: PathSimplifier.java 90 2011-09-27 15:24:29Z ovaraksin@gmail.com $$
+*/
+
+package com.googlecode.whiteboard.utils;
+
+import com.googlecode.whiteboard.model.Whiteboard;
+import com.googlecode.whiteboard.model.base.LinePath;
+import com.googlecode.whiteboard.model.element.FreeLine;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Simplifies paths of free lines with the tolerance of their whiteboard. Free lines are drawn from every mouse
+ * sample, so that most of their points lie on straight segments and can be dropped without visible changes.
+ * Received and stored points of all simplified lines are counted for monitoring.
+ *
+ * @author ova / last modified by $Author: ovaraksin@gmail.com $
+ * @version $Revision: 90 $
+ */
+public class PathSimplifier
+{
+    private static final Logger LOG = Logger.getLogger(PathSimplifier.class.getName());
+
+    private static final AtomicLong receivedPoints = new AtomicLong();
+    private static final AtomicLong storedPoints = new AtomicLong();
+
+    /**
+     * Simplifies the path of the given free line if the whiteboard has a tolerance.
+     *
+     * @param whiteboard whiteboard of the line
+     * @param line       free line, its path is replaced by the simplified one
+     */
+    public static void simplify(Whiteboard whiteboard, FreeLine line) {
+        LinePath path = line.getLinePath();
+        if (path == null || whiteboard.getSimplifyTolerance() <= 0) {
+            return;
+        }
+
+        int received = path.getPointCount();
+        if (received < 0) {
+            // path isn't encoded and can't be simplified
+            return;
+        }
+
+        LinePath simplified = path.simplify(whiteboard.getSimplifyTolerance());
+        int stored = simplified.getPointCount();
+        line.setLinePath(simplified);
+
+        receivedPoints.addAndGet(received);
+        storedPoints.addAndGet(stored);
+
+        if (LOG.isLoggable(Level.FINE)) {
+            LOG.fine("Free line " + line.getUuid() + " in whiteboard " + whiteboard.getUuid() + ": " + stored + " of "
+                     + received + " points stored, total reduction ratio " + getReductionRatio());
+        }
+    }
+
+    /**
+     * Gets the number of points of all free lines before simplification.
+     *
+     * @return long number of points
+     */
+    public static long getReceivedPoints() {
+        return receivedPoints.get();
+    }
+
+    /**
+     * Gets the number of points of all free lines after simplification.
+     *
+     * @return long number of points
+     */
+    public static long getStoredPoints() {
+        return storedPoints.get();
+    }
+
+    /**
+     * Gets the ratio of points which have been dropped by simplification.
+     *
+     * @return double ratio between 0 (nothing dropped) and 1
+     */
+    public static double getReductionRatio() {
+        long received = receivedPoints.get();
+        if (received == 0) {
+            return 0;
+        }
+
+        return 1 - (double) storedPoints.get() / received;
+    }
+}
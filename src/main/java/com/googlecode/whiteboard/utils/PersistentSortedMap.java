@@ -0,0 +1,380 @@
+/*
+* @author  Oleg Varaksin (ovaraksin@googlemail.com)
+* $$Id: PersistentSortedMap.java 90 2011-09-27 15:24:29Z ovaraksin@gmail.com $$
+*/
+
+package com.googlecode.whiteboard.utils;
+
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * Immutable sorted map (AVL tree). Every change returns a new map sharing all unchanged nodes with this one, so that
+ * a change copies O(log n) nodes only. Maps can be read by any number of threads without locking, a reader keeps
+ * a consistent view while writers create newer maps.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ * @author ova / last modified by $Author: ovaraksin@gmail.com $
+ * @version $Revision: 90 $
+ */
+public final class PersistentSortedMap<K extends Comparable<K>, V> implements Serializable
+{
+    private static final long serialVersionUID = 20110927L;
+
+    @SuppressWarnings("unchecked")
+    private static final PersistentSortedMap EMPTY = new PersistentSortedMap(null);
+
+    private final Node<K, V> root;
+
+    private PersistentSortedMap(Node<K, V> root) {
+        this.root = root;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <K extends Comparable<K>, V> PersistentSortedMap<K, V> empty() {
+        return (PersistentSortedMap<K, V>) EMPTY;
+    }
+
+    public int size() {
+        return size(root);
+    }
+
+    public boolean isEmpty() {
+        return root == null;
+    }
+
+    /**
+     * Gets the height of the tree, it grows logarithmically with the size.
+     *
+     * @return int height, 0 for an empty map
+     */
+    int height() {
+        return height(root);
+    }
+
+    public V get(K key) {
+        Node<K, V> node = root;
+        while (node != null) {
+            int cmp = key.compareTo(node.key);
+            if (cmp == 0) {
+                return node.value;
+            }
+
+            node = (cmp < 0 ? node.left : node.right);
+        }
+
+        return null;
+    }
+
+    /**
+     * Gets the smallest key.
+     *
+     * @return K first key or null if this map is empty
+     */
+    public K firstKey() {
+        Node<K, V> node = root;
+        if (node == null) {
+            return null;
+        }
+
+        while (node.left != null) {
+            node = node.left;
+        }
+
+        return node.key;
+    }
+
+    /**
+     * Gets the greatest key.
+     *
+     * @return K last key or null if this map is empty
+     */
+    public K lastKey() {
+        Node<K, V> node = root;
+        if (node == null) {
+            return null;
+        }
+
+        while (node.right != null) {
+            node = node.right;
+        }
+
+        return node.key;
+    }
+
+    /**
+     * Puts a value.
+     *
+     * @param key   key
+     * @param value value
+     * @return PersistentSortedMap new map containing the value, this map is not changed
+     */
+    public PersistentSortedMap<K, V> put(K key, V value) {
+        return new PersistentSortedMap<K, V>(put(root, key, value));
+    }
+
+    /**
+     * Removes a value.
+     *
+     * @param key key
+     * @return PersistentSortedMap new map without the key or this map if it doesn't contain the key
+     */
+    public PersistentSortedMap<K, V> remove(K key) {
+        Node<K, V> newRoot = remove(root, key);
+
+        return newRoot == root ? this : new PersistentSortedMap<K, V>(newRoot);
+    }
+
+    /**
+     * Gets all values in key order.
+     *
+     * @return Collection read-only values
+     */
+    public Collection<V> values() {
+        return new AbstractCollection<V>()
+        {
+            @Override
+            public Iterator<V> iterator() {
+                final Iterator<Node<K, V>> nodes = new NodeIterator<K, V>(root, null, true);
+
+                return new Iterator<V>()
+                {
+                    public boolean hasNext() {
+                        return nodes.hasNext();
+                    }
+
+                    public V next() {
+                        return nodes.next().value;
+                    }
+
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return PersistentSortedMap.this.size();
+            }
+        };
+    }
+
+    /**
+     * Gets all entries in key order.
+     *
+     * @return Iterator read-only entries
+     */
+    public Iterator<Map.Entry<K, V>> entries() {
+        final Iterator<Node<K, V>> nodes = new NodeIterator<K, V>(root, null, true);
+
+        return new Iterator<Map.Entry<K, V>>()
+        {
+            public boolean hasNext() {
+                return nodes.hasNext();
+            }
+
+            public Map.Entry<K, V> next() {
+                return nodes.next();
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Gets keys greater (ascending) or smaller (descending) than the given key, the nearest one first.
+     *
+     * @param key       key to start from (exclusive)
+     * @param ascending true for greater keys, false for smaller keys
+     * @return Iterator keys
+     */
+    public Iterator<K> keysFrom(K key, boolean ascending) {
+        final Iterator<Node<K, V>> nodes = new NodeIterator<K, V>(root, key, ascending);
+
+        return new Iterator<K>()
+        {
+            public boolean hasNext() {
+                return nodes.hasNext();
+            }
+
+            public K next() {
+                return nodes.next().key;
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    private static <K extends Comparable<K>, V> Node<K, V> put(Node<K, V> node, K key, V value) {
+        if (node == null) {
+            return new Node<K, V>(key, value, null, null);
+        }
+
+        int cmp = key.compareTo(node.key);
+        if (cmp == 0) {
+            return new Node<K, V>(key, value, node.left, node.right);
+        } else if (cmp < 0) {
+            return balance(node.key, node.value, put(node.left, key, value), node.right);
+        } else {
+            return balance(node.key, node.value, node.left, put(node.right, key, value));
+        }
+    }
+
+    private static <K extends Comparable<K>, V> Node<K, V> remove(Node<K, V> node, K key) {
+        if (node == null) {
+            return null;
+        }
+
+        int cmp = key.compareTo(node.key);
+        if (cmp < 0) {
+            Node<K, V> left = remove(node.left, key);
+            return left == node.left ? node : balance(node.key, node.value, left, node.right);
+        } else if (cmp > 0) {
+            Node<K, V> right = remove(node.right, key);
+            return right == node.right ? node : balance(node.key, node.value, node.left, right);
+        }
+
+        if (node.left == null) {
+            return node.right;
+        } else if (node.right == null) {
+            return node.left;
+        }
+
+        // replace by the smallest node of the right subtree
+        Node<K, V> min = node.right;
+        while (min.left != null) {
+            min = min.left;
+        }
+
+        return balance(min.key, min.value, node.left, removeMin(node.right));
+    }
+
+    private static <K extends Comparable<K>, V> Node<K, V> removeMin(Node<K, V> node) {
+        if (node.left == null) {
+            return node.right;
+        }
+
+        return balance(node.key, node.value, removeMin(node.left), node.right);
+    }
+
+    private static <K extends Comparable<K>, V> Node<K, V> balance(K key, V value, Node<K, V> left, Node<K, V> right) {
+        int diff = height(left) - height(right);
+        if (diff > 1) {
+            if (height(left.left) < height(left.right)) {
+                // left-right case
+                Node<K, V> lr = left.right;
+                return new Node<K, V>(lr.key, lr.value,
+                        new Node<K, V>(left.key, left.value, left.left, lr.left),
+                        new Node<K, V>(key, value, lr.right, right));
+            }
+
+            return new Node<K, V>(left.key, left.value, left.left, new Node<K, V>(key, value, left.right, right));
+        } else if (diff < -1) {
+            if (height(right.right) < height(right.left)) {
+                // right-left case
+                Node<K, V> rl = right.left;
+                return new Node<K, V>(rl.key, rl.value,
+                        new Node<K, V>(key, value, left, rl.left),
+                        new Node<K, V>(right.key, right.value, rl.right, right.right));
+            }
+
+            return new Node<K, V>(right.key, right.value, new Node<K, V>(key, value, left, right.left), right.right);
+        }
+
+        return new Node<K, V>(key, value, left, right);
+    }
+
+    private static int height(Node<?, ?> node) {
+        return node == null ? 0 : node.height;
+    }
+
+    private static int size(Node<?, ?> node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static class Node<K, V> implements Map.Entry<K, V>, Serializable
+    {
+        private static final long serialVersionUID = 20110927L;
+
+        private final K key;
+        private final V value;
+        private final Node<K, V> left;
+        private final Node<K, V> right;
+        private final int height;
+        private final int size;
+
+        Node(K key, V value, Node<K, V> left, Node<K, V> right) {
+            this.key = key;
+            this.value = value;
+            this.left = left;
+            this.right = right;
+            this.height = Math.max(height(left), height(right)) + 1;
+            this.size = size(left) + size(right) + 1;
+        }
+
+        public K getKey() {
+            return key;
+        }
+
+        public V getValue() {
+            return value;
+        }
+
+        public V setValue(V value) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * In-order iterator over nodes with keys after a start key (all nodes if the start key is null).
+     */
+    private static class NodeIterator<K extends Comparable<K>, V> implements Iterator<Node<K, V>>
+    {
+        private final Deque<Node<K, V>> stack = new ArrayDeque<Node<K, V>>();
+        private final boolean ascending;
+
+        NodeIterator(Node<K, V> root, K from, boolean ascending) {
+            this.ascending = ascending;
+            Node<K, V> node = root;
+            while (node != null) {
+                int cmp = (from == null ? (ascending ? -1 : 1) : from.compareTo(node.key));
+                if (ascending ? cmp < 0 : cmp > 0) {
+                    // node comes after the start key
+                    stack.push(node);
+                    node = (ascending ? node.left : node.right);
+                } else {
+                    node = (ascending ? node.right : node.left);
+                }
+            }
+        }
+
+        public boolean hasNext() {
+            return !stack.isEmpty();
+        }
+
+        public Node<K, V> next() {
+            if (stack.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+
+            Node<K, V> node = stack.pop();
+            Node<K, V> child = (ascending ? node.right : node.left);
+            while (child != null) {
+                stack.push(child);
+                child = (ascending ? child.left : child.right);
+            }
+
+            return node;
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,320 @@
+/*
+* @author  Oleg Varaksin (ovaraksin@googlemail.com)
+* $$Id: QuadTree.java 90 2011-09-27 15:24:29Z ovaraksin@gmail.com $$
+*/
+
+package com.googlecode.whiteboard.utils;
+
+import com.googlecode.whiteboard.model.BoundingBox;
+
+import java.io.Serializable;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Spatial index of items by their bounding boxes (loose quadtree). Every item is kept in the smallest quadrant
+ * which contains the center of its box and is not smaller than the box. Quadrants are queried with bounds extended
+ * by half of their size, so that they cover all their items and no item is stuck in a large quadrant only because
+ * it crosses the border of smaller ones. A query visits O(log n + k) quadrants for k found items.
+ * <p/>
+ * The indexed area grows when an item is put outside of it. Items without boxes are found by every query.
+ * Queries can run in parallel, changes lock the whole index.
+ *
+ * @param <T> item type
+ * @author ova / last modified by $Author: ovaraksin@gmail.com $
+ * @version $Revision: 90 $
+ */
+public class QuadTree<T> implements Serializable
+{
+    private static final long serialVersionUID = 20110927L;
+
+    /**
+     * Max. number of items in a quadrant before it is split.
+     */
+    private static final int MAX_ITEMS = 8;
+
+    /**
+     * Min. size of a quadrant which can be split.
+     */
+    private static final double MIN_SIZE = 4;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<T, Entry<T>> entries = new HashMap<T, Entry<T>>();
+    private final List<T> unbounded = new ArrayList<T>();
+    private Node<T> root;
+
+    /**
+     * Creates an index with the given initial area. The area grows if necessary.
+     *
+     * @param width  initial width
+     * @param height initial height
+     */
+    public QuadTree(double width, double height) {
+        root = new Node<T>(null, 0, 0, Math.max(width, MIN_SIZE), Math.max(height, MIN_SIZE));
+    }
+
+    /**
+     * Puts or moves an item.
+     *
+     * @param item item
+     * @param box  bounding box of the item or null if the item has no geometry
+     */
+    public void put(T item, BoundingBox box) {
+        lock.writeLock().lock();
+        try {
+            removeEntry(item);
+            if (box == null || !isFinite(box)) {
+                unbounded.add(item);
+                entries.put(item, new Entry<T>(item, null));
+                return;
+            }
+
+            while (!root.contains(box)) {
+                grow(box);
+            }
+
+            Entry<T> entry = new Entry<T>(item, box);
+            entries.put(item, entry);
+            insert(root, entry);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(T item) {
+        lock.writeLock().lock();
+        try {
+            removeEntry(item);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            entries.clear();
+            unbounded.clear();
+            root = new Node<T>(null, root.minX, root.minY, root.maxX, root.maxY);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds all items whose bounding boxes intersect the given area.
+     *
+     * @param area area
+     * @return List found items in no particular order
+     */
+    public List<T> find(BoundingBox area) {
+        List<T> found = new ArrayList<T>();
+        lock.readLock().lock();
+        try {
+            found.addAll(unbounded);
+            find(root, area, found);
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        return found;
+    }
+
+    private void find(Node<T> node, BoundingBox area, List<T> found) {
+        if (!node.intersects(area)) {
+            return;
+        }
+
+        for (Entry<T> entry : node.entries) {
+            if (entry.box.intersects(area)) {
+                found.add(entry.item);
+            }
+        }
+
+        if (node.children != null) {
+            for (Node<T> child : node.children) {
+                find(child, area, found);
+            }
+        }
+    }
+
+    private void insert(Node<T> node, Entry<T> entry) {
+        while (node.children != null) {
+            Node<T> child = node.childContaining(entry.box);
+            if (child == null) {
+                break;
+            }
+
+            node = child;
+        }
+
+        entry.node = node;
+        node.entries.add(entry);
+
+        if (node.children == null && node.entries.size() > MAX_ITEMS && node.maxX - node.minX > MIN_SIZE
+            && node.maxY - node.minY > MIN_SIZE) {
+            node.split();
+
+            // push items down which fit into one quadrant
+            List<Entry<T>> items = new ArrayList<Entry<T>>(node.entries);
+            node.entries.clear();
+            for (Entry<T> item : items) {
+                insert(node, item);
+            }
+        }
+    }
+
+    private void removeEntry(T item) {
+        Entry<T> entry = entries.remove(item);
+        if (entry == null) {
+            return;
+        }
+
+        if (entry.node == null) {
+            unbounded.remove(item);
+            return;
+        }
+
+        Node<T> node = entry.node;
+        node.entries.remove(entry);
+
+        // drop empty quadrants, so that the tree doesn't keep the shape of removed items
+        while (node != null && node.isEmpty()) {
+            node.children = null;
+            node = node.parent;
+            if (node != null && node.children != null && node.allChildrenEmpty()) {
+                node.children = null;
+            } else {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Doubles the indexed area towards the given box, the current root becomes one quadrant of the new root.
+     */
+    private void grow(BoundingBox box) {
+        double width = root.maxX - root.minX;
+        double height = root.maxY - root.minY;
+        boolean left = box.getMinX() < root.minX;
+        boolean up = box.getMinY() < root.minY;
+        double minX = (left ? root.minX - width : root.minX);
+        double minY = (up ? root.minY - height : root.minY);
+
+        Node<T> newRoot = new Node<T>(null, minX, minY, minX + 2 * width, minY + 2 * height);
+        if (!root.isEmpty()) {
+            newRoot.split();
+            int index = (left ? 1 : 0) + (up ? 2 : 0);
+            root.parent = newRoot;
+            newRoot.children[index] = root;
+        }
+
+        root = newRoot;
+    }
+
+    private static boolean isFinite(BoundingBox box) {
+        return !Double.isInfinite(box.getMinX()) && !Double.isNaN(box.getMinX())
+               && !Double.isInfinite(box.getMinY()) && !Double.isNaN(box.getMinY())
+               && !Double.isInfinite(box.getMaxX()) && !Double.isNaN(box.getMaxX())
+               && !Double.isInfinite(box.getMaxY()) && !Double.isNaN(box.getMaxY());
+    }
+
+    private static class Entry<T> implements Serializable
+    {
+        private static final long serialVersionUID = 20110927L;
+
+        private final T item;
+        private final BoundingBox box;
+        private Node<T> node;
+
+        Entry(T item, BoundingBox box) {
+            this.item = item;
+            this.box = box;
+        }
+    }
+
+    private static class Node<T> implements Serializable
+    {
+        private static final long serialVersionUID = 20110927L;
+
+        private final double minX;
+        private final double minY;
+        private final double maxX;
+        private final double maxY;
+        private final List<Entry<T>> entries = new ArrayList<Entry<T>>(4);
+        private Node<T> parent;
+        // quadrants: top left, top right, bottom left, bottom right
+        private Node<T>[] children;
+
+        Node(Node<T> parent, double minX, double minY, double maxX, double maxY) {
+            this.parent = parent;
+            this.minX = minX;
+            this.minY = minY;
+            this.maxX = maxX;
+            this.maxY = maxY;
+        }
+
+        boolean contains(BoundingBox box) {
+            return minX <= box.getMinX() && box.getMaxX() <= maxX && minY <= box.getMinY() && box.getMaxY() <= maxY;
+        }
+
+        /**
+         * Checks the given box against the loose bounds of this quadrant.
+         */
+        boolean intersects(BoundingBox box) {
+            double looseX = (maxX - minX) / 2;
+            double looseY = (maxY - minY) / 2;
+            return minX - looseX <= box.getMaxX() && box.getMinX() <= maxX + looseX
+                   && minY - looseY <= box.getMaxY() && box.getMinY() <= maxY + looseY;
+        }
+
+        @SuppressWarnings("unchecked")
+        void split() {
+            double midX = (minX + maxX) / 2;
+            double midY = (minY + maxY) / 2;
+            children = new Node[4];
+            children[0] = new Node<T>(this, minX, minY, midX, midY);
+            children[1] = new Node<T>(this, midX, minY, maxX, midY);
+            children[2] = new Node<T>(this, minX, midY, midX, maxY);
+            children[3] = new Node<T>(this, midX, midY, maxX, maxY);
+        }
+
+        Node<T> childContaining(BoundingBox box) {
+            double midX = (minX + maxX) / 2;
+            double midY = (minY + maxY) / 2;
+            if (box.getMaxX() - box.getMinX() > midX - minX || box.getMaxY() - box.getMinY() > midY - minY) {
+                // too large for loose bounds of quadrants
+                return null;
+            }
+
+            double centerX = (box.getMinX() + box.getMaxX()) / 2;
+            double centerY = (box.getMinY() + box.getMaxY()) / 2;
+
+            return children[(centerX < midX ? 0 : 1) + (centerY < midY ? 0 : 2)];
+        }
+
+        boolean isEmpty() {
+            return entries.isEmpty() && (children == null || allChildrenEmpty());
+        }
+
+        boolean allChildrenEmpty() {
+            for (Node<T> child : children) {
+                if (!child.entries.isEmpty() || child.children != null) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+/*
+* @author  Oleg Varaksin (ovaraksin@googlemail.com)
+* $$Id: SerialExecutor.java 90 2011-09-27 15:24:29Z ovaraksin@gmail.com $$
+*/
+
+package com.googlecode.whiteboard.utils;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Executor which runs submitted tasks one after another in submission order on top of a shared executor.
+ * Every whiteboard owns one instance (mailbox), so that changes of the same whiteboard are applied sequentially
+ * while changes of different whiteboards are processed in parallel.
+ *
+ * @author ova / last modified by $Author: ovaraksin@gmail.com $
+ * @version $Revision: 90 $
+ */
+public class SerialExecutor implements Executor
+{
+    private static final Logger LOG = Logger.getLogger(SerialExecutor.class.getName());
+
+    private final Queue<Runnable> tasks = new ArrayDeque<Runnable>();
+    private final Executor executor;
+    private Runnable active;
+
+    public SerialExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    public synchronized void execute(final Runnable task) {
+        tasks.offer(new Runnable()
+        {
+            public void run() {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    LOG.log(Level.SEVERE, "Task in the whiteboard mailbox failed", e);
+                } finally {
+                    scheduleNext();
+                }
+            }
+        });
+
+        if (active == null) {
+            scheduleNext();
+        }
+    }
+
+    private synchronized void scheduleNext() {
+        active = tasks.poll();
+        if (active != null) {
+            executor.execute(active);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+* @author  Oleg Varaksin (ovaraksin@googlemail.com)
+* $$Id: TimerWheel.java 90 2011-09-27 15:24:29Z ovaraksin@gmail.com $$
+*/
+
+package com.googlecode.whiteboard.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Hashed timer wheel. Deadlines are hashed by tick into a fixed number of slots, so that scheduling costs O(1)
+ * and every tick only looks at one slot. Deadlines further away than one rotation wait for the remaining rounds.
+ * The wheel doesn't run by itself, {@link #advance(long)} has to be called periodically (e.g. by a scheduler
+ * at the tick duration).
+ *
+ * @param <T> type of scheduled items
+ * @author ova / last modified by $Author: ovaraksin@gmail.com $
+ * @version $Revision: 90 $
+ */
+public class TimerWheel<T>
+{
+    private final List<Entry<T>>[] slots;
+    private final int mask;
+    private final long tickDuration;
+    private final long startTime;
+    private long currentTick;
+
+    /**
+     * Creates a new wheel.
+     *
+     * @param size         number of slots, rounded up to a power of two
+     * @param tickDuration duration of one tick in milliseconds
+     * @param startTime    time in milliseconds of the first tick
+     */
+    @SuppressWarnings("unchecked")
+    public TimerWheel(int size, long tickDuration, long startTime) {
+        if (tickDuration <= 0) {
+            throw new IllegalArgumentException("Tick duration must be greater than 0: " + tickDuration);
+        }
+
+        int normalized = 1;
+        while (normalized < size) {
+            normalized <<= 1;
+        }
+
+        this.slots = new List[normalized];
+        for (int i = 0; i < normalized; i++) {
+            slots[i] = new LinkedList<Entry<T>>();
+        }
+
+        this.mask = normalized - 1;
+        this.tickDuration = tickDuration;
+        this.startTime = startTime;
+    }
+
+    public long getTickDuration() {
+        return tickDuration;
+    }
+
+    /**
+     * Schedules the given item. An item can be scheduled several times, every deadline is reported separately.
+     *
+     * @param item     item
+     * @param deadline time in milliseconds when the item expires
+     */
+    public synchronized void schedule(T item, long deadline) {
+        // round up, an item never expires before its deadline
+        long tick = (deadline - startTime + tickDuration - 1) / tickDuration;
+        if (tick < currentTick) {
+            tick = currentTick;
+        }
+
+        long rounds = (tick - currentTick) / slots.length;
+        slots[(int) (tick & mask)].add(new Entry<T>(item, rounds));
+    }
+
+    /**
+     * Advances the wheel up to the given time.
+     *
+     * @param now current time in milliseconds
+     * @return List items whose deadlines have passed (empty list if there are no such items)
+     */
+    public synchronized List<T> advance(long now) {
+        List<T> expired = null;
+        while (startTime + currentTick * tickDuration <= now) {
+            Iterator<Entry<T>> iter = slots[(int) (currentTick & mask)].iterator();
+            while (iter.hasNext()) {
+                Entry<T> entry = iter.next();
+                if (entry.rounds > 0) {
+                    entry.rounds--;
+                    continue;
+                }
+
+                iter.remove();
+                if (expired == null) {
+                    expired = new ArrayList<T>();
+                }
+
+                expired.add(entry.item);
+            }
+
+            currentTick++;
+        }
+
+        if (expired == null) {
+            return Collections.emptyList();
+        }
+
+        return expired;
+    }
+
+    private static class Entry<T>
+    {
+        private final T item;
+        private long rounds;
+
+        Entry(T item, long rounds) {
+            this.item = item;
+            this.rounds = rounds;
+        }
+    }
+}
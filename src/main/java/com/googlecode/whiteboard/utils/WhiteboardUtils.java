@@ -6,24 +6,22 @@
 package com.googlecode.whiteboard.utils;
 
 import com.googlecode.whiteboard.controller.WhiteboardsManager;
-import com.googlecode.whiteboard.json.JsonConverter;
+import com.googlecode.whiteboard.model.OperationWindow;
 import com.googlecode.whiteboard.model.Whiteboard;
 import com.googlecode.whiteboard.model.base.AbstractElement;
+import com.googlecode.whiteboard.model.base.FieldVersions;
 import com.googlecode.whiteboard.model.base.Line;
+import com.googlecode.whiteboard.model.base.LinePath;
 import com.googlecode.whiteboard.model.base.Positionable;
 import com.googlecode.whiteboard.model.element.FreeLine;
-import com.googlecode.whiteboard.model.element.StraightLine;
 import com.googlecode.whiteboard.model.element.Text;
+import com.googlecode.whiteboard.model.property.*;
 import com.googlecode.whiteboard.model.transfer.*;
-import org.apache.commons.beanutils.BeanUtils;
 
 import javax.servlet.ServletContext;
 import javax.servlet.http.HttpServletRequest;
 import java.text.SimpleDateFormat;
-import java.util.Date;
-import java.util.LinkedHashMap;
-import java.util.Map;
-import java.util.TimeZone;
+import java.util.*;
 import java.util.logging.Logger;
 
 /**
@@ -53,33 +51,66 @@ public class WhiteboardUtils
     }
 
     /**
-     * Updates whiteboard for any changes from subscribers. This method is called by {@link com.googlecode.whiteboard.pubsub.WhiteboardPubSub}
+     * Gets the application scoped bean {@link WhiteboardsManager} for the given request.
      *
-     * @param request            current request
-     * @param transferedJsonData changes in JSON format
-     * @return String transformed changes in JSON format to be broadcasted to subscribers
+     * @param request current request
+     * @return WhiteboardsManager manager or null if not found
      */
-    public static synchronized String updateWhiteboardFromJson(HttpServletRequest request, String transferedJsonData) {
+    public static WhiteboardsManager getWhiteboardsManager(HttpServletRequest request) {
         if (request == null) {
             LOG.severe("Current HTTP request not found (null) ==> no whiteboard update!");
-            return "";
+            return null;
         }
 
-        // get WhiteboardsManager bean
-        ServletContext servletContext = ((HttpServletRequest) request).getSession().getServletContext();
+        ServletContext servletContext = request.getSession().getServletContext();
         WhiteboardsManager manager = (WhiteboardsManager) servletContext.getAttribute("whiteboardsManager");
         if (manager == null) {
             LOG.severe("Managed bean WhiteboardsManager not found (null) ==> no whiteboard update!");
-            return "";
         }
 
-        // create Java object from JSON
-        ClientChangedData ccd = JsonConverter.getGson().fromJson(transferedJsonData, ClientChangedData.class);
-        Whiteboard whiteboard = manager.getWhiteboard(ccd.getWhiteboardId());
+        return manager;
+    }
 
-        if (whiteboard == null) {
-            LOG.severe("Whiteboard object not found (null) ==> no whiteboard update!");
-            return "";
+    /**
+     * Updates whiteboard for any changes from subscribers. This method is called by {@link com.googlecode.whiteboard.pubsub.WhiteboardPubSub}
+     * from the mailbox of the given whiteboard (see {@link Whiteboard#getMailbox()}), so that changes of the same whiteboard
+     * never run concurrently.
+     *
+     * @param whiteboard whiteboard to be updated
+     * @param ccd        changes from subscriber
+     * @return ServerChangedData transformed changes to be broadcasted to subscribers or null if nothing has to be broadcasted
+     */
+    public static ServerChangedData updateWhiteboard(Whiteboard whiteboard, ClientChangedData ccd) {
+        return updateWhiteboard(whiteboard, ccd, null);
+    }
+
+    /**
+     * Updates whiteboard for any changes from subscribers. Concurrent changes of the same properties are decided
+     * by their Lamport clocks (see {@link com.googlecode.whiteboard.model.base.FieldVersions}). Properties whose
+     * changes lose have been already changed on the sender's side, so that their current values are added
+     * to the given corrections which have to be broadcasted to all subscribers including sender.
+     *
+     * @param whiteboard  whiteboard to be updated
+     * @param ccd         changes from subscriber
+     * @param corrections list to add corrections to or null if corrections are not needed (e.g. replay of changes)
+     * @return ServerChangedData transformed changes to be broadcasted to subscribers or null if nothing has to be broadcasted
+     */
+    public static ServerChangedData updateWhiteboard(Whiteboard whiteboard, ClientChangedData ccd,
+                                                     List<ServerChangedData> corrections) {
+        OperationWindow operationWindow = (ccd.getOperationId() != null ? whiteboard.getOperationWindow() : null);
+        if (operationWindow != null && operationWindow.contains(ccd.getOperationId())) {
+            // retried change has been already applied
+            LOG.fine("Operation " + ccd.getOperationId() + " in whiteboard " + whiteboard.getUuid() + " is skipped as duplicate");
+            return null;
+        }
+
+        int correctionsCount = (corrections != null ? corrections.size() : 0);
+
+        // a client can't have seen more than all broadcasted changes, a greater clock would win over all later changes
+        long maxClock = whiteboard.getSequence() + 1;
+        if (ccd.getClock() <= 0 || ccd.getClock() > maxClock) {
+            // client doesn't send clocks ==> changes are ordered by arrival, the clock is stored with the change
+            ccd.setClock(maxClock);
         }
 
         ServerChangedData scd = null;
@@ -89,7 +120,7 @@ public class WhiteboardUtils
                 scd = WhiteboardUtils.createElement(whiteboard, ccd);
                 break;
             case Update:
-                scd = WhiteboardUtils.updateElement(whiteboard, ccd);
+                scd = WhiteboardUtils.updateElement(whiteboard, ccd, corrections);
                 break;
             case Remove:
                 scd = WhiteboardUtils.removeElement(whiteboard, ccd);
@@ -98,7 +129,7 @@ public class WhiteboardUtils
                 scd = WhiteboardUtils.cloneElement(whiteboard, ccd);
                 break;
             case Move:
-                scd = WhiteboardUtils.moveElement(whiteboard, ccd);
+                scd = WhiteboardUtils.moveElement(whiteboard, ccd, corrections);
                 break;
             case BringToFront:
                 scd = WhiteboardUtils.bringToFront(whiteboard, ccd);
@@ -115,22 +146,33 @@ public class WhiteboardUtils
             case Join:
                 scd = WhiteboardUtils.joinUser(whiteboard, ccd);
                 break;
+            case GroupMove:
+                scd = WhiteboardUtils.groupMove(whiteboard, ccd);
+                break;
+            case GroupRemove:
+                scd = WhiteboardUtils.groupRemove(whiteboard, ccd);
+                break;
+            case GroupUpdate:
+                scd = WhiteboardUtils.groupUpdate(whiteboard, ccd, corrections);
+                break;
             default:
                 LOG.warning("Unknown client action!");
                 break;
         }
 
-        // update changed whiteboard
-        manager.updateWhiteboard(whiteboard);
-
-        if (scd == null) {
-            return "";
+        if (scd != null) {
+            scd.setTimestamp(ccd.getTimestamp());
+            if (scd.getEvent() != null && whiteboard.getActivityLog() != null) {
+                whiteboard.getActivityLog().add(scd.getEvent());
+            }
         }
 
-        scd.setTimestamp(ccd.getTimestamp());
+        if (operationWindow != null && (scd != null || (corrections != null && corrections.size() > correctionsCount))) {
+            // a failed change can be retried
+            operationWindow.add(ccd.getOperationId());
+        }
 
-        // generate output JSON for subscribed clients
-        return JsonConverter.getGson().toJson(scd);
+        return scd;
     }
 
     private static ServerChangedData createElement(Whiteboard whiteboard, ClientChangedData ccd) {
@@ -139,73 +181,80 @@ public class WhiteboardUtils
             return null;
         }
 
+        if (ccd.getElement() instanceof FreeLine) {
+            // the simplified line is stored and broadcasted
+            PathSimplifier.simplify(whiteboard, (FreeLine) ccd.getElement());
+        }
+
         whiteboard.addElement(ccd.getElement());
 
         ServerChangedData scd = new ServerChangedData();
         scd.setAction(ccd.getAction());
         scd.setElement(ccd.getElement());
 
-        StringBuffer message = new StringBuffer();
-        message.append(WhiteboardUtils.formatDate(new Date(ccd.getTimestamp()), false));
-        message.append(": User ");
-        message.append(ccd.getUser());
-        message.append(" has created ");
-        message.append(getTextForElement(ccd.getElement()));
-        if (ccd.getElement() instanceof Positionable) {
-            message.append(" at position ");
-            message.append("(");
-            message.append(((Positionable) ccd.getElement()).getX());
-            message.append(",");
-            message.append(((Positionable) ccd.getElement()).getY());
-            message.append(")");
-        }
-
-        scd.setMessage(message.toString());
+        scd.setEvent(createEvent(ccd, ccd.getElement()));
 
         return scd;
     }
 
-    private static ServerChangedData updateElement(Whiteboard whiteboard, ClientChangedData ccd) {
-        if (ccd.getElement() == null) {
+    private static ServerChangedData updateElement(Whiteboard whiteboard, ClientChangedData ccd,
+                                                   List<ServerChangedData> corrections) {
+        // either changed properties only or the whole element
+        ElementDelta delta = ccd.getDelta();
+        AbstractElement ccdElement = (delta != null ? delta.getElement() : ccd.getElement());
+        if (ccdElement == null) {
             LOG.warning("Update element: element is null");
             return null;
         }
 
-        AbstractElement ae = whiteboard.getElement(ccd.getElement().getUuid());
-        if (ae == null) {
+        AbstractElement current = whiteboard.getElement(ccdElement.getUuid());
+        if (current == null) {
             // element doesn't exist more in this whiteboard
             return null;
         }
 
-        AbstractElement ccdElement = ccd.getElement();
+        // elements can be read concurrently from snapshots, so that the changed element replaces a copy
+        AbstractElement ae = ElementTypes.copy(current);
+
+        // properties changed concurrently with a greater clock keep their values
+        List<? extends ElementProperty<?>> requested = (delta != null ? delta.getProperties() : ElementTypes.getType(ae).getProperties());
+        List<ElementProperty<?>> winning = new ArrayList<ElementProperty<?>>();
+        List<ElementProperty<?>> rejected = new ArrayList<ElementProperty<?>>();
+        for (ElementProperty<?> property : requested) {
+            if (ae.getFieldVersions().isOverwrittenBy(property.getName(), ccd.getClock(), getWriter(ccd))) {
+                winning.add(property);
+            } else {
+                rejected.add(property);
+            }
+        }
 
-        // copy all properties to be updated
-        try {
-            BeanUtils.copyProperties(ae, ccdElement);
-        } catch (Exception e) {
-            LOG.warning("Properties of element " + ccd.getElement().toString() + " could not be updated successfully. Exception: " + e.getLocalizedMessage());
+        // copy properties to be updated, elements of different types can't be updated (IllegalArgumentException)
+        List<? extends ElementProperty<?>> changed = ElementTypes.copyProperties(ccdElement, ae, winning);
+
+        if (!rejected.isEmpty()) {
+            addCorrection(corrections, ccd, ae, rejected);
         }
 
-        ServerChangedData scd = new ServerChangedData();
-        scd.setAction(ccd.getAction());
-        scd.setElement(ae);
+        if (changed.isEmpty()) {
+            // nothing to broadcast
+            return null;
+        }
+
+        // only changed values get versions, the whiteboard is not changed otherwise
+        ae.setFieldVersions(ae.getFieldVersions().merge(getNames(changed), ccd.getClock(), getWriter(ccd)));
 
-        StringBuffer message = new StringBuffer();
-        message.append(WhiteboardUtils.formatDate(new Date(ccd.getTimestamp()), false));
-        message.append(": User ");
-        message.append(ccd.getUser());
-        message.append(" has updated properties of ");
-        message.append(getTextForElement(ccd.getElement()));
-        if (ccd.getElement() instanceof Positionable) {
-            message.append(" at current position ");
-            message.append("(");
-            message.append(((Positionable) ccd.getElement()).getX());
-            message.append(",");
-            message.append(((Positionable) ccd.getElement()).getY());
-            message.append(")");
+        if (ae instanceof FreeLine && changed.contains(ElementTypes.LINE_PATH)) {
+            PathSimplifier.simplify(whiteboard, (FreeLine) ae);
         }
 
-        scd.setMessage(message.toString());
+        whiteboard.updateElement(ae);
+
+        // broadcast changed properties only
+        ServerChangedData scd = new ServerChangedData();
+        scd.setAction(ccd.getAction());
+        scd.setDelta(new ElementDelta(ae, changed));
+
+        scd.setEvent(createEvent(ccd, ae));
 
         return scd;
     }
@@ -227,22 +276,7 @@ public class WhiteboardUtils
         AbstractElement ccdElement = ccd.getElement();
         scd.setElement(new TruncatedElement(ccdElement.getUuid(), ccdElement.getClass().getSimpleName()));
 
-        StringBuffer message = new StringBuffer();
-        message.append(WhiteboardUtils.formatDate(new Date(ccd.getTimestamp()), false));
-        message.append(": User ");
-        message.append(ccd.getUser());
-        message.append(" has removed ");
-        message.append(getTextForElement(ae));
-        if (ae instanceof Positionable) {
-            message.append(" at position ");
-            message.append("(");
-            message.append(((Positionable) ae).getX());
-            message.append(",");
-            message.append(((Positionable) ae).getY());
-            message.append(")");
-        }
-
-        scd.setMessage(message.toString());
+        scd.setEvent(createEvent(ccd, ae));
 
         return scd;
     }
@@ -259,71 +293,51 @@ public class WhiteboardUtils
         scd.setAction(ccd.getAction());
         scd.setElement(ccd.getElement());
 
-        StringBuffer message = new StringBuffer();
-        message.append(WhiteboardUtils.formatDate(new Date(ccd.getTimestamp()), false));
-        message.append(": User ");
-        message.append(ccd.getUser());
-        message.append(" has cloned ");
-        message.append(getTextForElement(ccd.getElement()));
-        if (ccd.getElement() instanceof Positionable) {
-            message.append(" at position ");
-            message.append("(");
-            message.append(((Positionable) ccd.getElement()).getX());
-            message.append(",");
-            message.append(((Positionable) ccd.getElement()).getY());
-            message.append(")");
-        }
-
-        scd.setMessage(message.toString());
+        scd.setEvent(createEvent(ccd, ccd.getElement()));
 
         return scd;
     }
 
-    private static ServerChangedData moveElement(Whiteboard whiteboard, ClientChangedData ccd) {
+    private static ServerChangedData moveElement(Whiteboard whiteboard, ClientChangedData ccd,
+                                                 List<ServerChangedData> corrections) {
         if (ccd.getElement() == null) {
             LOG.warning("Move element: element is null");
             return null;
         }
 
-        AbstractElement ae = whiteboard.getElement(ccd.getElement().getUuid());
-        if (ae == null) {
+        AbstractElement current = whiteboard.getElement(ccd.getElement().getUuid());
+        if (current == null) {
             // element doesn't exist more in this whiteboard
             return null;
         }
 
-        String position = null;
+        // position of a concurrent move with a greater clock is kept
+        List<String> position = getPositionNames(current);
+        if (!isOverwrittenBy(current.getFieldVersions(), position, ccd)) {
+            addCorrection(corrections, ccd, current, null);
+            return null;
+        }
+
+        // elements can be read concurrently from snapshots, so that the moved element replaces a copy
+        AbstractElement ae = ElementTypes.copy(current);
         AbstractElement ccdElement = ccd.getElement();
-        TruncatedElement tElement = null;
 
         if (ae instanceof Positionable) {
-            int posX = ((Positionable) ccdElement).getX();
-            int posY = ((Positionable) ccdElement).getY();
-            ((Positionable) ae).setX(posX);
-            ((Positionable) ae).setY(posY);
-            position = "(" + posX + "," + posY + ")";
-            tElement = new TruncatedPositionable(ccdElement.getUuid(), ccdElement.getClass().getSimpleName(), posX, posY);
+            ((Positionable) ae).setX(((Positionable) ccdElement).getX());
+            ((Positionable) ae).setY(((Positionable) ccdElement).getY());
         } else if (ae instanceof Line) {
-            String path = ((Line) ccdElement).getPath();
-            ((Line) ae).setPath(path);
-            tElement = new TruncatedLine(ccdElement.getUuid(), ccdElement.getClass().getSimpleName(), path);
+            // the moved element and the broadcasted change share the encoded path
+            ((Line) ae).setLinePath(((Line) ccdElement).getLinePath());
         }
 
+        ae.setFieldVersions(ae.getFieldVersions().merge(position, ccd.getClock(), getWriter(ccd)));
+        whiteboard.updateElement(ae);
+
         ServerChangedData scd = new ServerChangedData();
         scd.setAction(ccd.getAction());
-        scd.setElement(tElement);
-
-        StringBuffer message = new StringBuffer();
-        message.append(WhiteboardUtils.formatDate(new Date(ccd.getTimestamp()), false));
-        message.append(": User ");
-        message.append(ccd.getUser());
-        message.append(" has moved ");
-        message.append(getTextForElement(ae));
-        if (position != null) {
-            message.append(" to position ");
-            message.append(position);
-        }
+        scd.setElement(truncatePosition(ae));
 
-        scd.setMessage(message.toString());
+        scd.setEvent(createEvent(ccd, ae));
 
         return scd;
     }
@@ -334,36 +348,18 @@ public class WhiteboardUtils
             return null;
         }
 
-        AbstractElement ae = whiteboard.removeElement(ccd.getElement());
+        AbstractElement ae = whiteboard.bringToFront(ccd.getElement());
         if (ae == null) {
             // element doesn't exist more in this whiteboard
             return null;
         }
 
-        whiteboard.addElement(ae);
-
         ServerChangedData scd = new ServerChangedData();
         scd.setAction(ccd.getAction());
         AbstractElement ccdElement = ccd.getElement();
         scd.setElement(new TruncatedElement(ccdElement.getUuid(), ccdElement.getClass().getSimpleName()));
 
-        StringBuffer message = new StringBuffer();
-        message.append(WhiteboardUtils.formatDate(new Date(ccd.getTimestamp()), false));
-        message.append(": User ");
-        message.append(ccd.getUser());
-        message.append(" has brought ");
-        message.append(getTextForElement(ae));
-        message.append(" to front (in front of other elements)");
-        if (ae instanceof Positionable) {
-            message.append(" at position ");
-            message.append("(");
-            message.append(((Positionable) ae).getX());
-            message.append(",");
-            message.append(((Positionable) ae).getY());
-            message.append(")");
-        }
-
-        scd.setMessage(message.toString());
+        scd.setEvent(createEvent(ccd, ae));
 
         return scd;
     }
@@ -374,39 +370,18 @@ public class WhiteboardUtils
             return null;
         }
 
-        AbstractElement ae = whiteboard.removeElement(ccd.getElement());
+        AbstractElement ae = whiteboard.bringToBack(ccd.getElement());
         if (ae == null) {
             // element doesn't exist more in this whiteboard
             return null;
         }
 
-        Map<String, AbstractElement> elements = new LinkedHashMap<String, AbstractElement>();
-        elements.put(ae.getUuid(), ae);
-        elements.putAll(whiteboard.getElements());
-        whiteboard.setElements(elements);
-
         ServerChangedData scd = new ServerChangedData();
         scd.setAction(ccd.getAction());
         AbstractElement ccdElement = ccd.getElement();
         scd.setElement(new TruncatedElement(ccdElement.getUuid(), ccdElement.getClass().getSimpleName()));
 
-        StringBuffer message = new StringBuffer();
-        message.append(WhiteboardUtils.formatDate(new Date(ccd.getTimestamp()), false));
-        message.append(": User ");
-        message.append(ccd.getUser());
-        message.append(" has brought ");
-        message.append(getTextForElement(ae));
-        message.append(" to back (behind other elements)");
-        if (ae instanceof Positionable) {
-            message.append(" at position ");
-            message.append("(");
-            message.append(((Positionable) ae).getX());
-            message.append(",");
-            message.append(((Positionable) ae).getY());
-            message.append(")");
-        }
-
-        scd.setMessage(message.toString());
+        scd.setEvent(createEvent(ccd, ae));
 
         return scd;
     }
@@ -417,13 +392,7 @@ public class WhiteboardUtils
         ServerChangedData scd = new ServerChangedData();
         scd.setAction(ccd.getAction());
 
-        StringBuffer message = new StringBuffer();
-        message.append(WhiteboardUtils.formatDate(new Date(ccd.getTimestamp()), false));
-        message.append(": User ");
-        message.append(ccd.getUser());
-        message.append(" has cleared this Whiteboard");
-
-        scd.setMessage(message.toString());
+        scd.setEvent(createEvent(ccd, null));
 
         return scd;
     }
@@ -445,17 +414,10 @@ public class WhiteboardUtils
         scd.addParameter("width", ccd.getParameters().get("width"));
         scd.addParameter("height", ccd.getParameters().get("height"));
 
-        StringBuffer message = new StringBuffer();
-        message.append(WhiteboardUtils.formatDate(new Date(ccd.getTimestamp()), false));
-        message.append(": User ");
-        message.append(ccd.getUser());
-        message.append(" has resized this Whiteboard to (");
-        message.append(width);
-        message.append(",");
-        message.append(height);
-        message.append(") px");
-
-        scd.setMessage(message.toString());
+        ActivityEvent event = createEvent(ccd, null);
+        event.setWidth(width);
+        event.setHeight(height);
+        scd.setEvent(event);
 
         return scd;
     }
@@ -473,26 +435,343 @@ public class WhiteboardUtils
 
         scd.addParameter("usersCount", ccd.getParameters().get("usersCount"));
 
-        StringBuffer message = new StringBuffer();
-        message.append(WhiteboardUtils.formatDate(new Date(ccd.getTimestamp()), false));
-        message.append(": User ");
-        message.append(ccd.getUser());
-        message.append(" has joined or refreshed this whiteboard");
+        scd.setEvent(createEvent(ccd, null));
+
+        return scd;
+    }
+
+    private static ServerChangedData groupMove(Whiteboard whiteboard, ClientChangedData ccd) {
+        List<String> uuids = getUuids(ccd);
+        if (uuids.isEmpty() || ccd.getParameters().get("dx") == null || ccd.getParameters().get("dy") == null) {
+            LOG.warning("Group move: no elements or offsets passed");
+            return null;
+        }
+
+        int dx = Integer.valueOf(ccd.getParameters().get("dx"));
+        int dy = Integer.valueOf(ccd.getParameters().get("dy"));
+
+        List<AbstractElement> moved = new ArrayList<AbstractElement>(uuids.size());
+        for (String uuid : uuids) {
+            AbstractElement current = whiteboard.getElement(uuid);
+            if (current == null) {
+                // element doesn't exist more in this whiteboard
+                continue;
+            }
+
+            // elements can be read concurrently from snapshots, so that moved elements replace copies
+            AbstractElement ae = ElementTypes.copy(current);
+            if (ae instanceof Positionable) {
+                ((Positionable) ae).setX(((Positionable) ae).getX() + dx);
+                ((Positionable) ae).setY(((Positionable) ae).getY() + dy);
+            } else if (ae instanceof Line) {
+                LinePath path = ((Line) ae).getLinePath();
+                if (path == null || path.getPointCount() < 0) {
+                    // path isn't encoded and can't be translated, the line stays in place for all subscribers
+                    continue;
+                }
+
+                ((Line) ae).setLinePath(path.translate(dx, dy));
+            }
+
+            // offsets of concurrent moves add up, versions are only raised
+            ae.setFieldVersions(ae.getFieldVersions().merge(getPositionNames(ae), ccd.getClock(), getWriter(ccd)));
+            moved.add(ae);
+        }
+
+        if (moved.isEmpty()) {
+            return null;
+        }
+
+        whiteboard.updateElements(moved);
+
+        ServerChangedData scd = new ServerChangedData();
+        scd.setAction(ccd.getAction());
+
+        scd.addParameter("uuids", joinUuids(moved));
+        scd.addParameter("dx", String.valueOf(dx));
+        scd.addParameter("dy", String.valueOf(dy));
+
+        ActivityEvent event = createEvent(ccd, null);
+        event.setCount(moved.size());
+        event.setX(dx);
+        event.setY(dy);
+        scd.setEvent(event);
+
+        return scd;
+    }
+
+    private static ServerChangedData groupRemove(Whiteboard whiteboard, ClientChangedData ccd) {
+        List<String> uuids = getUuids(ccd);
+        if (uuids.isEmpty()) {
+            LOG.warning("Group remove: no elements passed");
+            return null;
+        }
+
+        List<AbstractElement> removed = whiteboard.removeElements(uuids);
+        if (removed.isEmpty()) {
+            // elements don't exist more in this whiteboard
+            return null;
+        }
+
+        ServerChangedData scd = new ServerChangedData();
+        scd.setAction(ccd.getAction());
+
+        scd.addParameter("uuids", joinUuids(removed));
+
+        ActivityEvent event = createEvent(ccd, null);
+        event.setCount(removed.size());
+        scd.setEvent(event);
+
+        return scd;
+    }
+
+    private static ServerChangedData groupUpdate(Whiteboard whiteboard, ClientChangedData ccd,
+                                                 List<ServerChangedData> corrections) {
+        List<String> uuids = getUuids(ccd);
+        if (uuids.isEmpty()) {
+            LOG.warning("Group update: no elements passed");
+            return null;
+        }
+
+        // all other parameters are properties to be set, elements without a property ignore it
+        Map<String, String> properties = new HashMap<String, String>(ccd.getParameters());
+        properties.remove("uuids");
+
+        List<AbstractElement> updated = new ArrayList<AbstractElement>(uuids.size());
+        List<AbstractElement> stored = new ArrayList<AbstractElement>(uuids.size());
+        for (String uuid : uuids) {
+            AbstractElement current = whiteboard.getElement(uuid);
+            if (current == null) {
+                // element doesn't exist more in this whiteboard
+                continue;
+            }
+
+            // elements can be read concurrently from snapshots, so that updated elements replace copies
+            AbstractElement ae = ElementTypes.copy(current);
+            List<ElementProperty<?>> changed = new ArrayList<ElementProperty<?>>();
+            List<ElementProperty<?>> rejected = new ArrayList<ElementProperty<?>>();
+            for (Map.Entry<String, String> entry : properties.entrySet()) {
+                ElementProperty<?> property = ElementTypes.getType(ae).getProperty(entry.getKey());
+                if (property == null || property == ElementTypes.UUID || property == ElementTypes.LINE_PATH) {
+                    continue;
+                }
+
+                if (!ae.getFieldVersions().isOverwrittenBy(property.getName(), ccd.getClock(), getWriter(ccd))) {
+                    rejected.add(property);
+                    continue;
+                }
+
+                if (setProperty(ae, entry.getKey(), entry.getValue())) {
+                    changed.add(property);
+                }
+            }
+
+            if (!changed.isEmpty()) {
+                ae.setFieldVersions(ae.getFieldVersions().merge(getNames(changed), ccd.getClock(), getWriter(ccd)));
+                stored.add(ae);
+            }
+
+            if (!rejected.isEmpty()) {
+                // the group change doesn't apply to this element as a whole, all subscribers get its changed
+                // and current values instead
+                changed.addAll(rejected);
+                addCorrection(corrections, ccd, ae, changed);
+            } else if (!changed.isEmpty()) {
+                updated.add(ae);
+            }
+        }
 
-        scd.setMessage(message.toString());
+        if (!stored.isEmpty()) {
+            whiteboard.updateElements(stored);
+        }
+
+        if (updated.isEmpty()) {
+            // nothing to broadcast
+            return null;
+        }
+
+        ServerChangedData scd = new ServerChangedData();
+        scd.setAction(ccd.getAction());
+
+        scd.addParameter("uuids", joinUuids(updated));
+        for (Map.Entry<String, String> entry : properties.entrySet()) {
+            scd.addParameter(entry.getKey(), entry.getValue());
+        }
+
+        ActivityEvent event = createEvent(ccd, null);
+        event.setCount(updated.size());
+        scd.setEvent(event);
 
         return scd;
     }
 
-    private static String getTextForElement(AbstractElement ae) {
-        if (ae instanceof Text) {
-            return "Text '" + ((Text) ae).getText() + "'";
-        } else if (ae instanceof FreeLine) {
-            return "Free Line";
-        } else if (ae instanceof StraightLine) {
-            return "Straight Line";
+    /**
+     * Sets a property given as string. Ids and paths can't be set, they are changed by own actions.
+     *
+     * @param element element to be changed
+     * @param name    property name
+     * @param value   property value
+     * @return boolean true - value has been changed, false - element doesn't have the property or value was equal
+     */
+    @SuppressWarnings("unchecked")
+    private static <E extends AbstractElement> boolean setProperty(E element, String name, String value) {
+        ElementProperty<? super E> property = ElementTypes.getType(element).getProperty(name);
+        if (property == null || property == ElementTypes.UUID || property == ElementTypes.LINE_PATH) {
+            return false;
+        }
+
+        try {
+            switch (property.getKind()) {
+                case INT:
+                    IntProperty<? super E> intProperty = (IntProperty<? super E>) property;
+                    int intValue = (int) Double.parseDouble(value);
+                    if (intProperty.get(element) == intValue) {
+                        return false;
+                    }
+
+                    intProperty.set(element, intValue);
+                    return true;
+                case DOUBLE:
+                    DoubleProperty<? super E> doubleProperty = (DoubleProperty<? super E>) property;
+                    double doubleValue = Double.parseDouble(value);
+                    if (doubleProperty.get(element) == doubleValue) {
+                        return false;
+                    }
+
+                    doubleProperty.set(element, doubleValue);
+                    return true;
+                default:
+                    StringProperty<? super E> stringProperty = (StringProperty<? super E>) property;
+                    String current = stringProperty.get(element);
+                    if (current == null ? value == null : current.equals(value)) {
+                        return false;
+                    }
+
+                    stringProperty.set(element, value);
+                    return true;
+            }
+        } catch (NumberFormatException e) {
+            LOG.warning("Group update: invalid value '" + value + "' of property " + name);
+            return false;
+        }
+    }
+
+    /**
+     * Adds a correction with current values of the given element's properties.
+     *
+     * @param corrections list of corrections or null if corrections are not needed
+     * @param ccd         change which has lost
+     * @param ae          current element
+     * @param properties  properties to be sent or null to send the position of the element
+     */
+    private static void addCorrection(List<ServerChangedData> corrections, ClientChangedData ccd, AbstractElement ae,
+                                      List<? extends ElementProperty<?>> properties) {
+        if (corrections == null) {
+            return;
+        }
+
+        ServerChangedData correction = new ServerChangedData();
+        if (properties != null) {
+            correction.setAction(ClientAction.Update);
+            correction.setDelta(new ElementDelta(ae, properties));
         } else {
-            return ae.getClass().getSimpleName();
+            correction.setAction(ClientAction.Move);
+            correction.setElement(truncatePosition(ae));
+        }
+
+        correction.setTimestamp(ccd.getTimestamp());
+        corrections.add(correction);
+    }
+
+    private static TruncatedElement truncatePosition(AbstractElement ae) {
+        if (ae instanceof Positionable) {
+            return new TruncatedPositionable(ae.getUuid(), ae.getClass().getSimpleName(), ((Positionable) ae).getX(), ((Positionable) ae).getY());
+        } else if (ae instanceof Line) {
+            return new TruncatedLine(ae.getUuid(), ae.getClass().getSimpleName(), ((Line) ae).getLinePath());
+        }
+
+        return null;
+    }
+
+    private static List<String> getPositionNames(AbstractElement ae) {
+        if (ae instanceof Line) {
+            return Collections.singletonList(ElementTypes.LINE_PATH.getName());
+        }
+
+        return Arrays.asList(ElementTypes.X.getName(), ElementTypes.Y.getName());
+    }
+
+    /**
+     * Gets the writer of properties changed by the given change. Sender ids are unique unlike user names, so that
+     * concurrent changes of different subscribers with equal clocks are ordered the same way on every replay.
+     */
+    private static String getWriter(ClientChangedData ccd) {
+        return (ccd.getSenderId() != null ? ccd.getSenderId() : ccd.getUser());
+    }
+
+    private static boolean isOverwrittenBy(FieldVersions versions, List<String> names, ClientChangedData ccd) {
+        for (String name : names) {
+            if (!versions.isOverwrittenBy(name, ccd.getClock(), getWriter(ccd))) {
+                return false;
+            }
         }
+
+        return true;
+    }
+
+    private static List<String> getNames(List<? extends ElementProperty<?>> properties) {
+        List<String> names = new ArrayList<String>(properties.size());
+        for (ElementProperty<?> property : properties) {
+            names.add(property.getName());
+        }
+
+        return names;
+    }
+
+    private static List<String> getUuids(ClientChangedData ccd) {
+        List<String> uuids = new ArrayList<String>();
+        String param = (ccd.getParameters() != null ? ccd.getParameters().get("uuids") : null);
+        if (param == null) {
+            return uuids;
+        }
+
+        for (String uuid : param.split(",")) {
+            if (uuid.trim().length() > 0) {
+                uuids.add(uuid.trim());
+            }
+        }
+
+        return uuids;
+    }
+
+    private static String joinUuids(List<AbstractElement> elements) {
+        StringBuilder sb = new StringBuilder();
+        for (AbstractElement ae : elements) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+
+            sb.append(ae.getUuid());
+        }
+
+        return sb.toString();
+    }
+
+    private static ActivityEvent createEvent(ClientChangedData ccd, AbstractElement ae) {
+        ActivityEvent event = new ActivityEvent(ccd.getAction(), ccd.getUser(), ccd.getTimestamp());
+        if (ae != null) {
+            event.setElementType(ae.getClass().getSimpleName());
+            event.setElementId(ae.getUuid());
+            if (ae instanceof Text) {
+                event.setText(((Text) ae).getText());
+            }
+
+            if (ae instanceof Positionable) {
+                event.setX(((Positionable) ae).getX());
+                event.setY(((Positionable) ae).getY());
+            }
+        }
+
+        return event;
     }
 }
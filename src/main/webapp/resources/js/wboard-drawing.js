@@ -66,6 +66,12 @@ WhiteboardDesigner = function(witeboardConfig, whiteboardId, user, pubSubUrl, pu
     var lastHoverObj = null;
     var selectedObj = null;
     var wbElements = {};
+    var elementProperties = {};
+    var lastSequence = -1;
+    var pubSubHeaders = {};
+    var restoring = false;
+    var pendingChanges = [];
+    var outgoingChanges = [];
     var _self = this;
 
     jQuery.extend(whiteboard, {
@@ -443,6 +449,58 @@ WhiteboardDesigner = function(witeboardConfig, whiteboardId, user, pubSubUrl, pu
         }
     }
 
+    /** Moves elements by the given offsets in one action.
+    * @public
+    * @param uuids ids of elements to be moved.
+    * @param dx offset in x-direction.
+    * @param dy offset in y-direction.
+    */
+    this.moveElements = function(uuids, dx, dy) {
+        var changes = {
+            "action": "groupMove",
+            "parameters": {
+                "uuids": uuids.join(","),
+                "dx": Math.round(dx),
+                "dy": Math.round(dy)
+            }
+        };
+
+        // changes are not sent back to the sender ==> apply them here
+        applyGroupChanges(changes);
+        this.sendChanges(changes);
+    }
+
+    /** Removes elements in one action.
+    * @public
+    * @param uuids ids of elements to be removed.
+    */
+    this.removeElements = function(uuids) {
+        var changes = {
+            "action": "groupRemove",
+            "parameters": {
+                "uuids": uuids.join(",")
+            }
+        };
+
+        applyGroupChanges(changes);
+        this.sendChanges(changes);
+    }
+
+    /** Sets properties of elements in one action, e.g. {"color": "#FF0000"}. Elements without a property ignore it.
+    * @public
+    * @param uuids ids of elements to be updated.
+    * @param props properties to be set.
+    */
+    this.updateElements = function(uuids, props) {
+        var changes = {
+            "action": "groupUpdate",
+            "parameters": jQuery.extend({}, props, {"uuids": uuids.join(",")})
+        };
+
+        applyGroupChanges(changes);
+        this.sendChanges(changes);
+    }
+
     /** Brings element to front (over all other elements).
     * @public
     * @param helperBox helper rectangle around element.
@@ -685,6 +743,7 @@ WhiteboardDesigner = function(witeboardConfig, whiteboardId, user, pubSubUrl, pu
             wbElements[eluuid] = null;
             delete wbElements[eluuid];
         }
+        elementProperties = {};
 
         // send changes to server
         this.sendChanges({
@@ -927,18 +986,51 @@ WhiteboardDesigner = function(witeboardConfig, whiteboardId, user, pubSubUrl, pu
         return props;
     }
 
-    /** Restores the whiteboard if user has joined this whiteboard. All elements and a proper message gets restored.
+    /** Restores the whiteboard if user has joined this whiteboard. Elements in the visible area of the window are
+    * restored first, the callback is called and all other elements are restored afterwards in chunks. Changes
+    * received via pubsub channel meanwhile are applied when all elements have been restored.
     * @public
-    * @param jsWhiteboard whiteboard in JSON format from backend (server side).
+    * @param restoreUrl URL to restore elements from.
+    * @param callback function called when elements in the visible area have been restored.
     */     
-    this.restoreWhiteboard = function(jsWhiteboard) {
-        var arrElements = jsWhiteboard["elements"];
-        for (var i = 0; i < arrElements.length; i++) {
-            var objElement = arrElements[i];
-            this.createElement(objElement.properties, objElement.type);
-        }
+    this.restoreWhiteboard = function(restoreUrl, callback) {
+        restoring = true;
+
+        var win = jQuery(window);
+        var viewport = {
+            "x": Math.max(win.scrollLeft() - offsetLeft, 0),
+            "y": Math.max(win.scrollTop() - offsetTop, 0),
+            "width": win.width(),
+            "height": win.height()
+        };
+
+        jQuery.ajax({
+            url: restoreUrl,
+            data: viewport,
+            dataType: "json",
+            cache: false,
+            success: function(jsWhiteboard) {
+                // z-keys of visible elements, elements of further chunks are placed below them according to z-keys
+                var visibleElements = [];
+                var arrElements = jsWhiteboard["elements"];
+                for (var i = 0; i < arrElements.length; i++) {
+                    var objElement = arrElements[i];
+                    _self.createElement(objElement.properties, objElement.type);
+                    visibleElements.push({"zKey": jsWhiteboard["zKeys"][i], "uuid": objElement.properties.uuid});
+                }
+
+                // changes after this sequence number will be received (or replayed) via pubsub channel
+                setLastSequence(jsWhiteboard["sequence"]);
+
+                callback();
 
-        prependMessage(jsWhiteboard["message"]);
+                restoreChunk(restoreUrl, jsWhiteboard, visibleElements, 0);
+            },
+            error: function() {
+                finishRestore("Whiteboard could not be restored, please reload the page");
+                callback();
+            }
+        });
     }
 
     /** Creates element.
@@ -947,6 +1039,8 @@ WhiteboardDesigner = function(witeboardConfig, whiteboardId, user, pubSubUrl, pu
     * @param classType element type.
     */    
     this.createElement = function(props, classType) {
+        rememberProperties(props.uuid, props);
+
         var hb;
         switch (classType) {
             case this.config.classTypes.text :
@@ -1215,14 +1309,25 @@ WhiteboardDesigner = function(witeboardConfig, whiteboardId, user, pubSubUrl, pu
         sendProps.uuid = selectedObj.uuid;
         sendProps.rotationDegree = rotationDegree;
 
-        // send changes
-        this.sendChanges({
-            "action": "update",
-            "element": {
-                "type": classType,
-                "properties": sendProps
-            }
-        });
+        // send changes (only changed properties if the element's properties are known)
+        var changedProps = getChangedProperties(sendProps);
+        if (changedProps === null) {
+            this.sendChanges({
+                "action": "update",
+                "element": {
+                    "type": classType,
+                    "properties": sendProps
+                }
+            });
+        } else if (changedProps !== false) {
+            this.sendChanges({
+                "action": "update",
+                "delta": {
+                    "type": classType,
+                    "properties": changedProps
+                }
+            });
+        }
     }
 
     /** Subscribes to bidirectional channel. This method will be called once the web-application is ready to use.
@@ -1231,7 +1336,8 @@ WhiteboardDesigner = function(witeboardConfig, whiteboardId, user, pubSubUrl, pu
     this.subscribePubSub = function() {
         jQuery.atmosphere.subscribe(this.pubSubUrl, this.pubSubCallback, jQuery.atmosphere.request = {
             transport: this.pubSubTransport,
-            maxRequest: 100000000
+            maxRequest: 100000000,
+            headers: pubSubHeaders
         });
         this.connectedEndpoint = jQuery.atmosphere.response;
     }
@@ -1251,356 +1357,20 @@ WhiteboardDesigner = function(witeboardConfig, whiteboardId, user, pubSubUrl, pu
                 // convert to JavaScript object
                 var jsData = JSON.parse(data);
 
-                if (_self.logging) {
-                    logProfile(jsData.timestamp);
+                if (restoring) {
+                    // elements are still being restored ==> apply changes afterwards
+                    pendingChanges.push(jsData);
+                    return;
                 }
 
-                var action = jsData.action;
-                var sentProps = (jsData.element != null ? jsData.element.properties : null);
-
-                switch (action) {
-                    case "join" :
-                        jQuery("#usersCount").html(jsData.parameters.usersCount);
-
-                        break;
-                    case "create" :
-                    case "clone" :
-                        _self.createElement(sentProps, jsData.element.type);
-
-                        break;
-                    case "update" :
-                        // find element to be updated
-                        var hbu = wbElements[sentProps.uuid];
-                        if (hbu == null) {
-                            // not found ==> nothing to do
-                            if (_self.logging) {
-                                logDebug("Element to be updated does not exist anymore in this Whiteboard");
-                            }
-                            break;
-                        }
-
-                        var props = {}, oldDimU = {}, newDimU = {};
-
-                        switch (jsData.element.type) {
-                            case _self.config.classTypes.text :
-                                props["text"] = sentProps.text;
-                                props["font-family"] = sentProps.fontFamily;
-                                props["font-size"] = sentProps.fontSize;
-                                props["font-weight"] = sentProps.fontWeight;
-                                props["font-style"] = sentProps.fontStyle;
-                                props["fill"] = sentProps.color;
-
-                                newDimU.x = sentProps.x;
-                                newDimU.y = sentProps.y;
-                                oldDimU.x = hbu.element.attr("x");
-                                oldDimU.y = hbu.element.attr("y");
-                                break;
-                            case _self.config.classTypes.freeLine :
-                            case _self.config.classTypes.straightLine :
-                                //props["path"] = sentProps.path;
-                                props["stroke"] = sentProps.color;
-                                props["stroke-width"] = sentProps.lineWidth;
-                                props["stroke-dasharray"] = sentProps.lineStyle;
-                                props["stroke-opacity"] = sentProps.opacity;
-                                break;
-                            case _self.config.classTypes.rectangle :
-                                props["width"] = sentProps.width;
-                                props["height"] = sentProps.height;
-                                props["r"] = sentProps.cornerRadius;
-                                props["fill"] = sentProps.backgroundColor;
-                                props["stroke"] = sentProps.borderColor;
-                                props["stroke-width"] = sentProps.borderWidth;
-                                props["stroke-dasharray"] = sentProps.borderStyle;
-                                props["fill-opacity"] = sentProps.backgroundOpacity;
-                                props["stroke-opacity"] = sentProps.borderOpacity;
-
-                                newDimU.x = sentProps.x;
-                                newDimU.y = sentProps.y;
-                                oldDimU.x = hbu.element.attr("x");
-                                oldDimU.y = hbu.element.attr("y");
-                                break;
-                            case _self.config.classTypes.circle :
-                                props["r"] = sentProps.radius;
-                                props["fill"] = sentProps.backgroundColor;
-                                props["stroke"] = sentProps.borderColor;
-                                props["stroke-width"] = sentProps.borderWidth;
-                                props["stroke-dasharray"] = sentProps.borderStyle;
-                                props["fill-opacity"] = sentProps.backgroundOpacity;
-                                props["stroke-opacity"] = sentProps.borderOpacity;
-
-                                newDimU.x = sentProps.x;
-                                newDimU.y = sentProps.y;
-                                oldDimU.x = hbu.element.attr("cx");
-                                oldDimU.y = hbu.element.attr("cy");
-                                break;
-                            case _self.config.classTypes.ellipse :
-                                props["rx"] = sentProps.hRadius;
-                                props["ry"] = sentProps.vRadius;
-                                props["fill"] = sentProps.backgroundColor;
-                                props["stroke"] = sentProps.borderColor;
-                                props["stroke-width"] = sentProps.borderWidth;
-                                props["stroke-dasharray"] = sentProps.borderStyle;
-                                props["fill-opacity"] = sentProps.backgroundOpacity;
-                                props["stroke-opacity"] = sentProps.borderOpacity;
-
-                                newDimU.x = sentProps.x;
-                                newDimU.y = sentProps.y;
-                                oldDimU.x = hbu.element.attr("cx");
-                                oldDimU.y = hbu.element.attr("cy");
-                                break;
-                            case _self.config.classTypes.image :
-                                //props["src"] = sentProps.url;
-                                props["width"] = sentProps.width;
-                                props["height"] = sentProps.height;
-
-                                newDimU.x = sentProps.x;
-                                newDimU.y = sentProps.y;
-                                oldDimU.x = hbu.element.attr("x");
-                                oldDimU.y = hbu.element.attr("y");
-                                break;
-                            case _self.config.classTypes.icon :
-                                props["scale"] = sentProps.scaleFactor.toFixed(1);
-                                hbu.iconName = sentProps.name;
-
-                                newDimU.x = sentProps.x;
-                                newDimU.y = sentProps.y;
-                                break;
-                            default :
-                        }
-
-                        props["rotation"] = sentProps.rotationDegree;
-
-                        // update element
-                        setElementProperties(hbu.element, props);
-
-                        // resize helpers
-                        var bbox = hbu.element.getBBox();
-                        var bboxWidth = parseFloat(bbox.width);
-                        var bboxHeight = parseFloat(bbox.height);
-                        hbu.attr("x", bbox.x - 1);
-                        hbu.attr("y", bbox.y - 1);
-                        hbu.attr("width", (bboxWidth !== 0 ? bboxWidth + 2 : 3));
-                        hbu.attr("height", (bboxHeight !== 0 ? bboxHeight + 2 : 3));
-
-                        if (jsData.element.type == _self.config.classTypes.icon) {
-                            oldDimU.x = Math.round(hbu.attr("x") + 1);
-                            oldDimU.y = Math.round(hbu.attr("y") + 1);
-                        }
-
-                        // redraw circleSet
-                        hbu.circleSet.remove();
-                        hbu.circleSet = null;
-                        delete hbu.circleSet;
-                        var circleSet = drawCircleSet(bbox.x, bbox.y, bboxWidth, bboxHeight);
-                        circleSet.attr(_self.config.attributes.circleSet);
-                        if (selectedObj != null && selectedObj.visibleSelect && selectedObj.uuid == hbu.uuid) {
-                            circleSet.attr(_self.config.attributes.opacityVisible);
-                        }
-                        hbu.circleSet = circleSet;
-
-                        // rotate
-                        hbu.element.rotate(props["rotation"], bbox.x + bboxWidth / 2, bbox.y + bboxHeight / 2, true);
-                        hbu.rotate(props["rotation"], bbox.x + bboxWidth / 2, bbox.y + bboxHeight / 2, true);
-                        hbu.circleSet.rotate(props["rotation"], bbox.x + bboxWidth / 2, bbox.y + bboxHeight / 2, true);
-                        hbu.element.attr("rotation", props["rotation"]);
-
-                        // move element and helpers if needed
-                        if (typeof oldDimU.x !== "undefined") {
-                            var diffXU = newDimU.x - oldDimU.x;
-                            var diffYU = newDimU.y - oldDimU.y;
-                            if (diffXU != 0 || diffYU != 0) {
-                                hbu.element.translate(diffXU, diffYU);
-                                hbu.translate(diffXU, diffYU);
-                                hbu.circleSet.translate(diffXU, diffYU);
-                            }
-                        }
-
-                        if (selectedObj != null && selectedObj.uuid == hbu.uuid) {
-                            // transfer changes to dialog
-                            _self.transferPropertiesToDialog(selectedObj);
-                        }
-                        break;
-                    case "remove" :
-                        // find element to be removed
-                        var hbr = wbElements[sentProps.uuid];
-                        if (hbr == null) {
-                            // not found ==> nothing to do
-                            if (_self.logging) {
-                                logDebug("Element to be removed does not exist anymore in this Whiteboard");
-                            }
-                            break;
-                        }
-
-                        var eluuid = hbr.uuid;
-                        var removeSelected = false;
-                        if (selectedObj != null && selectedObj.uuid == eluuid) {
-                            removeSelected = true;
-                        }
-
-                        wbElements[eluuid] = null;
-                        delete wbElements[eluuid];
-                        hbr.element.remove();
-                        hbr.circleSet.remove();
-                        hbr.remove();
-
-                        if (removeSelected) {
-                            selectedObj = null;
-                            _self.showProperties('editNoSelection');
-                        }
-                        break;
-                    case "move" :
-                        // find element to be updated
-                        var hbm = wbElements[sentProps.uuid];
-                        if (hbm == null) {
-                            // not found ==> nothing to do
-                            if (_self.logging) {
-                                logDebug("Element to be moved does not exist anymore in this Whiteboard");
-                            }
-                            break;
-                        }
-
-                        var oldDimM = {}, newDimM = {}, linePath = null;
-
-                        switch (jsData.element.type) {
-                            case _self.config.classTypes.text :
-                                newDimM.x = sentProps.x;
-                                newDimM.y = sentProps.y;
-                                oldDimM.x = hbm.element.attr("x");
-                                oldDimM.y = hbm.element.attr("y");
-                                break;
-                            case _self.config.classTypes.freeLine :
-                            case _self.config.classTypes.straightLine :
-                                linePath = sentProps.path;
-                                break;
-                            case _self.config.classTypes.rectangle :
-                                newDimM.x = sentProps.x;
-                                newDimM.y = sentProps.y;
-                                oldDimM.x = hbm.element.attr("x");
-                                oldDimM.y = hbm.element.attr("y");
-                                break;
-                            case _self.config.classTypes.circle :
-                                newDimM.x = sentProps.x;
-                                newDimM.y = sentProps.y;
-                                oldDimM.x = hbm.element.attr("cx");
-                                oldDimM.y = hbm.element.attr("cy");
-                                break;
-                            case _self.config.classTypes.ellipse :
-                                newDimM.x = sentProps.x;
-                                newDimM.y = sentProps.y;
-                                oldDimM.x = hbm.element.attr("cx");
-                                oldDimM.y = hbm.element.attr("cy");
-                                break;
-                            case _self.config.classTypes.image :
-                                newDimM.x = sentProps.x;
-                                newDimM.y = sentProps.y;
-                                oldDimM.x = hbm.element.attr("x");
-                                oldDimM.y = hbm.element.attr("y");
-                                break;
-                            case _self.config.classTypes.icon :
-                                newDimM.x = sentProps.x;
-                                newDimM.y = sentProps.y;
-                                oldDimM.x = Math.round(hbm.attr("x") + 1);
-                                oldDimM.y = Math.round(hbm.attr("y") + 1);
-                                break;
-                            default :
-                        }
-
-                        // move element and helpers if needed
-                        if (typeof oldDimM.x !== "undefined") {
-                            var diffXM = newDimM.x - oldDimM.x;
-                            var diffYM = newDimM.y - oldDimM.y;
-                            if (diffXM != 0 || diffYM != 0) {
-                                hbm.element.translate(diffXM, diffYM);
-                                hbm.translate(diffXM, diffYM);
-                                hbm.circleSet.translate(diffXM, diffYM);
-
-                                if (selectedObj != null && selectedObj.uuid == hbm.uuid) {
-                                    // transfer changes to dialog
-                                    _self.transferPropertiesToDialog(selectedObj);
-                                }
-                            }
-                        }
-
-                        // redraw line and helpers if line was moved
-                        if (linePath != null) {
-                            hbm.element.attr("path", linePath);
-
-                            var bboxM = hbm.element.getBBox();
-                            var bboxWidthM = parseFloat(bboxM.width);
-                            var bboxHeightM = parseFloat(bboxM.height);
-                            hbm.attr("x", bboxM.x - 1);
-                            hbm.attr("y", bboxM.y - 1);
-                            hbm.attr("width", (bboxWidthM !== 0 ? bboxWidthM + 2 : 3));
-                            hbm.attr("height", (bboxHeightM !== 0 ? bboxHeightM + 2 : 3));
-
-                            // redraw circleSet
-                            hbm.circleSet.remove();
-                            hbm.circleSet = null;
-                            delete hbm.circleSet;
-                            var circleSetM = drawCircleSet(bboxM.x, bboxM.y, bboxWidthM, bboxHeightM);
-                            circleSetM.attr(_self.config.attributes.circleSet);
-                            if (selectedObj != null && selectedObj.visibleSelect && selectedObj.uuid == hbm.uuid) {
-                                circleSetM.attr(_self.config.attributes.opacityVisible);
-                            }
-                            hbm.circleSet = circleSetM;
-
-                            // rotate
-                            var rotation = hbm.element.attr("rotation");
-                            hbm.rotate(rotation, bboxM.x + bboxWidthM / 2, bboxM.y + bboxHeightM / 2, true);
-                            hbm.circleSet.rotate(rotation, bboxM.x + bboxWidthM / 2, bboxM.y + bboxHeightM / 2, true);
-                        }
-                        break;
-                    case "toFront" :
-                        // find element to be brought to top
-                        var hbf = wbElements[sentProps.uuid];
-                        if (hbf == null) {
-                            // not found ==> nothing to do
-                            if (_self.logging) {
-                                logDebug("Element to be brought to front does not exist anymore in this Whiteboard");
-                            }
-                            break;
-                        }
-
-                        hbf.element.toFront();
-                        hbf.circleSet.toFront();
-                        hbf.toFront();
-                        hbf.attr(_self.config.attributes.opacityHidden);
-                        break;
-                    case "toBack" :
-                        // find element to be brought to back
-                        var hbb = wbElements[sentProps.uuid];
-                        if (hbb == null) {
-                            // not found ==> nothing to do
-                            if (_self.logging) {
-                                logDebug("Element to be brought to back does not exist anymore in this Whiteboard");
-                            }
-                            break;
-                        }
-
-                        hbb.toBack();
-                        hbb.circleSet.toBack();
-                        hbb.element.toBack();
-                        hbb.attr(_self.config.attributes.opacityHidden);
-                        break;
-                    case "clear" :
-                        paper.clear();
-                        _self.showProperties('editNoSelection');
-                        for (eluuid in wbElements) {
-                            wbElements[eluuid] = null;
-                            delete wbElements[eluuid];
-                        }
-                        break;
-                    case "resize" :
-                        var width = jsData.parameters.width;
-                        var height = jsData.parameters.height;
-                        whiteboard.css({width: width + 'px', height: height + 'px'});
-                        paper.setSize(parseInt(width), parseInt(height));
-                        break;
-                    default:
+                if (jQuery.isArray(jsData)) {
+                    // batch of changes (e.g. coalesced moves)
+                    for (var i = 0; i < jsData.length; i++) {
+                        processChanges(jsData[i]);
+                    }
+                } else {
+                    processChanges(jsData);
                 }
-
-                // show new message in the event monitoring pane
-                prependMessage(jsData.message);
             }
         }
     }
@@ -1619,7 +1389,8 @@ WhiteboardDesigner = function(witeboardConfig, whiteboardId, user, pubSubUrl, pu
         });
     }
 
-    /** Sends any changes on client side to the server (see actions). 
+    /** Sends any changes on client side to the server (see actions). Changes are sent asynchronously,
+    * all changes of the same JavaScript turn in one request.
     * @public
     * @param jsObject changes as JavaScript object.
     */    
@@ -1634,13 +1405,31 @@ WhiteboardDesigner = function(witeboardConfig, whiteboardId, user, pubSubUrl, pu
         // set whiteboard Id
         jsObject.whiteboardId = this.whiteboardId;
 
-        var outgoingMessage = JSON.stringify(jsObject);
-        if (_self.logging) {
-            logOutgoing(outgoingMessage);
+        // set operation Id, server skips changes with already applied Ids (e.g. resent on reconnect)
+        jsObject.operationId = uuid();
+
+        // set Lamport clock, concurrent changes of the same properties are decided by clocks on server side
+        // (the server sends current values back if this change loses)
+        jsObject.clock = lastSequence + 1;
+
+        // keep properties of changed element up to date
+        if (jsObject.element != null) {
+            if (jsObject.action == "remove") {
+                forgetProperties(jsObject.element.properties.uuid);
+            } else {
+                rememberProperties(jsObject.element.properties.uuid, jsObject.element.properties);
+            }
+        } else if (jsObject.delta != null) {
+            rememberProperties(jsObject.delta.properties.uuid, jsObject.delta.properties);
+        } else if (jsObject.action == "clear") {
+            elementProperties = {};
         }
 
-        // send changes to all subscribed clients
-        this.connectedEndpoint.push(this.pubSubUrl, null, jQuery.atmosphere.request = {data: 'message=' + outgoingMessage});
+        outgoingChanges.push(jsObject);
+        if (outgoingChanges.length == 1) {
+            // changes made in the same JavaScript turn (e.g. clear or paste of many elements) are sent in one request
+            setTimeout(sendOutgoingChanges, 0);
+        }
 
         // set data in hidden field
         //jQuery("#transferedJsonData").val(JSON.stringify(jsObject));
@@ -1650,6 +1439,470 @@ WhiteboardDesigner = function(witeboardConfig, whiteboardId, user, pubSubUrl, pu
 
     // private access =======================
 
+    // sends collected changes to all subscribed clients, several changes are sent as one batch
+    var sendOutgoingChanges = function() {
+        var changes = outgoingChanges;
+        outgoingChanges = [];
+        if (changes.length == 0) {
+            return;
+        }
+
+        var outgoingMessage = JSON.stringify(changes.length == 1 ? changes[0] : changes);
+        if (_self.logging) {
+            logOutgoing(outgoingMessage);
+        }
+
+        var param = (changes.length == 1 ? 'message=' : 'messages=');
+        _self.connectedEndpoint.push(_self.pubSubUrl, null, jQuery.atmosphere.request = {data: param + encodeURIComponent(outgoingMessage)});
+    }
+
+    // applies changes (one action) broadcasted from server
+    var processChanges = function(jsData) {
+        if (_self.logging && typeof jsData.timestamp !== "undefined") {
+            logProfile(jsData.timestamp);
+        }
+
+        if (typeof jsData.sequence !== "undefined" && jsData.action != "resync") {
+            if (jsData.sequence <= lastSequence) {
+                // change has been already applied (e.g. replayed after reconnect or contained in restored elements)
+                if (_self.logging) {
+                    logDebug("Stale change with sequence " + jsData.sequence + " is discarded");
+                }
+                return;
+            }
+
+            setLastSequence(jsData.sequence);
+        }
+
+        var action = jsData.action;
+        var sentProps = (jsData.element != null ? jsData.element.properties : null);
+
+        switch (action) {
+            case "join" :
+                jQuery("#usersCount").html(jsData.parameters.usersCount);
+
+                break;
+            case "create" :
+            case "clone" :
+                _self.createElement(sentProps, jsData.element.type);
+
+                break;
+            case "update" :
+                if (jsData.delta != null) {
+                    // only changed properties were sent ==> merge them with known properties of the element
+                    sentProps = rememberProperties(jsData.delta.properties.uuid, jsData.delta.properties);
+                    jsData.element = {"type": jsData.delta.type, "properties": sentProps};
+                } else {
+                    rememberProperties(sentProps.uuid, sentProps);
+                }
+
+                // find element to be updated
+                var hbu = wbElements[sentProps.uuid];
+                if (hbu == null) {
+                    // not found ==> nothing to do
+                    if (_self.logging) {
+                        logDebug("Element to be updated does not exist anymore in this Whiteboard");
+                    }
+                    break;
+                }
+
+                var props = {}, oldDimU = {}, newDimU = {};
+
+                switch (jsData.element.type) {
+                    case _self.config.classTypes.text :
+                        props["text"] = sentProps.text;
+                        props["font-family"] = sentProps.fontFamily;
+                        props["font-size"] = sentProps.fontSize;
+                        props["font-weight"] = sentProps.fontWeight;
+                        props["font-style"] = sentProps.fontStyle;
+                        props["fill"] = sentProps.color;
+
+                        newDimU.x = sentProps.x;
+                        newDimU.y = sentProps.y;
+                        oldDimU.x = hbu.element.attr("x");
+                        oldDimU.y = hbu.element.attr("y");
+                        break;
+                    case _self.config.classTypes.freeLine :
+                    case _self.config.classTypes.straightLine :
+                        //props["path"] = sentProps.path;
+                        props["stroke"] = sentProps.color;
+                        props["stroke-width"] = sentProps.lineWidth;
+                        props["stroke-dasharray"] = sentProps.lineStyle;
+                        props["stroke-opacity"] = sentProps.opacity;
+                        break;
+                    case _self.config.classTypes.rectangle :
+                        props["width"] = sentProps.width;
+                        props["height"] = sentProps.height;
+                        props["r"] = sentProps.cornerRadius;
+                        props["fill"] = sentProps.backgroundColor;
+                        props["stroke"] = sentProps.borderColor;
+                        props["stroke-width"] = sentProps.borderWidth;
+                        props["stroke-dasharray"] = sentProps.borderStyle;
+                        props["fill-opacity"] = sentProps.backgroundOpacity;
+                        props["stroke-opacity"] = sentProps.borderOpacity;
+
+                        newDimU.x = sentProps.x;
+                        newDimU.y = sentProps.y;
+                        oldDimU.x = hbu.element.attr("x");
+                        oldDimU.y = hbu.element.attr("y");
+                        break;
+                    case _self.config.classTypes.circle :
+                        props["r"] = sentProps.radius;
+                        props["fill"] = sentProps.backgroundColor;
+                        props["stroke"] = sentProps.borderColor;
+                        props["stroke-width"] = sentProps.borderWidth;
+                        props["stroke-dasharray"] = sentProps.borderStyle;
+                        props["fill-opacity"] = sentProps.backgroundOpacity;
+                        props["stroke-opacity"] = sentProps.borderOpacity;
+
+                        newDimU.x = sentProps.x;
+                        newDimU.y = sentProps.y;
+                        oldDimU.x = hbu.element.attr("cx");
+                        oldDimU.y = hbu.element.attr("cy");
+                        break;
+                    case _self.config.classTypes.ellipse :
+                        props["rx"] = sentProps.hRadius;
+                        props["ry"] = sentProps.vRadius;
+                        props["fill"] = sentProps.backgroundColor;
+                        props["stroke"] = sentProps.borderColor;
+                        props["stroke-width"] = sentProps.borderWidth;
+                        props["stroke-dasharray"] = sentProps.borderStyle;
+                        props["fill-opacity"] = sentProps.backgroundOpacity;
+                        props["stroke-opacity"] = sentProps.borderOpacity;
+
+                        newDimU.x = sentProps.x;
+                        newDimU.y = sentProps.y;
+                        oldDimU.x = hbu.element.attr("cx");
+                        oldDimU.y = hbu.element.attr("cy");
+                        break;
+                    case _self.config.classTypes.image :
+                        //props["src"] = sentProps.url;
+                        props["width"] = sentProps.width;
+                        props["height"] = sentProps.height;
+
+                        newDimU.x = sentProps.x;
+                        newDimU.y = sentProps.y;
+                        oldDimU.x = hbu.element.attr("x");
+                        oldDimU.y = hbu.element.attr("y");
+                        break;
+                    case _self.config.classTypes.icon :
+                        props["scale"] = sentProps.scaleFactor.toFixed(1);
+                        hbu.iconName = sentProps.name;
+
+                        newDimU.x = sentProps.x;
+                        newDimU.y = sentProps.y;
+                        break;
+                    default :
+                }
+
+                props["rotation"] = sentProps.rotationDegree;
+
+                // update element
+                setElementProperties(hbu.element, props);
+
+                // resize helpers
+                var bbox = hbu.element.getBBox();
+                var bboxWidth = parseFloat(bbox.width);
+                var bboxHeight = parseFloat(bbox.height);
+                hbu.attr("x", bbox.x - 1);
+                hbu.attr("y", bbox.y - 1);
+                hbu.attr("width", (bboxWidth !== 0 ? bboxWidth + 2 : 3));
+                hbu.attr("height", (bboxHeight !== 0 ? bboxHeight + 2 : 3));
+
+                if (jsData.element.type == _self.config.classTypes.icon) {
+                    oldDimU.x = Math.round(hbu.attr("x") + 1);
+                    oldDimU.y = Math.round(hbu.attr("y") + 1);
+                }
+
+                // redraw circleSet
+                hbu.circleSet.remove();
+                hbu.circleSet = null;
+                delete hbu.circleSet;
+                var circleSet = drawCircleSet(bbox.x, bbox.y, bboxWidth, bboxHeight);
+                circleSet.attr(_self.config.attributes.circleSet);
+                if (selectedObj != null && selectedObj.visibleSelect && selectedObj.uuid == hbu.uuid) {
+                    circleSet.attr(_self.config.attributes.opacityVisible);
+                }
+                hbu.circleSet = circleSet;
+
+                // rotate
+                hbu.element.rotate(props["rotation"], bbox.x + bboxWidth / 2, bbox.y + bboxHeight / 2, true);
+                hbu.rotate(props["rotation"], bbox.x + bboxWidth / 2, bbox.y + bboxHeight / 2, true);
+                hbu.circleSet.rotate(props["rotation"], bbox.x + bboxWidth / 2, bbox.y + bboxHeight / 2, true);
+                hbu.element.attr("rotation", props["rotation"]);
+
+                // move element and helpers if needed
+                if (typeof oldDimU.x !== "undefined") {
+                    var diffXU = newDimU.x - oldDimU.x;
+                    var diffYU = newDimU.y - oldDimU.y;
+                    if (diffXU != 0 || diffYU != 0) {
+                        hbu.element.translate(diffXU, diffYU);
+                        hbu.translate(diffXU, diffYU);
+                        hbu.circleSet.translate(diffXU, diffYU);
+                    }
+                }
+
+                if (selectedObj != null && selectedObj.uuid == hbu.uuid) {
+                    // transfer changes to dialog
+                    _self.transferPropertiesToDialog(selectedObj);
+                }
+                break;
+            case "remove" :
+                forgetProperties(sentProps.uuid);
+
+                // find element to be removed
+                var hbr = wbElements[sentProps.uuid];
+                if (hbr == null) {
+                    // not found ==> nothing to do
+                    if (_self.logging) {
+                        logDebug("Element to be removed does not exist anymore in this Whiteboard");
+                    }
+                    break;
+                }
+
+                var eluuid = hbr.uuid;
+                var removeSelected = false;
+                if (selectedObj != null && selectedObj.uuid == eluuid) {
+                    removeSelected = true;
+                }
+
+                wbElements[eluuid] = null;
+                delete wbElements[eluuid];
+                hbr.element.remove();
+                hbr.circleSet.remove();
+                hbr.remove();
+
+                if (removeSelected) {
+                    selectedObj = null;
+                    _self.showProperties('editNoSelection');
+                }
+                break;
+            case "move" :
+                rememberProperties(sentProps.uuid, sentProps);
+
+                // find element to be updated
+                var hbm = wbElements[sentProps.uuid];
+                if (hbm == null) {
+                    // not found ==> nothing to do
+                    if (_self.logging) {
+                        logDebug("Element to be moved does not exist anymore in this Whiteboard");
+                    }
+                    break;
+                }
+
+                var oldDimM = {}, newDimM = {}, linePath = null;
+
+                switch (jsData.element.type) {
+                    case _self.config.classTypes.text :
+                        newDimM.x = sentProps.x;
+                        newDimM.y = sentProps.y;
+                        oldDimM.x = hbm.element.attr("x");
+                        oldDimM.y = hbm.element.attr("y");
+                        break;
+                    case _self.config.classTypes.freeLine :
+                    case _self.config.classTypes.straightLine :
+                        linePath = sentProps.path;
+                        break;
+                    case _self.config.classTypes.rectangle :
+                        newDimM.x = sentProps.x;
+                        newDimM.y = sentProps.y;
+                        oldDimM.x = hbm.element.attr("x");
+                        oldDimM.y = hbm.element.attr("y");
+                        break;
+                    case _self.config.classTypes.circle :
+                        newDimM.x = sentProps.x;
+                        newDimM.y = sentProps.y;
+                        oldDimM.x = hbm.element.attr("cx");
+                        oldDimM.y = hbm.element.attr("cy");
+                        break;
+                    case _self.config.classTypes.ellipse :
+                        newDimM.x = sentProps.x;
+                        newDimM.y = sentProps.y;
+                        oldDimM.x = hbm.element.attr("cx");
+                        oldDimM.y = hbm.element.attr("cy");
+                        break;
+                    case _self.config.classTypes.image :
+                        newDimM.x = sentProps.x;
+                        newDimM.y = sentProps.y;
+                        oldDimM.x = hbm.element.attr("x");
+                        oldDimM.y = hbm.element.attr("y");
+                        break;
+                    case _self.config.classTypes.icon :
+                        newDimM.x = sentProps.x;
+                        newDimM.y = sentProps.y;
+                        oldDimM.x = Math.round(hbm.attr("x") + 1);
+                        oldDimM.y = Math.round(hbm.attr("y") + 1);
+                        break;
+                    default :
+                }
+
+                // move element and helpers if needed
+                if (typeof oldDimM.x !== "undefined") {
+                    var diffXM = newDimM.x - oldDimM.x;
+                    var diffYM = newDimM.y - oldDimM.y;
+                    if (diffXM != 0 || diffYM != 0) {
+                        hbm.element.translate(diffXM, diffYM);
+                        hbm.translate(diffXM, diffYM);
+                        hbm.circleSet.translate(diffXM, diffYM);
+
+                        if (selectedObj != null && selectedObj.uuid == hbm.uuid) {
+                            // transfer changes to dialog
+                            _self.transferPropertiesToDialog(selectedObj);
+                        }
+                    }
+                }
+
+                // redraw line and helpers if line was moved
+                if (linePath != null) {
+                    hbm.element.attr("path", linePath);
+
+                    var bboxM = hbm.element.getBBox();
+                    var bboxWidthM = parseFloat(bboxM.width);
+                    var bboxHeightM = parseFloat(bboxM.height);
+                    hbm.attr("x", bboxM.x - 1);
+                    hbm.attr("y", bboxM.y - 1);
+                    hbm.attr("width", (bboxWidthM !== 0 ? bboxWidthM + 2 : 3));
+                    hbm.attr("height", (bboxHeightM !== 0 ? bboxHeightM + 2 : 3));
+
+                    // redraw circleSet
+                    hbm.circleSet.remove();
+                    hbm.circleSet = null;
+                    delete hbm.circleSet;
+                    var circleSetM = drawCircleSet(bboxM.x, bboxM.y, bboxWidthM, bboxHeightM);
+                    circleSetM.attr(_self.config.attributes.circleSet);
+                    if (selectedObj != null && selectedObj.visibleSelect && selectedObj.uuid == hbm.uuid) {
+                        circleSetM.attr(_self.config.attributes.opacityVisible);
+                    }
+                    hbm.circleSet = circleSetM;
+
+                    // rotate
+                    var rotation = hbm.element.attr("rotation");
+                    hbm.rotate(rotation, bboxM.x + bboxWidthM / 2, bboxM.y + bboxHeightM / 2, true);
+                    hbm.circleSet.rotate(rotation, bboxM.x + bboxWidthM / 2, bboxM.y + bboxHeightM / 2, true);
+                }
+                break;
+            case "toFront" :
+                // find element to be brought to top
+                var hbf = wbElements[sentProps.uuid];
+                if (hbf == null) {
+                    // not found ==> nothing to do
+                    if (_self.logging) {
+                        logDebug("Element to be brought to front does not exist anymore in this Whiteboard");
+                    }
+                    break;
+                }
+
+                hbf.element.toFront();
+                hbf.circleSet.toFront();
+                hbf.toFront();
+                hbf.attr(_self.config.attributes.opacityHidden);
+                break;
+            case "toBack" :
+                // find element to be brought to back
+                var hbb = wbElements[sentProps.uuid];
+                if (hbb == null) {
+                    // not found ==> nothing to do
+                    if (_self.logging) {
+                        logDebug("Element to be brought to back does not exist anymore in this Whiteboard");
+                    }
+                    break;
+                }
+
+                hbb.toBack();
+                hbb.circleSet.toBack();
+                hbb.element.toBack();
+                hbb.attr(_self.config.attributes.opacityHidden);
+                break;
+            case "clear" :
+                paper.clear();
+                _self.showProperties('editNoSelection');
+                for (eluuid in wbElements) {
+                    wbElements[eluuid] = null;
+                    delete wbElements[eluuid];
+                }
+                elementProperties = {};
+                break;
+            case "resize" :
+                var width = jsData.parameters.width;
+                var height = jsData.parameters.height;
+                whiteboard.css({width: width + 'px', height: height + 'px'});
+                paper.setSize(parseInt(width), parseInt(height));
+                break;
+            case "groupMove" :
+            case "groupRemove" :
+            case "groupUpdate" :
+                // the activity is shown once below
+                applyGroupChanges(jsData);
+                break;
+            case "resync" :
+                // missed changes are not available anymore on server side ==> restore the whiteboard from scratch
+                window.location.reload();
+                return;
+            default:
+        }
+
+        // show activity in the event monitoring pane
+        if (jsData.event != null) {
+            prependMessage(formatActivity(jsData.event));
+        }
+    }
+
+    // applies changes of every element in a group as single changes
+    var applyGroupChanges = function(jsData) {
+        var groupUuids = jsData.parameters.uuids.split(",");
+        for (var i = 0; i < groupUuids.length; i++) {
+            var elementChanges = getGroupElementChanges(jsData, groupUuids[i]);
+            if (elementChanges != null) {
+                processChanges(elementChanges);
+            }
+        }
+    }
+
+    // converts a group change to the single change of the given element (null - element does not exist anymore)
+    var getGroupElementChanges = function(jsData, uuid) {
+        var hbg = wbElements[uuid];
+        var knownProps = elementProperties[uuid];
+        if (hbg == null || knownProps == null) {
+            if (_self.logging) {
+                logDebug("Element of a group does not exist anymore in this Whiteboard");
+            }
+            return null;
+        }
+
+        var props = {"uuid": uuid};
+        switch (jsData.action) {
+            case "groupMove" :
+                var dx = parseInt(jsData.parameters.dx);
+                var dy = parseInt(jsData.parameters.dy);
+                if (typeof knownProps.path !== "undefined") {
+                    props.path = translatePath(knownProps.path, dx, dy);
+                } else {
+                    props.x = knownProps.x + dx;
+                    props.y = knownProps.y + dy;
+                }
+                return {"action": "move", "element": {"type": hbg.classType, "properties": props}};
+            case "groupRemove" :
+                return {"action": "remove", "element": {"type": hbg.classType, "properties": props}};
+            case "groupUpdate" :
+                // parameters are strings, properties unknown for the element type are ignored as on server side
+                for (var name in jsData.parameters) {
+                    if (name != "uuids" && name != "uuid" && name != "path" && knownProps.hasOwnProperty(name)) {
+                        props[name] = (typeof knownProps[name] === "number" ? parseFloat(jsData.parameters[name]) : jsData.parameters[name]);
+                    }
+                }
+                return {"action": "update", "delta": {"type": hbg.classType, "properties": props}};
+            default:
+                return null;
+        }
+    }
+
+    // moves all points of a path "Mx,yLx,y..." by the given offsets
+    var translatePath = function(path, dx, dy) {
+        return path.replace(/(-?[\d.]+),(-?[\d.]+)/g, function(match, x, y) {
+            return (Math.round((parseFloat(x) + dx) * 1000) / 1000) + "," + (Math.round((parseFloat(y) + dy) * 1000) / 1000);
+        });
+    }
+
     // register handlers for drag & drop on element
     var ddStartEl = function () {
         if (!modeSwitcher.moveMode) {
@@ -2180,6 +2433,212 @@ WhiteboardDesigner = function(witeboardConfig, whiteboardId, user, pubSubUrl, pu
         return "No";
     }
 
+    // restores the next chunk of elements not visible at the beginning (if any) and all following chunks
+    var restoreChunk = function(restoreUrl, jsWhiteboard, visibleElements, nextVisible) {
+        if (jsWhiteboard["cursor"] == null) {
+            finishRestore(jsWhiteboard["message"]);
+            return;
+        }
+
+        jQuery.ajax({
+            url: restoreUrl,
+            data: {"cursor": jsWhiteboard["cursor"]},
+            dataType: "json",
+            cache: false,
+            success: function(jsChunk) {
+                var arrElements = jsChunk["elements"];
+                for (var i = 0; i < arrElements.length; i++) {
+                    var objElement = arrElements[i];
+                    var zKey = jsChunk["zKeys"][i];
+                    while (nextVisible < visibleElements.length && visibleElements[nextVisible].zKey < zKey) {
+                        nextVisible++;
+                    }
+
+                    _self.createElement(objElement.properties, objElement.type);
+                    if (nextVisible < visibleElements.length) {
+                        placeBelow(objElement.properties.uuid, visibleElements[nextVisible].uuid);
+                    }
+                }
+
+                restoreChunk(restoreUrl, jsChunk, visibleElements, nextVisible);
+            },
+            error: function() {
+                finishRestore("Whiteboard could not be restored completely, please reload the page");
+            }
+        });
+    }
+
+    // applies changes received while restoring and shows the restore message
+    var finishRestore = function(message) {
+        restoring = false;
+
+        if (message != null) {
+            prependMessage(message);
+        }
+
+        var changes = pendingChanges;
+        pendingChanges = [];
+        for (var i = 0; i < changes.length; i++) {
+            if (jQuery.isArray(changes[i])) {
+                for (var j = 0; j < changes[i].length; j++) {
+                    processChanges(changes[i][j]);
+                }
+            } else {
+                processChanges(changes[i]);
+            }
+        }
+    }
+
+    // moves an element with its helper elements below another element
+    var placeBelow = function(uuid, uuidAbove) {
+        var hb = wbElements[uuid];
+        var hbAbove = wbElements[uuidAbove];
+        if (hb == null || hbAbove == null) {
+            return;
+        }
+
+        hb.element.insertBefore(hbAbove.element);
+        hb.circleSet.insertBefore(hbAbove.element);
+        hb.insertBefore(hbAbove.element);
+    }
+
+    // remembers the last received sequence number which is sent when reconnecting to pubsub channel
+    var setLastSequence = function(sequence) {
+        if (typeof sequence === "undefined" || sequence == null) {
+            return;
+        }
+
+        lastSequence = sequence;
+        pubSubHeaders["X-Whiteboard-Sequence"] = sequence;
+    }
+
+    // merges given properties into the last known properties of the element and returns all known properties
+    var rememberProperties = function(uuid, props) {
+        if (typeof uuid === "undefined" || uuid == null) {
+            return props;
+        }
+
+        var knownProps = elementProperties[uuid];
+        if (knownProps == null) {
+            knownProps = {};
+            elementProperties[uuid] = knownProps;
+        }
+
+        jQuery.extend(knownProps, props);
+
+        return jQuery.extend({}, knownProps);
+    }
+
+    var forgetProperties = function(uuid) {
+        elementProperties[uuid] = null;
+        delete elementProperties[uuid];
+    }
+
+    // gets properties which differ from the last known ones (null - properties are not known, false - nothing changed)
+    var getChangedProperties = function(props) {
+        var knownProps = elementProperties[props.uuid];
+        if (knownProps == null) {
+            return null;
+        }
+
+        var changedProps = {"uuid": props.uuid};
+        var changed = false;
+        for (var name in props) {
+            if (knownProps[name] != props[name]) {
+                changedProps[name] = props[name];
+                changed = true;
+            }
+        }
+
+        return (changed ? changedProps : false);
+    }
+
+    var monthNames = ["Jan", "Feb", "Mar", "Apr", "May", "Jun", "Jul", "Aug", "Sep", "Oct", "Nov", "Dec"];
+
+    // formats an activity event sent from server, e.g. "2011-Sep-27 15:24:29 (GMT): User X has moved Circle to position (10,20)"
+    var formatActivity = function(event) {
+        // timestamps are sent in GMT
+        var date = new Date(event.timestamp);
+        var msg = date.getFullYear() + "-" + monthNames[date.getMonth()] + "-" + padNumber(date.getDate()) + " "
+                + padNumber(date.getHours()) + ":" + padNumber(date.getMinutes()) + ":" + padNumber(date.getSeconds())
+                + " (GMT): User " + event.user;
+
+        var element;
+        if (event.elementType == "Text") {
+            element = "Text '" + event.text + "'";
+        } else if (event.elementType == "FreeLine") {
+            element = "Free Line";
+        } else if (event.elementType == "StraightLine") {
+            element = "Straight Line";
+        } else {
+            element = event.elementType;
+        }
+
+        var position = (event.x != null ? "(" + event.x + "," + event.y + ")" : null);
+
+        switch (event.action) {
+            case "create" :
+                msg += " has created " + element;
+                break;
+            case "update" :
+                msg += " has updated properties of " + element;
+                if (position != null) {
+                    msg += " at current position " + position;
+                    position = null;
+                }
+                break;
+            case "remove" :
+                msg += " has removed " + element;
+                break;
+            case "clone" :
+                msg += " has cloned " + element;
+                break;
+            case "move" :
+                msg += " has moved " + element;
+                if (position != null) {
+                    msg += " to position " + position;
+                    position = null;
+                }
+                break;
+            case "toFront" :
+                msg += " has brought " + element + " to front (in front of other elements)";
+                break;
+            case "toBack" :
+                msg += " has brought " + element + " to back (behind other elements)";
+                break;
+            case "clear" :
+                msg += " has cleared this Whiteboard";
+                break;
+            case "resize" :
+                msg += " has resized this Whiteboard to (" + event.width + "," + event.height + ") px";
+                break;
+            case "join" :
+                msg += " has joined or refreshed this whiteboard";
+                break;
+            case "groupMove" :
+                msg += " has moved " + event.count + " elements by (" + event.x + "," + event.y + ")";
+                position = null;
+                break;
+            case "groupRemove" :
+                msg += " has removed " + event.count + " elements";
+                break;
+            case "groupUpdate" :
+                msg += " has updated properties of " + event.count + " elements";
+                break;
+            default:
+        }
+
+        if (position != null) {
+            msg += " at position " + position;
+        }
+
+        return msg;
+    }
+
+    var padNumber = function(number) {
+        return (number < 10 ? "0" : "") + number;
+    }
+
     var prependMessage = function(msg) {
         jQuery("<p style='margin: 2px 0 2px 0'>" + msg + "</p>").prependTo(".monitoringGroup");
     }
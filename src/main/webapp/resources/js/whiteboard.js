@@ -7,14 +7,14 @@
 /**
 * Initialization function for the entire whiteboard application.
 * @function
-* @param jsWhiteboard current whiteboard in JSON format
+* @param restoreUrl URL to restore elements of the current whiteboard from
 * @param whiteboardId whiteboard's id
 * @param user user (user name) working with this whiteboard
 * @param usersCount number of users working with this whiteboard 
 * @param pubSubUrl URL for bidirectional communication
 * @param pubSubTransport transport protocol "long-polling" | "streaming" | "websocket" 
 */
-function initWhiteboard(jsWhiteboard, whiteboardId, user, usersCount, pubSubUrl, pubSubTransport) {
+function initWhiteboard(restoreUrl, whiteboardId, user, usersCount, pubSubUrl, pubSubTransport) {
     // bind onclick handler for toolbox items
     bindOnclickToolboxItems();
 
@@ -145,20 +145,18 @@ function initWhiteboard(jsWhiteboard, whiteboardId, user, usersCount, pubSubUrl,
     // create a global whiteboard designer instance
     whiteboardDesigner = new WhiteboardDesigner(new WhiteboardConfig(), whiteboardId, user, pubSubUrl, pubSubTransport);
 
-    // restore existing whiteboard if any exists
-    if (!isBlankObject(jsWhiteboard)) {
-        whiteboardDesigner.restoreWhiteboard(jsWhiteboard);
-    }
-
-    // subscribe to bidirectional channel
-    whiteboardDesigner.subscribePubSub();
+    // restore existing whiteboard, elements in the visible area come first
+    whiteboardDesigner.restoreWhiteboard(restoreUrl, function() {
+        // subscribe to bidirectional channel
+        whiteboardDesigner.subscribePubSub();
 
-    if (usersCount > 1) {
-        // notificate subscribers about new user
-        setTimeout(function() {
-            whiteboardDesigner.joinUser(usersCount);
-        }, 1000);
-    }
+        if (usersCount > 1) {
+            // notificate subscribers about new user
+            setTimeout(function() {
+                whiteboardDesigner.joinUser(usersCount);
+            }, 1000);
+        }
+    });
 }
 
 /**
@@ -0,0 +1,260 @@
+/*
+* @author  Oleg Varaksin (ovaraksin@googlemail.com)
+* $$Id: WhiteboardRestoreServletTest.java 90 2011-09-27 15:24:29Z ovaraksin@gmail.com $$
+*/
+
+package com.googlecode.whiteboard.controller;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.googlecode.whiteboard.model.Whiteboard;
+import com.googlecode.whiteboard.model.element.Circle;
+import org.apache.commons.configuration.ConfigurationException;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class WhiteboardRestoreServletTest
+{
+    private TestManager manager;
+    private WhiteboardRestoreServlet servlet;
+    private Map<String, Object> session;
+
+    @Before
+    public void createServlet() throws ConfigurationException {
+        manager = new TestManager();
+        manager.addWhiteboard(createWhiteboard("wb1", 10));
+        manager.addWhiteboard(createWhiteboard("wb2", 10));
+        servlet = new WhiteboardRestoreServlet();
+        session = new ConcurrentHashMap<String, Object>();
+    }
+
+    @After
+    public void destroyManager() {
+        manager.destroy();
+    }
+
+    @Test
+    public void allChunksOfOneRestore() throws Exception {
+        String cursor = start("wb1");
+        int restored = 0;
+        while (cursor != null) {
+            JsonObject chunk = next("wb1", cursor).getAsJsonObject();
+            restored += chunk.getAsJsonArray("elements").size();
+            cursor = getCursor(chunk);
+        }
+
+        Assert.assertEquals(10, restored);
+        // finished cursors are not kept
+        Assert.assertTrue(getCursors().isEmpty());
+    }
+
+    @Test
+    public void unusedCursorIsExpired() throws Exception {
+        manager.restoreCursorTimeout = 100;
+        String cursor = start("wb1");
+        Assert.assertNotNull(getCursor(next("wb1", cursor).getAsJsonObject()));
+
+        Thread.sleep(200);
+        Assert.assertEquals(HttpServletResponse.SC_GONE, next("wb1", cursor).getAsInt());
+        Assert.assertTrue(getCursors().isEmpty());
+    }
+
+    @Test
+    public void usedCursorIsKept() throws Exception {
+        manager.restoreCursorTimeout = 300;
+        String cursor = start("wb1");
+        for (int i = 0; i < 4; i++) {
+            // the whole restore takes longer than the timeout
+            Thread.sleep(100);
+            cursor = getCursor(next("wb1", cursor).getAsJsonObject());
+            Assert.assertNotNull(cursor);
+        }
+    }
+
+    @Test
+    public void expiredCursorsOfOtherWhiteboardsAreDropped() throws Exception {
+        manager.restoreCursorTimeout = 100;
+        String abandoned = start("wb2");
+        Thread.sleep(200);
+
+        // dropped by any restore request of the session
+        String cursor = start("wb1");
+        Assert.assertEquals(1, getCursors().size());
+        Assert.assertTrue(getCursors().containsKey(cursor));
+        Assert.assertEquals(HttpServletResponse.SC_GONE, next("wb2", abandoned).getAsInt());
+    }
+
+    @Test
+    public void newRestoreReplacesCursor() throws Exception {
+        String other = start("wb2");
+        String replaced = start("wb1");
+        String cursor = start("wb1");
+
+        Assert.assertEquals(HttpServletResponse.SC_GONE, next("wb1", replaced).getAsInt());
+        Assert.assertNotNull(getCursor(next("wb1", cursor).getAsJsonObject()));
+        // cursors of other whiteboards are kept
+        Assert.assertNotNull(getCursor(next("wb2", other).getAsJsonObject()));
+        Assert.assertEquals(2, getCursors().size());
+    }
+
+    @Test
+    public void cursorOnlyForItsWhiteboard() throws Exception {
+        String cursor = start("wb1");
+        Assert.assertEquals(HttpServletResponse.SC_GONE, next("wb2", cursor).getAsInt());
+        Assert.assertNotNull(getCursor(next("wb1", cursor).getAsJsonObject()));
+    }
+
+    /**
+     * Starts a restore with an empty viewport, so that all elements are sent in chunks.
+     *
+     * @return String cursor for the first chunk
+     */
+    private String start(String whiteboardId) throws Exception {
+        Map<String, String> parameters = new HashMap<String, String>();
+        parameters.put("x", "0");
+        parameters.put("y", "0");
+        parameters.put("width", "0");
+        parameters.put("height", "0");
+
+        JsonObject restored = get(whiteboardId, parameters).getAsJsonObject();
+        Assert.assertEquals(0, restored.getAsJsonArray("elements").size());
+        String cursor = getCursor(restored);
+        Assert.assertNotNull(cursor);
+
+        return cursor;
+    }
+
+    private JsonElement next(String whiteboardId, String cursor) throws Exception {
+        Map<String, String> parameters = new HashMap<String, String>();
+        parameters.put("cursor", cursor);
+
+        return get(whiteboardId, parameters);
+    }
+
+    /**
+     * Sends a restore request within the session of this test.
+     *
+     * @return JsonElement restored whiteboard or status code of an error
+     */
+    private JsonElement get(String whiteboardId, Map<String, String> parameters) throws Exception {
+        ServletContext context = proxy(ServletContext.class, new HashMap<String, Object>(), "getAttribute", manager);
+        HttpSession httpSession = proxy(HttpSession.class, session, "getServletContext", context);
+        HttpServletRequest request = proxy(HttpServletRequest.class, parameters, "getPathInfo", "/" + whiteboardId,
+                "getSession", httpSession);
+
+        final StringWriter body = new StringWriter();
+        final int[] status = new int[1];
+        HttpServletResponse response = (HttpServletResponse) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] {HttpServletResponse.class}, new InvocationHandler()
+        {
+            private final PrintWriter writer = new PrintWriter(body);
+
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if ("sendError".equals(method.getName())) {
+                    status[0] = (Integer) args[0];
+                } else if ("getWriter".equals(method.getName())) {
+                    return writer;
+                }
+
+                return null;
+            }
+        });
+
+        servlet.doGet(request, response);
+        if (status[0] != 0) {
+            return new JsonParser().parse(String.valueOf(status[0]));
+        }
+
+        return new JsonParser().parse(body.toString());
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, ?> getCursors() {
+        return (Map<String, ?>) session.get("whiteboard.restoreCursors");
+    }
+
+    private static String getCursor(JsonObject restored) {
+        JsonElement cursor = restored.get("cursor");
+
+        return (cursor == null || cursor.isJsonNull() ? null : cursor.getAsString());
+    }
+
+    private static Whiteboard createWhiteboard(String uuid, int count) {
+        Whiteboard whiteboard = new Whiteboard();
+        whiteboard.setUuid(uuid);
+        whiteboard.setTitle("Test");
+        whiteboard.setCreator("Oleg");
+        whiteboard.setCreationDate(new Date());
+        for (int i = 0; i < count; i++) {
+            Circle circle = new Circle();
+            circle.setUuid(uuid + "-c" + i);
+            circle.setX(100 + i * 50);
+            circle.setY(100);
+            circle.setRadius(10);
+            whiteboard.addElement(circle);
+        }
+
+        return whiteboard;
+    }
+
+    /**
+     * Creates an implementation of the given interface which returns given values from methods with given names,
+     * reads parameters or attributes from the given map and returns null from all other methods.
+     */
+    private static <T> T proxy(Class<T> type, final Map<String, ?> attributes, final Object... values) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, new InvocationHandler()
+        {
+            @SuppressWarnings("unchecked")
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                for (int i = 0; i < values.length; i += 2) {
+                    if (values[i].equals(method.getName())) {
+                        return values[i + 1];
+                    }
+                }
+
+                if ("getParameter".equals(method.getName()) || "getAttribute".equals(method.getName())) {
+                    return attributes.get(args[0]);
+                } else if ("setAttribute".equals(method.getName())) {
+                    ((Map<String, Object>) attributes).put((String) args[0], args[1]);
+                }
+
+                return null;
+            }
+        }));
+    }
+
+    private static class TestManager extends WhiteboardsManager
+    {
+        long restoreCursorTimeout = 60000;
+
+        TestManager() throws ConfigurationException {
+        }
+
+        @Override
+        public int getRestoreChunkSize() {
+            return 2;
+        }
+
+        @Override
+        public long getRestoreCursorTimeout() {
+            return restoreCursorTimeout;
+        }
+    }
+}
@@ -6,7 +6,17 @@
 package com.googlecode.whiteboard.json;
 
 import com.google.gson.Gson;
-import com.googlecode.whiteboard.model.element.Circle;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonNull;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.googlecode.whiteboard.model.base.AbstractElement;
+import com.googlecode.whiteboard.model.base.Line;
+import com.googlecode.whiteboard.model.base.LinePath;
+import com.googlecode.whiteboard.model.element.*;
+import com.googlecode.whiteboard.model.transfer.TruncatedElement;
+import com.googlecode.whiteboard.model.transfer.TruncatedLine;
+import com.googlecode.whiteboard.model.transfer.TruncatedPositionable;
 import org.apache.commons.beanutils.PropertyUtils;
 import org.junit.AfterClass;
 import org.junit.Assert;
@@ -104,6 +114,53 @@ public class JsonTest
         testEquivalence(circle1, circle2);
     }
 
+    @Test
+    public void elementWireFormat() {
+        Circle circle = new Circle();
+        circle.setUuid(UUID.randomUUID().toString());
+        circle.setX(100);
+        circle.setRadius(250);
+        circle.setBorderStyle(".");
+        circle.setBackgroundOpacity(0.2);
+
+        FreeLine freeLine = new FreeLine();
+        freeLine.setUuid(UUID.randomUUID().toString());
+        freeLine.setPath("M10.5,20L12,-22.25L400,3");
+
+        AbstractElement[] elements = new AbstractElement[]{circle, new Ellipse(), new Rectangle(), new Text(), new Image(),
+                                                           new Icon(), new FreeLine(), freeLine, new StraightLine(),
+                                                           new TruncatedPositionable("1", "Circle", 10, 20),
+                                                           new TruncatedLine("2", "FreeLine", LinePath.valueOf("M10,20L30,40"))};
+        Gson reflectiveGson = new GsonBuilder().serializeNulls().create();
+
+        for (AbstractElement element : elements) {
+            // expected JSON as written by reflection
+            JsonObject properties = reflectiveGson.toJsonTree(element).getAsJsonObject();
+            if (element instanceof Line || element instanceof TruncatedLine) {
+                // encoded paths are sent as SVG paths
+                String path = (element instanceof Line ? ((Line) element).getPath() : ((TruncatedLine) element).getPath());
+                properties.add("path", path != null ? new JsonPrimitive(path) : JsonNull.INSTANCE);
+            }
+
+            JsonObject expected = new JsonObject();
+            if (element instanceof TruncatedElement) {
+                expected.addProperty("type", ((TruncatedElement) element).getClassName());
+                properties.remove("className");
+            } else {
+                expected.addProperty("type", element.getClass().getSimpleName());
+            }
+
+            expected.add("properties", properties);
+
+            String json = gson.toJson(element, AbstractElement.class);
+            Assert.assertEquals("Wrong JSON for " + element.getClass().getSimpleName(), reflectiveGson.toJson(expected), json);
+
+            if (!(element instanceof TruncatedElement)) {
+                Assert.assertEquals(json, gson.toJson(gson.fromJson(json, AbstractElement.class), AbstractElement.class));
+            }
+        }
+    }
+
     @SuppressWarnings("unchecked")
     private void testEquivalence(Object obj1, Object obj2) {
         try {
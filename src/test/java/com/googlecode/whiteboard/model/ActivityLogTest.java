@@ -0,0 +1,107 @@
+/*
+* @author  Oleg Varaksin (ovaraksin@googlemail.com)
+* $$Id: ActivityLogTest.java 90 2011-09-27 15:24:29Z ovaraksin@gmail.com $$
+*/
+
+package com.googlecode.whiteboard.model;
+
+import com.googlecode.whiteboard.model.transfer.ActivityEvent;
+import com.googlecode.whiteboard.model.transfer.ClientAction;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class ActivityLogTest
+{
+    @Test
+    public void sizeIsBounded() {
+        ActivityLog log = new ActivityLog(3);
+        Assert.assertEquals(0, log.size());
+        Assert.assertTrue(log.getEvents(0, null, 10).isEmpty());
+
+        for (int i = 1; i <= 10; i++) {
+            log.add(event(ClientAction.Create, "Oleg", "e" + i, i));
+            Assert.assertEquals(Math.min(i, 3), log.size());
+        }
+
+        Assert.assertEquals(3, log.getEvents(0, null, 10).size());
+
+        // at least one event is kept
+        ActivityLog tiny = new ActivityLog(0);
+        tiny.add(event(ClientAction.Create, "Oleg", "e1", 1));
+        tiny.add(event(ClientAction.Create, "Oleg", "e2", 2));
+        Assert.assertEquals(Arrays.asList("e2"), getElementIds(tiny.getEvents(0, null, 10)));
+    }
+
+    @Test
+    public void oldestEventsAreEvicted() {
+        ActivityLog log = new ActivityLog(3);
+        for (int i = 1; i <= 5; i++) {
+            log.add(event(ClientAction.Create, "Oleg", "e" + i, i));
+        }
+
+        // ordered from the oldest to the latest one
+        Assert.assertEquals(Arrays.asList("e3", "e4", "e5"), getElementIds(log.getEvents(0, null, 10)));
+
+        log.add(event(ClientAction.Remove, "Oleg", "e6", 6));
+        Assert.assertEquals(Arrays.asList("e4", "e5", "e6"), getElementIds(log.getEvents(0, null, 10)));
+    }
+
+    @Test
+    public void consecutiveMovesAreOneEvent() {
+        ActivityLog log = new ActivityLog(3);
+        log.add(event(ClientAction.Create, "Oleg", "e1", 1));
+        log.add(event(ClientAction.Move, "Oleg", "e1", 2));
+        log.add(event(ClientAction.Move, "Oleg", "e1", 3));
+        log.add(event(ClientAction.Move, "Oleg", "e1", 4));
+        Assert.assertEquals(2, log.size());
+        List<ActivityEvent> events = log.getEvents(0, null, 10);
+        Assert.assertEquals(4, events.get(1).getTimestamp());
+
+        // moves of another element or by another user are separate events
+        log.add(event(ClientAction.Move, "Oleg", "e2", 5));
+        log.add(event(ClientAction.Move, "Anna", "e2", 6));
+        Assert.assertEquals(Arrays.asList("e1", "e2", "e2"), getElementIds(log.getEvents(0, null, 10)));
+        Assert.assertEquals(ClientAction.Move, log.getEvents(0, null, 10).get(0).getAction());
+    }
+
+    @Test
+    public void eventsAreFiltered() {
+        ActivityLog log = new ActivityLog(10);
+        log.add(event(ClientAction.Create, "Oleg", "e1", 10));
+        log.add(event(ClientAction.Create, "Anna", "e2", 20));
+        log.add(event(ClientAction.Update, "Oleg", "e1", 30));
+        log.add(event(ClientAction.Remove, "Anna", "e2", 40));
+        log.add(event(ClientAction.Clone, "Oleg", "e3", 50));
+
+        Assert.assertEquals(Arrays.asList("e1", "e3"), getElementIds(log.getEvents(20, "Oleg", 10)));
+        Assert.assertEquals(Arrays.asList("e2", "e2"), getElementIds(log.getEvents(0, "Anna", 10)));
+        Assert.assertTrue(log.getEvents(50, null, 10).isEmpty());
+        Assert.assertTrue(log.getEvents(0, "Unknown", 10).isEmpty());
+
+        // the latest events are returned if limited
+        Assert.assertEquals(Arrays.asList("e2", "e3"), getElementIds(log.getEvents(0, null, 2)));
+        Assert.assertEquals(Arrays.asList("e1", "e3"), getElementIds(log.getEvents(0, "Oleg", 2)));
+        Assert.assertTrue(log.getEvents(0, null, 0).isEmpty());
+    }
+
+    private static ActivityEvent event(ClientAction action, String user, String elementId, long timestamp) {
+        ActivityEvent event = new ActivityEvent(action, user, timestamp);
+        event.setElementType("Circle");
+        event.setElementId(elementId);
+
+        return event;
+    }
+
+    private static List<String> getElementIds(List<ActivityEvent> events) {
+        List<String> elementIds = new ArrayList<String>();
+        for (ActivityEvent event : events) {
+            elementIds.add(event.getElementId());
+        }
+
+        return elementIds;
+    }
+}
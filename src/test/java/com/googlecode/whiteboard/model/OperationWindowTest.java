@@ -0,0 +1,147 @@
+/*
+* @author  Oleg Varaksin (ovaraksin@googlemail.com)
+* $$Id: OperationWindowTest.java 90 2011-09-27 15:24:29Z ovaraksin@gmail.com $$
+*/
+
+package com.googlecode.whiteboard.model;
+
+import com.googlecode.whiteboard.model.element.Circle;
+import com.googlecode.whiteboard.model.transfer.ClientAction;
+import com.googlecode.whiteboard.model.transfer.ClientChangedData;
+import com.googlecode.whiteboard.model.transfer.ServerChangedData;
+import com.googlecode.whiteboard.utils.WhiteboardUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+public class OperationWindowTest
+{
+    @Test
+    public void duplicates() {
+        OperationWindow window = new OperationWindow(10);
+        Assert.assertTrue(window.add("a"));
+        Assert.assertTrue(window.add("b"));
+        Assert.assertFalse(window.add("a"));
+        Assert.assertTrue(window.contains("a"));
+        Assert.assertFalse(window.contains("c"));
+        Assert.assertEquals(2, window.size());
+    }
+
+    @Test
+    public void leastRecentlySeenIdIsDropped() {
+        OperationWindow window = new OperationWindow(3);
+        window.add("a");
+        window.add("b");
+        window.add("c");
+        // seen again, "b" is the least recently seen one now
+        window.add("a");
+        window.add("d");
+
+        Assert.assertEquals(Arrays.asList("c", "a", "d"), window.getOperationIds());
+        Assert.assertFalse(window.contains("b"));
+
+        // contains doesn't change the order
+        window.contains("c");
+        window.add("e");
+        Assert.assertEquals(Arrays.asList("a", "d", "e"), window.getOperationIds());
+    }
+
+    @Test
+    public void minimalCapacity() {
+        OperationWindow window = new OperationWindow(0);
+        window.add("a");
+        window.add("b");
+        Assert.assertEquals(Arrays.asList("b"), window.getOperationIds());
+    }
+
+    @Test
+    public void addAll() {
+        OperationWindow replayed = new OperationWindow(OperationWindow.DEFAULT_CAPACITY);
+        for (int i = 0; i < 5; i++) {
+            replayed.add("op" + i);
+        }
+
+        OperationWindow window = new OperationWindow(3);
+        window.addAll(replayed);
+        Assert.assertEquals(Arrays.asList("op2", "op3", "op4"), window.getOperationIds());
+    }
+
+    @Test
+    public void retriedChangeIsAppliedOnce() {
+        Whiteboard whiteboard = createWhiteboard();
+        Assert.assertNotNull(WhiteboardUtils.updateWhiteboard(whiteboard, change(ClientAction.Create, 30, "op1")));
+        Assert.assertNull(WhiteboardUtils.updateWhiteboard(whiteboard, change(ClientAction.Create, 30, "op1")));
+        Assert.assertNotNull(WhiteboardUtils.updateWhiteboard(whiteboard, change(ClientAction.Update, 40, "op2")));
+
+        // a retry of the first change doesn't reset the update
+        Assert.assertNull(WhiteboardUtils.updateWhiteboard(whiteboard, change(ClientAction.Create, 30, "op1")));
+        Assert.assertEquals(40, ((Circle) whiteboard.getElement("c1")).getRadius());
+        Assert.assertEquals(1, whiteboard.getCount());
+    }
+
+    @Test
+    public void failedChangeCanBeRetried() {
+        Whiteboard whiteboard = createWhiteboard();
+
+        // element doesn't exist yet
+        Assert.assertNull(WhiteboardUtils.updateWhiteboard(whiteboard, change(ClientAction.Update, 40, "op2")));
+        Assert.assertFalse(whiteboard.getOperationWindow().contains("op2"));
+
+        Assert.assertNotNull(WhiteboardUtils.updateWhiteboard(whiteboard, change(ClientAction.Create, 30, "op1")));
+        Assert.assertNotNull(WhiteboardUtils.updateWhiteboard(whiteboard, change(ClientAction.Update, 40, "op2")));
+        Assert.assertEquals(40, ((Circle) whiteboard.getElement("c1")).getRadius());
+        Assert.assertEquals(Arrays.asList("op1", "op2"), whiteboard.getOperationWindow().getOperationIds());
+    }
+
+    @Test
+    public void correctedChangeIsNotAppliedAgain() {
+        Whiteboard whiteboard = createWhiteboard();
+        whiteboard.setSequence(100);
+        WhiteboardUtils.updateWhiteboard(whiteboard, change(ClientAction.Create, 30, "op1"));
+        ClientChangedData newer = change(ClientAction.Update, 50, "op2");
+        newer.setClock(100);
+        WhiteboardUtils.updateWhiteboard(whiteboard, newer);
+
+        // the concurrent older change loses, only a correction is sent to its sender
+        List<ServerChangedData> corrections = new ArrayList<ServerChangedData>();
+        ClientChangedData older = change(ClientAction.Update, 40, "op3");
+        older.setClock(50);
+        Assert.assertNull(WhiteboardUtils.updateWhiteboard(whiteboard, older, corrections));
+        Assert.assertEquals(1, corrections.size());
+        Assert.assertTrue(whiteboard.getOperationWindow().contains("op3"));
+
+        corrections.clear();
+        Assert.assertNull(WhiteboardUtils.updateWhiteboard(whiteboard, change(ClientAction.Update, 40, "op3"), corrections));
+        Assert.assertTrue(corrections.isEmpty());
+    }
+
+    private static Whiteboard createWhiteboard() {
+        Whiteboard whiteboard = new Whiteboard();
+        whiteboard.setUuid("wb1");
+        whiteboard.setCreationDate(new Date());
+        whiteboard.setOperationWindow(new OperationWindow(10));
+
+        return whiteboard;
+    }
+
+    private static ClientChangedData change(ClientAction action, int radius, String operationId) {
+        Circle circle = new Circle();
+        circle.setUuid("c1");
+        circle.setX(10);
+        circle.setY(20);
+        circle.setRadius(radius);
+
+        ClientChangedData ccd = new ClientChangedData();
+        ccd.setAction(action);
+        ccd.setWhiteboardId("wb1");
+        ccd.setElement(circle);
+        ccd.setUser("Oleg");
+        ccd.setOperationId(operationId);
+
+        return ccd;
+    }
+}
@@ -0,0 +1,233 @@
+/*
+* @author  Oleg Varaksin (ovaraksin@googlemail.com)
+* $$Id: WhiteboardTest.java 90 2011-09-27 15:24:29Z ovaraksin@gmail.com $$
+*/
+
+package com.googlecode.whiteboard.model;
+
+import com.googlecode.whiteboard.model.base.AbstractElement;
+import com.googlecode.whiteboard.model.element.Circle;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class WhiteboardTest
+{
+    @Test
+    public void newElementsAreInFront() {
+        Whiteboard whiteboard = createWhiteboard("a", "b", "c");
+        assertZOrder(whiteboard, "a", "b", "c");
+
+        // a replaced element keeps its z-order
+        whiteboard.addElement(circle("a"));
+        assertZOrder(whiteboard, "a", "b", "c");
+    }
+
+    @Test
+    public void bringToFrontAndBack() {
+        Whiteboard whiteboard = createWhiteboard("a", "b", "c");
+        Assert.assertNotNull(whiteboard.bringToFront(circle("a")));
+        assertZOrder(whiteboard, "b", "c", "a");
+
+        Assert.assertNotNull(whiteboard.bringToBack(circle("c")));
+        assertZOrder(whiteboard, "c", "b", "a");
+
+        // already in front
+        whiteboard.bringToFront(circle("a"));
+        assertZOrder(whiteboard, "c", "b", "a");
+
+        Assert.assertNull(whiteboard.bringToFront(circle("unknown")));
+        Assert.assertNull(whiteboard.bringToBack(circle("unknown")));
+    }
+
+    @Test
+    public void shiftByOneLayer() {
+        Whiteboard whiteboard = createWhiteboard("a", "b", "c", "d");
+        Assert.assertNotNull(whiteboard.shiftElement(circle("a"), 1));
+        assertZOrder(whiteboard, "b", "a", "c", "d");
+
+        whiteboard.shiftElement(circle("d"), -1);
+        assertZOrder(whiteboard, "b", "a", "d", "c");
+
+        // keys of other elements are not changed
+        Assert.assertEquals(Arrays.asList(1.0, 1.5, 1.75, 2.0), getZKeys(whiteboard, "b", "a", "d", "c"));
+    }
+
+    @Test
+    public void shiftBeyondFrontAndBack() {
+        Whiteboard whiteboard = createWhiteboard("a", "b", "c");
+        whiteboard.shiftElement(circle("a"), 5);
+        assertZOrder(whiteboard, "b", "c", "a");
+
+        whiteboard.shiftElement(circle("c"), -2);
+        assertZOrder(whiteboard, "c", "b", "a");
+
+        // last layer in a direction
+        whiteboard.shiftElement(circle("b"), 1);
+        assertZOrder(whiteboard, "c", "a", "b");
+
+        // already in front or at the back, nothing changes
+        long version = whiteboard.getElementsSnapshot().getVersion();
+        whiteboard.shiftElement(circle("b"), 1);
+        whiteboard.shiftElement(circle("c"), -3);
+        whiteboard.shiftElement(circle("a"), 0);
+        Assert.assertEquals(version, whiteboard.getElementsSnapshot().getVersion());
+
+        Assert.assertNull(whiteboard.shiftElement(circle("unknown"), 1));
+    }
+
+    @Test
+    public void keysAreRenumberedWhenPrecisionIsExhausted() {
+        Whiteboard whiteboard = createWhiteboard("a", "b", "c");
+
+        // the back element is put between the two others again and again, the gap to the front is halved every time
+        int renumbered = 0;
+        double gap = 1;
+        for (int i = 1; i <= 200; i++) {
+            String back = (i % 2 == 1 ? "a" : "b");
+            whiteboard.shiftElement(circle(back), 1);
+
+            List<Double> keys;
+            if (i % 2 == 1) {
+                assertZOrder(whiteboard, "b", "a", "c");
+                keys = getZKeys(whiteboard, "b", "a", "c");
+            } else {
+                assertZOrder(whiteboard, "a", "b", "c");
+                keys = getZKeys(whiteboard, "a", "b", "c");
+            }
+
+            Assert.assertTrue(keys.get(0) < keys.get(1));
+            Assert.assertTrue(keys.get(1) < keys.get(2));
+            if (keys.get(2) - keys.get(1) > gap) {
+                // keys are far apart again
+                renumbered++;
+            }
+
+            gap = keys.get(2) - keys.get(1);
+        }
+
+        // the gap between 1 and 2 can be halved about 50 times
+        Assert.assertTrue(renumbered >= 3);
+    }
+
+    @Test
+    public void snapshotIsStableWhileElementsChange() {
+        Whiteboard whiteboard = createWhiteboard("a", "b", "c");
+        ElementsSnapshot snapshot = whiteboard.getElementsSnapshot();
+        Iterator<Map.Entry<Double, AbstractElement>> iter = snapshot.zOrderIterator();
+        Assert.assertEquals("a", iter.next().getValue().getUuid());
+
+        whiteboard.removeElement(circle("b"));
+        whiteboard.bringToBack(circle("c"));
+        whiteboard.addElement(circle("d"));
+        whiteboard.clearElements();
+
+        Assert.assertEquals("b", iter.next().getValue().getUuid());
+        Assert.assertEquals("c", iter.next().getValue().getUuid());
+        Assert.assertFalse(iter.hasNext());
+        Assert.assertEquals(3, snapshot.getCount());
+        Assert.assertEquals(0, whiteboard.getCount());
+    }
+
+    @Test
+    public void snapshotsAreConsistentDuringConcurrentChanges() throws InterruptedException {
+        final Whiteboard whiteboard = createWhiteboard("a", "b", "c", "d", "e");
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+
+        Thread reader = new Thread(new Runnable()
+        {
+            public void run() {
+                try {
+                    for (int i = 0; i < 2000; i++) {
+                        ElementsSnapshot snapshot = whiteboard.getElementsSnapshot();
+                        int count = 0;
+                        double previous = Double.NEGATIVE_INFINITY;
+                        Iterator<Map.Entry<Double, AbstractElement>> iter = snapshot.zOrderIterator();
+                        while (iter.hasNext()) {
+                            double zKey = iter.next().getKey();
+                            Assert.assertTrue(zKey > previous);
+                            previous = zKey;
+                            count++;
+                        }
+
+                        Assert.assertEquals(snapshot.getCount(), count);
+                        Assert.assertEquals(count, snapshot.getElements().size());
+                    }
+                } catch (Throwable t) {
+                    failure.set(t);
+                }
+            }
+        });
+        reader.start();
+
+        String[] uuids = {"a", "b", "c", "d", "e"};
+        for (int i = 0; i < 2000; i++) {
+            String uuid = uuids[i % uuids.length];
+            switch (i % 4) {
+                case 0:
+                    whiteboard.shiftElement(circle(uuid), -2);
+                    break;
+                case 1:
+                    whiteboard.bringToFront(circle(uuid));
+                    break;
+                case 2:
+                    whiteboard.removeElement(circle(uuid));
+                    break;
+                default:
+                    whiteboard.addElement(circle(uuids[(i + 2) % uuids.length]));
+            }
+        }
+
+        reader.join();
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+    }
+
+    private static Whiteboard createWhiteboard(String... uuids) {
+        Whiteboard whiteboard = new Whiteboard();
+        whiteboard.setUuid("wb1");
+        for (String uuid : uuids) {
+            whiteboard.addElement(circle(uuid));
+        }
+
+        return whiteboard;
+    }
+
+    private static Circle circle(String uuid) {
+        Circle circle = new Circle();
+        circle.setUuid(uuid);
+        circle.setX(10);
+        circle.setY(20);
+        circle.setRadius(30);
+
+        return circle;
+    }
+
+    private static void assertZOrder(Whiteboard whiteboard, String... uuids) {
+        List<String> actual = new ArrayList<String>();
+        for (AbstractElement ae : whiteboard.getElements()) {
+            actual.add(ae.getUuid());
+        }
+
+        Assert.assertEquals(Arrays.asList(uuids), actual);
+    }
+
+    private static List<Double> getZKeys(Whiteboard whiteboard, String... uuids) {
+        List<Double> keys = new ArrayList<Double>();
+        Iterator<Map.Entry<Double, AbstractElement>> iter = whiteboard.getElementsSnapshot().zOrderIterator();
+        for (String uuid : uuids) {
+            Map.Entry<Double, AbstractElement> entry = iter.next();
+            Assert.assertEquals(uuid, entry.getValue().getUuid());
+            keys.add(entry.getKey());
+        }
+
+        return keys;
+    }
+}
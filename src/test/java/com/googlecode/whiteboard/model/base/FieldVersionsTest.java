@@ -0,0 +1,80 @@
+/*
+* @author  Oleg Varaksin (ovaraksin@googlemail.com)
+* $$Id: FieldVersionsTest.java 90 2011-09-27 15:24:29Z ovaraksin@gmail.com $$
+*/
+
+package com.googlecode.whiteboard.model.base;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class FieldVersionsTest
+{
+    @Test
+    public void unwrittenProperties() {
+        FieldVersions versions = FieldVersions.EMPTY;
+        Assert.assertTrue(versions.isEmpty());
+        Assert.assertEquals(0, versions.getVersion("x"));
+        Assert.assertNull(versions.getWriter("x"));
+        Assert.assertTrue(versions.isOverwrittenBy("x", 1, "s1"));
+    }
+
+    @Test
+    public void greaterVersionWins() {
+        FieldVersions versions = FieldVersions.EMPTY.merge("x", 5, "s2");
+        Assert.assertTrue(versions.isOverwrittenBy("x", 6, "s1"));
+        Assert.assertFalse(versions.isOverwrittenBy("x", 4, "s3"));
+        Assert.assertTrue(versions.isOverwrittenBy("y", 1, "s1"));
+    }
+
+    @Test
+    public void equalVersionsAreOrderedByWriters() {
+        FieldVersions versions = FieldVersions.EMPTY.merge("x", 5, "s2");
+        Assert.assertTrue(versions.isOverwrittenBy("x", 5, "s3"));
+        // the same writer overwrites its own value
+        Assert.assertTrue(versions.isOverwrittenBy("x", 5, "s2"));
+        Assert.assertFalse(versions.isOverwrittenBy("x", 5, "s1"));
+        Assert.assertFalse(versions.isOverwrittenBy("x", 5, null));
+
+        FieldVersions unknown = FieldVersions.EMPTY.merge("x", 5, null);
+        Assert.assertTrue(unknown.isOverwrittenBy("x", 5, "s1"));
+    }
+
+    @Test
+    public void mergeKeepsWinningVersions() {
+        FieldVersions empty = FieldVersions.EMPTY;
+        FieldVersions versions = empty.merge("x", 5, "s2");
+        Assert.assertTrue(empty.isEmpty());
+        Assert.assertEquals(5, versions.getVersion("x"));
+        Assert.assertEquals("s2", versions.getWriter("x"));
+
+        // losing writes don't change anything
+        Assert.assertSame(versions, versions.merge("x", 4, "s3"));
+        Assert.assertSame(versions, versions.merge("x", 5, "s1"));
+
+        FieldVersions merged = versions.merge(Arrays.asList("x", "y"), 5, "s3");
+        Assert.assertEquals("s3", merged.getWriter("x"));
+        Assert.assertEquals(5, merged.getVersion("y"));
+        Assert.assertEquals(2, merged.getProperties().size());
+        Assert.assertEquals("s2", versions.getWriter("x"));
+    }
+
+    @Test
+    public void mergeOrderDoesntMatter() {
+        String[][] writes = {{"x", "3", "s1"}, {"x", "3", "s2"}, {"x", "2", "s3"}, {"y", "1", "s1"}, {"y", "4", "s3"}};
+        int[][] orders = {{0, 1, 2, 3, 4}, {4, 3, 2, 1, 0}, {2, 0, 4, 1, 3}, {1, 4, 0, 3, 2}};
+        for (int[] order : orders) {
+            FieldVersions versions = FieldVersions.EMPTY;
+            for (int i : order) {
+                versions = versions.merge(writes[i][0], Long.parseLong(writes[i][1]), writes[i][2]);
+            }
+
+            Assert.assertEquals(3, versions.getVersion("x"));
+            Assert.assertEquals("s2", versions.getWriter("x"));
+            Assert.assertEquals(4, versions.getVersion("y"));
+            Assert.assertEquals("s3", versions.getWriter("y"));
+        }
+    }
+}
@@ -0,0 +1,168 @@
+/*
+* @author  Oleg Varaksin (ovaraksin@googlemail.com)
+* $$Id: LinePathTest.java 90 2011-09-27 15:24:29Z ovaraksin@gmail.com $$
+*/
+
+package com.googlecode.whiteboard.model.base;
+
+import com.google.gson.Gson;
+import com.googlecode.whiteboard.json.JsonConverter;
+import com.googlecode.whiteboard.model.element.FreeLine;
+import com.googlecode.whiteboard.model.element.StraightLine;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Random;
+
+public class LinePathTest
+{
+    @Test
+    public void roundTrip() {
+        String[] paths = new String[]{"M10,20L30,40", "M0,0", "M1.5,2.25L3.125,-4L5,6M100,200L101,202",
+                                      "M-10,-20L-30,-40L-30,-40"};
+        for (String path : paths) {
+            LinePath linePath = LinePath.valueOf(path);
+            Assert.assertTrue("Path " + path + " was not encoded", linePath.getPointCount() > 0);
+            Assert.assertEquals(path, linePath.toString());
+            Assert.assertEquals(linePath, LinePath.valueOf(linePath.toString()));
+        }
+    }
+
+    @Test
+    public void normalizedRoundTrip() {
+        // implicit linetos, separators and trailing zeros are written in a canonical form
+        Assert.assertEquals("M10,20L30,40L50,60", LinePath.valueOf("M 10 20 30 40 L50.0,60.00").toString());
+        Assert.assertEquals("M1,2L3,4", LinePath.valueOf("M+1,+2L3,4").toString());
+    }
+
+    @Test
+    public void varIntBoundaries() {
+        // differences around the boundaries of 7 bit groups, the x difference carries the move flag in addition
+        long[] differences = new long[]{0, 1, -1, 31, 32, -32, -33, 63, 64, -64, -65, 8191, 8192, -8192, -8193,
+                                        1048575, 1048576, -1048576, 134217727, 134217728, Integer.MAX_VALUE,
+                                        Integer.MIN_VALUE, 99999999999999L, -99999999999999L};
+        for (long difference : differences) {
+            String path = "M0,0L" + difference + "," + (-difference) + "L0,0";
+            LinePath linePath = LinePath.valueOf(path);
+            Assert.assertEquals("Difference " + difference, 3, linePath.getPointCount());
+            Assert.assertEquals(path, linePath.toString());
+        }
+    }
+
+    @Test
+    public void negativeAndLargeCoordinates() {
+        String path = "M-999999999999999,999999999999999L999999999999999,-999999999999999L-0.001,0.001";
+        LinePath linePath = LinePath.valueOf(path);
+        Assert.assertEquals(3, linePath.getPointCount());
+        Assert.assertEquals(path, linePath.toString());
+        // more than 15 digits can't be encoded without overflow
+        Assert.assertEquals(-1, LinePath.valueOf("M1000000000000000,0").getPointCount());
+
+        double[] points = linePath.getPoints();
+        Assert.assertArrayEquals(new double[]{-999999999999999.0, 999999999999999.0, 999999999999999.0,
+                                              -999999999999999.0, -0.001, 0.001}, points, 0.0);
+    }
+
+    @Test
+    public void randomRoundTrip() {
+        Random random = new Random(20110927L);
+        for (int n = 0; n < 500; n++) {
+            StringBuilder sb = new StringBuilder();
+            int decimals = random.nextInt(4);
+            int points = 1 + random.nextInt(50);
+            for (int i = 0; i < points; i++) {
+                sb.append(i == 0 || random.nextInt(10) == 0 ? 'M' : 'L');
+                sb.append(randomNumber(random, decimals)).append(',').append(randomNumber(random, decimals));
+            }
+
+            LinePath linePath = LinePath.valueOf(sb.toString());
+            Assert.assertEquals(points, linePath.getPointCount());
+            Assert.assertEquals(LinePath.valueOf(linePath.toString()).toString(), linePath.toString());
+            Assert.assertArrayEquals(LinePath.valueOf(sb.toString()).getPoints(), linePath.getPoints(), 0.0);
+        }
+    }
+
+    @Test
+    public void rawPaths() {
+        String[] paths = new String[]{"M10,20l30,40", "M10,20C1,2,3,4,5,6", "M1e3,2", "M1.2345,2", "10,20", "M1"};
+        for (String path : paths) {
+            LinePath linePath = LinePath.valueOf(path);
+            Assert.assertEquals(-1, linePath.getPointCount());
+            Assert.assertNull(linePath.getPoints());
+            Assert.assertEquals(path, linePath.toString());
+            Assert.assertSame(linePath, linePath.translate(5, 5));
+        }
+
+        Assert.assertNull(LinePath.valueOf(null));
+    }
+
+    @Test
+    public void translate() {
+        LinePath linePath = LinePath.valueOf("M10,20L30,40M-5.5,0L0,-7.25");
+        Assert.assertEquals("M13,16L33,36M-2.5,-4L3,-11.25", linePath.translate(3, -4).toString());
+        Assert.assertEquals("M-90,-180L-70,-160M-105.5,-200L-100,-207.25", linePath.translate(-100, -200).toString());
+        Assert.assertSame(linePath, linePath.translate(0, 0));
+        Assert.assertEquals(linePath, linePath.translate(7, 8).translate(-7, -8));
+        // original path is immutable
+        Assert.assertEquals("M10,20L30,40M-5.5,0L0,-7.25", linePath.toString());
+    }
+
+    @Test
+    public void serialization() throws Exception {
+        LinePath linePath = LinePath.valueOf("M1,2L-3,4.5");
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(linePath);
+        out.close();
+
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        Assert.assertEquals(linePath, in.readObject());
+    }
+
+    @Test
+    public void lineJsonRoundTrip() {
+        Gson gson = JsonConverter.getGson();
+
+        FreeLine freeLine = new FreeLine();
+        freeLine.setUuid("1");
+        freeLine.setPath("M10,20L-30.5,40L1000000,-0.125");
+        String json = gson.toJson(freeLine, AbstractElement.class);
+        Assert.assertTrue(json, json.contains("\"path\":\"M10,20L-30.5,40L1000000,-0.125\""));
+
+        FreeLine read = (FreeLine) gson.fromJson(json, AbstractElement.class);
+        Assert.assertEquals(freeLine.getLinePath(), read.getLinePath());
+        Assert.assertEquals(json, gson.toJson(read, AbstractElement.class));
+
+        StraightLine straightLine = new StraightLine();
+        straightLine.setUuid("2");
+        straightLine.setPath("M10,20Q30,40,50,60");
+        json = gson.toJson(straightLine, AbstractElement.class);
+        Assert.assertEquals("M10,20Q30,40,50,60", ((StraightLine) gson.fromJson(json, AbstractElement.class)).getPath());
+    }
+
+    private static String randomNumber(Random random, int decimals) {
+        long mantissa = (long) ((random.nextDouble() - 0.5) * 2000000);
+        if (decimals == 0) {
+            return String.valueOf(mantissa);
+        }
+
+        StringBuilder sb = new StringBuilder(String.valueOf(Math.abs(mantissa)));
+        while (sb.length() <= decimals) {
+            sb.insert(0, '0');
+        }
+
+        sb.insert(sb.length() - decimals, '.');
+        // trailing zeros are dropped on encoding
+        String number = sb.toString().replaceAll("\\.?0+$", "");
+        if (number.length() == 0 || number.equals("0")) {
+            return "0";
+        }
+
+        return (mantissa < 0 ? "-" : "") + number;
+    }
+}
@@ -0,0 +1,281 @@
+/*
+* @author  Oleg Varaksin (ovaraksin@googlemail.com)
+* $$Id: ElementTypesTest.java 90 2011-09-27 15:24:29Z ovaraksin@gmail.com $$
+*/
+
+package com.googlecode.whiteboard.model.property;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.JsonSerializationContext;
+import com.google.gson.JsonSerializer;
+import com.googlecode.whiteboard.json.JsonConverter;
+import com.googlecode.whiteboard.model.base.AbstractElement;
+import com.googlecode.whiteboard.model.base.LinePath;
+import com.googlecode.whiteboard.model.element.*;
+import com.googlecode.whiteboard.model.transfer.TruncatedElement;
+import com.googlecode.whiteboard.model.transfer.TruncatedLine;
+import com.googlecode.whiteboard.model.transfer.TruncatedPositionable;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class ElementTypesTest
+{
+    // field by field as elements were written before ElementTypes, paths as strings
+    private static final Gson REFLECTIVE = new GsonBuilder().serializeNulls().registerTypeAdapter(LinePath.class,
+            new JsonSerializer<LinePath>()
+            {
+                public JsonElement serialize(LinePath src, Type typeOfSrc, JsonSerializationContext context) {
+                    return new JsonPrimitive(src.toString());
+                }
+            }).create();
+
+    @Test
+    public void circle() {
+        Circle circle = new Circle();
+        circle.setRadius(25);
+        circle.setBackgroundColor("#FFFFFF");
+        circle.setBorderColor("#000000");
+        circle.setBorderWidth(2);
+        circle.setBorderStyle("-.");
+        circle.setBackgroundOpacity(0.5);
+        circle.setBorderOpacity(1.0);
+        circle.setX(10);
+        circle.setY(-20);
+        circle.setRotationDegree(45);
+
+        assertRoundTrip(ElementTypes.CIRCLE, circle);
+    }
+
+    @Test
+    public void ellipse() {
+        Ellipse ellipse = new Ellipse();
+        ellipse.setHRadius(30);
+        ellipse.setVRadius(15);
+        ellipse.setBackgroundColor("#FF0000");
+        ellipse.setBorderColor("#00FF00");
+        ellipse.setBorderWidth(3);
+        ellipse.setBorderStyle("--");
+        ellipse.setBackgroundOpacity(0.25);
+        ellipse.setBorderOpacity(0.75);
+        ellipse.setX(100);
+        ellipse.setY(200);
+        ellipse.setRotationDegree(90);
+
+        assertRoundTrip(ElementTypes.ELLIPSE, ellipse);
+    }
+
+    @Test
+    public void rectangle() {
+        Rectangle rectangle = new Rectangle();
+        rectangle.setWidth(120);
+        rectangle.setHeight(80);
+        rectangle.setCornerRadius(5);
+        rectangle.setBackgroundColor("#0000FF");
+        rectangle.setBorderColor(null);
+        rectangle.setBorderWidth(1);
+        rectangle.setBorderStyle("");
+        rectangle.setBackgroundOpacity(0.1);
+        rectangle.setBorderOpacity(0.9);
+        rectangle.setX(1);
+        rectangle.setY(2);
+        rectangle.setRotationDegree(-30);
+
+        assertRoundTrip(ElementTypes.RECTANGLE, rectangle);
+    }
+
+    @Test
+    public void text() {
+        Text text = new Text();
+        text.setText("Hello \"whiteboard\"\n\u00e4\u00f6\u00fc");
+        text.setFontFamily("Verdana");
+        text.setFontSize(18);
+        text.setFontWeight("bold");
+        text.setFontStyle("italic");
+        text.setColor("#333333");
+        text.setX(50);
+        text.setY(60);
+        text.setRotationDegree(0);
+
+        assertRoundTrip(ElementTypes.TEXT, text);
+    }
+
+    @Test
+    public void image() {
+        Image image = new Image();
+        image.setUrl("http://localhost/images/photo.png?size=large&x=1");
+        image.setWidth(640);
+        image.setHeight(480);
+        image.setX(5);
+        image.setY(6);
+        image.setRotationDegree(180);
+
+        assertRoundTrip(ElementTypes.IMAGE, image);
+    }
+
+    @Test
+    public void icon() {
+        Icon icon = new Icon();
+        icon.setName("mail");
+        icon.setScaleFactor(1.5);
+        icon.setX(7);
+        icon.setY(8);
+        icon.setRotationDegree(270);
+
+        assertRoundTrip(ElementTypes.ICON, icon);
+    }
+
+    @Test
+    public void freeLine() {
+        FreeLine freeLine = new FreeLine();
+        freeLine.setPath("M10,20L30,40L50.5,60.25");
+        freeLine.setColor("#FF00FF");
+        freeLine.setLineWidth(4);
+        freeLine.setLineStyle("-");
+        freeLine.setOpacity(0.8);
+        freeLine.setRotationDegree(15);
+
+        assertRoundTrip(ElementTypes.FREE_LINE, freeLine);
+    }
+
+    @Test
+    public void straightLine() {
+        StraightLine straightLine = new StraightLine();
+        straightLine.setPath("M0,0L100,100");
+        straightLine.setColor("#000000");
+        straightLine.setLineWidth(1);
+        straightLine.setLineStyle(null);
+        straightLine.setOpacity(1.0);
+        straightLine.setRotationDegree(0);
+
+        assertRoundTrip(ElementTypes.STRAIGHT_LINE, straightLine);
+    }
+
+    @Test
+    public void truncatedElements() {
+        // written with the type of the original element, only properties of the truncated element
+        TruncatedPositionable positionable = new TruncatedPositionable("t1", "Circle", 10, 20);
+        Circle circle = (Circle) assertSerialized(ElementTypes.TRUNCATED_POSITIONABLE, positionable, "Circle");
+        Assert.assertEquals(10, circle.getX());
+        Assert.assertEquals(20, circle.getY());
+        Assert.assertEquals(0, circle.getRadius());
+
+        TruncatedLine line = new TruncatedLine("t2", "FreeLine", LinePath.valueOf("M1,2L3,4"));
+        FreeLine freeLine = (FreeLine) assertSerialized(ElementTypes.TRUNCATED_LINE, line, "FreeLine");
+        Assert.assertEquals("M1,2L3,4", freeLine.getPath());
+
+        TruncatedElement element = new TruncatedElement("t3", "Text");
+        Assert.assertEquals("t3", assertSerialized(ElementTypes.TRUNCATED_ELEMENT, element, "Text").getUuid());
+    }
+
+    @Test
+    public void copyAllProperties() {
+        for (ElementType<?> type : Arrays.asList(ElementTypes.CIRCLE, ElementTypes.TEXT, ElementTypes.FREE_LINE)) {
+            AbstractElement source = JsonConverter.getGson().fromJson(
+                    "{\"type\":\"" + type.getName() + "\",\"properties\":{\"uuid\":\"e1\",\"rotationDegree\":10}}",
+                    AbstractElement.class);
+            AbstractElement copy = ElementTypes.copy(source);
+            Assert.assertNotSame(source, copy);
+            Assert.assertEquals(REFLECTIVE.toJsonTree(source), REFLECTIVE.toJsonTree(copy));
+
+            // nothing changes when copied again
+            Assert.assertTrue(ElementTypes.copyProperties(source, copy).isEmpty());
+        }
+    }
+
+    @Test
+    public void copyChangedProperties() {
+        Circle source = new Circle();
+        source.setUuid("c1");
+        source.setRadius(30);
+        source.setX(10);
+        Circle target = new Circle();
+        target.setUuid("c1");
+
+        List<ElementProperty<? super Circle>> changed = ElementTypes.copyProperties(source, target,
+                Collections.singletonList(ElementTypes.CIRCLE_RADIUS));
+        Assert.assertEquals(Collections.singletonList(ElementTypes.CIRCLE_RADIUS), changed);
+        Assert.assertEquals(30, target.getRadius());
+        // not listed
+        Assert.assertEquals(0, target.getX());
+    }
+
+    @Test
+    public void copyPropertiesRejectsMismatchedType() {
+        Circle circle = new Circle();
+        circle.setUuid("c1");
+        circle.setX(10);
+        Ellipse ellipse = new Ellipse();
+        ellipse.setUuid("c1");
+
+        try {
+            ElementTypes.copyProperties(circle, ellipse);
+            Assert.fail("Circle was copied into an ellipse");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        try {
+            ElementTypes.copyProperties(circle, ellipse, Collections.singletonList(ElementTypes.X));
+            Assert.fail("Circle was copied into an ellipse");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        // nothing has been copied before the types were checked
+        Assert.assertEquals(0, ellipse.getX());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void copyPropertiesRejectsForeignProperty() {
+        Circle source = new Circle();
+        Circle target = new Circle();
+        ElementTypes.copyProperties(source, target, Collections.singletonList(ElementTypes.ELLIPSE_H_RADIUS));
+    }
+
+    /**
+     * Checks that the element is written with all fields and read back with the same values.
+     */
+    private static <E extends AbstractElement> void assertRoundTrip(ElementType<E> type, E element) {
+        element.setUuid("e1");
+        Assert.assertSame(type, ElementTypes.getType(element));
+        Assert.assertSame(type, ElementTypes.getType(type.getName()));
+
+        AbstractElement read = assertSerialized(type, element, type.getName());
+        Assert.assertSame(element.getClass(), read.getClass());
+        Assert.assertEquals(REFLECTIVE.toJsonTree(element), REFLECTIVE.toJsonTree(read));
+        Assert.assertEquals(element, read);
+
+        // every property is set by reading
+        Assert.assertEquals(type.getProperties().size(), REFLECTIVE.toJsonTree(element).getAsJsonObject().entrySet().size());
+    }
+
+    /**
+     * Checks that the element is written with the given type name and the same properties as its fields.
+     *
+     * @return AbstractElement element read back
+     */
+    private static <E extends AbstractElement> AbstractElement assertSerialized(ElementType<E> type, E element,
+                                                                                String typeName) {
+        String json = JsonConverter.getGson().toJson(element, AbstractElement.class);
+        JsonObject written = new JsonParser().parse(json).getAsJsonObject();
+        Assert.assertEquals(typeName, written.get("type").getAsString());
+
+        JsonObject fields = REFLECTIVE.toJsonTree(element).getAsJsonObject();
+        // the class name of truncated elements is written as type
+        fields.remove("className");
+        Assert.assertEquals(fields, written.getAsJsonObject("properties"));
+        Assert.assertEquals(type.getProperties().size(), written.getAsJsonObject("properties").entrySet().size());
+
+        return JsonConverter.getGson().fromJson(json, AbstractElement.class);
+    }
+}
@@ -0,0 +1,94 @@
+/*
+* @author  Oleg Varaksin (ovaraksin@googlemail.com)
+* $$Id: ReplayBufferTest.java 90 2011-09-27 15:24:29Z ovaraksin@gmail.com $$
+*/
+
+package com.googlecode.whiteboard.pubsub;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ReplayBufferTest
+{
+    @Test
+    public void emptyBuffer() {
+        ReplayBuffer buffer = new ReplayBuffer(4);
+        Assert.assertTrue(buffer.canReplay(0, 0));
+        Assert.assertTrue(buffer.canReplay(5, 5));
+        Assert.assertFalse(buffer.canReplay(0, 1));
+        Assert.assertTrue(buffer.getMessagesAfter(0, "a").isEmpty());
+    }
+
+    @Test
+    public void messagesAfterSequence() {
+        ReplayBuffer buffer = new ReplayBuffer(10);
+        buffer.add(1, 1, "a", new EncodedFrame("1"));
+        buffer.add(2, 4, "b", new EncodedFrame("2-4"));
+        buffer.add(5, 5, null, new EncodedFrame("5"));
+
+        Assert.assertTrue(buffer.canReplay(0, 5));
+        Assert.assertEquals("[1, 2-4, 5]", toJson(buffer.getMessagesAfter(0, "c")));
+        Assert.assertEquals("[2-4, 5]", toJson(buffer.getMessagesAfter(1, "c")));
+        // batch is replayed if any change in it has not been seen yet
+        Assert.assertEquals("[2-4, 5]", toJson(buffer.getMessagesAfter(3, "c")));
+        Assert.assertEquals("[]", toJson(buffer.getMessagesAfter(5, "c")));
+    }
+
+    @Test
+    public void ownMessagesAreSkipped() {
+        ReplayBuffer buffer = new ReplayBuffer(10);
+        buffer.add(1, 1, "a", new EncodedFrame("1"));
+        buffer.add(2, 2, "b", new EncodedFrame("2"));
+        buffer.add(3, 3, null, new EncodedFrame("3"));
+
+        Assert.assertEquals("[2, 3]", toJson(buffer.getMessagesAfter(0, "a")));
+        Assert.assertEquals("[1, 3]", toJson(buffer.getMessagesAfter(0, "b")));
+    }
+
+    @Test
+    public void oldestMessagesAreDropped() {
+        ReplayBuffer buffer = new ReplayBuffer(3);
+        for (int i = 1; i <= 5; i++) {
+            buffer.add(i, i, null, new EncodedFrame(String.valueOf(i)));
+        }
+
+        Assert.assertEquals("[3, 4, 5]", toJson(buffer.getMessagesAfter(0, "a")));
+        Assert.assertTrue(buffer.canReplay(2, 5));
+        Assert.assertTrue(buffer.canReplay(4, 5));
+        Assert.assertFalse(buffer.canReplay(1, 5));
+        Assert.assertFalse(buffer.canReplay(0, 5));
+
+        // wrap around several times
+        for (int i = 6; i <= 11; i++) {
+            buffer.add(i, i, null, new EncodedFrame(String.valueOf(i)));
+        }
+
+        Assert.assertEquals("[9, 10, 11]", toJson(buffer.getMessagesAfter(0, "a")));
+        Assert.assertEquals("[10, 11]", toJson(buffer.getMessagesAfter(9, "a")));
+        Assert.assertFalse(buffer.canReplay(7, 11));
+        Assert.assertTrue(buffer.canReplay(8, 11));
+    }
+
+    @Test
+    public void minimalCapacity() {
+        ReplayBuffer buffer = new ReplayBuffer(0);
+        buffer.add(1, 2, null, new EncodedFrame("1-2"));
+        buffer.add(3, 3, null, new EncodedFrame("3"));
+
+        Assert.assertEquals("[3]", toJson(buffer.getMessagesAfter(0, "a")));
+        Assert.assertTrue(buffer.canReplay(2, 3));
+        Assert.assertFalse(buffer.canReplay(1, 3));
+    }
+
+    private static String toJson(List<EncodedFrame> messages) {
+        List<String> json = new ArrayList<String>();
+        for (EncodedFrame message : messages) {
+            json.add(message.getJson());
+        }
+
+        return json.toString();
+    }
+}
@@ -0,0 +1,158 @@
+/*
+* @author  Oleg Varaksin (ovaraksin@googlemail.com)
+* $$Id: SubscriberTest.java 90 2011-09-27 15:24:29Z ovaraksin@gmail.com $$
+*/
+
+package com.googlecode.whiteboard.pubsub;
+
+import com.googlecode.whiteboard.model.element.Circle;
+import com.googlecode.whiteboard.model.property.ElementProperty;
+import com.googlecode.whiteboard.model.property.ElementTypes;
+import com.googlecode.whiteboard.model.transfer.ClientAction;
+import com.googlecode.whiteboard.model.transfer.ElementDelta;
+import com.googlecode.whiteboard.model.transfer.ServerChangedData;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class SubscriberTest
+{
+    @Test
+    public void backlogOnlyWhenLagging() {
+        Subscriber subscriber = new Subscriber("s1", null);
+        Assert.assertEquals(-1, subscriber.addToBacklog(changes(move("c1", 10, 1))));
+
+        Assert.assertFalse(subscriber.queued(1));
+        Assert.assertTrue(subscriber.queued(1));
+        // started to lag only once
+        Assert.assertFalse(subscriber.queued(1));
+        Assert.assertTrue(subscriber.isLagging());
+        Assert.assertEquals(1, subscriber.addToBacklog(changes(move("c1", 10, 4))));
+    }
+
+    @Test
+    public void lastMoveWins() {
+        Subscriber subscriber = lagging();
+        subscriber.addToBacklog(changes(move("c1", 10, 1), move("c2", 20, 2)));
+        Assert.assertEquals(2, subscriber.addToBacklog(changes(move("c1", 30, 3))));
+
+        List<ServerChangedData> backlog = subscriber.takeBacklog();
+        Assert.assertEquals(2, backlog.size());
+        // the last move is moved to the end
+        Assert.assertEquals("c2", backlog.get(0).getElement().getUuid());
+        Assert.assertEquals(30, ((Circle) backlog.get(1).getElement()).getX());
+        Assert.assertEquals(3, backlog.get(1).getSequence());
+    }
+
+    @Test
+    public void updatesAreMerged() {
+        Subscriber subscriber = lagging();
+        ServerChangedData radius = update("c1", ElementTypes.CIRCLE_RADIUS, 1);
+        ServerChangedData color = update("c1", ElementTypes.CIRCLE_BACKGROUND_COLOR, 2);
+        subscriber.addToBacklog(changes(radius, move("c1", 10, 3)));
+        Assert.assertEquals(2, subscriber.addToBacklog(changes(color)));
+
+        List<ServerChangedData> backlog = subscriber.takeBacklog();
+        Assert.assertEquals(ClientAction.Move, backlog.get(0).getAction());
+        ServerChangedData merged = backlog.get(1);
+        Assert.assertEquals(2, merged.getSequence());
+        Assert.assertEquals(Arrays.asList(ElementTypes.CIRCLE_RADIUS, ElementTypes.CIRCLE_BACKGROUND_COLOR),
+                merged.getDelta().getProperties());
+        // shared changes are not modified
+        Assert.assertEquals(1, radius.getDelta().getProperties().size());
+        Assert.assertEquals(1, color.getDelta().getProperties().size());
+    }
+
+    @Test
+    public void otherChangesAreKept() {
+        Subscriber subscriber = lagging();
+        subscriber.addToBacklog(changes(create("c1", 1), create("c2", 2)));
+        Assert.assertEquals(3, subscriber.addToBacklog(changes(create("c3", 3))));
+    }
+
+    @Test
+    public void groupChangeDetachesEarlierChanges() {
+        Subscriber subscriber = lagging();
+        ServerChangedData group = new ServerChangedData();
+        group.setAction(ClientAction.Move);
+        group.addParameter("uuids", "c1,c2");
+        group.setSequence(2);
+        subscriber.addToBacklog(changes(move("c1", 10, 1), group));
+        // a later move of c1 must not be collapsed with the move before the group move
+        subscriber.addToBacklog(changes(move("c1", 30, 3)));
+
+        List<ServerChangedData> backlog = subscriber.takeBacklog();
+        Assert.assertEquals(3, backlog.size());
+        Assert.assertEquals(1, backlog.get(0).getSequence());
+        Assert.assertEquals(2, backlog.get(1).getSequence());
+        Assert.assertEquals(3, backlog.get(2).getSequence());
+    }
+
+    @Test
+    public void laggingUntilStopped() {
+        Subscriber subscriber = lagging();
+        subscriber.addToBacklog(changes(move("c1", 10, 1)));
+        Assert.assertFalse(subscriber.written());
+        Assert.assertTrue(subscriber.written());
+
+        Assert.assertEquals(1, subscriber.takeBacklog().size());
+        // changes broadcasted before the backlog is sent still go to the backlog
+        Assert.assertEquals(1, subscriber.addToBacklog(changes(move("c1", 20, 2))));
+        subscriber.takeBacklog();
+        subscriber.stopLagging();
+        Assert.assertEquals(-1, subscriber.addToBacklog(changes(move("c1", 30, 3))));
+        Assert.assertFalse(subscriber.written());
+    }
+
+    private static Subscriber lagging() {
+        Subscriber subscriber = new Subscriber("s1", null);
+        subscriber.queued(1);
+        subscriber.queued(1);
+
+        return subscriber;
+    }
+
+    private static List<ServerChangedData> changes(ServerChangedData... changes) {
+        return Arrays.asList(changes);
+    }
+
+    private static Circle circle(String uuid, int x) {
+        Circle circle = new Circle();
+        circle.setUuid(uuid);
+        circle.setX(x);
+        circle.setY(20);
+        circle.setRadius(30);
+
+        return circle;
+    }
+
+    private static ServerChangedData move(String uuid, int x, long sequence) {
+        ServerChangedData scd = new ServerChangedData();
+        scd.setAction(ClientAction.Move);
+        scd.setElement(circle(uuid, x));
+        scd.setSequence(sequence);
+
+        return scd;
+    }
+
+    private static ServerChangedData create(String uuid, long sequence) {
+        ServerChangedData scd = new ServerChangedData();
+        scd.setAction(ClientAction.Create);
+        scd.setElement(circle(uuid, 10));
+        scd.setSequence(sequence);
+
+        return scd;
+    }
+
+    private static ServerChangedData update(String uuid, ElementProperty<?> property, long sequence) {
+        ServerChangedData scd = new ServerChangedData();
+        scd.setAction(ClientAction.Update);
+        scd.setDelta(new ElementDelta(circle(uuid, 10), Collections.singletonList(property)));
+        scd.setSequence(sequence);
+
+        return scd;
+    }
+}
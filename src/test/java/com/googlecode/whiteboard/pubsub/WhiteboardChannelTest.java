@@ -0,0 +1,361 @@
+/*
+* @author  Oleg Varaksin (ovaraksin@googlemail.com)
+* $$Id: WhiteboardChannelTest.java 90 2011-09-27 15:24:29Z ovaraksin@gmail.com $$
+*/
+
+package com.googlecode.whiteboard.pubsub;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.googlecode.whiteboard.controller.WhiteboardsManager;
+import com.googlecode.whiteboard.model.Whiteboard;
+import com.googlecode.whiteboard.model.element.Circle;
+import com.googlecode.whiteboard.model.transfer.ClientAction;
+import com.googlecode.whiteboard.model.transfer.ServerChangedData;
+import org.apache.commons.configuration.ConfigurationException;
+import org.atmosphere.cpr.AtmosphereResource;
+import org.atmosphere.cpr.Broadcaster;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class WhiteboardChannelTest
+{
+    private static final AtomicInteger TOPICS = new AtomicInteger();
+
+    private TestManager manager;
+    private Whiteboard whiteboard;
+    private RecordingTopic topic;
+    private WhiteboardChannel channel;
+
+    @Before
+    public void createChannel() throws ConfigurationException {
+        manager = new TestManager();
+        whiteboard = new Whiteboard();
+        whiteboard.setUuid("channel" + TOPICS.incrementAndGet());
+        topic = new RecordingTopic(whiteboard.getUuid());
+        channel = WhiteboardChannel.get(topic.getBroadcaster(), manager);
+    }
+
+    @After
+    public void removeChannel() {
+        WhiteboardChannel.remove(whiteboard.getUuid());
+        manager.destroy();
+    }
+
+    @Test
+    public void senderIsExcluded() {
+        AtmosphereResource<?, ?> r1 = resource("r1");
+        AtmosphereResource<?, ?> r2 = resource("r2");
+        AtmosphereResource<?, ?> r3 = resource("r3");
+        channel.register("s1", r1);
+        channel.register("s2", r2);
+        channel.register("s3", r3);
+
+        channel.publish(whiteboard, create("c1"), "s2");
+        Assert.assertEquals(1, topic.broadcasts.size());
+        Assert.assertEquals(resources(r1, r3), topic.broadcasts.get(0));
+
+        // without sender all subscribers get the message
+        channel.publish(whiteboard, create("c2"), null);
+        Assert.assertEquals(resources(r1, r2, r3), topic.broadcasts.get(1));
+    }
+
+    @Test
+    public void subscribersChangedDuringBroadcast() {
+        final AtmosphereResource<?, ?> r1 = resource("r1");
+        final AtmosphereResource<?, ?> r2 = resource("r2");
+        final AtmosphereResource<?, ?> r3 = resource("r3");
+        channel.register("s1", r1);
+        channel.register("s2", r2);
+
+        // subscribers come and go while the message is delivered asynchronously
+        topic.beforeDelivery = new Runnable()
+        {
+            public void run() {
+                channel.unregister("s2", r2);
+                channel.register("s3", r3);
+            }
+        };
+
+        channel.publish(whiteboard, create("c1"), null);
+        Assert.assertEquals(resources(r1, r2), topic.broadcasts.get(0));
+
+        topic.beforeDelivery = null;
+        channel.publish(whiteboard, create("c2"), null);
+        Assert.assertEquals(resources(r1, r3), topic.broadcasts.get(1));
+        Assert.assertEquals(2, channel.getSubscribersCount());
+    }
+
+    @Test
+    public void unregisterOnlyCurrentResource() {
+        AtmosphereResource<?, ?> r1 = resource("r1");
+        AtmosphereResource<?, ?> r2 = resource("r2");
+        channel.register("s1", r1);
+        // long-polling: suspended again before the previous resource is disconnected
+        channel.register("s1", r2);
+        channel.unregister("s1", r1);
+
+        channel.publish(whiteboard, create("c1"), null);
+        Assert.assertEquals(resources(r2), topic.broadcasts.get(0));
+        Assert.assertSame(r2, channel.getSubscriber("s1"));
+    }
+
+    @Test
+    public void laggingSubscriberGetsCollapsedBacklog() {
+        manager.lagThreshold = 1;
+        AtmosphereResource<?, ?> r1 = resource("r1");
+        AtmosphereResource<?, ?> r2 = resource("r2");
+        channel.register("s1", r1);
+        channel.register("s2", r2);
+
+        channel.publish(whiteboard, create("c1"), "s1");
+        // still broadcasted, r2 starts to lag
+        channel.publish(whiteboard, create("c2"), "s1");
+        Assert.assertEquals(resources(r2), topic.broadcasts.get(1));
+
+        channel.publish(whiteboard, move("c1", 15), "s1");
+        channel.publish(whiteboard, move("c2", 25), "s1");
+        channel.publish(whiteboard, move("c1", 35), "s1");
+        Assert.assertEquals(resources(), topic.broadcasts.get(4));
+        Assert.assertTrue(topic.sent.isEmpty());
+
+        channel.written("s2", r2);
+        Assert.assertTrue(topic.sent.isEmpty());
+        channel.written("s2", r2);
+        // one batch with the last move per element
+        Assert.assertEquals(1, topic.sent.size());
+        JsonArray backlog = parse(topic.sent.get(0)).getAsJsonArray();
+        Assert.assertEquals(2, backlog.size());
+        Assert.assertEquals(4, backlog.get(0).getAsJsonObject().get("sequence").getAsLong());
+        JsonObject move = backlog.get(1).getAsJsonObject();
+        Assert.assertEquals(5, move.get("sequence").getAsLong());
+        Assert.assertEquals(35, move.getAsJsonObject("element").getAsJsonObject("properties").get("x").getAsInt());
+
+        channel.publish(whiteboard, create("c3"), "s1");
+        Assert.assertEquals(resources(r2), topic.broadcasts.get(5));
+    }
+
+    @Test
+    public void backlogIsSentBeforeSharedBroadcasts() throws InterruptedException {
+        manager.lagThreshold = 1;
+        AtmosphereResource<?, ?> r1 = resource("r1");
+        final AtmosphereResource<?, ?> r2 = resource("r2");
+        channel.register("s1", r1);
+        channel.register("s2", r2);
+        channel.publish(whiteboard, create("c1"), "s1");
+        channel.publish(whiteboard, create("c2"), "s1");
+        channel.publish(whiteboard, move("c1", 15), "s1");
+        // the next broadcast doesn't start lagging again
+        manager.lagThreshold = 32;
+
+        // a change is published from the mailbox while the backlog is sent
+        final Thread mailbox = new Thread(new Runnable()
+        {
+            public void run() {
+                channel.publish(whiteboard, create("c3"), "s1");
+            }
+        });
+        topic.beforeSend = new Runnable()
+        {
+            public void run() {
+                mailbox.start();
+                try {
+                    mailbox.join(200);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+
+        topic.log.clear();
+        channel.written("s2", r2);
+        channel.written("s2", r2);
+        mailbox.join();
+
+        Assert.assertEquals(Arrays.asList("send", "broadcast"), topic.log);
+        Assert.assertEquals(resources(r2), topic.broadcasts.get(3));
+    }
+
+    @Test
+    public void laggingSubscriberIsDropped() {
+        manager.lagThreshold = 1;
+        manager.dropThreshold = 2;
+        AtmosphereResource<?, ?> r1 = resource("r1");
+        AtmosphereResource<?, ?> r2 = resource("r2");
+        channel.register("s1", r1);
+        channel.register("s2", r2);
+        channel.publish(whiteboard, create("c1"), "s1");
+        channel.publish(whiteboard, create("c2"), "s1");
+
+        // moves of the same element are collapsed and don't count
+        for (int i = 0; i < 5; i++) {
+            channel.publish(whiteboard, move("c1", i), "s1");
+        }
+
+        channel.publish(whiteboard, create("c3"), "s1");
+        Assert.assertSame(r2, channel.getSubscriber("s2"));
+        Assert.assertTrue(topic.sent.isEmpty());
+
+        channel.publish(whiteboard, create("c4"), "s1");
+        Assert.assertNull(channel.getSubscriber("s2"));
+        Assert.assertEquals(1, topic.sent.size());
+        JsonObject resync = parse(topic.sent.get(0)).getAsJsonObject();
+        Assert.assertEquals(ClientAction.Resync.getAction(), resync.get("action").getAsString());
+        Assert.assertEquals(whiteboard.getSequence(), resync.get("sequence").getAsLong());
+
+        // a dropped subscriber doesn't get any changes
+        channel.publish(whiteboard, create("c5"), "s1");
+        Assert.assertEquals(resources(), topic.broadcasts.get(topic.broadcasts.size() - 1));
+        Assert.assertEquals(1, topic.sent.size());
+    }
+
+    static ServerChangedData create(String uuid) {
+        Circle circle = new Circle();
+        circle.setUuid(uuid);
+        circle.setX(10);
+        circle.setY(20);
+        circle.setRadius(30);
+
+        ServerChangedData scd = new ServerChangedData();
+        scd.setAction(ClientAction.Create);
+        scd.setElement(circle);
+
+        return scd;
+    }
+
+    static ServerChangedData move(String uuid, int x) {
+        ServerChangedData scd = create(uuid);
+        scd.setAction(ClientAction.Move);
+        ((Circle) scd.getElement()).setX(x);
+
+        return scd;
+    }
+
+    static JsonElement parse(String json) {
+        return new JsonParser().parse(json);
+    }
+
+    static AtmosphereResource<?, ?> resource(final String name) {
+        return (AtmosphereResource<?, ?>) Proxy.newProxyInstance(AtmosphereResource.class.getClassLoader(),
+                new Class<?>[] {AtmosphereResource.class}, new InvocationHandler()
+        {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if ("equals".equals(method.getName())) {
+                    return proxy == args[0];
+                } else if ("hashCode".equals(method.getName())) {
+                    return System.identityHashCode(proxy);
+                } else if ("toString".equals(method.getName())) {
+                    return name;
+                }
+
+                return null;
+            }
+        });
+    }
+
+    static Set<AtmosphereResource<?, ?>> resources(AtmosphereResource<?, ?>... resources) {
+        Set<AtmosphereResource<?, ?>> set = new HashSet<AtmosphereResource<?, ?>>();
+        for (AtmosphereResource<?, ?> resource : resources) {
+            set.add(resource);
+        }
+
+        return set;
+    }
+
+    /**
+     * Manager without coalescing of moves.
+     */
+    static class TestManager extends WhiteboardsManager
+    {
+        int lagThreshold = 32;
+        int dropThreshold = 512;
+
+        TestManager() throws ConfigurationException {
+        }
+
+        @Override
+        public long getMoveCoalescingTick() {
+            return 0;
+        }
+
+        @Override
+        public int getLagThreshold() {
+            return lagThreshold;
+        }
+
+        @Override
+        public int getDropThreshold() {
+            return dropThreshold;
+        }
+    }
+
+    /**
+     * Broadcaster recording broadcasted messages with their recipients (copied at the time of delivery), messages
+     * sent to single resources and the order of both.
+     */
+    static class RecordingTopic implements InvocationHandler
+    {
+        final String id;
+        final List<Set<AtmosphereResource<?, ?>>> broadcasts =
+                Collections.synchronizedList(new ArrayList<Set<AtmosphereResource<?, ?>>>());
+        final List<String> messages = Collections.synchronizedList(new ArrayList<String>());
+        final List<String> sent = new ArrayList<String>();
+        final List<String> log = Collections.synchronizedList(new ArrayList<String>());
+        Runnable beforeDelivery;
+        Runnable beforeSend;
+
+        RecordingTopic(String id) {
+            this.id = id;
+        }
+
+        Broadcaster getBroadcaster() {
+            return (Broadcaster) Proxy.newProxyInstance(Broadcaster.class.getClassLoader(),
+                    new Class<?>[] {Broadcaster.class}, this);
+        }
+
+        @SuppressWarnings("unchecked")
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            if ("getID".equals(method.getName())) {
+                return id;
+            } else if ("broadcast".equals(method.getName()) && args.length == 2) {
+                if (beforeDelivery != null) {
+                    beforeDelivery.run();
+                }
+
+                if (args[1] instanceof Set) {
+                    broadcasts.add(new HashSet<AtmosphereResource<?, ?>>((Set<AtmosphereResource<?, ?>>) args[1]));
+                    messages.add(((EncodedFrame) args[0]).getJson());
+                    log.add("broadcast");
+                } else {
+                    if (beforeSend != null) {
+                        beforeSend.run();
+                    }
+
+                    sent.add(((EncodedFrame) args[0]).getJson());
+                    log.add("send");
+                }
+            } else if ("equals".equals(method.getName())) {
+                return proxy == args[0];
+            } else if ("hashCode".equals(method.getName())) {
+                return System.identityHashCode(proxy);
+            }
+
+            return null;
+        }
+    }
+}
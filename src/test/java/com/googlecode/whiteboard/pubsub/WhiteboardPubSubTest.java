@@ -0,0 +1,263 @@
+/*
+* @author  Oleg Varaksin (ovaraksin@googlemail.com)
+* $$Id: WhiteboardPubSubTest.java 90 2011-09-27 15:24:29Z ovaraksin@gmail.com $$
+*/
+
+package com.googlecode.whiteboard.pubsub;
+
+import com.google.gson.JsonArray;
+import com.googlecode.whiteboard.json.JsonConverter;
+import com.googlecode.whiteboard.model.Whiteboard;
+import com.googlecode.whiteboard.model.element.Circle;
+import com.googlecode.whiteboard.model.transfer.ClientAction;
+import com.googlecode.whiteboard.model.transfer.ClientChangedData;
+import org.atmosphere.cpr.AtmosphereResource;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.servlet.ServletContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class WhiteboardPubSubTest
+{
+    private static final AtomicInteger WHITEBOARDS = new AtomicInteger();
+
+    private WhiteboardChannelTest.TestManager manager;
+    private Whiteboard whiteboard;
+    private WhiteboardChannelTest.RecordingTopic topic;
+    private WhiteboardPubSub pubSub;
+    private AtmosphereResource<?, ?> resource;
+
+    @Before
+    public void createPubSub() throws Exception {
+        manager = new WhiteboardChannelTest.TestManager();
+        whiteboard = createWhiteboard("pubsub" + WHITEBOARDS.incrementAndGet());
+        manager.addWhiteboard(whiteboard);
+
+        topic = new WhiteboardChannelTest.RecordingTopic(whiteboard.getUuid());
+        pubSub = new WhiteboardPubSub();
+        // injected by Jersey
+        Field field = WhiteboardPubSub.class.getDeclaredField("topic");
+        field.setAccessible(true);
+        field.set(pubSub, topic.getBroadcaster());
+
+        resource = createResource(manager);
+        WhiteboardChannel.get(topic.getBroadcaster(), manager).register("s2", WhiteboardChannelTest.resource("r2"));
+    }
+
+    @After
+    public void removeChannel() {
+        WhiteboardChannel.remove(whiteboard.getUuid());
+        manager.destroy();
+    }
+
+    @Test
+    public void batchIsAppliedInOrder() throws InterruptedException {
+        publish(Arrays.asList(create("c1", 10), move("c1", 50), create("c2", 20), remove("c1")));
+
+        Assert.assertNull(whiteboard.getElement("c1"));
+        Assert.assertEquals(20, ((Circle) whiteboard.getElement("c2")).getX());
+
+        // one message for the whole batch
+        Assert.assertEquals(1, topic.messages.size());
+        JsonArray batch = WhiteboardChannelTest.parse(topic.messages.get(0)).getAsJsonArray();
+        Assert.assertEquals(4, batch.size());
+        String[] actions = {"create", "move", "create", "remove"};
+        for (int i = 0; i < actions.length; i++) {
+            Assert.assertEquals(actions[i], batch.get(i).getAsJsonObject().get("action").getAsString());
+            Assert.assertEquals(i + 1, batch.get(i).getAsJsonObject().get("sequence").getAsLong());
+        }
+
+        // to all subscribers except sender
+        Assert.assertEquals(1, topic.broadcasts.get(0).size());
+    }
+
+    @Test
+    public void duplicatesInBatchAreSkipped() throws InterruptedException {
+        ClientChangedData first = move("c1", 50);
+        first.setOperationId("op2");
+        // retried within the same batch with another position
+        ClientChangedData retried = move("c1", 70);
+        retried.setOperationId("op2");
+        ClientChangedData create = create("c1", 10);
+        create.setOperationId("op1");
+        ClientChangedData reused = create("c2", 10);
+        reused.setOperationId("op1");
+
+        publish(Arrays.asList(create, first, retried, reused));
+        Assert.assertEquals(50, ((Circle) whiteboard.getElement("c1")).getX());
+        Assert.assertNull(whiteboard.getElement("c2"));
+        Assert.assertEquals(2, WhiteboardChannelTest.parse(topic.messages.get(0)).getAsJsonArray().size());
+
+        // the whole batch is retried
+        publish(Arrays.asList(create, first));
+        Assert.assertEquals(1, topic.messages.size());
+        Assert.assertEquals(2, whiteboard.getSequence());
+    }
+
+    @Test
+    public void malformedChangeInBatchIsSkipped() throws InterruptedException {
+        String c1 = JsonConverter.getGson().toJson(create("c1", 10));
+        String c2 = JsonConverter.getGson().toJson(create("c2", 20));
+        String unknown = "{\"action\":\"explode\",\"whiteboardId\":\"" + whiteboard.getUuid() + "\"}";
+        String invalid = "{\"action\":\"groupMove\",\"whiteboardId\":\"" + whiteboard.getUuid()
+                         + "\",\"parameters\":{\"uuids\":\"c1\",\"dx\":\"far\",\"dy\":\"1\"}}";
+        publish("[" + c1 + "," + unknown + "," + invalid + "," + c2 + "]");
+
+        Assert.assertEquals(10, ((Circle) whiteboard.getElement("c1")).getX());
+        Assert.assertEquals(20, ((Circle) whiteboard.getElement("c2")).getX());
+        Assert.assertEquals(1, topic.messages.size());
+        Assert.assertEquals(2, WhiteboardChannelTest.parse(topic.messages.get(0)).getAsJsonArray().size());
+    }
+
+    @Test
+    public void batchForEvictedWhiteboardGoesToRestoredOne() throws InterruptedException {
+        // the whiteboard is evicted and restored while the batch waits in the mailbox
+        final CountDownLatch evicted = new CountDownLatch(1);
+        whiteboard.getMailbox().execute(new Runnable()
+        {
+            public void run() {
+                try {
+                    evicted.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+
+        pubSub.publish(null, toJson(Arrays.asList(create("c1", 10), move("c1", 50))), "s1", resource);
+        whiteboard.markEvicted();
+        Whiteboard restored = createWhiteboard(whiteboard.getUuid());
+        manager.addWhiteboard(restored);
+        evicted.countDown();
+
+        awaitMailbox(whiteboard);
+        awaitMailbox(restored);
+        Assert.assertNull(whiteboard.getElement("c1"));
+        Assert.assertEquals(50, ((Circle) restored.getElement("c1")).getX());
+        Assert.assertEquals(2, restored.getSequence());
+        Assert.assertEquals(1, topic.messages.size());
+    }
+
+    private void publish(List<ClientChangedData> changes) throws InterruptedException {
+        publish(toJson(changes));
+    }
+
+    private void publish(String messages) throws InterruptedException {
+        pubSub.publish(null, messages, "s1", resource);
+        awaitMailbox(whiteboard);
+    }
+
+    private static String toJson(List<ClientChangedData> changes) {
+        List<String> json = new ArrayList<String>();
+        for (ClientChangedData ccd : changes) {
+            json.add(JsonConverter.getGson().toJson(ccd));
+        }
+
+        return json.toString();
+    }
+
+    private static void awaitMailbox(Whiteboard whiteboard) throws InterruptedException {
+        final CountDownLatch processed = new CountDownLatch(1);
+        whiteboard.getMailbox().execute(new Runnable()
+        {
+            public void run() {
+                processed.countDown();
+            }
+        });
+
+        Assert.assertTrue(processed.await(5, TimeUnit.SECONDS));
+    }
+
+    private static Whiteboard createWhiteboard(String uuid) {
+        Whiteboard whiteboard = new Whiteboard();
+        whiteboard.setUuid(uuid);
+        whiteboard.setTitle("Test");
+        whiteboard.setCreator("Oleg");
+        whiteboard.setCreationDate(new Date());
+
+        return whiteboard;
+    }
+
+    private ClientChangedData create(String uuid, int x) {
+        Circle circle = new Circle();
+        circle.setUuid(uuid);
+        circle.setX(x);
+        circle.setY(20);
+        circle.setRadius(30);
+
+        ClientChangedData ccd = change(ClientAction.Create);
+        ccd.setElement(circle);
+
+        return ccd;
+    }
+
+    private ClientChangedData move(String uuid, int x) {
+        ClientChangedData ccd = create(uuid, x);
+        ccd.setAction(ClientAction.Move);
+
+        return ccd;
+    }
+
+    private ClientChangedData remove(String uuid) {
+        ClientChangedData ccd = create(uuid, 0);
+        ccd.setAction(ClientAction.Remove);
+
+        return ccd;
+    }
+
+    private ClientChangedData change(ClientAction action) {
+        ClientChangedData ccd = new ClientChangedData();
+        ccd.setAction(action);
+        ccd.setWhiteboardId(whiteboard.getUuid());
+        ccd.setUser("Oleg");
+
+        return ccd;
+    }
+
+    /**
+     * Creates a resource whose request leads to the servlet context with the given manager.
+     */
+    private static AtmosphereResource<?, ?> createResource(final Object manager) {
+        final ServletContext context = proxy(ServletContext.class, "getAttribute", manager);
+        final HttpSession session = proxy(HttpSession.class, "getServletContext", context);
+        final HttpServletRequest request = proxy(HttpServletRequest.class, "getSession", session);
+
+        return proxy(AtmosphereResource.class, "getRequest", request);
+    }
+
+    /**
+     * Creates an implementation of the given interface which returns the given value from the given method
+     * and null from all other methods.
+     */
+    private static <T> T proxy(Class<T> type, final String methodName, final Object value) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, new InvocationHandler()
+        {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (methodName.equals(method.getName())) {
+                    return value;
+                } else if ("equals".equals(method.getName())) {
+                    return proxy == args[0];
+                } else if ("hashCode".equals(method.getName())) {
+                    return System.identityHashCode(proxy);
+                }
+
+                return null;
+            }
+        }));
+    }
+}
@@ -0,0 +1,49 @@
+/*
+* @author  Oleg Varaksin (ovaraksin@googlemail.com)
+* $$Id: FileWhiteboardStoreTest.java 90 2011-09-27 15:24:29Z ovaraksin@gmail.com $$
+*/
+
+package com.googlecode.whiteboard.store;
+
+import org.apache.commons.configuration.BaseConfiguration;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+public class FileWhiteboardStoreTest extends WhiteboardStoreContract
+{
+    private File directory;
+
+    @Override
+    protected WhiteboardStore createStore() throws IOException {
+        if (directory == null) {
+            directory = File.createTempFile("journal", "");
+            Assert.assertTrue(directory.delete());
+        }
+
+        BaseConfiguration config = new BaseConfiguration();
+        config.setProperty("whiteboard.journal.directory", directory.getPath());
+        config.setProperty("whiteboard.journal.sync", false);
+
+        return new FileWhiteboardStore(config);
+    }
+
+    @Override
+    protected void cleanUp() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+
+        directory.delete();
+    }
+
+    @Test(expected = IOException.class)
+    public void missingDirectory() throws IOException {
+        new FileWhiteboardStore(new BaseConfiguration());
+    }
+}
@@ -0,0 +1,91 @@
+/*
+* @author  Oleg Varaksin (ovaraksin@googlemail.com)
+* $$Id: JdbcWhiteboardStoreTest.java 90 2011-09-27 15:24:29Z ovaraksin@gmail.com $$
+*/
+
+package com.googlecode.whiteboard.store;
+
+import com.googlecode.whiteboard.model.Whiteboard;
+import com.googlecode.whiteboard.model.element.Circle;
+import com.googlecode.whiteboard.model.transfer.ClientAction;
+import org.apache.commons.configuration.BaseConfiguration;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class JdbcWhiteboardStoreTest extends WhiteboardStoreContract
+{
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+
+    private String url;
+    // keeps the in-memory database open while stores are closed and created again
+    private Connection connection;
+
+    @Override
+    protected WhiteboardStore createStore() throws IOException {
+        if (url == null) {
+            url = "jdbc:h2:mem:whiteboards" + DATABASES.incrementAndGet();
+            try {
+                Class.forName("org.h2.Driver");
+                connection = DriverManager.getConnection(url, "sa", "");
+            } catch (Exception e) {
+                throw new IOException("Database " + url + " can not be opened: " + e.getMessage());
+            }
+        }
+
+        return new JdbcWhiteboardStore(createConfiguration(url));
+    }
+
+    @Override
+    protected void cleanUp() {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            // in-memory database is dropped anyway
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void unknownDriver() throws IOException {
+        BaseConfiguration config = createConfiguration("jdbc:unknown:whiteboards");
+        config.setProperty("whiteboard.jdbc.driver", "org.unknown.Driver");
+        new JdbcWhiteboardStore(config);
+    }
+
+    @Test
+    public void failedBatchIsWrittenAgain() throws Exception {
+        Whiteboard whiteboard = JournalTest.createWhiteboard("wb1");
+        store.save(whiteboard);
+        // the store is closed and created again after the first batch is written
+        reopen();
+
+        Statement statement = connection.createStatement();
+        statement.execute("ALTER TABLE WB_OPERATION RENAME TO WB_OPERATION_OFF");
+        apply(whiteboard, JournalTest.change(ClientAction.Create, JournalTest.circle("c1", 10, 20, 30), 0));
+        // several attempts fail meanwhile
+        Thread.sleep(200);
+        statement.execute("ALTER TABLE WB_OPERATION_OFF RENAME TO WB_OPERATION");
+        statement.close();
+
+        reopen();
+        Whiteboard loaded = store.load("wb1");
+        JournalTest.assertEquals(whiteboard, loaded);
+        Assert.assertEquals(30, ((Circle) loaded.getElement("c1")).getRadius());
+    }
+
+    private static BaseConfiguration createConfiguration(String url) {
+        BaseConfiguration config = new BaseConfiguration();
+        config.setProperty("whiteboard.jdbc.url", url);
+        config.setProperty("whiteboard.jdbc.user", "sa");
+        config.setProperty("whiteboard.jdbc.password", "");
+        config.setProperty("whiteboard.jdbc.retryDelay", "20");
+
+        return config;
+    }
+}
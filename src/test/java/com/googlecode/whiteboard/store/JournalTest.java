@@ -0,0 +1,408 @@
+/*
+* @author  Oleg Varaksin (ovaraksin@googlemail.com)
+* $$Id: JournalTest.java 90 2011-09-27 15:24:29Z ovaraksin@gmail.com $$
+*/
+
+package com.googlecode.whiteboard.store;
+
+import com.googlecode.whiteboard.model.UserData;
+import com.googlecode.whiteboard.model.Whiteboard;
+import com.googlecode.whiteboard.model.base.AbstractElement;
+import com.googlecode.whiteboard.model.element.Circle;
+import com.googlecode.whiteboard.model.transfer.ClientAction;
+import com.googlecode.whiteboard.model.transfer.ClientChangedData;
+import com.googlecode.whiteboard.model.transfer.ServerChangedData;
+import com.googlecode.whiteboard.utils.WhiteboardUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+public class JournalTest
+{
+    private File directory;
+    private Journal journal;
+
+    @Before
+    public void createJournal() throws IOException {
+        directory = File.createTempFile("journal", "");
+        Assert.assertTrue(directory.delete());
+        journal = new Journal(directory, false);
+    }
+
+    @After
+    public void deleteJournal() {
+        journal.close();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+
+        directory.delete();
+    }
+
+    @Test
+    public void recoverSnapshotAndRecords() throws IOException {
+        Whiteboard whiteboard = createWhiteboard("wb1");
+        journal.snapshot(whiteboard);
+
+        publish(whiteboard, change(ClientAction.Create, circle("c1", 10, 20, 30), 0));
+        publish(whiteboard, change(ClientAction.Create, circle("c2", 40, 50, 60), 0));
+        publish(whiteboard, change(ClientAction.Update, circle("c1", 10, 20, 35), 0));
+        publish(whiteboard, change(ClientAction.Move, circle("c2", 45, 55, 60), 0));
+        publish(whiteboard, change(ClientAction.Remove, circle("c1", 10, 20, 35), 0));
+
+        Whiteboard recovered = reopen().recover("wb1");
+        assertEquals(whiteboard, recovered);
+        Assert.assertNull(recovered.getElement("c1"));
+        Assert.assertEquals(45, ((Circle) recovered.getElement("c2")).getX());
+        Assert.assertEquals(55, ((Circle) recovered.getElement("c2")).getY());
+        Assert.assertEquals(1, recovered.getUserData().size());
+    }
+
+    @Test
+    public void recoverSequenceOfBatchesAndCorrections() throws IOException {
+        Whiteboard whiteboard = createWhiteboard("wb1");
+        whiteboard.setSequence(100);
+        journal.snapshot(whiteboard);
+
+        publish(whiteboard, change(ClientAction.Create, circle("c1", 10, 20, 30), 0));
+        publish(whiteboard, change(ClientAction.Create, circle("c2", 10, 20, 30), 0),
+                change(ClientAction.Create, circle("c3", 10, 20, 30), 0),
+                change(ClientAction.Update, circle("c2", 10, 20, 40), 0));
+        Assert.assertEquals(104, whiteboard.getSequence());
+        journal = reopen();
+        assertEquals(whiteboard, journal.recover("wb1"));
+
+        // concurrent change with a greater clock wins, the late change with a lower clock is corrected
+        publish(whiteboard, change(ClientAction.Update, circle("c1", 10, 20, 50), 105));
+        publish(whiteboard, change(ClientAction.Update, circle("c1", 10, 20, 60), 103));
+        Assert.assertEquals(106, whiteboard.getSequence());
+
+        Whiteboard recovered = reopen().recover("wb1");
+        assertEquals(whiteboard, recovered);
+        Assert.assertEquals(50, ((Circle) recovered.getElement("c1")).getRadius());
+    }
+
+    @Test
+    public void replayRestoresSequenceBeforeEveryRecord() throws IOException {
+        Whiteboard whiteboard = createWhiteboard("wb1");
+        journal.snapshot(whiteboard);
+
+        // changes without clocks get the next sequence number as clock, later changes win
+        publish(whiteboard, change(ClientAction.Create, circle("c1", 10, 20, 30), 0));
+        for (int i = 1; i <= 5; i++) {
+            publish(whiteboard, change(ClientAction.Update, circle("c1", 10, 20, 30 + i), 0));
+        }
+
+        Whiteboard recovered = reopen().recover("wb1");
+        assertEquals(whiteboard, recovered);
+        Assert.assertEquals(35, ((Circle) recovered.getElement("c1")).getRadius());
+        Assert.assertEquals(whiteboard.getElement("c1").getFieldVersions().getVersion("radius"),
+                            recovered.getElement("c1").getFieldVersions().getVersion("radius"));
+    }
+
+    @Test
+    public void replayDecidesEqualClocksAsBefore() throws IOException {
+        Whiteboard whiteboard = createWhiteboard("wb1");
+        journal.snapshot(whiteboard);
+        publish(whiteboard, change(ClientAction.Create, circle("c1", 10, 20, 30), 0));
+
+        // concurrent changes with equal clocks, sender ids are ordered the other way round than user names
+        long clock = whiteboard.getSequence() + 1;
+        ClientChangedData first = change(ClientAction.Update, circle("c1", 10, 20, 40), clock);
+        first.setUser("Adam");
+        first.setSenderId("s2");
+        ClientChangedData second = change(ClientAction.Update, circle("c1", 10, 20, 50), clock);
+        second.setUser("Zoe");
+        second.setSenderId("s1");
+        publish(whiteboard, first);
+        publish(whiteboard, second);
+        Assert.assertEquals(40, ((Circle) whiteboard.getElement("c1")).getRadius());
+
+        journal = reopen();
+        Whiteboard recovered = journal.recover("wb1");
+        assertEquals(whiteboard, recovered);
+        Assert.assertEquals("s2", recovered.getElement("c1").getFieldVersions().getWriter("radius"));
+
+        // a clock which is too great is stored clamped, later changes win
+        publish(whiteboard, change(ClientAction.Update, circle("c1", 10, 20, 60), 1000));
+        publish(whiteboard, change(ClientAction.Update, circle("c1", 10, 20, 70), whiteboard.getSequence() + 1));
+        Assert.assertEquals(70, ((Circle) whiteboard.getElement("c1")).getRadius());
+
+        recovered = reopen().recover("wb1");
+        assertEquals(whiteboard, recovered);
+        Assert.assertEquals(whiteboard.getElement("c1").getFieldVersions().getVersion("radius"),
+                            recovered.getElement("c1").getFieldVersions().getVersion("radius"));
+    }
+
+    @Test
+    public void replayRecordsWithoutClocks() {
+        Whiteboard whiteboard = createWhiteboard("wb1");
+        whiteboard.addElement(circle("c1", 10, 20, 30));
+
+        // older records without clocks, the last two changes were applied with the same sequence number
+        Journal.OperationReplay operations = new Journal.OperationReplay(whiteboard);
+        operations.replay(legacyRecord(5, change(ClientAction.Update, circle("c1", 10, 20, 40), 0), "Zoe"));
+        operations.replay(legacyRecord(6, change(ClientAction.Move, circle("c1", 15, 25, 40), 0), "Zoe"));
+        operations.replay(legacyRecord(6, change(ClientAction.Move, circle("c1", 16, 26, 40), 0), "Adam"));
+        operations.finish();
+
+        // changes without clocks were applied in the order of arrival
+        Circle circle = (Circle) whiteboard.getElement("c1");
+        Assert.assertEquals(40, circle.getRadius());
+        Assert.assertEquals(16, circle.getX());
+        Assert.assertEquals(26, circle.getY());
+        Assert.assertEquals(8, whiteboard.getSequence());
+    }
+
+    @Test
+    public void replayRestoresOperationWindow() throws IOException {
+        Whiteboard whiteboard = createWhiteboard("wb1");
+        journal.snapshot(whiteboard);
+        ClientChangedData create = change(ClientAction.Create, circle("c1", 10, 20, 30), 0);
+        create.setOperationId("op1");
+        publish(whiteboard, create);
+        ClientChangedData update = change(ClientAction.Update, circle("c1", 10, 20, 40), 0);
+        update.setOperationId("op2");
+        publish(whiteboard, update);
+
+        Whiteboard recovered = reopen().recover("wb1");
+        Assert.assertEquals(Arrays.asList("op1", "op2"), recovered.getOperationWindow().getOperationIds());
+
+        // the retried creation after a restart doesn't reset the update
+        ClientChangedData retried = change(ClientAction.Create, circle("c1", 10, 20, 30), 0);
+        retried.setOperationId("op1");
+        Assert.assertNull(WhiteboardUtils.updateWhiteboard(recovered, retried));
+        Assert.assertEquals(40, ((Circle) recovered.getElement("c1")).getRadius());
+    }
+
+    @Test
+    public void snapshotReplacesRecords() throws IOException {
+        Whiteboard whiteboard = createWhiteboard("wb1");
+        journal.snapshot(whiteboard);
+        publish(whiteboard, change(ClientAction.Create, circle("c1", 10, 20, 30), 0));
+        publish(whiteboard, change(ClientAction.Update, circle("c1", 10, 20, 40), 0));
+        journal.snapshot(whiteboard);
+        publish(whiteboard, change(ClientAction.Move, circle("c1", 15, 25, 40), 0));
+
+        journal = reopen();
+        Assert.assertTrue(journal.list().contains("wb1"));
+        assertEquals(whiteboard, journal.recover("wb1"));
+    }
+
+    @Test
+    public void failedSnapshotKeepsRecords() throws IOException {
+        Whiteboard whiteboard = createWhiteboard("wb1");
+        journal.snapshot(whiteboard);
+        publish(whiteboard, change(ClientAction.Create, circle("c1", 10, 20, 30), 0));
+        journal = reopen();
+
+        // temporary file of the snapshot can't be written
+        File blocker = new File(directory, "wb1.snapshot.tmp");
+        Assert.assertTrue(blocker.mkdir());
+        publish(whiteboard, change(ClientAction.Update, circle("c1", 10, 20, 40), 0));
+        journal.snapshot(whiteboard);
+        publish(whiteboard, change(ClientAction.Move, circle("c1", 15, 25, 40), 0));
+
+        journal = reopen();
+        Assert.assertTrue(blocker.delete());
+        Whiteboard recovered = journal.recover("wb1");
+        assertEquals(whiteboard, recovered);
+        Assert.assertEquals(40, ((Circle) recovered.getElement("c1")).getRadius());
+    }
+
+    @Test
+    public void recoverTemporaryImageOfDeletedSnapshot() throws IOException {
+        Whiteboard whiteboard = createWhiteboard("wb1");
+        journal.snapshot(whiteboard);
+        publish(whiteboard, change(ClientAction.Create, circle("c1", 10, 20, 30), 0));
+        journal.snapshot(whiteboard);
+        publish(whiteboard, change(ClientAction.Update, circle("c1", 10, 20, 40), 0));
+        journal.close();
+
+        // crash after the previous snapshot has been deleted, before the new image has been renamed
+        File snapshot = new File(directory, "wb1.snapshot");
+        File image = new File(directory, "wb1.snapshot.tmp");
+        Assert.assertTrue(snapshot.renameTo(image));
+
+        journal = new Journal(directory, false);
+        Assert.assertEquals(Arrays.asList("wb1"), journal.list());
+        assertEquals(whiteboard, journal.recover("wb1"));
+
+        // the image is put in place before the next snapshot overwrites it
+        publish(whiteboard, change(ClientAction.Move, circle("c1", 15, 25, 40), 0));
+        journal.snapshot(whiteboard);
+        publish(whiteboard, change(ClientAction.Move, circle("c1", 16, 26, 40), 0));
+
+        journal = reopen();
+        Assert.assertTrue(snapshot.isFile());
+        Assert.assertFalse(image.exists());
+        assertEquals(whiteboard, journal.recover("wb1"));
+    }
+
+    @Test
+    public void recoverTemporaryImageOfBrokenSnapshot() throws IOException {
+        Whiteboard whiteboard = createWhiteboard("wb1");
+        whiteboard.addElement(circle("c1", 10, 20, 30));
+        journal.snapshot(whiteboard);
+        journal.close();
+
+        File snapshot = new File(directory, "wb1.snapshot");
+        File image = new File(directory, "wb1.snapshot.tmp");
+        Assert.assertTrue(snapshot.renameTo(image));
+        FileOutputStream out = new FileOutputStream(snapshot);
+        try {
+            out.write(new byte[]{1, 2, 3});
+        } finally {
+            out.close();
+        }
+
+        journal = new Journal(directory, false);
+        assertEquals(whiteboard, journal.recover("wb1"));
+    }
+
+    @Test
+    public void tornRecordIsCutOff() throws IOException {
+        Whiteboard whiteboard = createWhiteboard("wb1");
+        journal.snapshot(whiteboard);
+        publish(whiteboard, change(ClientAction.Create, circle("c1", 10, 20, 30), 0));
+        journal.close();
+
+        File file = new File(directory, "wb1.journal");
+        long length = file.length();
+        FileOutputStream out = new FileOutputStream(file, true);
+        try {
+            // length and checksum of a record which has not been written completely
+            out.write(new byte[]{0, 0, 0, 40, 1, 2, 3, 4, Journal.OP, 5});
+        } finally {
+            out.close();
+        }
+
+        journal = new Journal(directory, false);
+        assertEquals(whiteboard, journal.recover("wb1"));
+        Assert.assertEquals(length, file.length());
+    }
+
+    @Test
+    public void deletedWhiteboard() throws IOException {
+        Whiteboard whiteboard = createWhiteboard("wb1");
+        journal.snapshot(whiteboard);
+        publish(whiteboard, change(ClientAction.Create, circle("c1", 10, 20, 30), 0));
+        journal.delete("wb1");
+
+        journal = reopen();
+        Assert.assertNull(journal.recover("wb1"));
+        Assert.assertTrue(journal.list().isEmpty());
+    }
+
+    @Test
+    public void invalidIds() {
+        Assert.assertNull(journal.recover("../wb1"));
+        Assert.assertNull(journal.recover(null));
+        Assert.assertNull(journal.recover("unknown"));
+    }
+
+    /**
+     * Applies and journals changes like {@link com.googlecode.whiteboard.pubsub.WhiteboardPubSub} and numbers
+     * the broadcasted changes and corrections.
+     */
+    private void publish(Whiteboard whiteboard, ClientChangedData... changes) {
+        List<ServerChangedData> batch = new ArrayList<ServerChangedData>();
+        List<ServerChangedData> corrections = new ArrayList<ServerChangedData>();
+        for (ClientChangedData ccd : changes) {
+            int correctionsCount = corrections.size();
+            ServerChangedData scd = WhiteboardUtils.updateWhiteboard(whiteboard, ccd, corrections);
+            if (scd != null || corrections.size() > correctionsCount) {
+                journal.appendChange(whiteboard, ccd);
+            }
+
+            if (scd != null) {
+                batch.add(scd);
+            }
+        }
+
+        for (int i = 0; i < batch.size() + corrections.size(); i++) {
+            whiteboard.nextSequence();
+        }
+    }
+
+    private RecordInput legacyRecord(long sequence, ClientChangedData ccd, String user) {
+        ccd.setUser(user);
+        RecordOutput out = new RecordOutput();
+        out.writeVarLong(sequence);
+        out.writeClientChangedData(ccd);
+
+        return new RecordInput(ByteBuffer.wrap(out.toByteArray()));
+    }
+
+    private Journal reopen() throws IOException {
+        journal.close();
+        return new Journal(directory, false);
+    }
+
+    static Whiteboard createWhiteboard(String uuid) {
+        Whiteboard whiteboard = new Whiteboard();
+        whiteboard.setUuid(uuid);
+        whiteboard.setTitle("Test");
+        whiteboard.setCreator("Oleg");
+        whiteboard.setPubSubTransport("long-polling");
+        whiteboard.setWidth(800);
+        whiteboard.setHeight(600);
+        whiteboard.setCreationDate(new Date());
+        whiteboard.addUserData(new UserData("s1", "Oleg"));
+
+        return whiteboard;
+    }
+
+    static Circle circle(String uuid, int x, int y, int radius) {
+        Circle circle = new Circle();
+        circle.setUuid(uuid);
+        circle.setX(x);
+        circle.setY(y);
+        circle.setRadius(radius);
+        circle.setBackgroundColor("#FFFFFF");
+        circle.setBorderColor("#000000");
+        circle.setBorderStyle("-");
+
+        return circle;
+    }
+
+    static ClientChangedData change(ClientAction action, AbstractElement element, long clock) {
+        ClientChangedData ccd = new ClientChangedData();
+        ccd.setAction(action);
+        ccd.setWhiteboardId("wb1");
+        ccd.setElement(element);
+        ccd.setUser("Oleg");
+        ccd.setTimestamp(System.currentTimeMillis());
+        ccd.setClock(clock);
+
+        return ccd;
+    }
+
+    static void assertEquals(Whiteboard expected, Whiteboard actual) {
+        Assert.assertNotNull(actual);
+        Assert.assertEquals(expected.getUuid(), actual.getUuid());
+        Assert.assertEquals(expected.getTitle(), actual.getTitle());
+        Assert.assertEquals(expected.getSequence(), actual.getSequence());
+        Assert.assertEquals(expected.getCount(), actual.getCount());
+        for (AbstractElement element : expected.getElements()) {
+            AbstractElement recovered = actual.getElement(element.getUuid());
+            Assert.assertNotNull("Element " + element.getUuid() + " is missing", recovered);
+            Assert.assertEquals(((Circle) element).getX(), ((Circle) recovered).getX());
+            Assert.assertEquals(((Circle) element).getY(), ((Circle) recovered).getY());
+            Assert.assertEquals(((Circle) element).getRadius(), ((Circle) recovered).getRadius());
+        }
+    }
+}
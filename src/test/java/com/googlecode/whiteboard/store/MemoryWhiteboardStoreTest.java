@@ -0,0 +1,128 @@
+/*
+* @author  Oleg Varaksin (ovaraksin@googlemail.com)
+* $$Id: MemoryWhiteboardStoreTest.java 90 2011-09-27 15:24:29Z ovaraksin@gmail.com $$
+*/
+
+package com.googlecode.whiteboard.store;
+
+import com.googlecode.whiteboard.model.UserData;
+import com.googlecode.whiteboard.model.Whiteboard;
+import com.googlecode.whiteboard.model.base.FieldVersions;
+import com.googlecode.whiteboard.model.element.Circle;
+import org.apache.commons.configuration.BaseConfiguration;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+public class MemoryWhiteboardStoreTest
+{
+    private File directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = File.createTempFile("spill", "");
+        Assert.assertTrue(directory.delete());
+    }
+
+    @After
+    public void deleteDirectory() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+
+        directory.delete();
+    }
+
+    @Test
+    public void withoutSpillDirectory() throws IOException {
+        MemoryWhiteboardStore store = new MemoryWhiteboardStore(new BaseConfiguration());
+        Whiteboard whiteboard = JournalTest.createWhiteboard("wb1");
+        store.save(whiteboard);
+        store.saveUsers(whiteboard);
+        store.evict(whiteboard);
+
+        Assert.assertNull(store.load("wb1"));
+        Assert.assertTrue(store.list().isEmpty());
+    }
+
+    @Test
+    public void evictedWhiteboardIsLoadedOnce() throws IOException {
+        BaseConfiguration config = new BaseConfiguration();
+        config.setProperty("whiteboard.spillDirectory", directory.getPath());
+        MemoryWhiteboardStore store = new MemoryWhiteboardStore(config);
+
+        Whiteboard whiteboard = JournalTest.createWhiteboard("wb1");
+        whiteboard.setSequence(42);
+        whiteboard.setSimplifyTolerance(0.5);
+        whiteboard.addUserData(new UserData("s2", "Zoe"));
+        Circle circle = JournalTest.circle("c1", 10, 20, 30);
+        circle.setFieldVersions(FieldVersions.EMPTY.merge("radius", 7, "s2"));
+        whiteboard.addElement(circle);
+        whiteboard.addElement(JournalTest.circle("c2", 40, 50, 60));
+        store.evict(whiteboard);
+
+        Whiteboard loaded = store.load("wb1");
+        JournalTest.assertEquals(whiteboard, loaded);
+        Assert.assertEquals("Oleg", loaded.getCreator());
+        Assert.assertEquals(whiteboard.getCreationDate(), loaded.getCreationDate());
+        Assert.assertEquals(0.5, loaded.getSimplifyTolerance(), 0.0);
+        Assert.assertEquals("Zoe", loaded.getUserData("s2").getUserName());
+        Assert.assertEquals(7, loaded.getElement("c1").getFieldVersions().getVersion("radius"));
+        Assert.assertEquals("s2", loaded.getElement("c1").getFieldVersions().getWriter("radius"));
+        Assert.assertTrue(loaded.getElement("c2").getFieldVersions().isEmpty());
+
+        // the spilled file is removed after loading
+        Assert.assertNull(store.load("wb1"));
+    }
+
+    @Test
+    public void spillReplacesPreviousSpill() throws IOException {
+        WhiteboardSpill spill = new WhiteboardSpill(directory);
+        Whiteboard whiteboard = JournalTest.createWhiteboard("wb1");
+        whiteboard.addElement(JournalTest.circle("c1", 10, 20, 30));
+        spill.spill(whiteboard);
+
+        whiteboard.addElement(JournalTest.circle("c2", 40, 50, 60));
+        whiteboard.setSequence(5);
+        spill.spill(whiteboard);
+
+        JournalTest.assertEquals(whiteboard, spill.restore("wb1"));
+        Assert.assertNull(spill.restore("wb1"));
+    }
+
+    @Test
+    public void restoreTemporaryFileOfDeletedSpill() throws IOException {
+        WhiteboardSpill spill = new WhiteboardSpill(directory);
+        Whiteboard whiteboard = JournalTest.createWhiteboard("wb1");
+        whiteboard.addElement(JournalTest.circle("c1", 10, 20, 30));
+        spill.spill(whiteboard);
+
+        // crash after the previous spill has been deleted, before the new file has been renamed
+        Assert.assertTrue(new File(directory, "wb1.json").renameTo(new File(directory, "wb1.json.tmp")));
+
+        JournalTest.assertEquals(whiteboard, spill.restore("wb1"));
+        Assert.assertNull(spill.restore("wb1"));
+        Assert.assertEquals(0, directory.list().length);
+    }
+
+    @Test
+    public void invalidIds() throws IOException {
+        WhiteboardSpill spill = new WhiteboardSpill(directory);
+        Assert.assertNull(spill.restore("../wb1"));
+        Assert.assertNull(spill.restore(null));
+
+        try {
+            spill.spill(JournalTest.createWhiteboard("../wb1"));
+            Assert.fail("Whiteboard with an invalid id has been spilled");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+}
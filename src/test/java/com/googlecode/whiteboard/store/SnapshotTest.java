@@ -0,0 +1,135 @@
+/*
+* @author  Oleg Varaksin (ovaraksin@googlemail.com)
+* $$Id: SnapshotTest.java 90 2011-09-27 15:24:29Z ovaraksin@gmail.com $$
+*/
+
+package com.googlecode.whiteboard.store;
+
+import com.googlecode.whiteboard.model.UserData;
+import com.googlecode.whiteboard.model.Whiteboard;
+import com.googlecode.whiteboard.model.base.FieldVersions;
+import com.googlecode.whiteboard.model.element.Circle;
+import com.googlecode.whiteboard.model.element.FreeLine;
+import com.googlecode.whiteboard.model.element.Text;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+public class SnapshotTest
+{
+    @Test
+    public void roundTrip() throws IOException {
+        Whiteboard whiteboard = JournalTest.createWhiteboard("wb1");
+        whiteboard.setSequence(1234567L);
+        whiteboard.setSimplifyTolerance(0.75);
+        whiteboard.addUserData(new UserData("s2", "Zoe"));
+
+        Circle circle = JournalTest.circle("c1", 10, 20, 30);
+        circle.setFieldVersions(FieldVersions.EMPTY.merge("radius", 7, "s1").merge("x", 9, "s2"));
+        whiteboard.addElement(circle);
+
+        FreeLine freeLine = new FreeLine();
+        freeLine.setUuid("f1");
+        freeLine.setPath("M10,20L30,40L-50.5,60");
+        whiteboard.addElement(freeLine);
+
+        Text text = new Text();
+        text.setUuid("t1");
+        text.setText("Hello \u00fcber \u20ac");
+        whiteboard.addElement(text);
+
+        byte[] data = Snapshot.encode(whiteboard);
+        Snapshot.setGeneration(data, 42);
+        Snapshot snapshot = Snapshot.read(ByteBuffer.wrap(data), "test");
+        Assert.assertEquals(42, snapshot.getGeneration());
+
+        Whiteboard read = snapshot.getWhiteboard();
+        Assert.assertEquals("wb1", read.getUuid());
+        Assert.assertEquals("Test", read.getTitle());
+        Assert.assertEquals("Oleg", read.getCreator());
+        Assert.assertEquals(800, read.getWidth());
+        Assert.assertEquals(600, read.getHeight());
+        Assert.assertEquals(whiteboard.getCreationDate(), read.getCreationDate());
+        Assert.assertEquals(1234567L, read.getSequence());
+        Assert.assertEquals(0.75, read.getSimplifyTolerance(), 0.0);
+        Assert.assertEquals(2, read.getUserData().size());
+        Assert.assertEquals("Zoe", read.getUserData("s2").getUserName());
+
+        Assert.assertEquals(3, read.getCount());
+        Assert.assertEquals(30, ((Circle) read.getElement("c1")).getRadius());
+        Assert.assertEquals("M10,20L30,40L-50.5,60", ((FreeLine) read.getElement("f1")).getPath());
+        Assert.assertEquals("Hello \u00fcber \u20ac", ((Text) read.getElement("t1")).getText());
+
+        FieldVersions versions = read.getElement("c1").getFieldVersions();
+        Assert.assertEquals(7, versions.getVersion("radius"));
+        Assert.assertEquals("s1", versions.getWriter("radius"));
+        Assert.assertEquals(9, versions.getVersion("x"));
+        Assert.assertTrue(read.getElement("f1").getFieldVersions().isEmpty());
+    }
+
+    @Test
+    public void generationIsNotCoveredByChecksum() throws IOException {
+        byte[] data = Snapshot.encode(JournalTest.createWhiteboard("wb1"));
+        Snapshot.setGeneration(data, 1);
+        Snapshot.read(ByteBuffer.wrap(data), "test");
+        Snapshot.setGeneration(data, 2);
+        Assert.assertEquals(2, Snapshot.read(ByteBuffer.wrap(data), "test").getGeneration());
+    }
+
+    @Test
+    public void corruptSnapshots() {
+        byte[] data = Snapshot.encode(JournalTest.createWhiteboard("wb1"));
+
+        byte[] flipped = data.clone();
+        flipped[flipped.length - 3] ^= 0x10;
+        assertCorrupt(flipped);
+
+        byte[] truncated = new byte[data.length - 1];
+        System.arraycopy(data, 0, truncated, 0, truncated.length);
+        assertCorrupt(truncated);
+
+        byte[] unknown = data.clone();
+        unknown[0] = 0;
+        assertCorrupt(unknown);
+
+        assertCorrupt(new byte[3]);
+    }
+
+    @Test
+    public void readFile() throws IOException {
+        Whiteboard whiteboard = JournalTest.createWhiteboard("wb1");
+        whiteboard.addElement(JournalTest.circle("c1", 10, 20, 30));
+        byte[] data = Snapshot.encode(whiteboard);
+        Snapshot.setGeneration(data, 5);
+
+        File file = File.createTempFile("wb1", ".snapshot");
+        try {
+            FileOutputStream out = new FileOutputStream(file);
+            try {
+                out.write(data);
+            } finally {
+                out.close();
+            }
+
+            Assert.assertEquals(5, Snapshot.readGeneration(file));
+            Snapshot snapshot = Snapshot.read(file);
+            Assert.assertEquals(5, snapshot.getGeneration());
+            JournalTest.assertEquals(whiteboard, snapshot.getWhiteboard());
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static void assertCorrupt(byte[] data) {
+        try {
+            Snapshot.read(ByteBuffer.wrap(data), "test");
+            Assert.fail("Corrupt snapshot has been read");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+}
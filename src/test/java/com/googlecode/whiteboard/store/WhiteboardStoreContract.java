@@ -0,0 +1,141 @@
+/*
+* @author  Oleg Varaksin (ovaraksin@googlemail.com)
+* $$Id: WhiteboardStoreContract.java 90 2011-09-27 15:24:29Z ovaraksin@gmail.com $$
+*/
+
+package com.googlecode.whiteboard.store;
+
+import com.googlecode.whiteboard.model.UserData;
+import com.googlecode.whiteboard.model.Whiteboard;
+import com.googlecode.whiteboard.model.element.Circle;
+import com.googlecode.whiteboard.model.transfer.ClientAction;
+import com.googlecode.whiteboard.model.transfer.ClientChangedData;
+import com.googlecode.whiteboard.model.transfer.ServerChangedData;
+import com.googlecode.whiteboard.utils.WhiteboardUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests of durable stores. Subclasses create stores which keep their data when they are closed and created again.
+ */
+public abstract class WhiteboardStoreContract
+{
+    protected WhiteboardStore store;
+
+    protected abstract WhiteboardStore createStore() throws IOException;
+
+    @Before
+    public void openStore() throws IOException {
+        store = createStore();
+    }
+
+    @After
+    public void closeStore() {
+        store.close();
+        cleanUp();
+    }
+
+    /**
+     * Removes data of the closed store.
+     */
+    protected abstract void cleanUp();
+
+    @Test
+    public void saveAndLoad() throws IOException {
+        Whiteboard whiteboard = JournalTest.createWhiteboard("wb1");
+        whiteboard.addElement(JournalTest.circle("c1", 10, 20, 30));
+        store.save(whiteboard);
+        apply(whiteboard, JournalTest.change(ClientAction.Create, JournalTest.circle("c2", 40, 50, 60), 0));
+        apply(whiteboard, JournalTest.change(ClientAction.Update, JournalTest.circle("c1", 10, 20, 35), 0));
+
+        reopen();
+        Assert.assertTrue(store.list().contains("wb1"));
+        Whiteboard loaded = store.load("wb1");
+        JournalTest.assertEquals(whiteboard, loaded);
+        Assert.assertEquals(35, ((Circle) loaded.getElement("c1")).getRadius());
+    }
+
+    @Test
+    public void saveUsersOnly() throws IOException {
+        Whiteboard whiteboard = JournalTest.createWhiteboard("wb1");
+        store.save(whiteboard);
+        apply(whiteboard, JournalTest.change(ClientAction.Create, JournalTest.circle("c1", 10, 20, 30), 0));
+
+        whiteboard.addUserData(new UserData("s2", "Zoe"));
+        store.saveUsers(whiteboard);
+        whiteboard.addUserData(new UserData("s3", "Adam"));
+        store.saveUsers(whiteboard);
+        apply(whiteboard, JournalTest.change(ClientAction.Move, JournalTest.circle("c1", 15, 25, 30), 0));
+
+        reopen();
+        Whiteboard loaded = store.load("wb1");
+        JournalTest.assertEquals(whiteboard, loaded);
+        Assert.assertEquals(3, loaded.getUserData().size());
+        Assert.assertEquals("Zoe", loaded.getUserData("s2").getUserName());
+        Assert.assertEquals("Adam", loaded.getUserData("s3").getUserName());
+    }
+
+    @Test
+    public void saveReplacesOperations() throws IOException {
+        Whiteboard whiteboard = JournalTest.createWhiteboard("wb1");
+        store.save(whiteboard);
+        apply(whiteboard, JournalTest.change(ClientAction.Create, JournalTest.circle("c1", 10, 20, 30), 0));
+        whiteboard.addUserData(new UserData("s2", "Zoe"));
+        store.saveUsers(whiteboard);
+        store.save(whiteboard);
+        apply(whiteboard, JournalTest.change(ClientAction.Remove, JournalTest.circle("c1", 10, 20, 30), 0));
+        apply(whiteboard, JournalTest.change(ClientAction.Create, JournalTest.circle("c2", 10, 20, 30), 0));
+
+        reopen();
+        Whiteboard loaded = store.load("wb1");
+        JournalTest.assertEquals(whiteboard, loaded);
+        Assert.assertNull(loaded.getElement("c1"));
+        Assert.assertEquals(2, loaded.getUserData().size());
+    }
+
+    @Test
+    public void delete() throws IOException {
+        Whiteboard whiteboard = JournalTest.createWhiteboard("wb1");
+        store.save(whiteboard);
+        store.save(JournalTest.createWhiteboard("wb2"));
+        apply(whiteboard, JournalTest.change(ClientAction.Create, JournalTest.circle("c1", 10, 20, 30), 0));
+        store.saveUsers(whiteboard);
+        store.delete("wb1");
+
+        reopen();
+        Assert.assertNull(store.load("wb1"));
+        Assert.assertFalse(store.list().contains("wb1"));
+        Assert.assertNotNull(store.load("wb2"));
+    }
+
+    @Test
+    public void unknownWhiteboard() throws IOException {
+        Assert.assertNull(store.load("unknown"));
+    }
+
+    protected void reopen() throws IOException {
+        store.close();
+        store = createStore();
+    }
+
+    /**
+     * Applies and stores a change, the broadcasted change and corrections are numbered.
+     */
+    protected void apply(Whiteboard whiteboard, ClientChangedData ccd) {
+        List<ServerChangedData> corrections = new ArrayList<ServerChangedData>();
+        ServerChangedData scd = WhiteboardUtils.updateWhiteboard(whiteboard, ccd, corrections);
+        if (scd != null || !corrections.isEmpty()) {
+            store.apply(whiteboard, ccd);
+        }
+
+        for (int i = (scd != null ? -1 : 0); i < corrections.size(); i++) {
+            whiteboard.nextSequence();
+        }
+    }
+}
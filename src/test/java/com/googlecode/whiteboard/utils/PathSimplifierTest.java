@@ -0,0 +1,135 @@
+/*
+* @author  Oleg Varaksin (ovaraksin@googlemail.com)
+* $$Id: PathSimplifierTest.java 90 2011-09-27 15:24:29Z ovaraksin@gmail.com $$
+*/
+
+package com.googlecode.whiteboard.utils;
+
+import com.googlecode.whiteboard.model.Whiteboard;
+import com.googlecode.whiteboard.model.base.LinePath;
+import com.googlecode.whiteboard.model.element.FreeLine;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class PathSimplifierTest
+{
+    @Test
+    public void pointsOnStraightSegmentsAreDropped() {
+        FreeLine line = simplify("M0,0L1,0L2,0L3,0L3,1L3,2L3,3", 0.5);
+        Assert.assertEquals("M0,0L3,0L3,3", line.getPath());
+    }
+
+    @Test
+    public void pointsWithinToleranceAreDropped() {
+        // deviations of 0.4 are dropped, the deviation of 5 is kept
+        FreeLine line = simplify("M0,0L10,0.4L20,0L30,5L40,0L50,-0.4L60,0", 1);
+        Assert.assertEquals("M0,0L20,0L30,5L40,0L60,0", line.getPath());
+
+        line = simplify("M0,0L10,0.4L20,0L30,5L40,0L50,-0.4L60,0", 0.1);
+        Assert.assertEquals("M0,0L10,0.4L20,0L30,5L40,0L50,-0.4L60,0", line.getPath());
+
+        line = simplify("M0,0L10,0.4L20,0L30,5L40,0L50,-0.4L60,0", 10);
+        Assert.assertEquals("M0,0L60,0", line.getPath());
+    }
+
+    @Test
+    public void subpathsKeepTheirEndpoints() {
+        FreeLine line = simplify("M0,0L5,0L10,0M0,10L5,10L10,10M20,20", 1);
+        Assert.assertEquals("M0,0L10,0M0,10L10,10M20,20", line.getPath());
+    }
+
+    @Test
+    public void distanceToSegmentEnds() {
+        // the point beyond the end of the segment is far from the segment although it lies on its line
+        FreeLine line = simplify("M0,0L20,0L10,0", 1);
+        Assert.assertEquals("M0,0L20,0L10,0", line.getPath());
+    }
+
+    @Test
+    public void decimalCoordinates() {
+        FreeLine line = simplify("M0.5,0.25L1.5,0.25L2.5,0.3L3.5,0.25", 0.1);
+        Assert.assertEquals("M0.5,0.25L3.5,0.25", line.getPath());
+    }
+
+    @Test
+    public void linesWithoutToleranceOrEncodingAreKept() {
+        FreeLine line = simplify("M0,0L1,0L2,0", 0);
+        Assert.assertEquals("M0,0L1,0L2,0", line.getPath());
+
+        // can't be encoded, is kept as string
+        line = simplify("M0,0 C10,10 20,20 30,30", 5);
+        Assert.assertEquals("M0,0 C10,10 20,20 30,30", line.getPath());
+
+        FreeLine empty = new FreeLine();
+        PathSimplifier.simplify(createWhiteboard(5), empty);
+        Assert.assertNull(empty.getLinePath());
+    }
+
+    @Test
+    public void countsPoints() {
+        long received = PathSimplifier.getReceivedPoints();
+        long stored = PathSimplifier.getStoredPoints();
+
+        simplify("M0,0L1,0L2,0L3,0", 0.5);
+        simplify("M0,0L1,0", 0.5);
+
+        Assert.assertEquals(received + 6, PathSimplifier.getReceivedPoints());
+        Assert.assertEquals(stored + 4, PathSimplifier.getStoredPoints());
+        Assert.assertTrue(PathSimplifier.getReductionRatio() > 0);
+        Assert.assertTrue(PathSimplifier.getReductionRatio() < 1);
+    }
+
+    @Test
+    public void simplifiedPathIsSmaller() {
+        // closely sampled circle
+        StringBuilder path = new StringBuilder("M100,0");
+        for (int i = 1; i <= 360; i++) {
+            double angle = Math.toRadians(i);
+            path.append('L').append(Math.round(100 * Math.cos(angle))).append(',')
+                .append(Math.round(100 * Math.sin(angle)));
+        }
+
+        FreeLine line = simplify(path.toString(), 1);
+        int points = line.getLinePath().getPointCount();
+        Assert.assertTrue("Points: " + points, points < 60);
+
+        // every dropped point is near the simplified line
+        double[] original = LinePath.valueOf(path.toString()).getPoints();
+        double[] kept = line.getLinePath().getPoints();
+        for (int i = 0; i < original.length; i += 2) {
+            Assert.assertTrue(distance(original[i], original[i + 1], kept) <= 1.0001);
+        }
+    }
+
+    private static double distance(double x, double y, double[] points) {
+        double min = Double.MAX_VALUE;
+        for (int i = 2; i < points.length; i += 2) {
+            double x1 = points[i - 2];
+            double y1 = points[i - 1];
+            double dx = points[i] - x1;
+            double dy = points[i + 1] - y1;
+            double length = dx * dx + dy * dy;
+            double t = (length == 0 ? 0 : Math.max(0, Math.min(1, ((x - x1) * dx + (y - y1) * dy) / length)));
+            min = Math.min(min, Math.hypot(x - x1 - t * dx, y - y1 - t * dy));
+        }
+
+        return min;
+    }
+
+    private static FreeLine simplify(String path, double tolerance) {
+        FreeLine line = new FreeLine();
+        line.setUuid("f1");
+        line.setPath(path);
+        PathSimplifier.simplify(createWhiteboard(tolerance), line);
+
+        return line;
+    }
+
+    private static Whiteboard createWhiteboard(double tolerance) {
+        Whiteboard whiteboard = new Whiteboard();
+        whiteboard.setUuid("wb1");
+        whiteboard.setSimplifyTolerance(tolerance);
+
+        return whiteboard;
+    }
+}
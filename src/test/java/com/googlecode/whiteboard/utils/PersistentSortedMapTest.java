@@ -0,0 +1,177 @@
+/*
+* @author  Oleg Varaksin (ovaraksin@googlemail.com)
+* $$Id: PersistentSortedMapTest.java 90 2011-09-27 15:24:29Z ovaraksin@gmail.com $$
+*/
+
+package com.googlecode.whiteboard.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.*;
+
+public class PersistentSortedMapTest
+{
+    @Test
+    public void emptyMap() {
+        PersistentSortedMap<Integer, String> map = PersistentSortedMap.empty();
+        Assert.assertTrue(map.isEmpty());
+        Assert.assertEquals(0, map.size());
+        Assert.assertNull(map.get(1));
+        Assert.assertNull(map.firstKey());
+        Assert.assertNull(map.lastKey());
+        Assert.assertFalse(map.entries().hasNext());
+        Assert.assertSame(map, map.remove(1));
+    }
+
+    @Test
+    public void putGetRemove() {
+        PersistentSortedMap<Integer, String> map = PersistentSortedMap.empty();
+        map = map.put(5, "five").put(1, "one").put(9, "nine").put(5, "FIVE");
+
+        Assert.assertEquals(3, map.size());
+        Assert.assertEquals("FIVE", map.get(5));
+        Assert.assertEquals(Integer.valueOf(1), map.firstKey());
+        Assert.assertEquals(Integer.valueOf(9), map.lastKey());
+        Assert.assertEquals(Arrays.asList("one", "FIVE", "nine"), new ArrayList<String>(map.values()));
+
+        map = map.remove(5);
+        Assert.assertEquals(2, map.size());
+        Assert.assertNull(map.get(5));
+        Assert.assertSame(map, map.remove(7));
+    }
+
+    @Test
+    public void oldVersionsAreNotChanged() {
+        PersistentSortedMap<Integer, String> empty = PersistentSortedMap.empty();
+        PersistentSortedMap<Integer, String> v1 = empty.put(1, "a").put(2, "b").put(3, "c");
+        PersistentSortedMap<Integer, String> v2 = v1.put(2, "B").put(4, "d");
+        PersistentSortedMap<Integer, String> v3 = v2.remove(1).remove(3);
+
+        Assert.assertTrue(empty.isEmpty());
+        Assert.assertEquals(Arrays.asList("a", "b", "c"), new ArrayList<String>(v1.values()));
+        Assert.assertEquals(Arrays.asList("a", "B", "c", "d"), new ArrayList<String>(v2.values()));
+        Assert.assertEquals(Arrays.asList("B", "d"), new ArrayList<String>(v3.values()));
+    }
+
+    @Test
+    public void iteratorKeepsItsVersion() {
+        PersistentSortedMap<Integer, String> map = PersistentSortedMap.empty();
+        for (int i = 0; i < 10; i++) {
+            map = map.put(i, String.valueOf(i));
+        }
+
+        Iterator<String> values = map.values().iterator();
+        for (int i = 0; i < 10; i++) {
+            map = map.remove(i).put(i + 100, "new");
+        }
+
+        int count = 0;
+        while (values.hasNext()) {
+            Assert.assertEquals(String.valueOf(count++), values.next());
+        }
+
+        Assert.assertEquals(10, count);
+    }
+
+    @Test
+    public void staysBalanced() {
+        // ascending keys degenerate an unbalanced tree into a list
+        PersistentSortedMap<Integer, Integer> map = PersistentSortedMap.empty();
+        for (int i = 0; i < 10000; i++) {
+            map = map.put(i, i);
+            assertBalanced(map);
+        }
+
+        for (int i = 9999; i >= 5000; i--) {
+            map = map.remove(i);
+        }
+
+        assertBalanced(map);
+        for (int i = 0; i < 5000; i += 2) {
+            map = map.remove(i);
+        }
+
+        Assert.assertEquals(2500, map.size());
+        assertBalanced(map);
+    }
+
+    @Test
+    public void randomChangesLikeTreeMap() {
+        Random random = new Random(42);
+        TreeMap<Double, Integer> expected = new TreeMap<Double, Integer>();
+        PersistentSortedMap<Double, Integer> map = PersistentSortedMap.empty();
+        for (int i = 0; i < 20000; i++) {
+            Double key = (double) random.nextInt(1000);
+            if (random.nextInt(3) == 0) {
+                expected.remove(key);
+                map = map.remove(key);
+            } else {
+                expected.put(key, i);
+                map = map.put(key, i);
+            }
+        }
+
+        Assert.assertEquals(expected.size(), map.size());
+        Assert.assertEquals(new ArrayList<Integer>(expected.values()), new ArrayList<Integer>(map.values()));
+        Assert.assertEquals(expected.firstKey(), map.firstKey());
+        Assert.assertEquals(expected.lastKey(), map.lastKey());
+        assertBalanced(map);
+
+        Iterator<Map.Entry<Double, Integer>> entries = map.entries();
+        for (Map.Entry<Double, Integer> entry : expected.entrySet()) {
+            Map.Entry<Double, Integer> actual = entries.next();
+            Assert.assertEquals(entry.getKey(), actual.getKey());
+            Assert.assertEquals(entry.getValue(), actual.getValue());
+        }
+
+        Assert.assertFalse(entries.hasNext());
+    }
+
+    @Test
+    public void keysFrom() {
+        PersistentSortedMap<Integer, String> map = PersistentSortedMap.empty();
+        for (int i = 0; i < 10; i += 2) {
+            map = map.put(i, String.valueOf(i));
+        }
+
+        Assert.assertEquals(Arrays.asList(6, 8), toList(map.keysFrom(4, true)));
+        Assert.assertEquals(Arrays.asList(6, 8), toList(map.keysFrom(5, true)));
+        Assert.assertEquals(Arrays.asList(2, 0), toList(map.keysFrom(4, false)));
+        Assert.assertEquals(Arrays.asList(4, 2, 0), toList(map.keysFrom(5, false)));
+        Assert.assertEquals(Collections.<Integer>emptyList(), toList(map.keysFrom(8, true)));
+        Assert.assertEquals(Arrays.asList(0, 2, 4, 6, 8), toList(map.keysFrom(-1, true)));
+    }
+
+    @Test
+    public void serialization() throws Exception {
+        PersistentSortedMap<Integer, String> map = PersistentSortedMap.empty();
+        map = map.put(2, "b").put(1, "a").put(3, "c");
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(bytes);
+        out.writeObject(map);
+        out.close();
+
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        @SuppressWarnings("unchecked")
+        PersistentSortedMap<Integer, String> read = (PersistentSortedMap<Integer, String>) in.readObject();
+        Assert.assertEquals(Arrays.asList("a", "b", "c"), new ArrayList<String>(read.values()));
+    }
+
+    private static void assertBalanced(PersistentSortedMap<?, ?> map) {
+        // height of an AVL tree is less than 1.44 * log2(n + 2)
+        double maxHeight = 1.44 * Math.log(map.size() + 2) / Math.log(2);
+        Assert.assertTrue("Height " + map.height() + " for " + map.size() + " entries", map.height() <= maxHeight);
+    }
+
+    private static <T> List<T> toList(Iterator<T> iterator) {
+        List<T> list = new ArrayList<T>();
+        while (iterator.hasNext()) {
+            list.add(iterator.next());
+        }
+
+        return list;
+    }
+}
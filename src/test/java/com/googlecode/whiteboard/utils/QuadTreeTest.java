@@ -0,0 +1,125 @@
+/*
+* @author  Oleg Varaksin (ovaraksin@googlemail.com)
+* $$Id: QuadTreeTest.java 90 2011-09-27 15:24:29Z ovaraksin@gmail.com $$
+*/
+
+package com.googlecode.whiteboard.utils;
+
+import com.googlecode.whiteboard.model.BoundingBox;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.*;
+
+public class QuadTreeTest
+{
+    @Test
+    public void findIntersectingItems() {
+        QuadTree<String> tree = new QuadTree<String>(100, 100);
+        tree.put("a", new BoundingBox(10, 10, 20, 20));
+        tree.put("b", new BoundingBox(50, 50, 60, 60));
+        tree.put("c", new BoundingBox(0, 0, 100, 100));
+
+        Assert.assertEquals(set("a", "c"), set(tree.find(new BoundingBox(0, 0, 30, 30))));
+        Assert.assertEquals(set("a", "b", "c"), set(tree.find(new BoundingBox(20, 20, 50, 50))));
+        Assert.assertEquals(set(), set(tree.find(new BoundingBox(200, 200, 300, 300))));
+        Assert.assertEquals(3, tree.size());
+    }
+
+    @Test
+    public void moveAndRemove() {
+        QuadTree<String> tree = new QuadTree<String>(100, 100);
+        tree.put("a", new BoundingBox(10, 10, 20, 20));
+        tree.put("a", new BoundingBox(70, 70, 80, 80));
+        Assert.assertEquals(1, tree.size());
+        Assert.assertEquals(set(), set(tree.find(new BoundingBox(0, 0, 30, 30))));
+        Assert.assertEquals(set("a"), set(tree.find(new BoundingBox(75, 75, 76, 76))));
+
+        tree.remove("a");
+        tree.remove("unknown");
+        Assert.assertEquals(0, tree.size());
+        Assert.assertEquals(set(), set(tree.find(new BoundingBox(0, 0, 100, 100))));
+    }
+
+    @Test
+    public void growsTowardsItemsOutside() {
+        QuadTree<String> tree = new QuadTree<String>(100, 100);
+        tree.put("inside", new BoundingBox(10, 10, 20, 20));
+        tree.put("left", new BoundingBox(-550, 10, -540, 20));
+        tree.put("down", new BoundingBox(10, 900, 20, 910));
+        tree.put("up", new BoundingBox(10, -2000, 20, -1990));
+
+        Assert.assertEquals(set("left"), set(tree.find(new BoundingBox(-600, 0, -500, 30))));
+        Assert.assertEquals(set("down"), set(tree.find(new BoundingBox(0, 850, 30, 950))));
+        Assert.assertEquals(set("up"), set(tree.find(new BoundingBox(0, -2000, 30, -1990))));
+        Assert.assertEquals(set("inside"), set(tree.find(new BoundingBox(0, 0, 30, 30))));
+    }
+
+    @Test
+    public void itemsWithoutBoxesAreAlwaysFound() {
+        QuadTree<String> tree = new QuadTree<String>(100, 100);
+        tree.put("text", null);
+        tree.put("nan", new BoundingBox(Double.NaN, 0, 10, 10));
+        tree.put("a", new BoundingBox(10, 10, 20, 20));
+
+        Assert.assertEquals(set("text", "nan"), set(tree.find(new BoundingBox(500, 500, 600, 600))));
+
+        // an item gets a box later
+        tree.put("text", new BoundingBox(30, 30, 40, 40));
+        Assert.assertEquals(set("nan"), set(tree.find(new BoundingBox(500, 500, 600, 600))));
+
+        tree.clear();
+        Assert.assertEquals(0, tree.size());
+        Assert.assertEquals(set(), set(tree.find(new BoundingBox(0, 0, 100, 100))));
+    }
+
+    @Test
+    public void randomItemsLikeLinearScan() {
+        Random random = new Random(42);
+        QuadTree<Integer> tree = new QuadTree<Integer>(1000, 1000);
+        Map<Integer, BoundingBox> boxes = new HashMap<Integer, BoundingBox>();
+        for (int i = 0; i < 5000; i++) {
+            int item = random.nextInt(2000);
+            if (random.nextInt(4) == 0) {
+                tree.remove(item);
+                boxes.remove(item);
+            } else {
+                BoundingBox box = randomBox(random);
+                tree.put(item, box);
+                boxes.put(item, box);
+            }
+        }
+
+        Assert.assertEquals(boxes.size(), tree.size());
+        for (int i = 0; i < 200; i++) {
+            BoundingBox area = randomBox(random);
+            Set<Integer> expected = new HashSet<Integer>();
+            for (Map.Entry<Integer, BoundingBox> entry : boxes.entrySet()) {
+                if (entry.getValue().intersects(area)) {
+                    expected.add(entry.getKey());
+                }
+            }
+
+            List<Integer> found = tree.find(area);
+            Assert.assertEquals(expected, new HashSet<Integer>(found));
+            Assert.assertEquals(expected.size(), found.size());
+        }
+    }
+
+    private static BoundingBox randomBox(Random random) {
+        // mostly small boxes, some of them outside of the initial area, some large ones
+        double x = random.nextDouble() * 1500 - 250;
+        double y = random.nextDouble() * 1500 - 250;
+        double size = (random.nextInt(10) == 0 ? random.nextDouble() * 800 : random.nextDouble() * 20);
+
+        return new BoundingBox(x, y, x + size, y + size * random.nextDouble());
+    }
+
+    private static Set<String> set(String... items) {
+        return new HashSet<String>(Arrays.asList(items));
+    }
+
+    private static Set<String> set(List<String> items) {
+        return new HashSet<String>(items);
+    }
+}
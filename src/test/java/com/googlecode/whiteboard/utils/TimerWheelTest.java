@@ -0,0 +1,85 @@
+/*
+* @author  Oleg Varaksin (ovaraksin@googlemail.com)
+* $$Id: TimerWheelTest.java 90 2011-09-27 15:24:29Z ovaraksin@gmail.com $$
+*/
+
+package com.googlecode.whiteboard.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class TimerWheelTest
+{
+    private static final long START = 1000000L;
+
+    @Test
+    public void expiresAtDeadline() {
+        TimerWheel<String> wheel = new TimerWheel<String>(8, 100, START);
+        wheel.schedule("a", START + 250);
+        wheel.schedule("b", START + 300);
+
+        Assert.assertEquals(Collections.emptyList(), wheel.advance(START + 249));
+        // deadlines are rounded up to the next tick, an item never expires too early
+        Assert.assertEquals(Collections.emptyList(), wheel.advance(START + 299));
+        Assert.assertEquals(Arrays.asList("a", "b"), wheel.advance(START + 300));
+        Assert.assertEquals(Collections.emptyList(), wheel.advance(START + 1000));
+    }
+
+    @Test
+    public void deadlinesBeyondOneRotation() {
+        TimerWheel<String> wheel = new TimerWheel<String>(4, 10, START);
+        wheel.schedule("near", START + 20);
+        wheel.schedule("one round", START + 60);
+        wheel.schedule("three rounds", START + 140);
+
+        Assert.assertEquals(Arrays.asList("near"), wheel.advance(START + 59));
+        Assert.assertEquals(Arrays.asList("one round"), wheel.advance(START + 139));
+        Assert.assertEquals(Arrays.asList("three rounds"), wheel.advance(START + 140));
+    }
+
+    @Test
+    public void scheduleWhileAdvancing() {
+        TimerWheel<String> wheel = new TimerWheel<String>(4, 10, START);
+        Assert.assertEquals(Collections.emptyList(), wheel.advance(START + 95));
+
+        // deadlines in the past expire with the next tick
+        wheel.schedule("past", START);
+        wheel.schedule("later", START + 175);
+        Assert.assertEquals(Arrays.asList("past"), wheel.advance(START + 100));
+        Assert.assertEquals(Collections.emptyList(), wheel.advance(START + 179));
+        Assert.assertEquals(Arrays.asList("later"), wheel.advance(START + 180));
+    }
+
+    @Test
+    public void itemScheduledSeveralTimes() {
+        TimerWheel<String> wheel = new TimerWheel<String>(16, 10, START);
+        wheel.schedule("a", START + 10);
+        wheel.schedule("a", START + 50);
+
+        List<String> expired = wheel.advance(START + 10);
+        Assert.assertEquals(Arrays.asList("a"), expired);
+        Assert.assertEquals(Arrays.asList("a"), wheel.advance(START + 50));
+    }
+
+    @Test
+    public void sizeIsRoundedUp() {
+        // 3 slots are rounded up to 4, deadlines of different rounds share slots
+        TimerWheel<Integer> wheel = new TimerWheel<Integer>(3, 1, START);
+        for (int i = 1; i <= 20; i++) {
+            wheel.schedule(i, START + i);
+        }
+
+        for (int i = 1; i <= 20; i++) {
+            Assert.assertEquals(Arrays.asList(i), wheel.advance(START + i));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidTickDuration() {
+        new TimerWheel<String>(8, 0, START);
+    }
+}
@@ -0,0 +1,398 @@
+/*
+* @author  Oleg Varaksin (ovaraksin@googlemail.com)
+* $$Id: WhiteboardUtilsTest.java 90 2011-09-27 15:24:29Z ovaraksin@gmail.com $$
+*/
+
+package com.googlecode.whiteboard.utils;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.googlecode.whiteboard.json.JsonConverter;
+import com.googlecode.whiteboard.model.Whiteboard;
+import com.googlecode.whiteboard.model.base.AbstractElement;
+import com.googlecode.whiteboard.model.base.Line;
+import com.googlecode.whiteboard.model.element.Circle;
+import com.googlecode.whiteboard.model.element.FreeLine;
+import com.googlecode.whiteboard.model.element.StraightLine;
+import com.googlecode.whiteboard.model.property.ElementProperty;
+import com.googlecode.whiteboard.model.property.ElementTypes;
+import com.googlecode.whiteboard.model.transfer.ClientAction;
+import com.googlecode.whiteboard.model.transfer.ClientChangedData;
+import com.googlecode.whiteboard.model.transfer.ElementDelta;
+import com.googlecode.whiteboard.model.transfer.ServerChangedData;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class WhiteboardUtilsTest
+{
+    @Test
+    public void greaterClockWinsInBothArrivalOrders() {
+        for (boolean newerFirst : new boolean[]{true, false}) {
+            Whiteboard whiteboard = createWhiteboard();
+            ClientChangedData newer = update("s1", ElementTypes.CIRCLE_RADIUS, 50, 11);
+            ClientChangedData older = update("s2", ElementTypes.CIRCLE_RADIUS, 40, 10);
+
+            List<ServerChangedData> corrections = new ArrayList<ServerChangedData>();
+            if (newerFirst) {
+                Assert.assertNotNull(WhiteboardUtils.updateWhiteboard(whiteboard, newer, corrections));
+                Assert.assertNull(WhiteboardUtils.updateWhiteboard(whiteboard, older, corrections));
+
+                // the sender of the losing change gets the current value
+                Assert.assertEquals(1, corrections.size());
+                Assert.assertEquals(50, ((Circle) corrections.get(0).getDelta().getElement()).getRadius());
+            } else {
+                Assert.assertNotNull(WhiteboardUtils.updateWhiteboard(whiteboard, older, corrections));
+                Assert.assertNotNull(WhiteboardUtils.updateWhiteboard(whiteboard, newer, corrections));
+                Assert.assertTrue(corrections.isEmpty());
+            }
+
+            Assert.assertEquals(50, getCircle(whiteboard).getRadius());
+            Assert.assertEquals(11, getCircle(whiteboard).getFieldVersions().getVersion("radius"));
+        }
+    }
+
+    @Test
+    public void equalClocksAreDecidedBySenderIds() {
+        for (boolean s2First : new boolean[]{true, false}) {
+            Whiteboard whiteboard = createWhiteboard();
+            // user names are ordered the other way round, they must not decide
+            ClientChangedData first = update("s1", ElementTypes.CIRCLE_RADIUS, 40, 11);
+            first.setUser("Zoe");
+            ClientChangedData second = update("s2", ElementTypes.CIRCLE_RADIUS, 50, 11);
+            second.setUser("Adam");
+
+            if (s2First) {
+                WhiteboardUtils.updateWhiteboard(whiteboard, second, new ArrayList<ServerChangedData>());
+                WhiteboardUtils.updateWhiteboard(whiteboard, first, new ArrayList<ServerChangedData>());
+            } else {
+                WhiteboardUtils.updateWhiteboard(whiteboard, first, new ArrayList<ServerChangedData>());
+                WhiteboardUtils.updateWhiteboard(whiteboard, second, new ArrayList<ServerChangedData>());
+            }
+
+            Assert.assertEquals(50, getCircle(whiteboard).getRadius());
+            Assert.assertEquals("s2", getCircle(whiteboard).getFieldVersions().getWriter("radius"));
+        }
+    }
+
+    @Test
+    public void concurrentChangesOfDifferentPropertiesAreKept() {
+        Whiteboard whiteboard = createWhiteboard();
+        List<ServerChangedData> corrections = new ArrayList<ServerChangedData>();
+        WhiteboardUtils.updateWhiteboard(whiteboard, update("s1", ElementTypes.CIRCLE_RADIUS, 50, 11), corrections);
+
+        ClientChangedData color = update("s2", ElementTypes.CIRCLE_BACKGROUND_COLOR, 0, 11);
+        ((Circle) color.getDelta().getElement()).setBackgroundColor("#FF0000");
+        Assert.assertNotNull(WhiteboardUtils.updateWhiteboard(whiteboard, color, corrections));
+
+        Assert.assertTrue(corrections.isEmpty());
+        Assert.assertEquals(50, getCircle(whiteboard).getRadius());
+        Assert.assertEquals("#FF0000", getCircle(whiteboard).getBackgroundColor());
+    }
+
+    @Test
+    public void losingMoveIsCorrected() {
+        Whiteboard whiteboard = createWhiteboard();
+        List<ServerChangedData> corrections = new ArrayList<ServerChangedData>();
+        Assert.assertNotNull(WhiteboardUtils.updateWhiteboard(whiteboard, move("s1", 100, 100, 11), corrections));
+        Assert.assertNull(WhiteboardUtils.updateWhiteboard(whiteboard, move("s2", 200, 200, 10), corrections));
+
+        Assert.assertEquals(1, corrections.size());
+        Assert.assertEquals(ClientAction.Move, corrections.get(0).getAction());
+        Assert.assertEquals(100, getCircle(whiteboard).getX());
+    }
+
+    @Test
+    public void clocksAreClamped() {
+        Whiteboard whiteboard = createWhiteboard();
+
+        // a client can't have seen changes which haven't been broadcasted yet
+        ClientChangedData future = update("s1", ElementTypes.CIRCLE_RADIUS, 50, 1000000);
+        WhiteboardUtils.updateWhiteboard(whiteboard, future, new ArrayList<ServerChangedData>());
+        Assert.assertEquals(11, future.getClock());
+        Assert.assertEquals(11, getCircle(whiteboard).getFieldVersions().getVersion("radius"));
+
+        // a later change wins although the first one has claimed a huge clock
+        whiteboard.nextSequence();
+        ClientChangedData later = update("s2", ElementTypes.CIRCLE_RADIUS, 40, 12);
+        Assert.assertNotNull(WhiteboardUtils.updateWhiteboard(whiteboard, later, new ArrayList<ServerChangedData>()));
+        Assert.assertEquals(40, getCircle(whiteboard).getRadius());
+
+        // changes without clocks get the next sequence number
+        whiteboard.nextSequence();
+        ClientChangedData withoutClock = update("s1", ElementTypes.CIRCLE_RADIUS, 30, 0);
+        WhiteboardUtils.updateWhiteboard(whiteboard, withoutClock, new ArrayList<ServerChangedData>());
+        Assert.assertEquals(13, withoutClock.getClock());
+        Assert.assertEquals(30, getCircle(whiteboard).getRadius());
+    }
+
+    @Test
+    public void deltaHoldsOnlyChangedFields() {
+        // the whole element is sent, but only the radius differs
+        Whiteboard whiteboard = createWhiteboard();
+        ClientChangedData full = change(ClientAction.Update, "s1", 11);
+        full.setElement(circle(50));
+        ServerChangedData scd = WhiteboardUtils.updateWhiteboard(whiteboard, full, new ArrayList<ServerChangedData>());
+
+        Assert.assertNull(scd.getElement());
+        Assert.assertEquals(Collections.singletonList(ElementTypes.CIRCLE_RADIUS), scd.getDelta().getProperties());
+        JsonObject properties = getDeltaJson(scd).getAsJsonObject("properties");
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("uuid", "radius")), getNames(properties));
+        Assert.assertEquals(50, properties.get("radius").getAsInt());
+
+        // requested but unchanged properties are not broadcasted either
+        ClientChangedData requested = change(ClientAction.Update, "s1", 11);
+        Circle circle = circle(50);
+        circle.setBackgroundColor("#FF0000");
+        requested.setDelta(new ElementDelta(circle, Arrays.asList(ElementTypes.CIRCLE_RADIUS,
+                ElementTypes.CIRCLE_BACKGROUND_COLOR)));
+        scd = WhiteboardUtils.updateWhiteboard(whiteboard, requested, new ArrayList<ServerChangedData>());
+        Assert.assertEquals(Collections.singletonList(ElementTypes.CIRCLE_BACKGROUND_COLOR),
+                scd.getDelta().getProperties());
+        Assert.assertEquals(new HashSet<String>(Arrays.asList("uuid", "backgroundColor")),
+                getNames(getDeltaJson(scd).getAsJsonObject("properties")));
+
+        // nothing changed, nothing to broadcast
+        Assert.assertNull(WhiteboardUtils.updateWhiteboard(whiteboard, requested, new ArrayList<ServerChangedData>()));
+    }
+
+    @Test
+    public void appliedDeltaGivesSameStateAsFullElement() {
+        Whiteboard whiteboard = createWhiteboard();
+        // replica of a client which got the element before
+        Circle replica = circle(30);
+
+        Circle changed = circle(45);
+        changed.setX(70);
+        changed.setBorderStyle("-.");
+        changed.setBackgroundOpacity(0.5);
+        ClientChangedData ccd = change(ClientAction.Update, "s1", 11);
+        ccd.setElement(changed);
+        ServerChangedData scd = WhiteboardUtils.updateWhiteboard(whiteboard, ccd, new ArrayList<ServerChangedData>());
+        Assert.assertEquals(4, scd.getDelta().getProperties().size());
+
+        // the client applies the delta as received
+        ElementDelta received = JsonConverter.getGson().fromJson(getDeltaJson(scd), ElementDelta.class);
+        ElementTypes.copyProperties((Circle) received.getElement(), replica, received.getProperties());
+
+        Gson gson = JsonConverter.getGson();
+        Assert.assertEquals(gson.toJson(changed, AbstractElement.class), gson.toJson(replica, AbstractElement.class));
+        Assert.assertEquals(gson.toJson(changed, AbstractElement.class),
+                gson.toJson(whiteboard.getElement("c1"), AbstractElement.class));
+    }
+
+    @Test
+    public void groupMoveSkipsMissingElements() {
+        Whiteboard whiteboard = createWhiteboard();
+        whiteboard.addElement(circle("c2", 30));
+
+        ClientChangedData ccd = group(ClientAction.GroupMove, "c1,gone,c2", 11);
+        ccd.getParameters().put("dx", "5");
+        ccd.getParameters().put("dy", "-5");
+        ServerChangedData scd = WhiteboardUtils.updateWhiteboard(whiteboard, ccd, new ArrayList<ServerChangedData>());
+
+        Assert.assertEquals("c1,c2", scd.getParameters().get("uuids"));
+        Assert.assertEquals(Integer.valueOf(2), scd.getEvent().getCount());
+        for (String uuid : new String[]{"c1", "c2"}) {
+            Circle circle = (Circle) whiteboard.getElement(uuid);
+            Assert.assertEquals(15, circle.getX());
+            Assert.assertEquals(15, circle.getY());
+            Assert.assertEquals(11, circle.getFieldVersions().getVersion("x"));
+        }
+
+        Assert.assertNull(whiteboard.getElement("gone"));
+
+        // no element exists anymore
+        ClientChangedData missing = group(ClientAction.GroupMove, "gone,lost", 11);
+        missing.getParameters().put("dx", "5");
+        missing.getParameters().put("dy", "5");
+        Assert.assertNull(WhiteboardUtils.updateWhiteboard(whiteboard, missing, new ArrayList<ServerChangedData>()));
+    }
+
+    @Test
+    public void groupMoveTranslatesLinePaths() {
+        Whiteboard whiteboard = createWhiteboard();
+        FreeLine freeLine = new FreeLine();
+        freeLine.setUuid("l1");
+        freeLine.setPath("M10,20L30,40L50,30");
+        whiteboard.addElement(freeLine);
+        StraightLine straightLine = new StraightLine();
+        straightLine.setUuid("l2");
+        straightLine.setPath("M0,0L100,100");
+        whiteboard.addElement(straightLine);
+
+        ClientChangedData ccd = group(ClientAction.GroupMove, "l1,c1,l2", 11);
+        ccd.getParameters().put("dx", "5");
+        ccd.getParameters().put("dy", "10");
+        ServerChangedData scd = WhiteboardUtils.updateWhiteboard(whiteboard, ccd, new ArrayList<ServerChangedData>());
+
+        Assert.assertEquals("l1,c1,l2", scd.getParameters().get("uuids"));
+        Assert.assertEquals("M15,30L35,50L55,40", ((Line) whiteboard.getElement("l1")).getPath());
+        Assert.assertEquals("M5,10L105,110", ((Line) whiteboard.getElement("l2")).getPath());
+        Assert.assertEquals(15, getCircle(whiteboard).getX());
+        Assert.assertEquals(30, getCircle(whiteboard).getY());
+        Assert.assertEquals(11, whiteboard.getElement("l1").getFieldVersions().getVersion("path"));
+        // stored elements are replaced, not modified
+        Assert.assertEquals("M10,20L30,40L50,30", freeLine.getPath());
+    }
+
+    @Test
+    public void groupUpdateRespectsFieldVersions() {
+        Whiteboard whiteboard = createWhiteboard();
+        whiteboard.addElement(circle("c2", 30));
+        WhiteboardUtils.updateWhiteboard(whiteboard, update("s1", ElementTypes.CIRCLE_RADIUS, 50, 11),
+                new ArrayList<ServerChangedData>());
+
+        // an older restyle of both circles loses against the radius of c1, but not against its color
+        ClientChangedData ccd = group(ClientAction.GroupUpdate, "c1,c2", 10);
+        ccd.setSenderId("s2");
+        ccd.getParameters().put("radius", "40");
+        ccd.getParameters().put("backgroundColor", "#FF0000");
+        List<ServerChangedData> corrections = new ArrayList<ServerChangedData>();
+        ServerChangedData scd = WhiteboardUtils.updateWhiteboard(whiteboard, ccd, corrections);
+
+        Assert.assertEquals("c2", scd.getParameters().get("uuids"));
+        Assert.assertEquals(Integer.valueOf(1), scd.getEvent().getCount());
+        Assert.assertEquals(40, ((Circle) whiteboard.getElement("c2")).getRadius());
+        Assert.assertEquals("#FF0000", ((Circle) whiteboard.getElement("c2")).getBackgroundColor());
+
+        Assert.assertEquals(50, getCircle(whiteboard).getRadius());
+        Assert.assertEquals("#FF0000", getCircle(whiteboard).getBackgroundColor());
+        Assert.assertEquals(11, getCircle(whiteboard).getFieldVersions().getVersion("radius"));
+        Assert.assertEquals(10, getCircle(whiteboard).getFieldVersions().getVersion("backgroundColor"));
+
+        // all subscribers get the current values of c1
+        Assert.assertEquals(1, corrections.size());
+        ElementDelta delta = corrections.get(0).getDelta();
+        Assert.assertEquals("c1", delta.getElement().getUuid());
+        Assert.assertTrue(delta.getProperties().contains(ElementTypes.CIRCLE_RADIUS));
+        Assert.assertTrue(delta.getProperties().contains(ElementTypes.CIRCLE_BACKGROUND_COLOR));
+        Assert.assertEquals(50, ((Circle) delta.getElement()).getRadius());
+    }
+
+    @Test
+    public void groupChangeIsOneCompactMessage() {
+        Whiteboard whiteboard = createWhiteboard();
+        StringBuilder uuids = new StringBuilder("c1");
+        for (int i = 2; i <= 50; i++) {
+            whiteboard.addElement(circle("c" + i, 30));
+            uuids.append(",c").append(i);
+        }
+
+        ClientChangedData move = group(ClientAction.GroupMove, uuids.toString(), 11);
+        move.getParameters().put("dx", "1");
+        move.getParameters().put("dy", "2");
+        ServerChangedData scd = WhiteboardUtils.updateWhiteboard(whiteboard, move, new ArrayList<ServerChangedData>());
+        assertCompact(scd, "uuids", "dx", "dy");
+        Assert.assertEquals(uuids.toString(), scd.getParameters().get("uuids"));
+
+        ClientChangedData restyle = group(ClientAction.GroupUpdate, uuids.toString(), 11);
+        restyle.getParameters().put("borderColor", "#00FF00");
+        scd = WhiteboardUtils.updateWhiteboard(whiteboard, restyle, new ArrayList<ServerChangedData>());
+        assertCompact(scd, "uuids", "borderColor");
+        Assert.assertEquals(Integer.valueOf(50), scd.getEvent().getCount());
+    }
+
+    /**
+     * Checks that a group change is broadcasted with its parameters only, without elements.
+     */
+    private static void assertCompact(ServerChangedData scd, String... parameters) {
+        Assert.assertNull(scd.getElement());
+        Assert.assertNull(scd.getDelta());
+        Assert.assertEquals(new HashSet<String>(Arrays.asList(parameters)), scd.getParameters().keySet());
+        Assert.assertFalse(JsonConverter.getGson().toJson(scd).contains("\"properties\""));
+    }
+
+    /**
+     * Gets the delta as it is broadcasted.
+     */
+    private static JsonObject getDeltaJson(ServerChangedData scd) {
+        return new JsonParser().parse(JsonConverter.getGson().toJson(scd)).getAsJsonObject().getAsJsonObject("delta");
+    }
+
+    private static Set<String> getNames(JsonObject object) {
+        Set<String> names = new HashSet<String>();
+        for (Map.Entry<String, JsonElement> entry : object.entrySet()) {
+            names.add(entry.getKey());
+        }
+
+        return names;
+    }
+
+    private static Whiteboard createWhiteboard() {
+        Whiteboard whiteboard = new Whiteboard();
+        whiteboard.setUuid("wb1");
+        whiteboard.setCreationDate(new Date());
+        whiteboard.setSequence(10);
+        whiteboard.addElement(circle(30));
+
+        return whiteboard;
+    }
+
+    private static Circle circle(int radius) {
+        return circle("c1", radius);
+    }
+
+    private static Circle circle(String uuid, int radius) {
+        Circle circle = new Circle();
+        circle.setUuid(uuid);
+        circle.setX(10);
+        circle.setY(20);
+        circle.setRadius(radius);
+        circle.setBackgroundColor("#FFFFFF");
+
+        return circle;
+    }
+
+    private static Circle getCircle(Whiteboard whiteboard) {
+        return (Circle) whiteboard.getElement("c1");
+    }
+
+    private static ClientChangedData update(String senderId, ElementProperty<?> property, int radius, long clock) {
+        ClientChangedData ccd = change(ClientAction.Update, senderId, clock);
+        ccd.setDelta(new ElementDelta(circle(radius), Collections.singletonList(property)));
+
+        return ccd;
+    }
+
+    private static ClientChangedData move(String senderId, int x, int y, long clock) {
+        Circle circle = circle(30);
+        circle.setX(x);
+        circle.setY(y);
+
+        ClientChangedData ccd = change(ClientAction.Move, senderId, clock);
+        ccd.setElement(circle);
+
+        return ccd;
+    }
+
+    private static ClientChangedData group(ClientAction action, String uuids, long clock) {
+        ClientChangedData ccd = change(action, "s1", clock);
+        ccd.setParameters(new HashMap<String, String>());
+        ccd.getParameters().put("uuids", uuids);
+
+        return ccd;
+    }
+
+    private static ClientChangedData change(ClientAction action, String senderId, long clock) {
+        ClientChangedData ccd = new ClientChangedData();
+        ccd.setAction(action);
+        ccd.setWhiteboardId("wb1");
+        ccd.setUser("Oleg");
+        ccd.setSenderId(senderId);
+        ccd.setClock(clock);
+
+        return ccd;
+    }
+}